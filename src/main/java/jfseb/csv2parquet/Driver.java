@@ -22,7 +22,11 @@
 
 package jfseb.csv2parquet;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -39,12 +43,14 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.orc.tools.FileDump;
 import org.apache.parquet.tools.Main;
 
+import jfseb.csv2parquet.convert.ConvertToolBase;
 import jfseb.csv2parquet.convert.ConvertToolBase.Format;
 import jfseb.csv2parquet.convert.ConvertToolOrc;
 import jfseb.csv2parquet.convert.ConvertToolParquet;
 import jfseb.csv2parquet.convert.ConvertUtils;
 import jfseb.csv2parquet.parquet.DumpMeta;
 import jfseb.csv2parquet.parquet.DumpSchema;
+import jfseb.csv2parquet.parquet.Lookup;
 
 /**
  * Driver program for the java ORC utilities.
@@ -85,7 +91,7 @@ public class Driver {
     }
   }
   
-  private final static String[] COMMANDS = { "data", "meta", "schema", "convert", "dump" };
+  private final static String[] COMMANDS = { "data", "meta", "schema", "convert", "dump", "lookup" };
 
   public static String getInput(String[] args) throws Exception {
     int i = 0;
@@ -96,8 +102,8 @@ public class Driver {
     i = i + 1; // skip command;
     if (i == args.length)
       return null;
-    // skip parameters -d <par>
-    while (i < args.length && args[i].length() > 0 && args[i].charAt(0) == '-') {
+    // skip parameters -d <par>, a single - is stdin
+    while (i < args.length && args[i].length() > 1 && args[i].charAt(0) == '-') {
       i = i + 1;
     }
     if (i == args.length)
@@ -158,7 +164,9 @@ public class Driver {
       System.err.println("   data - print the data from the ORC/Parquet file");
       System.err.println("   scan - scan the ORC/Parquet file");
       System.err.println("   convert - convert CSV to ORC/Parquet, or Parquet to CSV");
+      System.err.println("             input - reads stdin (with -i csv|json[.gz]), -o - writes CSV to stdout");
       System.err.println("   schema - print schema of /Parquet file");      
+      System.err.println("   lookup - print the rows of Parquet files with a key, -c column -k key <files>");
       System.err.println("   json-schema - scan JSON files to determine their schema");
       System.err.println();
       System.err.println(" examples: ");
@@ -219,11 +227,17 @@ public class Driver {
       // getInput(args)
       if (isParquet(getInput(args)))
       {
+        File parquetFile = new File(getInput(args));
+        if (ConvertToolBase.STANDARD_STREAM.equals(getOutput(args))) {
+          // -o - writes csv to stdout
+          Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+          ConvertUtils.convertParquetToCSV(parquetFile, out, ConvertUtils.DEFAULT_CSV_DELIMITER);
+          return;
+        }
         if(!isCSV(getOutput(args)))
         {
-          throw new IllegalStateException("output must be specified and of type csv, e.g. \"convert xx.parquet -o xx.csv\"");
+          throw new IllegalStateException("output must be specified and of type csv, e.g. \"convert xx.parquet -o xx.csv\" or \"-o -\" for stdout");
         }
-        File parquetFile = new File(getInput(args));
         File csvFile= new File(getOutput(args));
         ConvertUtils.convertParquetToCSV( parquetFile, csvFile );
       }
@@ -235,6 +249,8 @@ public class Driver {
       } else {
         ConvertToolParquet.main(conf, options.commandArgs);
       }
+    } else if ("lookup".equals(options.command)) {
+      Lookup.main(conf, options.commandArgs);
     } else {
       System.err.println("Unknown subcommand: " + options.command);
       System.exit(1);
@@ -0,0 +1,178 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+
+/**
+ * Runs reading (parsing) and writing (encoding) of row batches on two threads.
+ *
+ * A fixed pool of VectorizedRowBatch objects circulates between the stages:
+ * the parse thread takes a free batch, fills it and puts it into the bounded
+ * queue of filled batches, the encode thread (the caller of {@link #run})
+ * writes it and hands it back to the free pool. Batches are therefore only
+ * safe to recycle if the source copies or freshly allocates all values, and
+ * the sink does not keep references after write returns.
+ *
+ * The depth of the filled queue, sampled whenever the encoder takes a batch,
+ * and the time each stage spends waiting for the other show the bottleneck:
+ * a full queue and a waiting parser mean encoding is slower, an empty queue
+ * and a waiting encoder mean parsing is slower.
+ */
+public class BatchPipeline {
+
+  public static final int DEFAULT_BATCHES = 4;
+
+  /** Fills a batch, returns false at the end of the input. */
+  public interface BatchSource {
+    boolean nextBatch(VectorizedRowBatch batch) throws IOException;
+  }
+
+  /** Consumes a filled batch. */
+  public interface BatchSink {
+    void write(VectorizedRowBatch batch) throws IOException;
+  }
+
+  private final BlockingQueue<VectorizedRowBatch> free;
+  private final BlockingQueue<VectorizedRowBatch> filled;
+  // marks the end of the input in the filled queue
+  private final VectorizedRowBatch endOfInput = new VectorizedRowBatch(0);
+  private final int capacity;
+
+  private volatile Throwable parseFailure;
+
+  // metrics
+  private long batches;
+  private long rows;
+  private long queueDepthSum;
+  private int maxQueueDepth;
+  private volatile long parseWaitNanos;
+  private long encodeWaitNanos;
+
+  public BatchPipeline(TypeDescription schema, int batches) {
+    if (batches < 2) {
+      throw new IllegalArgumentException("a pipeline needs at least 2 batches, got " + batches);
+    }
+    this.capacity = batches;
+    this.free = new ArrayBlockingQueue<VectorizedRowBatch>(batches);
+    // one more slot for the end marker
+    this.filled = new ArrayBlockingQueue<VectorizedRowBatch>(batches + 1);
+    for (int i = 0; i < batches; ++i) {
+      free.add(schema.createRowBatch());
+    }
+  }
+
+  /**
+   * Moves all batches of source to sink, returns once the input is exhausted
+   * and all batches are written.
+   */
+  public void run(final BatchSource source, BatchSink sink) throws IOException {
+    Thread parser = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        parse(source);
+      }
+    }, "csv2parquet2orc-parse");
+    parser.setDaemon(true);
+    parser.start();
+    boolean done = false;
+    try {
+      while (true) {
+        int depth = filled.size();
+        long start = System.nanoTime();
+        VectorizedRowBatch batch = filled.take();
+        encodeWaitNanos += System.nanoTime() - start;
+        if (batch == endOfInput) {
+          break;
+        }
+        ++batches;
+        rows += batch.size;
+        queueDepthSum += depth;
+        maxQueueDepth = Math.max(maxQueueDepth, depth);
+        sink.write(batch);
+        free.put(batch);
+      }
+      done = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while writing batches", e);
+    } finally {
+      if (!done) {
+        parser.interrupt();
+      }
+      join(parser);
+    }
+    Throwable failure = parseFailure;
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+  }
+
+  private void parse(BatchSource source) {
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        VectorizedRowBatch batch = free.take();
+        parseWaitNanos += System.nanoTime() - start;
+        if (!source.nextBatch(batch)) {
+          break;
+        }
+        filled.put(batch);
+      }
+    } catch (InterruptedException e) {
+      // the encoder failed, it does not wait for the end marker
+      return;
+    } catch (Throwable t) {
+      parseFailure = t;
+    }
+    filled.add(endOfInput);
+  }
+
+  private static void join(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public long getBatches() {
+    return batches;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  /** @return the average number of filled batches waiting when the encoder took one */
+  public double getAverageQueueDepth() {
+    return batches == 0 ? 0 : queueDepthSum / (double) batches;
+  }
+
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /** @return milliseconds the parser waited for a free batch, i.e. for the encoder */
+  public long getParseWaitMillis() {
+    return parseWaitNanos / 1000000;
+  }
+
+  /** @return milliseconds the encoder waited for a filled batch, i.e. for the parser */
+  public long getEncodeWaitMillis() {
+    return encodeWaitNanos / 1000000;
+  }
+
+  public String getMetrics() {
+    return String.format(
+        "pipeline: %d batches, %d rows, queue depth avg %.2f max %d of %d, parser waited %d ms, encoder waited %d ms",
+        batches, rows, getAverageQueueDepth(), maxQueueDepth, capacity, getParseWaitMillis(), getEncodeWaitMillis());
+  }
+}
@@ -0,0 +1,137 @@
+package jfseb.csv2parquet.convert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * The columns selected with --columns: the projected output schema and, for
+ * every field of a projected record, the CSV column it is read from.
+ *
+ * Top level fields are selected by name and written in the order given. The
+ * CSV columns of a schema are its primitive leaves in schema order, so a
+ * selected struct field selects the consecutive columns of its leaves.
+ */
+public class ColumnProjection {
+  private final int[] columns;
+  private final int inputColumns;
+  private final MessageType messageType;
+  private final TypeDescription typeDescription;
+
+  private ColumnProjection(int[] columns, int inputColumns, MessageType messageType,
+      TypeDescription typeDescription) {
+    this.columns = columns;
+    this.inputColumns = inputColumns;
+    this.messageType = messageType;
+    this.typeDescription = typeDescription;
+  }
+
+  /**
+   * Splits the comma separated column list of --columns.
+   */
+  public static String[] parseColumns(String spec) {
+    List<String> names = new ArrayList<String>();
+    for (String name : spec.split(",")) {
+      name = name.trim();
+      if (name.isEmpty()) {
+        throw new IllegalArgumentException("Empty column name in --columns \"" + spec + "\"");
+      }
+      names.add(name);
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  public static ColumnProjection of(MessageType schema, String[] names) {
+    List<Type> fields = new ArrayList<Type>();
+    int[] columns = new int[names.length];
+    Set<String> seen = new HashSet<String>();
+    for (int i = 0; i < names.length; ++i) {
+      checkUnique(seen, names[i]);
+      if (!schema.containsField(names[i])) {
+        throw unknownColumn(names[i], schema.getFields().toString());
+      }
+      columns[i] = schema.getFieldIndex(names[i]);
+      fields.add(schema.getType(columns[i]));
+    }
+    return new ColumnProjection(columns, schema.getFieldCount(), new MessageType(schema.getName(), fields), null);
+  }
+
+  public static ColumnProjection of(TypeDescription schema, String[] names) {
+    List<String> fieldNames = schema.getFieldNames();
+    List<TypeDescription> children = schema.getChildren();
+    int[] firstColumn = new int[children.size()];
+    int inputColumns = 0;
+    for (int c = 0; c < children.size(); ++c) {
+      firstColumn[c] = inputColumns;
+      inputColumns += countColumns(children.get(c));
+    }
+    TypeDescription projected = TypeDescription.createStruct();
+    int[] columns = new int[0];
+    Set<String> seen = new HashSet<String>();
+    for (String name : names) {
+      checkUnique(seen, name);
+      int c = fieldNames.indexOf(name);
+      if (c < 0) {
+        throw unknownColumn(name, fieldNames.toString());
+      }
+      TypeDescription child = children.get(c);
+      projected.addField(name, child.clone());
+      int n = countColumns(child);
+      columns = Arrays.copyOf(columns, columns.length + n);
+      for (int k = 0; k < n; ++k) {
+        columns[columns.length - n + k] = firstColumn[c] + k;
+      }
+    }
+    return new ColumnProjection(columns, inputColumns, null, projected);
+  }
+
+  private static int countColumns(TypeDescription type) {
+    if (type.getCategory() != TypeDescription.Category.STRUCT) {
+      return 1;
+    }
+    int n = 0;
+    for (TypeDescription child : type.getChildren()) {
+      n += countColumns(child);
+    }
+    return n;
+  }
+
+  private static void checkUnique(Set<String> seen, String name) {
+    if (!seen.add(name)) {
+      throw new IllegalArgumentException("Column " + name + " is selected twice in --columns");
+    }
+  }
+
+  private static IllegalArgumentException unknownColumn(String name, String fields) {
+    return new IllegalArgumentException("Unknown column " + name + " in --columns, the schema has " + fields);
+  }
+
+  /**
+   * @return for every projected field the index of the CSV column it is read
+   *         from
+   */
+  public int[] getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return the number of CSV columns described by the full schema
+   */
+  public int getInputColumns() {
+    return inputColumns;
+  }
+
+  public MessageType getMessageType() {
+    return messageType;
+  }
+
+  public TypeDescription getTypeDescription() {
+    return typeDescription;
+  }
+}
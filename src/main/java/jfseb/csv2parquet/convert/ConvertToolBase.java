@@ -19,6 +19,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.orc.OrcFile;
 import org.apache.orc.Reader;
@@ -29,6 +30,9 @@ import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
 
 public class ConvertToolBase {
 
+  /** Input or output file name denoting stdin or stdout. */
+  public static final String STANDARD_STREAM = "-";
+
   protected final List<FileInformation> fileList;
   protected final String schemaString; // a schema string, if present, or null otherwise
   // protected final File schemaFile;
@@ -40,8 +44,22 @@ public class ConvertToolBase {
   public int csvHeaderLines;
   public String csvNullString;
   public boolean csvFormatBinary;
+  // names of the columns to convert, null for all
+  public String[] csvColumns;
+  // remember converted date and timestamp values, -D csv.memo
+  public boolean csvMemo = true;
+  // the zone of timestamps without offset, -D csv.timezone, null for the default zone
+  public String csvTimezone;
+  // names of the columns of --partition-by, null for a single output file
+  public String[] csvPartitionBy;
+  // roll the output over to the next part file at this size or row count, 0 for no limit
+  public long csvMaxFileSize;
+  public long csvMaxRowsPerFile;
+  // names of the columns of --sort-by, null to keep the input order
+  public String[] csvSortBy;
   };
   protected CSVOptions csvOptions = new CSVOptions();
+  protected int threads;
   protected final String outFileName;
   protected Configuration conf;
   protected CommandLine opts;
@@ -75,6 +93,32 @@ public class ConvertToolBase {
     private final Configuration conf;
     private final long size;
 
+    /**
+     * Describes stdin, its format and compression are given by formatName, e.g.
+     * csv or json.gz.
+     */
+    FileInformation(String formatName, Configuration conf) {
+      this.path = new Path(STANDARD_STREAM);
+      this.conf = conf;
+      this.filesystem = null;
+      this.size = 0;
+      String name = formatName.toLowerCase();
+      if (name.endsWith(".gz")) {
+        this.compression = Compression.GZIP;
+        name = name.substring(0, name.length() - 3);
+      } else {
+        this.compression = Compression.NONE;
+      }
+      if ("json".equals(name) || "jsn".equals(name)) {
+        format = Format.JSON;
+      } else if ("csv".equals(name)) {
+        format = Format.CSV;
+      } else {
+        throw new IllegalArgumentException("Input format " + formatName
+            + " can not be read from stdin, use one of csv, json, csv.gz, json.gz");
+      }
+    }
+
     FileInformation(Path path, Configuration conf) throws IOException {
       this.path = path;
       this.conf = conf;
@@ -107,33 +151,100 @@ public class ConvertToolBase {
       }
     }
 
-    java.io.Reader getReader(InputStream input) throws IOException {
+    /**
+     * @return true if the input is read from stdin
+     */
+    public boolean isStandardInput() {
+      return filesystem == null;
+    }
+
+    InputStream getInputStream(InputStream input) throws IOException {
       if (compression == Compression.GZIP) {
-        input = new GZIPInputStream(input);
+        if (conf.getInt("csv.gzip.threads", 1) > 1 && getFilesystem() instanceof LocalFileSystem) {
+          // input stays open for the progress of the reader
+          return ConvertUtils.openGzip(((LocalFileSystem) getFilesystem()).pathToFile(getPath()), conf);
+        }
+        input = ConvertUtils.readAhead(new GZIPInputStream(input, ConvertUtils.GZIP_BUFFER_SIZE), conf);
       }
-      return new InputStreamReader(input, StandardCharsets.UTF_8);
+      return input;
+    }
+
+    java.io.Reader getReader(InputStream input) throws IOException {
+      return new InputStreamReader(getInputStream(input), StandardCharsets.UTF_8);
     }
 
     public RecordReader getRecordReader(TypeDescription schema) throws IOException {
+      return getRecordReader(schema, null);
+    }
+
+    /**
+     * Reads the columns of projection, schema is the schema of the input file.
+     */
+    public RecordReader getRecordReader(TypeDescription schema, ColumnProjection projection) throws IOException {
+      if (projection != null && format != Format.CSV) {
+        if (format != Format.JSON) {
+          throw new IllegalArgumentException("--columns is only supported for CSV and JSON input, not " + getPath());
+        }
+        // json fields are read by name
+        schema = projection.getTypeDescription();
+        projection = null;
+      }
       switch (format) {
       case ORC: {
         Reader reader = OrcFile.createReader(getPath(), OrcFile.readerOptions(conf));
         return reader.rows(reader.options().schema(schema));
       }
       case JSON: {
+        if (isStandardInput()) {
+          return new jfseb.prevorc15.org.apache.orc.tools.convert.JsonReader(getReader(System.in), null, size,
+              schema);
+        }
         FSDataInputStream underlying = getFilesystem().open(getPath());
         return new jfseb.prevorc15.org.apache.orc.tools.convert.JsonReader(getReader(underlying), underlying, size,
             schema);
       }
       case CSV: {
+        if (isStandardInput() || isMapped()) {
+          return createCsvReader(getTokenizer(), null, schema, projection);
+        }
         FSDataInputStream underlying = getFilesystem().open(getPath());
-        return new CsvReader(getReader(underlying), underlying, size, schema, csvOptions);
+        return createCsvReader(new CsvTokenizer(getInputStream(underlying), csvOptions), underlying, schema,
+            projection);
       }
       default:
         throw new IllegalArgumentException("Unhandled format " + format + " for " + getPath());
       }
     }
 
+    private boolean isMapped() {
+      return conf.getBoolean("csv.mmap", false) && compression == Compression.NONE
+          && getFilesystem() instanceof LocalFileSystem;
+    }
+
+    /**
+     * @return the tokenizer of the CSV input, memory mapped with -D csv.mmap
+     */
+    public CsvTokenizer getTokenizer() throws IOException {
+      if (isStandardInput()) {
+        return new CsvTokenizer(getInputStream(System.in), csvOptions);
+      }
+      if (isMapped()) {
+        File file = ((LocalFileSystem) getFilesystem()).pathToFile(getPath());
+        return CsvTokenizer.mapped(file, csvOptions, conf.getInt("csv.mmap.window", CsvTokenizer.DEFAULT_WINDOW_SIZE));
+      }
+      return new CsvTokenizer(getInputStream(getFilesystem().open(getPath())), csvOptions);
+    }
+
+    private CsvReader createCsvReader(CsvTokenizer tokenizer, FSDataInputStream underlying, TypeDescription schema,
+        ColumnProjection projection) throws IOException {
+      if (projection == null) {
+        return new CsvReader(tokenizer, underlying, size, schema, csvOptions);
+      }
+      tokenizer.setProjection(projection.getColumns());
+      return new CsvReader(tokenizer, underlying, size, projection.getTypeDescription(), csvOptions,
+          projection.getInputColumns());
+    }
+
     public FileSystem getFilesystem() {
       return filesystem;
     }
@@ -154,7 +265,14 @@ public class ConvertToolBase {
   protected List<FileInformation> buildFileList(String[] files, Configuration conf) throws IOException {
     List<FileInformation> result = new ArrayList<FileInformation>(files.length);
     for (String fn : files) {
-      result.add(new FileInformation(new Path(fn), conf));
+      if (STANDARD_STREAM.equals(fn)) {
+        if (!opts.hasOption('i')) {
+          throw new IllegalArgumentException("Reading from stdin (-) requires --input-format, e.g. -i csv");
+        }
+        result.add(new FileInformation(opts.getOptionValue('i'), conf));
+      } else {
+        result.add(new FileInformation(new Path(fn), conf));
+      }
     }
     return result;
   }
@@ -190,8 +308,14 @@ public class ConvertToolBase {
                 + String.valueOf(org.apache.parquet.hadoop.ParquetWriter.DEFAULT_PAGE_SIZE) + "]\n" + "" 
                 + "\n use -q -n -e -S -H to control quote/null/escape/separator/header respectively"
                 + "\n use --csvformat binary to load binary values (or -D csvformat=binary \n"
+                + " -D csv.mmap=true to read uncompressed csv input through memory mapped windows"
+                + " of -D csv.mmap.window=<int> bytes\n"
+                + " .gz input is inflated on a read ahead thread (-D csv.gzip.readahead=false to disable),"
+                + " -D csv.gzip.threads=<int> inflates the members of multi member files in parallel\n"
                 + "orc options are:\n -D orc.compress=[ZIP,SNAPPY,NONE]\n"
-                + "  -D orc.stripe.size,  orc.compress.size, orc.row.index.stride, orc.create.index \n")
+                + "  -D orc.stripe.size,  orc.compress.size, orc.row.index.stride, orc.create.index \n"
+                + "  -D orc.pipeline=true parses on a separate thread, -D orc.pipeline.batches=<int> Default:["
+                + String.valueOf(BatchPipeline.DEFAULT_BATCHES) + "]\n")
         .hasArg().build());
 
     options.addOption(Option.builder("q").longOpt("quote").desc("CSV quote character").hasArg().build());
@@ -200,6 +324,27 @@ public class ConvertToolBase {
     options.addOption(Option.builder("S").longOpt("separator").desc("CSV separator character").hasArg().build());
     options.addOption(Option.builder("H").longOpt("header").desc("CSV header lines").hasArg().build());
     options.addOption(Option.builder("f").longOpt("csvformat").desc("CSV format [default|binary]").hasArg().build());
+    options.addOption(Option.builder("t").longOpt("threads")
+        .desc("Number of threads converting an uncompressed CSV file, default 1").hasArg().build());
+    options.addOption(Option.builder("i").longOpt("input-format")
+        .desc("Format of the input read from stdin given as -, one of csv, json, csv.gz, json.gz").hasArg().build());
+    options.addOption(Option.builder("c").longOpt("columns")
+        .desc("Comma separated names of the schema columns to convert, default all").hasArg().build());
+    options.addOption(Option.builder("p").longOpt("partition-by")
+        .desc("Comma separated names of the columns to write into col=value/ directories under the output,"
+            + " at most -D partition.writers=<int> part files are open at once, default "
+            + Partitioning.DEFAULT_OPEN_WRITERS)
+        .hasArg().build());
+    options.addOption(Option.builder().longOpt("max-file-size")
+        .desc("Write the output as part files of a directory of about this size, e.g. 512m,"
+            + " closed at row group or stripe boundaries")
+        .hasArg().build());
+    options.addOption(Option.builder().longOpt("max-rows-per-file")
+        .desc("Write the output as part files of a directory of at most this many rows").hasArg().build());
+    options.addOption(Option.builder().longOpt("sort-by")
+        .desc("Comma separated names of the columns to sort the CSV records by, spilling sorted runs of"
+            + " -D sort.memory=<bytes> (default 256m) to -D sort.tmpdir=<dir>")
+        .hasArg().build());
 
     /*
      * options.addOption(Option.builder("n").longOpt("null").
@@ -234,6 +379,30 @@ public class ConvertToolBase {
     this.csvOptions.csvHeaderLines = getIntOption(opts, 'H', 0);
     this.csvOptions.csvFormatBinary = getStringOption(opts,'f', "default").toLowerCase().equals("binary");
     this.csvOptions.csvNullString = opts.getOptionValue('n', "");
+    this.csvOptions.csvMemo = conf.getBoolean("csv.memo", true);
+    this.csvOptions.csvTimezone = conf.get("csv.timezone");
+    this.threads = getIntOption(opts, 't', 1);
+    if (opts.hasOption('c')) {
+      this.csvOptions.csvColumns = ColumnProjection.parseColumns(opts.getOptionValue('c'));
+    }
+    if (opts.hasOption('p')) {
+      this.csvOptions.csvPartitionBy = Partitioning.parse(opts.getOptionValue('p')).getColumns();
+    }
+    this.csvOptions.csvMaxFileSize = RollingWriter.parseLimit(opts.getOptionValue("max-file-size"), "max-file-size");
+    this.csvOptions.csvMaxRowsPerFile = RollingWriter.parseLimit(opts.getOptionValue("max-rows-per-file"),
+        "max-rows-per-file");
+    if (this.csvOptions.csvPartitionBy != null && isRolling(this.csvOptions)) {
+      throw new IllegalArgumentException("--max-file-size and --max-rows-per-file are not supported with"
+          + " --partition-by");
+    }
+    if (opts.hasOption("sort-by")) {
+      this.csvOptions.csvSortBy = ColumnProjection.parseColumns(opts.getOptionValue("sort-by"));
+      for (FileInformation file : fileList) {
+        if (file.format != Format.CSV) {
+          throw new IllegalArgumentException("--sort-by is only supported for CSV input, not " + file.getPath());
+        }
+      }
+    }
     String filename = getDefaultOutFileName(target);
     this.outFileName = opts.hasOption('o') ? opts.getOptionValue('o') : filename;
     // writer = OrcFile.createWriter(new Path(outFilename),
@@ -241,6 +410,13 @@ public class ConvertToolBase {
     // batch = schema.createRowBatch();
   }
 
+  /**
+   * @return true if the output is rolled over into part files
+   */
+  static boolean isRolling(CSVOptions csvOptions) {
+    return csvOptions.csvMaxFileSize > 0 || csvOptions.csvMaxRowsPerFile > 0;
+  }
+
   protected static String stripExtensionDoubleForGZ(String filename) {
     if("gz".equals(FilenameUtils.getExtension(filename))) {
       filename = FilenameUtils.getPath(filename) + "/" +  FilenameUtils.getBaseName(filename); 
@@ -249,6 +425,9 @@ public class ConvertToolBase {
   }
   
   public static String getDefaultSchemaByFile(FileInformation fileInformation, Format format) throws IOException {
+    if (fileInformation.isStandardInput()) {
+      return null;
+    }
     return getDefaultSchemaByFile(new File(fileInformation.getPath().toString()), format);
   }
     
@@ -18,6 +18,7 @@
 package jfseb.csv2parquet.convert;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.cli.ParseException;
@@ -30,13 +31,22 @@ import org.apache.orc.RecordReader;
 import org.apache.orc.TypeDescription;
 import org.apache.orc.Writer;
 
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
 /**
  * A conversion tool to convert CSV or JSON files into ORC files.
  */
 public class ConvertToolOrc extends ConvertToolBase {
 
+  // schema of the input, schema of the output is projected by --columns
+  private final TypeDescription inputSchema;
+  private final ColumnProjection projection;
   private final TypeDescription schema;
   private final Writer writer;
+  // with --partition-by instead of the writer
+  private final PartitionedBatchWriter partitioned;
+  // with --max-file-size or --max-rows-per-file instead of the writer
+  private final RollingWriter<Writer> rolling;
   private final VectorizedRowBatch batch;
 
   TypeDescription buildSchema(List<FileInformation> files, Configuration conf) throws IOException {
@@ -44,6 +54,9 @@ public class ConvertToolOrc extends ConvertToolBase {
     int filesScanned = 0;
     for (FileInformation file : files) {
       if (file.format == Format.JSON) {
+        if (file.isStandardInput()) {
+          throw new IllegalArgumentException("Please specify a schema using --schema for converting JSON from stdin.");
+        }
         System.err.println("Scanning " + file.getPath() + " for schema");
         filesScanned += 1;
         schemaFinder.addFile(file.getReader(file.getFilesystem().open(file.getPath())));
@@ -95,10 +108,23 @@ public class ConvertToolOrc extends ConvertToolBase {
       String schemaStr = this.schemaString.replaceAll("\\n", "");
       schemaStr = schemaStr.replaceAll("\\r", "");
       schemaStr = schemaStr.replaceAll("\\s","");
-      this.schema = TypeDescription.fromString(schemaStr);
+      this.inputSchema = TypeDescription.fromString(schemaStr);
+    } else {
+      this.inputSchema = buildSchema(this.fileList, conf);
+    }
+    Partitioning partitioning = null;
+    if (csvOptions.csvPartitionBy != null) {
+      // the partition columns are read behind the data columns
+      partitioning = new Partitioning(csvOptions.csvPartitionBy);
+      String[] dataColumns = partitioning.getDataColumns(inputSchema.getFieldNames(), csvOptions.csvColumns);
+      this.projection = (csvOptions.csvColumns != null)
+          ? ColumnProjection.of(inputSchema, partitioning.getReadColumns(dataColumns)) : null;
+    } else if (csvOptions.csvColumns != null) {
+      this.projection = ColumnProjection.of(inputSchema, csvOptions.csvColumns);
     } else {
-      this.schema = buildSchema(this.fileList, conf);
+      this.projection = null;
     }
+    this.schema = (projection != null) ? projection.getTypeDescription() : inputSchema;
 
     /*
      * this.csvQuote = getCharOption(opts, 'q', '"'); this.csvEscape =
@@ -107,20 +133,178 @@ public class ConvertToolOrc extends ConvertToolBase {
      * opts.getOptionValue('n', "");
      */
     String outFilename = opts.hasOption('o') ? opts.getOptionValue('o') : "output.orc";
-    writer = OrcFile.createWriter(new Path(outFilename), OrcFile.writerOptions(conf).setSchema(schema));
+    writer = (partitioning == null && !isRolling(csvOptions)) ? OrcFile.createWriter(new Path(outFilename),
+        OrcFile.writerOptions(conf).setSchema(schema)) : null;
+    partitioned = (partitioning != null) ? partitionedWriter(new Path(outFilename), partitioning, conf) : null;
+    rolling = isRolling(csvOptions) ? rollingWriter(new Path(outFilename), conf) : null;
     batch = schema.createRowBatch();
   }
 
+  private PartitionedBatchWriter partitionedWriter(Path output, Partitioning partitioning, final Configuration conf) {
+    final TypeDescription dataSchema = partitioning.getDataSchema(schema);
+    return new PartitionedBatchWriter(schema, partitioning, output, ".orc", Partitioning.getMaxOpenWriters(conf),
+        new PartitionedBatchWriter.PartWriterFactory() {
+          @Override
+          public PartitionedBatchWriter.PartWriter create(Path file) throws IOException {
+            final Writer part = OrcFile.createWriter(file, OrcFile.writerOptions(conf).setSchema(dataSchema));
+            return new PartitionedBatchWriter.PartWriter() {
+              @Override
+              public void write(VectorizedRowBatch batch) throws IOException {
+                part.addRowBatch(batch);
+              }
+
+              @Override
+              public void close() throws IOException {
+                part.close();
+              }
+            };
+          }
+        });
+  }
+
+  private RollingWriter<Writer> rollingWriter(Path output, final Configuration conf) {
+    return new RollingWriter<Writer>(output, ".orc", csvOptions.csvMaxFileSize, csvOptions.csvMaxRowsPerFile, conf) {
+      @Override
+      protected Writer open(Path file) throws IOException {
+        return OrcFile.createWriter(file, OrcFile.writerOptions(conf).setSchema(schema));
+      }
+
+      @Override
+      protected long getSize(Writer writer, Path file) throws IOException {
+        // the stripes written, the part is closed after the stripe reaching the size
+        return file.getFileSystem(conf).getFileStatus(file).getLen();
+      }
+    };
+  }
+
+  private void write(VectorizedRowBatch batch) throws IOException {
+    if (partitioned != null) {
+      partitioned.write(batch);
+    } else if (rolling != null) {
+      rolling.get().addRowBatch(batch);
+      rolling.added(batch.size);
+    } else {
+      writer.addRowBatch(batch);
+    }
+  }
+
+  private void closeWriter() throws IOException {
+    if (partitioned != null) {
+      partitioned.close();
+      System.err.println(partitioned.getMetrics());
+    } else if (rolling != null) {
+      rolling.close();
+    } else {
+      writer.close();
+    }
+  }
+
   void run() throws IOException {
+    if (csvOptions.csvSortBy != null) {
+      runSorted();
+      return;
+    }
+    if (conf.getBoolean("orc.pipeline", false) && canPipeline()) {
+      runPipelined(conf.getInt("orc.pipeline.batches", BatchPipeline.DEFAULT_BATCHES));
+      return;
+    }
     for (FileInformation file : fileList) {
       System.err.println("Processing " + file.getPath());
-      RecordReader reader = file.getRecordReader(this.schema);
+      RecordReader reader = file.getRecordReader(inputSchema, projection);
+      while (reader.nextBatch(batch)) {
+        write(batch);
+      }
+      reader.close();
+    }
+    closeWriter();
+  }
+
+  /**
+   * Converts the CSV records of all files in the order of --sort-by, see
+   * {@link ExternalSorter}.
+   */
+  void runSorted() throws IOException {
+    ExternalSorter sorter = ExternalSorter.of(schema, csvOptions.csvSortBy, csvOptions, conf);
+    try {
+      for (FileInformation file : fileList) {
+        System.err.println("Processing " + file.getPath());
+        CsvTokenizer tokenizer = file.getTokenizer();
+        try {
+          if (projection != null) {
+            tokenizer.setProjection(projection.getColumns());
+          }
+          tokenizer.skipRecords(csvOptions.csvHeaderLines);
+          while (tokenizer.next()) {
+            sorter.add(tokenizer);
+          }
+        } finally {
+          tokenizer.close();
+        }
+      }
+      sorter.sort();
+      RecordReader reader = new CsvReader(sorter, sorter.getBytes(), schema, csvOptions,
+          (projection != null) ? projection.getInputColumns() : -1);
       while (reader.nextBatch(batch)) {
-        writer.addRowBatch(batch);
+        write(batch);
       }
       reader.close();
+    } finally {
+      System.err.println(sorter.getMetrics());
+      sorter.close();
+    }
+    closeWriter();
+  }
+
+  private boolean canPipeline() {
+    for (FileInformation file : fileList) {
+      if (file.format == Format.ORC) {
+        // the ORC reader may reference its internal buffers from the batch, these are reused
+        System.err.println("ORC input " + file.getPath() + " is not pipelined");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the input on a separate thread, passing recycled batches to the
+   * writer through a bounded queue.
+   */
+  void runPipelined(int batches) throws IOException {
+    final Iterator<FileInformation> files = fileList.iterator();
+    BatchPipeline pipeline = new BatchPipeline(schema, batches);
+    try {
+      pipeline.run(new BatchPipeline.BatchSource() {
+        private RecordReader reader;
+
+        @Override
+        public boolean nextBatch(VectorizedRowBatch batch) throws IOException {
+          while (true) {
+            if (reader == null) {
+              if (!files.hasNext()) {
+                return false;
+              }
+              FileInformation file = files.next();
+              System.err.println("Processing " + file.getPath());
+              reader = file.getRecordReader(inputSchema, projection);
+            }
+            if (reader.nextBatch(batch)) {
+              return true;
+            }
+            reader.close();
+            reader = null;
+          }
+        }
+      }, new BatchPipeline.BatchSink() {
+        @Override
+        public void write(VectorizedRowBatch batch) throws IOException {
+          ConvertToolOrc.this.write(batch);
+        }
+      });
+    } finally {
+      System.err.println(pipeline.getMetrics());
     }
-    writer.close();
+    closeWriter();
   }
 
   /*
@@ -17,34 +17,20 @@
  */
 package jfseb.csv2parquet.convert;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.regex.Pattern;
 
 import org.apache.commons.cli.ParseException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
-import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
-import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
-import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
-import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.orc.RecordReader;
-import org.apache.orc.TypeDescription.Category;
+import org.apache.orc.TypeDescription;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
-import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
 
-import jfseb.csv2parquet.Utils;
-import jfseb.csv2parquet.parquet.CsvParquetWriter;
-import jfseb.csv2parquet.parquet.CsvTypedParquetWriter;
+import jfseb.csv2parquet.parquet.VectorizedParquetWriter;
 import jfseb.csv2parquet.utils.SchemaCreator;
+import jfseb.csv2parquet.utils.TimestampType;
 import jfseb.csv2parquet.utils.USchema;
 
 /**
@@ -83,14 +69,33 @@ public class ConvertToolParquet extends ConvertToolBase {
   // batch = schema.createRowBatch();
 
   void run() throws IOException {
+    for (FileInformation file : fileList) {
+      if (file.format != Format.CSV) {
+        // mixed input is read file by file with the reader of its format
+        run2();
+        return;
+      }
+    }
     for (FileInformation file : fileList) {
       System.err.println("Processing " + file.getPath());
+      if (file.isStandardInput()) {
+        if (this.schemaString == null) {
+          throw new IllegalArgumentException("Please specify a schema using --schema for converting CSV from stdin.");
+        }
+        ConvertUtils.convertCsvToParquet(file.getInputStream(System.in), new java.io.File(this.outFileName),
+            this.schemaString, conf.getBoolean("parquet.enabledictionary", false), this.csvOptions, this.conf);
+        continue;
+      }
       java.io.File csvFile = new java.io.File(file.getPath().toString());
       ConvertUtils.convertCsvToParquet(csvFile, new java.io.File(this.outFileName), this.schemaString,
-          conf.getBoolean("parquet.enabledictionary", false), this.csvOptions, this.conf);// ,
+          conf.getBoolean("parquet.enabledictionary", false), this.csvOptions, this.conf, this.threads);
     }
   }
 
+  /**
+   * Converts the files through their ORC style RecordReader, writing each
+   * VectorizedRowBatch column by column into one Parquet file.
+   */
   void run2() throws IOException {
 
     boolean enableDictionary = false;
@@ -114,116 +119,125 @@ public class ConvertToolParquet extends ConvertToolBase {
       page_size = conf.getInt("parquet.PAGE_SIZE", org.apache.parquet.hadoop.ParquetWriter.DEFAULT_PAGE_SIZE);
       enableDictionary = conf.getBoolean("parquet.enabledictionary", enableDictionary);
     }
+    if (this.schemaString == null) {
+      throw new IllegalArgumentException("Please specify a schema using --schema for converting to Parquet.");
+    }
+    this.uschema = SchemaCreator.makeSchema(null, this.schemaString, TimestampType.of(conf));
+    Partitioning partitioning = null;
+    String[] readColumns = csvOptions.csvColumns;
+    if (csvOptions.csvPartitionBy != null) {
+      // the partition columns are read behind the data columns
+      partitioning = new Partitioning(csvOptions.csvPartitionBy);
+      if (readColumns != null) {
+        readColumns = partitioning.getReadColumns(partitioning.getDataColumns(
+            this.uschema.typeDescription.getFieldNames(), readColumns));
+      }
+    }
+    ColumnProjection projection = null;
+    TypeDescription orcSchema = this.uschema.typeDescription;
+    MessageType schema = this.uschema.messageType;
+    if (readColumns != null) {
+      projection = ColumnProjection.of(orcSchema, readColumns);
+      orcSchema = projection.getTypeDescription();
+      schema = ColumnProjection.of(schema, readColumns).getMessageType();
+    }
 
-    VectorizedRowBatch batch;
-    this.uschema = SchemaCreator.makeSchema(new java.io.File(fileList.get(0).getPath().toString()), this.schemaString);
-
-    CsvTypedParquetWriter writer = new CsvTypedParquetWriter(path, this.uschema.messageType, codecName, block_size,
-        page_size, enableDictionary);
+    PartitionedBatchWriter.PartWriter writer;
+    if (partitioning != null) {
+      final TypeDescription dataSchema = partitioning.getDataSchema(orcSchema);
+      final MessageType dataMessageType = partitioning.getDataSchema(schema);
+      final CompressionCodecName partCodecName = codecName;
+      final int partBlockSize = block_size;
+      final int partPageSize = page_size;
+      final boolean partEnableDictionary = enableDictionary;
+      final PartitionedBatchWriter partitioned = new PartitionedBatchWriter(orcSchema, partitioning, path,
+          ".parquet", Partitioning.getMaxOpenWriters(conf),
+          new PartitionedBatchWriter.PartWriterFactory() {
+            @Override
+            public PartitionedBatchWriter.PartWriter create(Path file) throws IOException {
+              return openWriter(file, dataSchema, dataMessageType, partCodecName, partBlockSize, partPageSize,
+                  partEnableDictionary);
+            }
+          });
+      writer = new PartitionedBatchWriter.PartWriter() {
+        @Override
+        public void write(VectorizedRowBatch batch) throws IOException {
+          partitioned.write(batch);
+        }
 
+        @Override
+        public void close() throws IOException {
+          partitioned.close();
+          System.err.println(partitioned.getMetrics());
+        }
+      };
+    } else if (isRolling(csvOptions)) {
+      writer = rollingWriter(path, orcSchema, schema, codecName, block_size, page_size, enableDictionary);
+    } else {
+      writer = openWriter(path, orcSchema, schema, codecName, block_size, page_size, enableDictionary);
+    }
     try {
+      VectorizedRowBatch batch = orcSchema.createRowBatch();
       for (FileInformation file : fileList) {
         System.err.println("Processing " + file.getPath());
-        java.io.File csvFile = new java.io.File(file.getPath().toString());
-        this.uschema = SchemaCreator.makeSchema(csvFile, this.schemaString);
-
-        batch = this.uschema.typeDescription.createRowBatch();
-        System.err.println("Processing " + file.getPath());
-        RecordReader reader = file.getRecordReader(this.uschema.typeDescription);
-        while (reader.nextBatch(batch)) {
-          for (int n = 0; n < batch.count(); ++n) {
-            ArrayList<Object> rec = new ArrayList<Object>(batch.cols.length);
-            for (int i = 0; i < this.uschema.typeDescription.getChildren().size(); ++i) {
-              ColumnVector cv = batch.cols[i];
-              if (cv.isNull[n]) {
-                rec.add(null);
-              }
-              Category colcategory = this.uschema.typeDescription.getChildren().get(i).getCategory();
-              switch (colcategory) {
-
-              case BOOLEAN: {
-                // return new BooleanConverter(startOffset); // long column!
-                LongColumnVector bcs = (LongColumnVector) cv;
-                rec.add(Boolean.valueOf(0 != bcs.vector[n]));
-              }
-                break;
-              case BYTE:
-              case SHORT:
-                LongColumnVector bcsS = (LongColumnVector) cv;
-                rec.add(Long.valueOf(bcsS.vector[n]));
-              case INT: {
-                LongColumnVector bcsI = (LongColumnVector) cv;
-                rec.add(Integer.valueOf((int) bcsI.vector[n]));
-              }
-                break;
-              case LONG: {
-                LongColumnVector bcs = (LongColumnVector) cv;
-                rec.add(Long.valueOf(bcs.vector[n]));
-                // return new LongConverter(startOffset);
-              }
-                break;
-              case FLOAT: {
-                DoubleColumnVector bcs = (DoubleColumnVector) cv;
-                rec.add(Float.valueOf((float) bcs.vector[n]));
-              }
-                break;
-              case DOUBLE: {
-                DoubleColumnVector bcs = (DoubleColumnVector) cv;
-                rec.add(Double.valueOf(bcs.vector[n]));
-              }
-                break;
-              // return new DoubleConverter(startOffset);
-              case DECIMAL: {
-                BytesColumnVector bcs = (BytesColumnVector) cv;
-                rec.add(Binary.fromConstantByteArray(bcs.vector[n])); // is this constant?
-                /*
-                 * return new DecimalConverter(startOffset);
-                 */
-              }
-                break;
-              case BINARY:
-              case STRING:
-              case CHAR:
-              case VARCHAR: {
-                BytesColumnVector bcs = (BytesColumnVector) cv;
-                rec.add(Binary.fromConstantByteArray(bcs.vector[n])); // is this constant?
-                /*
-                 * return new BytesConverter(startOffset);
-                 */
-              }
-                break;
-              case TIMESTAMP: {
-                TimestampColumnVector dcs = (TimestampColumnVector) cv;
-                rec.add(Timestamp.from(Instant.ofEpochMilli(dcs.getTimestampAsLong(n)))); // QueSTIONABLE
-                // return new TimestampConverter(startOffset);
-              }
-                break;
-              default:
-                throw new IllegalArgumentException(
-                    "unknown category in column " + Integer.toString(i) + " " + colcategory);
-              }
-            }
-            /*
-             * else if (cv instanceof DoubleColumnVector) { DoubleColumnVector dcs =
-             * (DoubleColumnVector) cv; rec.add(Double.valueOf(dcs.vector[n])); } else if
-             * (cv instanceof TimestampColumnVector) { TimestampColumnVector dcs =
-             * (TimestampColumnVector) cv;
-             * rec.add(Timestamp.from(Instant.ofEpochMilli(dcs.getTimestampAsLong(n)))); //
-             * QueSTIONABLE } else if (cv instanceof BytesColumnVector) { BytesColumnVector
-             * bcs = (BytesColumnVector) cv;
-             * rec.add(Binary.fromConstantByteArray(bcs.vector[n])); // is this constant? }
-             * else if (cv instanceof LongColumnVector) { LongColumnVector bcs =
-             * (LongColumnVector) cv; rec.add(Long.valueOf(bcs.vector[n])); }
-             */
-            writer.write(rec);
+        RecordReader reader = file.getRecordReader(this.uschema.typeDescription, projection);
+        try {
+          while (reader.nextBatch(batch)) {
+            writer.write(batch);
           }
+        } finally {
+          reader.close();
         }
-        reader.close();
       }
-    } finally
-
-    {
-      Utils.closeQuietly(writer);
+    } finally {
+      writer.close();
     }
   }
+
+  private PartitionedBatchWriter.PartWriter rollingWriter(Path directory, final TypeDescription orcSchema,
+      final MessageType schema, final CompressionCodecName codecName, final int blockSize, final int pageSize,
+      final boolean enableDictionary) {
+    final RollingWriter<VectorizedParquetWriter> rolling = new RollingWriter<VectorizedParquetWriter>(directory,
+        ".parquet", csvOptions.csvMaxFileSize, csvOptions.csvMaxRowsPerFile, conf) {
+      @Override
+      protected VectorizedParquetWriter open(Path file) throws IOException {
+        return new VectorizedParquetWriter(file, orcSchema, schema, codecName, blockSize, pageSize, enableDictionary,
+            conf);
+      }
+
+      @Override
+      protected long getSize(VectorizedParquetWriter writer, Path file) throws IOException {
+        return writer.getDataSize();
+      }
+    };
+    return new PartitionedBatchWriter.PartWriter() {
+      @Override
+      public void write(VectorizedRowBatch batch) throws IOException {
+        rolling.get().write(batch);
+        rolling.added(batch.size);
+      }
+
+      @Override
+      public void close() throws IOException {
+        rolling.close();
+      }
+    };
+  }
+
+  private PartitionedBatchWriter.PartWriter openWriter(Path file, TypeDescription orcSchema, MessageType schema,
+      CompressionCodecName codecName, int blockSize, int pageSize, boolean enableDictionary) throws IOException {
+    final VectorizedParquetWriter writer = new VectorizedParquetWriter(file, orcSchema, schema, codecName, blockSize,
+        pageSize, enableDictionary, conf);
+    return new PartitionedBatchWriter.PartWriter() {
+      @Override
+      public void write(VectorizedRowBatch batch) throws IOException {
+        writer.write(batch);
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    };
+  }
 }
@@ -9,10 +9,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.hadoop.conf.Configuration;
@@ -35,12 +36,14 @@ import org.apache.parquet.schema.MessageTypeParser;
 import org.apache.parquet.schema.OriginalType;
 import org.apache.parquet.schema.PrimitiveType;
 import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
 
 import jfseb.csv2parquet.Utils;
 import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
 import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
 import jfseb.csv2parquet.parquet.CsvParquetWriter;
 import jfseb.csv2parquet.utils.SchemaCreator;
+import jfseb.csv2parquet.utils.TimestampType;
 import jfseb.csv2parquet.utils.USchema;
 
 public class ConvertUtils {
@@ -48,9 +51,7 @@ public class ConvertUtils {
   private static final Log LOG = Log.getLog(ConvertUtils.class);
 
   public static final String DEFAULT_CSV_DELIMITER = "|";
-  // public String CSV_DELIMITER= "|";
-
-  private static String CSV_DELIMITER = DEFAULT_CSV_DELIMITER;
+  static final int GZIP_BUFFER_SIZE = 64 * 1024;
 
   public static String readFile(String path) throws IOException {
     BufferedReader reader = new BufferedReader(new FileReader(path));
@@ -89,19 +90,86 @@ public class ConvertUtils {
         null);
   }
 
-  static java.io.Reader getReader(InputStream input, File filename) throws IOException {
+  static InputStream getInputStream(InputStream input, File filename) throws IOException {
     if (filename.toString().endsWith((".gz"))) {
-      input = new GZIPInputStream(input);
+      input = readAhead(new GZIPInputStream(input, GZIP_BUFFER_SIZE), null);
+    }
+    return input;
+  }
+
+  /**
+   * Moves decompression onto a read ahead thread, unless
+   * -D csv.gzip.readahead=false.
+   */
+  static InputStream readAhead(InputStream inflated, Configuration conf) {
+    if (conf != null && !conf.getBoolean("csv.gzip.readahead", true)) {
+      return inflated;
+    }
+    return new ReadAheadInputStream(inflated);
+  }
+
+  /**
+   * Opens the local gzip file, with -D csv.gzip.threads=&lt;n&gt; the members of a
+   * multi member file are inflated in parallel.
+   */
+  static InputStream openGzip(File gzipFile, Configuration conf) throws IOException {
+    int gzipThreads = (conf != null) ? conf.getInt("csv.gzip.threads", 1) : 1;
+    if (gzipThreads > 1) {
+      return readAhead(new ParallelGzipInputStream(gzipFile, gzipThreads), conf);
+    }
+    return readAhead(new GZIPInputStream(new FileInputStream(gzipFile), GZIP_BUFFER_SIZE), conf);
+  }
+
+  /**
+   * Opens a tokenizer on the csv file, with mapInput an uncompressed file is
+   * read through memory mapped windows of windowSize bytes.
+   */
+  static CsvTokenizer getTokenizer(File csvFile, CSVOptions csvOptions, boolean mapInput, int windowSize,
+      Configuration conf) throws IOException {
+    if (csvFile.toString().endsWith(".gz")) {
+      return new CsvTokenizer(openGzip(csvFile, conf), csvOptions);
+    }
+    if (mapInput) {
+      return CsvTokenizer.mapped(csvFile, csvOptions, windowSize);
     }
-    return new InputStreamReader(input, StandardCharsets.UTF_8);
+    return new CsvTokenizer(new FileInputStream(csvFile), csvOptions);
+  }
+
+  static java.io.Reader getReader(InputStream input, File filename) throws IOException {
+    return new InputStreamReader(getInputStream(input, filename), StandardCharsets.UTF_8);
   }
 
   public static void convertCsvToParquet(File csvFile, File outputParquetFile, String schemaString,
       boolean enableDictionary, CSVOptions csvOptions, Configuration conf) throws IOException {
+    convertCsvToParquet(csvFile, outputParquetFile, schemaString, enableDictionary, csvOptions, conf, 1);
+  }
+
+  /**
+   * Converts csvFile, with threads &gt; 1 an uncompressed file is split into
+   * ranges converted in parallel, see {@link ParallelCsvToParquet}.
+   */
+  public static void convertCsvToParquet(File csvFile, File outputParquetFile, String schemaString,
+      final boolean enableDictionary, CSVOptions csvOptions, Configuration conf, int threads) throws IOException {
+    convertCsvToParquet(csvFile, null, outputParquetFile, schemaString, enableDictionary, csvOptions, conf, threads);
+  }
+
+  /**
+   * Converts the (decompressed) CSV stream csvInput, e.g. stdin.
+   */
+  public static void convertCsvToParquet(InputStream csvInput, File outputParquetFile, String schemaString,
+      boolean enableDictionary, CSVOptions csvOptions, Configuration conf) throws IOException {
+    convertCsvToParquet(null, csvInput, outputParquetFile, schemaString, enableDictionary, csvOptions, conf, 1);
+  }
+
+  /**
+   * Converts either csvFile or csvInput.
+   */
+  private static void convertCsvToParquet(File csvFile, InputStream csvInput, File outputParquetFile,
+      String schemaString, final boolean enableDictionary, CSVOptions csvOptions, Configuration conf, int threads)
+      throws IOException {
 
-    ConvertUtils.CSV_DELIMITER = csvOptions.csvSeparatorAsString;
     System.setProperty("line.separator", "\n");
-    LOG.info("Converting " + csvFile.getName() + " to " + outputParquetFile.getName());
+    LOG.info("Converting " + (csvFile != null ? csvFile.getName() : "stdin") + " to " + outputParquetFile.getName());
     if(schemaString.indexOf("\r\n") > 0 ) {
       schemaString = schemaString.replaceAll("\\r\\n", "\n");
     }
@@ -115,6 +183,8 @@ public class ConvertUtils {
     int block_size = org.apache.parquet.hadoop.ParquetWriter.DEFAULT_BLOCK_SIZE;
     int page_size = org.apache.parquet.hadoop.ParquetWriter.DEFAULT_PAGE_SIZE;
     boolean  readAsBinary = false;
+    boolean mapInput = false;
+    int mapWindowSize = CsvTokenizer.DEFAULT_WINDOW_SIZE;
     if (conf != null) {
       String inputbin = conf.get("csvformat","default");
       if( "binary".equals(inputbin) || "BINARY".equals(inputbin)) {
@@ -132,47 +202,275 @@ public class ConvertUtils {
       }
       block_size = conf.getInt("parquet.BLOCK_SIZE", org.apache.parquet.hadoop.ParquetWriter.DEFAULT_BLOCK_SIZE);
       page_size = conf.getInt("parquet.PAGE_SIZE", org.apache.parquet.hadoop.ParquetWriter.DEFAULT_PAGE_SIZE);
+      mapInput = conf.getBoolean("csv.mmap", false);
+      mapWindowSize = conf.getInt("csv.mmap.window", CsvTokenizer.DEFAULT_WINDOW_SIZE);
     }
     readAsBinary |= csvOptions.csvFormatBinary;
     
     System.err.println("parquet.BLOCK_SIZE=" + Integer.toString(block_size));
     System.err.println("parquet.PAGE_SIZE=" + Integer.toString(page_size));
-    System.err.println("parquet.enabledictionary=" + Boolean.toString(enableDictionary));
+    // a private copy, the dictionary sampling adds to parquet.encodings
+    final Configuration writerConf = (conf != null) ? new Configuration(conf) : new Configuration();
+    final boolean adaptiveDictionary = DictionarySampler.isAdaptive(writerConf, enableDictionary);
+    System.err.println("parquet.enabledictionary=" + (adaptiveDictionary ? "auto" : Boolean.toString(enableDictionary)));
     System.err.println("parquet.compress=" + codecName.toString() );
 
-    USchema schemas = SchemaCreator.makeSchema(csvFile,schemaString);
+    TimestampType timestamps = TimestampType.of(conf);
+    USchema schemas = SchemaCreator.makeSchema(csvFile, schemaString, timestamps);
     
-    MessageType schema = MessageTypeParser.parseMessageType(rawSchema);
-    CsvParquetWriter writer = new CsvParquetWriter(path, schema, codecName, block_size, page_size, enableDictionary, readAsBinary);
-
-    BufferedReader br = new BufferedReader(getReader(new FileInputStream(csvFile), csvFile));
-    String line;
-    int lineNumber = 0;
-    try {
-      while ((line = br.readLine()) != null) {
-        if( lineNumber >= csvOptions.csvHeaderLines) {
-          String[] fields = line.split(Pattern.quote(CSV_DELIMITER));
-  
-          int cols = schema.getColumns().size();
-          ArrayList<String> lst = new ArrayList<String>(Arrays.asList(fields)); // Arrays.asList(fields);
-          while (lst.size() < cols) {
-            lst.add("");
-          }
-          while (lst.size() > cols) {
-            lst.remove(lst.size() - 1);
-          }
-          writer.write(lst);
+    // INT96 columns are written as the configured timestamp type
+    MessageType inputSchema = timestamps.apply(MessageTypeParser.parseMessageType(rawSchema));
+    if (csvOptions.csvPartitionBy != null) {
+      if (threads > 1) {
+        LOG.info("Partitioned output is converted on one thread");
+      }
+      convertCsvToPartitionedParquet(csvFile, csvInput, outputParquetFile, inputSchema, codecName, block_size,
+          page_size, enableDictionary, readAsBinary, csvOptions, mapInput, mapWindowSize, writerConf);
+      return;
+    }
+    ColumnProjection projection = null;
+    if (csvOptions.csvColumns != null) {
+      projection = ColumnProjection.of(inputSchema, csvOptions.csvColumns);
+      LOG.info("Converting columns " + Arrays.toString(csvOptions.csvColumns));
+    }
+    final MessageType schema = (projection != null) ? projection.getMessageType() : inputSchema;
+    if (ConvertToolBase.isRolling(csvOptions)) {
+      if (threads > 1) {
+        LOG.info("Output rolled over into part files is converted on one thread");
+      }
+      convertCsvToRollingParquet(csvFile, csvInput, outputParquetFile, schema, projection, codecName, block_size,
+          page_size, enableDictionary, readAsBinary, csvOptions, mapInput, mapWindowSize, writerConf);
+      return;
+    }
+    if (threads > 1 && csvOptions.csvSortBy != null) {
+      LOG.info("Sorted output is converted on one thread");
+    } else if (threads > 1 && csvFile != null && !csvFile.toString().endsWith(".gz")) {
+      final CompressionCodecName partCodecName = codecName;
+      // the workers buffer a row group each, together they use about the memory of one
+      final int partBlockSize = Math.max(block_size / threads, page_size);
+      final int partPageSize = page_size;
+      final boolean partReadAsBinary = readAsBinary;
+      ParallelCsvToParquet.PartWriterFactory factory = new ParallelCsvToParquet.PartWriterFactory() {
+        @Override
+        public CsvParquetWriter create(Path part) throws IOException {
+          return new CsvParquetWriter(part, schema, partCodecName, partBlockSize, partPageSize, enableDictionary,
+              partReadAsBinary, writerConf);
         }
-        ++lineNumber;        
+      };
+      ParallelCsvToParquet converter = new ParallelCsvToParquet(csvFile, csvOptions, schema, factory, mapInput,
+          mapWindowSize, conf);
+      if (projection != null) {
+        converter.setProjection(projection.getColumns());
+      }
+      if (adaptiveDictionary) {
+        // the parts share the columns chosen from the head of the file
+        CsvTokenizer head = getTokenizer(csvFile, csvOptions, mapInput, mapWindowSize, conf);
+        if (projection != null) {
+          head.setProjection(projection.getColumns());
+        }
+        try {
+          head.skipRecords(csvOptions.csvHeaderLines);
+          Utils.closeQuietly(sampleDictionaries(head, schema, csvOptions, page_size, writerConf));
+        } finally {
+          Utils.closeQuietly(head);
+        }
+      }
+      converter.convert(path, threads);
+      return;
+    }
+    CsvTokenizer tokenizer = (csvFile != null) ? getTokenizer(csvFile, csvOptions, mapInput, mapWindowSize, conf)
+        : new CsvTokenizer(csvInput, csvOptions);
+    if (projection != null) {
+      tokenizer.setProjection(projection.getColumns());
+    }
+    CsvRecordSource records = tokenizer;
+    CsvParquetWriter writer = null;
+    try {
+      tokenizer.skipRecords(csvOptions.csvHeaderLines);
+      if (adaptiveDictionary) {
+        records = sampleDictionaries(tokenizer, schema, csvOptions, page_size, writerConf);
+      }
+      records = sortBy(records, schema, csvOptions, writerConf);
+      writer = new CsvParquetWriter(path, schema, codecName, block_size, page_size, enableDictionary, readAsBinary,
+          writerConf);
+      while (records.next()) {
+        // fields are passed as slices of the read buffer, missing trailing fields are NULL
+        writer.write(records.getRecord());
       }
 
       writer.close();
     } catch (java.lang.NumberFormatException e) {
-      LOG.error("error" + e.toString() + " " + lineNumber);
-      throw new IllegalArgumentException(">>line number : " + lineNumber, e);
+      LOG.error("error" + e.toString() + " " + records.getRecordNumber());
+      throw new IllegalArgumentException(">>line number : " + records.getRecordNumber(), e);
     } finally {
-      LOG.info("Number of lines: " + lineNumber);
-      Utils.closeQuietly(br);
+      if (writer != null) {
+        // releases the compression pool of a failed conversion
+        writer.abort();
+      }
+      LOG.info("Number of lines: " + tokenizer.getRecordNumber());
+      Utils.closeQuietly(tokenizer);
+      Utils.closeQuietly(records);
+    }
+  }
+
+  /**
+   * Chooses the dictionary encoded columns of writerConf from the first
+   * records, see {@link DictionarySampler}.
+   *
+   * @return the records, starting over with the sampled ones
+   */
+  private static CsvRecordSource sampleDictionaries(CsvRecordSource records, MessageType schema,
+      CSVOptions csvOptions, int pageSize, Configuration writerConf) throws IOException {
+    DictionarySampler sampler = new DictionarySampler(records, schema, csvOptions, writerConf);
+    try {
+      sampler.sample(writerConf, pageSize);
+    } catch (IOException e) {
+      Utils.closeQuietly(sampler);
+      throw e;
+    }
+    return sampler;
+  }
+
+  /**
+   * @return the records in the order of --sort-by, the records themselves
+   *         without it
+   */
+  private static CsvRecordSource sortBy(CsvRecordSource records, MessageType schema, CSVOptions csvOptions,
+      Configuration conf) throws IOException {
+    if (csvOptions.csvSortBy == null) {
+      return records;
+    }
+    ExternalSorter sorter = ExternalSorter.of(schema, csvOptions.csvSortBy, csvOptions, conf);
+    try {
+      while (records.next()) {
+        sorter.add(records);
+      }
+      sorter.sort();
+    } catch (IOException e) {
+      Utils.closeQuietly(sorter);
+      throw e;
+    } catch (RuntimeException e) {
+      Utils.closeQuietly(sorter);
+      throw e;
+    }
+    System.err.println(sorter.getMetrics());
+    return sorter;
+  }
+
+  /**
+   * Writes the records into part-NNNNN.parquet files of outputDirectory, see
+   * {@link RollingWriter}.
+   */
+  private static void convertCsvToRollingParquet(File csvFile, InputStream csvInput, File outputDirectory,
+      final MessageType schema, ColumnProjection projection, final CompressionCodecName codecName,
+      final int blockSize, final int pageSize, final boolean enableDictionary, final boolean readAsBinary,
+      CSVOptions csvOptions, boolean mapInput, int mapWindowSize, final Configuration conf) throws IOException {
+    RollingWriter<CsvParquetWriter> writers = new RollingWriter<CsvParquetWriter>(new Path(outputDirectory.toURI()),
+        ".parquet", csvOptions.csvMaxFileSize, csvOptions.csvMaxRowsPerFile, conf) {
+      @Override
+      protected CsvParquetWriter open(Path file) throws IOException {
+        return new CsvParquetWriter(file, schema, codecName, blockSize, pageSize, enableDictionary, readAsBinary,
+            conf);
+      }
+
+      @Override
+      protected long getSize(CsvParquetWriter writer, Path file) throws IOException {
+        return writer.getDataSize();
+      }
+
+      @Override
+      protected void abort(CsvParquetWriter failed) {
+        failed.abort();
+      }
+    };
+    CsvTokenizer tokenizer = (csvFile != null) ? getTokenizer(csvFile, csvOptions, mapInput, mapWindowSize, conf)
+        : new CsvTokenizer(csvInput, csvOptions);
+    if (projection != null) {
+      tokenizer.setProjection(projection.getColumns());
+    }
+    CsvRecordSource records = tokenizer;
+    try {
+      tokenizer.skipRecords(csvOptions.csvHeaderLines);
+      if (DictionarySampler.isAdaptive(conf, enableDictionary)) {
+        // the part files are opened with the chosen columns on the first record
+        records = sampleDictionaries(tokenizer, schema, csvOptions, pageSize, conf);
+      }
+      records = sortBy(records, schema, csvOptions, conf);
+      while (records.next()) {
+        writers.get().write(records.getRecord());
+        writers.added(1);
+      }
+      writers.close();
+    } catch (java.lang.NumberFormatException e) {
+      LOG.error("error" + e.toString() + " " + records.getRecordNumber());
+      throw new IllegalArgumentException(">>line number : " + records.getRecordNumber(), e);
+    } finally {
+      writers.abort();
+      LOG.info("Number of lines: " + tokenizer.getRecordNumber() + ", part files: " + writers.getParts());
+      Utils.closeQuietly(tokenizer);
+      Utils.closeQuietly(records);
+    }
+  }
+
+  /**
+   * Writes the records into part files under col=value/ directories of
+   * outputDirectory, see {@link Partitioning}. The tokenizer projects the
+   * partition columns behind the data columns, the writers ignore these
+   * surplus fields.
+   */
+  private static void convertCsvToPartitionedParquet(File csvFile, InputStream csvInput, File outputDirectory,
+      MessageType inputSchema, final CompressionCodecName codecName, final int blockSize, final int pageSize,
+      final boolean enableDictionary, final boolean readAsBinary, CSVOptions csvOptions, boolean mapInput,
+      int mapWindowSize, final Configuration conf) throws IOException {
+    Partitioning partitioning = new Partitioning(csvOptions.csvPartitionBy);
+    List<String> fieldNames = new ArrayList<String>();
+    for (Type field : inputSchema.getFields()) {
+      fieldNames.add(field.getName());
+    }
+    String[] dataColumns = partitioning.getDataColumns(fieldNames, csvOptions.csvColumns);
+    final MessageType schema = ColumnProjection.of(inputSchema, dataColumns).getMessageType();
+    ColumnProjection projection = ColumnProjection.of(inputSchema, partitioning.getReadColumns(dataColumns));
+    LOG.info("Partitioning " + Arrays.toString(dataColumns) + " by " + Arrays.toString(partitioning.getColumns()));
+
+    final Path output = new Path(outputDirectory.toURI());
+    WriterPool<CsvParquetWriter> writers = new WriterPool<CsvParquetWriter>(
+        new WriterPool.Factory<CsvParquetWriter>() {
+          @Override
+          public CsvParquetWriter create(String directory, int part) throws IOException {
+            return new CsvParquetWriter(Partitioning.getPartFile(output, directory, part, ".parquet"), schema,
+                codecName, blockSize, pageSize, enableDictionary, readAsBinary, conf);
+          }
+        }, Partitioning.getMaxOpenWriters(conf)) {
+      @Override
+      protected void abort(CsvParquetWriter failed) {
+        failed.abort();
+      }
+    };
+    CsvTokenizer tokenizer = (csvFile != null) ? getTokenizer(csvFile, csvOptions, mapInput, mapWindowSize, conf)
+        : new CsvTokenizer(csvInput, csvOptions);
+    tokenizer.setProjection(projection.getColumns());
+    int first = dataColumns.length;
+    CsvRecordSource records = tokenizer;
+    try {
+      tokenizer.skipRecords(csvOptions.csvHeaderLines);
+      if (DictionarySampler.isAdaptive(conf, enableDictionary)) {
+        records = sampleDictionaries(tokenizer, schema, csvOptions, pageSize, conf);
+      }
+      records = sortBy(records, projection.getMessageType(), csvOptions, conf);
+      while (records.next()) {
+        CsvRecord record = records.getRecord();
+        writers.get(partitioning.getDirectory(record, first)).write(record);
+      }
+      writers.close();
+    } catch (java.lang.NumberFormatException e) {
+      LOG.error("error" + e.toString() + " " + records.getRecordNumber());
+      throw new IllegalArgumentException(">>line number : " + records.getRecordNumber(), e);
+    } finally {
+      LOG.info("Number of lines: " + tokenizer.getRecordNumber());
+      System.err.println(writers.getMetrics());
+      writers.abort();
+      Utils.closeQuietly(tokenizer);
+      Utils.closeQuietly(records);
     }
   }
 
@@ -181,13 +479,26 @@ public class ConvertUtils {
   }
 
   public static void convertParquetToCSV(File parquetFile, File csvOutputFile, String csvDelimiter) throws IOException {
-    Preconditions.checkArgument(parquetFile.getName().endsWith(".parquet"),
-        "parquet file should have .parquet extension");
     Preconditions.checkArgument(csvOutputFile.getName().endsWith(".csv"), "csv file should have .csv extension");
     Preconditions.checkArgument(!csvOutputFile.exists(),
         "Output file " + csvOutputFile.getAbsolutePath() + " already exists");
 
     LOG.info("Converting " + parquetFile.getName() + " to " + csvOutputFile.getName());
+    BufferedWriter w = new BufferedWriter(new FileWriter(csvOutputFile));
+    try {
+      convertParquetToCSV(parquetFile, w, csvDelimiter);
+    } finally {
+      Utils.closeQuietly(w);
+    }
+  }
+
+  /**
+   * Writes the rows of parquetFile as CSV to w, e.g. stdout, w is flushed but
+   * not closed.
+   */
+  public static void convertParquetToCSV(File parquetFile, Writer w, String csvDelimiter) throws IOException {
+    Preconditions.checkArgument(parquetFile.getName().endsWith(".parquet"),
+        "parquet file should have .parquet extension");
 
     Path parquetFilePath = new Path(parquetFile.toURI());
 
@@ -198,20 +509,22 @@ public class ConvertUtils {
     MessageType schema = readFooter.getFileMetaData().getSchema();
 
     readSupport.init(configuration, null, schema);
-    BufferedWriter w = new BufferedWriter(new FileWriter(csvOutputFile));
     ParquetReader<Group> reader = new ParquetReader<Group>(parquetFilePath, readSupport);
     try {
       Group g = null;
       while ((g = reader.read()) != null) {
         writeGroup(w, g, schema, csvDelimiter);
       }
-      reader.close();
     } finally {
-      Utils.closeQuietly(w);
+      Utils.closeQuietly(reader);
     }
+    w.flush();
   }
 
-  private static void writeGroup(BufferedWriter w, Group g, MessageType schema, String csvDelimiter)
+  /**
+   * Writes the fields of g as one CSV line.
+   */
+  public static void writeGroup(Writer w, Group g, MessageType schema, String csvDelimiter)
       throws IOException {
     for (int j = 0; j < schema.getFieldCount(); j++) {
       if (j > 0) {
@@ -0,0 +1,135 @@
+package jfseb.csv2parquet.convert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.parquet.io.api.Binary;
+
+/**
+ * One CSV record, presented as field slices of a shared byte buffer.
+ *
+ * The record does not own its bytes, the content is only valid until the
+ * producer (e.g. a {@link CsvTokenizer}) moves on to the next record. An empty
+ * field (length 0) is treated as NULL by the writers.
+ */
+public class CsvRecord {
+  private static final int INITIAL_FIELDS = 16;
+
+  byte[] bytes;
+  int[] starts = new int[INITIAL_FIELDS];
+  int[] ends = new int[INITIAL_FIELDS];
+  int size;
+
+  /**
+   * @return number of fields present in the record
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the buffer the field offsets refer to
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public int getStart(int field) {
+    return starts[field];
+  }
+
+  /**
+   * @return the byte length of field, 0 for fields beyond the end of the record
+   */
+  public int getLength(int field) {
+    if (field >= size) {
+      return 0;
+    }
+    return ends[field] - starts[field];
+  }
+
+  public boolean isEmpty(int field) {
+    return getLength(field) == 0;
+  }
+
+  /**
+   * Decodes the field as UTF-8, only intended for the slow paths (error messages,
+   * unusual formats).
+   */
+  public String getString(int field) {
+    if (field >= size) {
+      return "";
+    }
+    return new String(bytes, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a binary backed by the (reused) record buffer, consumers which keep
+   *         the value must copy it.
+   */
+  public Binary getBinary(int field) {
+    return Binary.fromReusedByteArray(bytes, starts[field], ends[field] - starts[field]);
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * Makes the record size empty fields starting at offset.
+   */
+  void reset(int size, int offset) {
+    if (starts.length < size) {
+      starts = new int[size];
+      ends = new int[size];
+    }
+    Arrays.fill(starts, 0, size, offset);
+    Arrays.fill(ends, 0, size, offset);
+    this.size = size;
+  }
+
+  void addField(int start, int end) {
+    if (size == starts.length) {
+      starts = Arrays.copyOf(starts, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    starts[size] = start;
+    ends[size] = end;
+    ++size;
+  }
+
+  /**
+   * Builds a record from already split string values.
+   */
+  public static CsvRecord fromStrings(List<String> values) {
+    CsvRecord rec = new CsvRecord();
+    byte[][] encoded = new byte[values.size()][];
+    int total = 0;
+    for (int i = 0; i < encoded.length; ++i) {
+      String val = values.get(i);
+      encoded[i] = (val == null) ? new byte[0] : val.getBytes(StandardCharsets.UTF_8);
+      total += encoded[i].length;
+    }
+    rec.bytes = new byte[total];
+    int pos = 0;
+    for (int i = 0; i < encoded.length; ++i) {
+      System.arraycopy(encoded[i], 0, rec.bytes, pos, encoded[i].length);
+      rec.addField(pos, pos + encoded[i].length);
+      pos += encoded[i].length;
+    }
+    return rec;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < size; ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(getString(i));
+    }
+    return sb.append("]").toString();
+  }
+}
@@ -0,0 +1,45 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of CSV records, read from the input by a {@link CsvTokenizer} or
+ * replayed in another order by an {@link ExternalSorter}.
+ */
+public interface CsvRecordSource extends Closeable {
+
+  /**
+   * Advances to the next record.
+   *
+   * @return false at the end of the records
+   */
+  boolean next() throws IOException;
+
+  /**
+   * @return the current record, valid until the next call to {@link #next()}
+   */
+  CsvRecord getRecord();
+
+  /**
+   * @return the 1-based number of the current record in its input
+   */
+  long getRecordNumber();
+
+  /**
+   * @return the number of fields of the current input record, with a
+   *         projection including the skipped ones
+   */
+  int getFieldCount();
+
+  /**
+   * @return true if the last field of the current input record is empty
+   */
+  boolean isLastFieldEmpty();
+
+  /**
+   * @return the number of bytes consumed up to the current record, for the
+   *         progress
+   */
+  long getOffset();
+}
@@ -0,0 +1,613 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.nativeio.NativeIO;
+
+import jfseb.csv2parquet.Utils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+
+/**
+ * Splits UTF-8 encoded CSV input into records without decoding it into
+ * characters.
+ *
+ * The tokenizer scans the raw bytes and records the field boundaries of the
+ * current record in reusable offset arrays ({@link CsvRecord}). Fields
+ * containing quote or escape characters are unescaped in place, all other
+ * fields are passed on as untouched slices of the read buffer.
+ *
+ * Quoting rules: a field starting with the quote character is quoted, within
+ * it the separator and line breaks are literal and a doubled quote denotes a
+ * quote. The escape character makes a following quote or escape character
+ * literal, in front of any other character it is kept as is. A quote or escape
+ * char of '\0' disables the respective feature.
+ *
+ * The input is either a stream read into a growing heap buffer, or a file
+ * mapped in windows (FileChannel.map) which is scanned in place; in the latter
+ * case only the bytes of the current record are copied out of the mapping. A
+ * record crossing the end of a window is rescanned in the next window, which
+ * starts at the beginning of that record. A window is unmapped as soon as the
+ * next one is mapped.
+ *
+ * With a projection the record holds only the selected columns, in the
+ * selected order. The other fields are scanned for their end but neither
+ * recorded nor unescaped, selected columns missing in a short record are
+ * empty.
+ */
+public class CsvTokenizer implements CsvRecordSource {
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+  // never matches a (signed) byte, used for a disabled quote or escape char
+  private static final int NO_CHAR = 256;
+
+  private final InputStream input;
+  private final FileChannel channel;
+  private final byte[] separator;
+  private final byte sep0;
+  private final int quote;
+  private final int escape;
+  private final CsvRecord record = new CsvRecord();
+  private final HeapBytes heapBytes = new HeapBytes();
+  private final WindowBytes windowBytes = new WindowBytes();
+
+  // the data scanned: array for stream input, the current window buf for mapped input
+  private ByteBuffer buf;
+  private byte[] array;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  private long recordNumber;
+  // input offset of buf[0]
+  private long bufferOffset;
+  // no input is read beyond this offset
+  private long inputEnd = Long.MAX_VALUE;
+
+  // mapped input: size of the current window
+  private int windowSize;
+  private long fileSize;
+
+  // per record flags: field needs unescaping
+  private boolean[] dirty = new boolean[16];
+
+  // projection: record field of each input column, -1 if skipped, null records all
+  private int[] fieldOf;
+  private int projectedFields;
+  // input fields of the current record
+  private int fieldCount;
+  private boolean lastFieldEmpty;
+
+  /**
+   * The bytes scanned. There are just the two implementations, so the JIT
+   * inlines get and the heap buffer is indexed directly, without the bounds
+   * checks of ByteBuffer.get.
+   */
+  private abstract static class Bytes {
+    abstract byte get(int i);
+  }
+
+  private static final class HeapBytes extends Bytes {
+    private byte[] array;
+
+    HeapBytes set(byte[] array) {
+      this.array = array;
+      return this;
+    }
+
+    @Override
+    byte get(int i) {
+      return array[i];
+    }
+  }
+
+  private static final class WindowBytes extends Bytes {
+    private ByteBuffer window;
+
+    WindowBytes set(ByteBuffer window) {
+      this.window = window;
+      return this;
+    }
+
+    @Override
+    byte get(int i) {
+      return window.get(i);
+    }
+  }
+
+  public CsvTokenizer(InputStream input, CSVOptions options) {
+    this(input, options, DEFAULT_BUFFER_SIZE);
+  }
+
+  public CsvTokenizer(InputStream input, CSVOptions options, int bufferSize) {
+    this(input, null, options);
+    this.array = new byte[Math.max(bufferSize, 16)];
+    this.record.bytes = array;
+  }
+
+  /**
+   * Tokenizes the file by mapping windows of windowSize bytes, windows grow if
+   * a single record does not fit.
+   */
+  public CsvTokenizer(FileChannel channel, CSVOptions options, int windowSize) throws IOException {
+    this(channel, options, windowSize, 0);
+  }
+
+  /**
+   * Tokenizes the file from offset start on, which must be the start of a
+   * record.
+   */
+  public CsvTokenizer(FileChannel channel, CSVOptions options, int windowSize, long start) throws IOException {
+    this(null, channel, options);
+    this.windowSize = Math.max(windowSize, 16);
+    this.fileSize = channel.size();
+    this.buf = ByteBuffer.allocate(0);
+    this.array = new byte[1024];
+    this.record.bytes = array;
+    this.bufferOffset = start;
+    this.eof = start >= fileSize;
+  }
+
+  private CsvTokenizer(InputStream input, FileChannel channel, CSVOptions options) {
+    this.input = input;
+    this.channel = channel;
+    String sep = options.csvSeparatorAsString;
+    if (sep == null || sep.isEmpty()) {
+      sep = String.valueOf(options.csvSeparatorAsChar);
+    }
+    this.separator = sep.getBytes(StandardCharsets.UTF_8);
+    this.sep0 = separator[0];
+    this.quote = toSpecialByte(options.csvQuote, "quote");
+    this.escape = toSpecialByte(options.csvEscape, "escape");
+  }
+
+  /**
+   * Opens a tokenizer on a local uncompressed file using memory mapped windows.
+   */
+  public static CsvTokenizer mapped(File file, CSVOptions options, int windowSize) throws IOException {
+    return mapped(file, options, windowSize, 0);
+  }
+
+  /**
+   * Opens a memory mapped tokenizer starting at the record starting at offset
+   * start.
+   */
+  public static CsvTokenizer mapped(File file, CSVOptions options, int windowSize, long start) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return new CsvTokenizer(raf.getChannel(), options, windowSize, start);
+    } catch (IOException e) {
+      Utils.closeQuietly(raf);
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a stream tokenizer on a local uncompressed file starting at the record
+   * starting at offset start.
+   */
+  public static CsvTokenizer open(File file, CSVOptions options, long start, int bufferSize) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.seek(start);
+      CsvTokenizer tokenizer = new CsvTokenizer(Channels.newInputStream(raf.getChannel()), options, bufferSize);
+      tokenizer.bufferOffset = start;
+      return tokenizer;
+    } catch (IOException e) {
+      Utils.closeQuietly(raf);
+      throw e;
+    }
+  }
+
+  /**
+   * Reads no input beyond offset end, which then counts as the end of the
+   * input. Must be called before the first record is read.
+   */
+  public void setInputEnd(long end) {
+    inputEnd = end;
+    if (channel != null) {
+      fileSize = Math.min(fileSize, end);
+      eof = bufferOffset >= fileSize;
+    }
+  }
+
+  private static int toSpecialByte(char c, String what) {
+    if (c == 0) {
+      return NO_CHAR;
+    }
+    if (c > 127) {
+      throw new IllegalArgumentException("CSV " + what + " character must be ASCII, got '" + c + "'");
+    }
+    return c;
+  }
+
+  /**
+   * Restricts the record to the given input columns, field i of the record is
+   * input column columns[i].
+   */
+  public void setProjection(int[] columns) {
+    int max = -1;
+    for (int column : columns) {
+      max = Math.max(max, column);
+    }
+    fieldOf = new int[max + 1];
+    Arrays.fill(fieldOf, -1);
+    for (int i = 0; i < columns.length; ++i) {
+      if (fieldOf[columns[i]] >= 0) {
+        throw new IllegalArgumentException("column " + columns[i] + " is projected twice");
+      }
+      fieldOf[columns[i]] = i;
+    }
+    projectedFields = columns.length;
+    if (dirty.length < projectedFields) {
+      dirty = new boolean[projectedFields];
+    }
+  }
+
+  /**
+   * @return the number of fields of the current input record, with a
+   *         projection including the skipped ones
+   */
+  @Override
+  public int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * @return true if the last field of the current input record is empty, an
+   *         empty quoted field counts as empty
+   */
+  @Override
+  public boolean isLastFieldEmpty() {
+    return lastFieldEmpty;
+  }
+
+  /**
+   * @return the current record, valid until the next call to {@link #next()}
+   */
+  @Override
+  public CsvRecord getRecord() {
+    return record;
+  }
+
+  /**
+   * @return the 1-based number of the current record
+   */
+  @Override
+  public long getRecordNumber() {
+    return recordNumber;
+  }
+
+  /**
+   * @return the input offset following the current record, i.e. the start of
+   *         the next record
+   */
+  @Override
+  public long getOffset() {
+    return bufferOffset + pos;
+  }
+
+  /**
+   * Skips n records, e.g. header lines.
+   */
+  public void skipRecords(int n) throws IOException {
+    for (int i = 0; i < n && next(); ++i) {
+      // skip
+    }
+  }
+
+  /**
+   * Advances to the next record.
+   *
+   * @return false at the end of the input
+   */
+  @Override
+  public boolean next() throws IOException {
+    while (true) {
+      if (pos >= limit && eof) {
+        record.clear();
+        fieldCount = 0;
+        return false;
+      }
+      int end = pos < limit ? scanRecord(pos) : -1;
+      if (end >= 0) {
+        if (channel != null) {
+          copyRecord(pos, end);
+        }
+        unescapeFields();
+        pos = end;
+        ++recordNumber;
+        return true;
+      }
+      fill();
+    }
+  }
+
+  /**
+   * Moves the incomplete record to the start of the buffer (growing it if
+   * required) and reads more input.
+   */
+  private void fill() throws IOException {
+    if (channel != null) {
+      mapNextWindow();
+      return;
+    }
+    if (pos > 0) {
+      System.arraycopy(array, pos, array, 0, limit - pos);
+      bufferOffset += pos;
+      limit -= pos;
+      pos = 0;
+    } else if (limit == array.length) {
+      array = Arrays.copyOf(array, array.length * 2);
+      record.bytes = array;
+    }
+    long remaining = inputEnd - (bufferOffset + limit);
+    int n = (remaining > 0) ? input.read(array, limit, (int) Math.min(array.length - limit, remaining)) : -1;
+    if (n < 0) {
+      eof = true;
+    } else {
+      limit += n;
+    }
+  }
+
+  /**
+   * Maps the window starting at the incomplete record, doubling the window
+   * size if the record already spans a full window.
+   */
+  private void mapNextWindow() throws IOException {
+    if (pos == 0 && limit == windowSize) {
+      windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+    }
+    long start = bufferOffset + pos;
+    int len = (int) Math.min(windowSize, fileSize - start);
+    ByteBuffer previous = buf;
+    buf = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+    // records are copied out of the window, nothing refers to the previous one
+    unmap(previous);
+    bufferOffset = start;
+    pos = 0;
+    limit = len;
+    eof = start + len >= fileSize;
+  }
+
+  /**
+   * Copies the scanned record out of the mapped window and rebases the field
+   * offsets, unescaping then works on the copy.
+   */
+  private void copyRecord(int from, int end) {
+    int len = end - from;
+    if (array.length < len) {
+      array = new byte[Math.max(len, array.length * 2)];
+      record.bytes = array;
+    }
+    // only absolute gets are used for scanning, the position is free to use
+    buf.position(from);
+    buf.get(array, 0, len);
+    for (int f = 0; f < record.size; ++f) {
+      record.starts[f] -= from;
+      record.ends[f] -= from;
+    }
+  }
+
+  private boolean needMore(int i) {
+    return i >= limit && !eof;
+  }
+
+  /**
+   * Releases a mapped window now instead of when it is garbage collected.
+   */
+  private static void unmap(ByteBuffer window) {
+    if (window instanceof MappedByteBuffer) {
+      NativeIO.POSIX.munmap((MappedByteBuffer) window);
+    }
+  }
+
+  private byte byteAt(int i) {
+    return (channel == null) ? array[i] : buf.get(i);
+  }
+
+  private boolean isSeparator(int i) {
+    if (byteAt(i) != sep0) {
+      return false;
+    }
+    for (int k = 1; k < separator.length; ++k) {
+      if (i + k >= limit || byteAt(i + k) != separator[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void addField(int start, int end, boolean needsUnescape) {
+    int n = record.size;
+    if (n == dirty.length) {
+      boolean[] larger = new boolean[n * 2];
+      System.arraycopy(dirty, 0, larger, 0, n);
+      dirty = larger;
+    }
+    dirty[n] = needsUnescape;
+    record.addField(start, end);
+  }
+
+  private void addField(int column, int start, int end, boolean needsUnescape) {
+    fieldCount = column + 1;
+    lastFieldEmpty = end == start || end - start == 2 && byteAt(start) == quote && byteAt(start + 1) == quote;
+    if (fieldOf == null) {
+      addField(start, end, needsUnescape);
+    } else if (column < fieldOf.length && fieldOf[column] >= 0) {
+      int f = fieldOf[column];
+      record.starts[f] = start;
+      record.ends[f] = end;
+      dirty[f] = needsUnescape;
+    }
+  }
+
+  /**
+   * Scans one record starting at from.
+   *
+   * @return the offset after the record terminator, or -1 if the buffer ends
+   *         before the record is complete.
+   */
+  private int scanRecord(int from) {
+    if (fieldOf == null) {
+      record.clear();
+    } else {
+      record.reset(projectedFields, from);
+      Arrays.fill(dirty, 0, projectedFields, false);
+    }
+    return scan((channel == null) ? heapBytes.set(array) : windowBytes.set(buf), from);
+  }
+
+  /**
+   * Scans the record in b, the heap buffer or the mapped window.
+   */
+  private int scan(Bytes b, int from) {
+    final int lim = limit;
+    final boolean singleSep = separator.length == 1;
+    int i = from;
+    int column = 0;
+    while (true) {
+      int fieldStart = i;
+      boolean needsUnescape = false;
+      if (i < lim && b.get(i) == quote) {
+        needsUnescape = true;
+        ++i;
+        while (true) {
+          if (i >= lim) {
+            if (!eof) {
+              return -1;
+            }
+            break; // unterminated quote, take the rest of the input
+          }
+          byte c = b.get(i);
+          if (c == quote) {
+            if (needMore(i + 1)) {
+              return -1;
+            }
+            if (i + 1 < lim && b.get(i + 1) == quote) {
+              i += 2;
+              continue;
+            }
+            ++i;
+            break;
+          }
+          if (c == escape) {
+            if (needMore(i + 1)) {
+              return -1;
+            }
+            i += (i + 1 < lim && (b.get(i + 1) == quote || b.get(i + 1) == escape)) ? 2 : 1;
+            continue;
+          }
+          ++i;
+        }
+        // lenient: characters between the closing quote and the separator are kept
+        while (i < lim) {
+          byte c = b.get(i);
+          if (c == sep0 && (singleSep || isSeparator(i)) || c == LF || c == CR) {
+            break;
+          }
+          ++i;
+        }
+      } else {
+        while (i < lim) {
+          byte c = b.get(i);
+          if (c == sep0 && (singleSep || isSeparator(i)) || c == LF || c == CR) {
+            break;
+          }
+          if (c == escape) {
+            if (needMore(i + 1)) {
+              return -1;
+            }
+            if (i + 1 < lim && (b.get(i + 1) == quote || b.get(i + 1) == escape)) {
+              needsUnescape = true;
+              i += 2;
+              continue;
+            }
+          }
+          ++i;
+        }
+      }
+      if (needMore(i)) {
+        return -1;
+      }
+      addField(column++, fieldStart, i, needsUnescape);
+      if (i >= lim) {
+        return i; // last record without line terminator
+      }
+      byte c = b.get(i);
+      if (c == LF) {
+        return i + 1;
+      }
+      if (c == CR) {
+        if (needMore(i + 1)) {
+          return -1;
+        }
+        return (i + 1 < lim && b.get(i + 1) == LF) ? i + 2 : i + 1;
+      }
+      i += separator.length;
+    }
+  }
+
+  private void unescapeFields() {
+    for (int f = 0; f < record.size; ++f) {
+      if (dirty[f]) {
+        record.ends[f] = unescape(record.starts[f], record.ends[f]);
+      }
+    }
+  }
+
+  /**
+   * Removes quoting and escapes of the field in place.
+   *
+   * @return the new end offset of the field
+   */
+  private int unescape(int start, int end) {
+    final byte[] b = record.bytes;
+    int out = start;
+    int i = start;
+    boolean inQuotes = false;
+    if (b[i] == quote) {
+      inQuotes = true;
+      ++i;
+    }
+    while (i < end) {
+      byte c = b[i];
+      if (c == escape && i + 1 < end && (b[i + 1] == quote || b[i + 1] == escape)) {
+        b[out++] = b[i + 1];
+        i += 2;
+      } else if (inQuotes && c == quote) {
+        if (i + 1 < end && b[i + 1] == quote) {
+          b[out++] = c;
+          i += 2;
+        } else {
+          inQuotes = false;
+          ++i;
+        }
+      } else {
+        b[out++] = c;
+        ++i;
+      }
+    }
+    return out;
+  }
+
+  @Override
+  public void close() throws IOException {
+    Utils.closeQuietly(input);
+    Utils.closeQuietly(channel);
+    if (channel != null) {
+      unmap(buf);
+      buf = ByteBuffer.allocate(0);
+    }
+  }
+}
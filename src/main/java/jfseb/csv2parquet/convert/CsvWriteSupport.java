@@ -15,55 +15,61 @@
  */
 package jfseb.csv2parquet.convert;
 
-import java.math.BigDecimal;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.text.ParseException;
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hive.ql.util.TimestampUtils;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.parquet.Log;
 import org.apache.parquet.column.ColumnDescriptor;
-import org.apache.parquet.example.data.simple.Int96Value;
-import org.apache.parquet.example.data.simple.NanoTime;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.io.ParquetEncodingException;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.DecimalMetadata;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
 import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
-import org.apache.parquet.schema.Type;
-
-import com.sun.tools.javac.util.ByteBuffer;
 
+import jfseb.csv2parquet.convert.utils.AsciiSequence;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetNumberUtils;
 import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
 import jfseb.csv2parquet.utils.ParseHexRec;
 
 //import parquet.example.data.simple.NanoTime;
 
-public class CsvWriteSupport extends WriteSupport<List<String>> {
+public class CsvWriteSupport extends WriteSupport<CsvRecord> {
+  private static final Log LOG = Log.getLog(CsvWriteSupport.class);
+
   MessageType schema;
   RecordConsumer recordConsumer;
   List<ColumnDescriptor> cols;
   boolean readAsBinary;
 
-  // TODO: support specifying encodings and compression
+  // compiled from the schema in init
+  private ColumnWriter[] writers;
+
   public CsvWriteSupport(MessageType schema, boolean readAsBinary) {
     this.schema = schema;
     this.cols = schema.getColumns();
     this.readAsBinary = readAsBinary;
   }
 
+  /**
+   * -D csv.memo=false switches off remembering the converted values of date,
+   * time and timestamp columns, see {@link ValueMemo}.
+   */
   @Override
   public WriteContext init(Configuration config) {
+    writers = compile(schema, readAsBinary, config.getBoolean("csv.memo", true));
     return new WriteContext(schema, new HashMap<String, String>());
   }
 
@@ -73,263 +79,610 @@ public class CsvWriteSupport extends WriteSupport<List<String>> {
   }
 
   @Override
-  public void write(List<String> values) {
-    if (values.size() != cols.size()) {
-      throw new ParquetEncodingException("Invalid input data. Expecting " + cols.size() + " columns. Input had "
-          + values.size() + " columns (" + cols + ") : " + values);
+  public FinalizedWriteContext finalizeWrite() {
+    String metrics = getMemoMetrics();
+    if (!metrics.isEmpty()) {
+      LOG.info(metrics);
     }
+    return super.finalizeWrite();
+  }
 
+  /**
+   * @return the hit counts of the value memos, one line per column
+   */
+  public String getMemoMetrics() {
+    List<ValueMemo> memos = new ArrayList<ValueMemo>();
+    for (ColumnWriter writer : writers) {
+      if (writer.getMemo() != null) {
+        memos.add(writer.getMemo());
+      }
+    }
+    return ValueMemo.getMetrics(memos);
+  }
+
+  /**
+   * Writes one record, missing trailing fields are written as NULL, surplus
+   * fields are ignored.
+   */
+  @Override
+  public void write(CsvRecord record) {
     recordConsumer.startMessage();
-    for (int i = 0; i < cols.size(); ++i) {
-      String val = values.get(i);
-
-      try {
-        // val.length() == 0 indicates a NULL value.
-        if (val.length() > 0) {
-          recordConsumer.startField(cols.get(i).getPath()[0], i);
-          try {
-            ParseHexRec.ParsedRec rec = null;
-            if (this.readAsBinary) {
-              rec = ParseHexRec.parse(val);
-            }
-            Type t = schema.getFields().get(i);
-            Type primtype = schema.getFields().get(i);
-            switch (cols.get(i).getType()) {
-            case BOOLEAN:
-              if (rec != null) {
-                recordConsumer.addBoolean(rec.asBool);
-              } else {
-                recordConsumer.addBoolean(Boolean.parseBoolean(val));
-              }
-              break;
-            case INT96:
-              if (rec != null) {
-                Binary bin = rec.getBinary(12);
-                assert (bin.length() == 12);
-                // System.console().writer().write(" here len "+ bin.length());
-                // System.console().flush();
-                recordConsumer.addBinary(bin);
-              } else {
-                try {
-                  DateFormat df = new SimpleDateFormat("yyyy-mm-dd hh:mm:ss"); // , Locale.ENGLISH);
-                  java.util.Date result = df.parse(val);
-                  NanoTime nt = CSV2ParquetTimestampUtils.fromDateTimeString(val);
-                  // try a byte array a la
-                  // https://www.programcreek.com/java-api-examples/index.php?source_dir=presto-master/presto-hive/src/test/java/com/facebook/presto/hive/parquet/TestParquetTimestampUtils.java
-                  // todo : parse millis
-
-                  // org.apache.hadoop.hive.ql.io.parquet.timestamp.NanoTimeUtils;
-                  // ts.getTime();
-                  // nt.getBinary();
-                  // Timestamp timestamp = Timestamp.valueOf(val); // timestampString);
-                  // (( Binary timestampBytes = NanoTimeUtils.getNanoTime(timestamp,
-                  // false).toBinary();
-                  // long decodedTimestampMillis = getTimestampMillis(timestampBytes);
-                  // assertEquals(decodedTimestampMillis, timestamp.getTime());
-                  // Int96Value i96 = new Int96Value(Binar));
-                  boolean show_binary_i96 = false;
-                  if (show_binary_i96) {
-                    System.console().writer().write(" here nt len " + nt.toBinary().length() + " val" + val);
-                    System.console().writer().flush();
-                    byte[] b = nt.toBinary().getBytes();
-                    System.console().writer().write("\n here val" + val + " day   " + nt.getJulianDay() + " nanos:   "
-                        + nt.getTimeOfDayNanos() + "\n");
-                    System.console().writer()
-                        .write("\n here val" + val + " day 0x" + Integer.toHexString(nt.getJulianDay()) + " nanos: 0x"
-                            + Long.toHexString(nt.getTimeOfDayNanos()) + "\n");
-                    for (int ii = 0; ii < b.length; ++ii) {
-                      String r = Integer.toHexString(b[ii]);
-                      if (r.length() > 2) {
-                        r = r.substring(r.length() - 2, r.length());
-                      }
-                      System.console().writer().write(" " + r);
-                      if (ii % 4 == 3)
-                        System.console().writer().write(" - ");
-                    }
-                    System.console().writer().write("\n");
-                  }
-                  recordConsumer.addBinary(nt.toBinary());
-                  // recordConsumer.addLong(result.getTime());
-                } catch (java.text.ParseException ex) {
-                  long l = Long.parseLong(val);
-                  java.nio.ByteBuffer bb = java.nio.ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN).putInt(0)
-                      .putLong(l);
-                  byte[] b = bb.array();
-                  Binary bx = Binary.fromConstantByteArray(b);
-                  // System.console().writer().write(" here nt len "+ bx.length() + " val" + val
-                  // +" " + b[0] + " " + b[11]);
-                  // System.console().flush();
-                  recordConsumer.addBinary(bx);
-                }
-              }
-              break;
-            case FLOAT:
-              if (rec != null) {
-                recordConsumer.addFloat(rec.asFloat);
-              } else {
-                recordConsumer.addFloat(Float.parseFloat(val));
-              }
-              break;
-            case DOUBLE:
-              if (rec != null) {
-                recordConsumer.addDouble(rec.asDouble);
-              } else {
-                recordConsumer.addDouble(Double.parseDouble(val));
-              }
-              break;
-            case INT32:
-              if (rec != null) {
-                recordConsumer.addInteger(rec.asInt);
-              } else {
-                String xval;
-                if (primtype.getOriginalType() == OriginalType.DATE) {
-                  xval = CSV2ParquetTimestampUtils.parseDateOrIntSloppy(val);
-                } else if (primtype.getOriginalType() == OriginalType.TIME_MILLIS) {
-                  xval = Integer.valueOf(CSV2ParquetTimestampUtils.parseTimeMillisOrInt(val)).toString();
-                } else if (primtype.getOriginalType() == OriginalType.DECIMAL) {
-                  // try to strip a ".", then parse,
-                  String rval = val;
-                  rval = rval.replaceAll("\\.", "");
-                  long u = Long.parseLong(rval);
-                  xval = Long.toString(u);
-                } else {
-                  xval = val;
-                }
-                recordConsumer.addInteger(Integer.parseInt(xval));
-              }
-              break;
-            case INT64:
-              if (rec != null) {
-                recordConsumer.addLong(rec.asLong);
-              } else {
-                if (primtype.getOriginalType() == OriginalType.TIME_MICROS) {
-                  try {
-                    long valmicros = CSV2ParquetTimestampUtils.parseTimeMicros(val, false);
-                    recordConsumer.addLong(valmicros);
-                  } catch (ParseException e) {
-                    recordConsumer.addLong(Long.parseLong(val));
-                  }
-                } else if (primtype.getOriginalType() == OriginalType.TIMESTAMP_MICROS) {
-                  try {
-                    long valmicros = CSV2ParquetTimestampUtils.parseTimeStampMicros(val, false);
-                    recordConsumer.addLong(valmicros);
-                  } catch (ParseException e) {
-                    recordConsumer.addLong(Long.parseLong(val));
-                  }
-                } else if (primtype.getOriginalType() == OriginalType.TIMESTAMP_MILLIS) {
-                  try {
-                    long valmicros = CSV2ParquetTimestampUtils.parseTimeStampMillis(val, false);
-                    recordConsumer.addLong(valmicros);
-                  } catch (ParseException e) {
-                    recordConsumer.addLong(Long.parseLong(val));
-                  }
-                } else if (primtype.getOriginalType() == OriginalType.DECIMAL) {
-                  // try to strip a ".", then parse,
-                  String rval = val;
-                  rval = rval.replaceAll("\\.", "");
-                  long u = Long.parseLong(rval);
-                  recordConsumer.addLong(u);
-                }
-                /*
-                 * try { DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"); // ,
-                 * Locale.ENGLISH); java.util.Date result = df.parse(val);
-                 * recordConsumer.addLong(result.getTime()); } catch (java.text.ParseException
-                 * ex) { recordConsumer.addLong(Long.parseLong(val)); }
-                 */
-                else {
-                  recordConsumer.addLong(Long.parseLong(val));
-                }
-              }
-              break;
-            case BINARY:
-              if (rec != null) {
-                recordConsumer.addBinary(rec.binary);
-              } else {
-                recordConsumer.addBinary(stringToBinary(val));
-              }
-              break;
-            case FIXED_LEN_BYTE_ARRAY:
-              if (rec != null) {
-                recordConsumer.addBinary(rec.binary);
-              } else {
-                recordConsumer.addBinary(stringToBinary(val));
-              }
-              break;
-            default:
-              throw new ParquetEncodingException("Unsupported column type: " + cols.get(i).getType());
-            }
-          } catch (java.lang.NumberFormatException e) {
-            throw new IllegalArgumentException("column nr:" + i + " \"" + cols.get(i).getPath()[0] + "\" typed as "
-                + cols.get(i).getType() + " \n value: \"" + val + "\"", e);
-          }
-          recordConsumer.endField(cols.get(i).getPath()[0], i);
+    final byte[] bytes = record.getBytes();
+    for (int i = 0; i < writers.length; ++i) {
+      final int len = record.getLength(i);
+      // length 0 indicates a NULL value.
+      if (len > 0) {
+        final ColumnWriter writer = writers[i];
+        try {
+          recordConsumer.startField(writer.name, i);
+          writer.write(recordConsumer, record, bytes, record.getStart(i), len);
+          recordConsumer.endField(writer.name, i);
+        } catch (NumberFormatException e) {
+          throw invalidValue(i, record, e);
+        } catch (UnsupportedOperationException e) {
+          throw invalidValue(i, record, e);
         }
-      } catch (java.lang.UnsupportedOperationException e) {
-        throw new IllegalArgumentException("column nr:" + i + " \"" + cols.get(i).getPath()[0] + "\" typed as "
-            + cols.get(i).getType() + " \n value: \"" + val + "\"", e);
       }
     }
     recordConsumer.endMessage();
   }
 
-  public void writeBinary(List<String> values) {
-    if (values.size() != cols.size()) {
-      throw new ParquetEncodingException("Invalid input data. Expecting " + cols.size() + " columns. Input had "
-          + values.size() + " columns (" + cols + ") : " + values);
+  private IllegalArgumentException invalidValue(int i, CsvRecord record, RuntimeException e) {
+    return new IllegalArgumentException("column nr:" + i + " \"" + cols.get(i).getPath()[0] + "\" typed as "
+        + cols.get(i).getType() + " \n value: \"" + record.getString(i) + "\"", e);
+  }
+
+  /**
+   * @return a writer per column, chosen by the primitive and original type of
+   *         the column and, for binary csv, wrapped into a hex decoding one
+   */
+  static ColumnWriter[] compile(MessageType schema, boolean readAsBinary, boolean memo) {
+    List<ColumnDescriptor> cols = schema.getColumns();
+    ColumnWriter[] writers = new ColumnWriter[cols.size()];
+    for (int i = 0; i < writers.length; ++i) {
+      ColumnDescriptor col = cols.get(i);
+      ColumnWriter writer = textWriter(col.getPath()[0], i, schema.getType(i).asPrimitiveType(), memo);
+      writers[i] = readAsBinary ? hexWriter(col.getType(), writer) : writer;
     }
+    return writers;
+  }
 
-    recordConsumer.startMessage();
-    for (int i = 0; i < cols.size(); ++i) {
-      String val = values.get(i);
-      // val.length() == 0 indicates a NULL value.
-      if (val.length() > 0) {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(val);
+  private static ColumnWriter textWriter(String name, int index, PrimitiveType field, boolean memo) {
+    OriginalType ot = field.getOriginalType();
+    PrimitiveTypeName type = field.getPrimitiveTypeName();
+    switch (type) {
+    case BOOLEAN:
+      return new BooleanWriter(name, index);
+    case INT96:
+      return new Int96Writer(name, index, memo);
+    case FLOAT:
+      return new FloatWriter(name, index);
+    case DOUBLE:
+      return new DoubleWriter(name, index);
+    case INT32:
+      if (ot == OriginalType.DATE) {
+        return new DateWriter(name, index, memo);
+      } else if (ot == OriginalType.TIME_MILLIS) {
+        return new TimeMillisWriter(name, index, memo);
+      } else if (ot == OriginalType.DECIMAL) {
+        return new DecimalIntWriter(name, index, field.getDecimalMetadata());
+      }
+      return new IntWriter(name, index);
+    case INT64:
+      if (ot == OriginalType.TIME_MICROS || ot == OriginalType.TIMESTAMP_MICROS
+          || ot == OriginalType.TIMESTAMP_MILLIS) {
+        return new TimeWriter(name, index, ot, memo);
+      } else if (ot == OriginalType.DECIMAL) {
+        return new DecimalLongWriter(name, index, field.getDecimalMetadata());
+      }
+      return new LongWriter(name, index);
+    case BINARY:
+    case FIXED_LEN_BYTE_ARRAY:
+      if (ot == OriginalType.DECIMAL) {
+        return new DecimalBinaryWriter(name, index, field.getDecimalMetadata(),
+            type == PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY ? field.getTypeLength() : 0);
+      }
+      return new BinaryWriter(name, index);
+    default:
+      throw new ParquetEncodingException("Unsupported column type: " + type);
+    }
+  }
+
+  /**
+   * Writes the non-null values of one column with the parser and the
+   * RecordConsumer call of its type.
+   */
+  abstract static class ColumnWriter {
+    final String name;
+    final int index;
+
+    ColumnWriter(String name, int index) {
+      this.name = name;
+      this.index = index;
+    }
+
+    /**
+     * Adds the value of field index of record, its len &gt; 0 bytes at start.
+     */
+    abstract void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len);
+
+    ValueMemo getMemo() {
+      return null;
+    }
+  }
+
+  /**
+   * Writers of values which are expensive to parse remember them per column
+   * in a ValueMemo, if enabled.
+   */
+  abstract static class MemoWriter extends ColumnWriter {
+    final ValueMemo memo;
+
+    MemoWriter(String name, int index, boolean memo) {
+      super(name, index);
+      this.memo = memo ? new ValueMemo(name) : null;
+    }
+
+    @Override
+    final void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      int slot = memo != null ? memo.lookup(bytes, start, len) : -1;
+      if (slot >= 0) {
+        add(consumer, memo.getValue(slot), memo.getObject(slot));
+        return;
+      }
+      convert(consumer, record, bytes, start, len);
+    }
+
+    /**
+     * Converts and adds the value, passing it to remember too.
+     */
+    abstract void convert(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len);
+
+    abstract void add(RecordConsumer consumer, long value, Object object);
+
+    final void addAndRemember(RecordConsumer consumer, long value, Object object) {
+      if (memo != null) {
+        memo.put(value, 0, object);
+      }
+      add(consumer, value, object);
+    }
+
+    @Override
+    ValueMemo getMemo() {
+      return memo;
+    }
+  }
+
+  static final class BooleanWriter extends ColumnWriter {
+    BooleanWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addBoolean(CSV2ParquetNumberUtils.parseBoolean(bytes, start, len));
+    }
+  }
+
+  static final class IntWriter extends ColumnWriter {
+    IntWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addInteger(CSV2ParquetNumberUtils.parseInt(bytes, start, len));
+    }
+  }
+
+  static final class LongWriter extends ColumnWriter {
+    LongWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addLong(CSV2ParquetNumberUtils.parseLong(bytes, start, len));
+    }
+  }
+
+  static final class FloatWriter extends ColumnWriter {
+    FloatWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addFloat(CSV2ParquetNumberUtils.parseFloat(bytes, start, len));
+    }
+  }
+
+  static final class DoubleWriter extends ColumnWriter {
+    DoubleWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addDouble(CSV2ParquetNumberUtils.parseDouble(bytes, start, len));
+    }
+  }
+
+  static final class BinaryWriter extends ColumnWriter {
+    BinaryWriter(String name, int index) {
+      super(name, index);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addBinary(record.getBinary(index));
+    }
+  }
+
+  static final class DateWriter extends MemoWriter {
+    DateWriter(String name, int index, boolean memo) {
+      super(name, index, memo);
+    }
+
+    @Override
+    void convert(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      String val = record.getString(index);
+      long days = CSV2ParquetTimestampUtils.parseDaysOrLongSloppy(val);
+      if (days < Integer.MIN_VALUE || days > Integer.MAX_VALUE) {
+        throw new NumberFormatException("For input string: \"" + val + "\"");
+      }
+      addAndRemember(consumer, days, null);
+    }
+
+    @Override
+    void add(RecordConsumer consumer, long value, Object object) {
+      consumer.addInteger((int) value);
+    }
+  }
+
+  static final class TimeMillisWriter extends MemoWriter {
+    TimeMillisWriter(String name, int index, boolean memo) {
+      super(name, index, memo);
+    }
+
+    @Override
+    void convert(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      addAndRemember(consumer, CSV2ParquetTimestampUtils.parseTimeMillisOrInt(record.getString(index)), null);
+    }
+
+    @Override
+    void add(RecordConsumer consumer, long value, Object object) {
+      consumer.addInteger((int) value);
+    }
+  }
+
+  /**
+   * DECIMAL columns are written as their unscaled value at the scale of the
+   * column. Plain decimals of a precision up to 18 are parsed straight into
+   * the unscaled long, anything else (wider precisions, exponents, blanks)
+   * goes through a reused HiveDecimalWritable.
+   */
+  abstract static class DecimalWriter extends ColumnWriter {
+    final int precision;
+    final int scale;
+    final HiveDecimalWritable holder = new HiveDecimalWritable();
+
+    DecimalWriter(String name, int index, DecimalMetadata decimal) {
+      super(name, index);
+      this.precision = decimal.getPrecision();
+      this.scale = decimal.getScale();
+    }
 
-        recordConsumer.startField(cols.get(i).getPath()[0], i);
+    long parseUnscaled(byte[] bytes, int start, int len) {
+      if (precision <= CSV2ParquetNumberUtils.MAX_LONG_DECIMAL_PRECISION) {
+        long unscaled = CSV2ParquetNumberUtils.parseDecimal(bytes, start, len, precision, scale);
+        if (unscaled != CSV2ParquetNumberUtils.NOT_PARSED) {
+          return unscaled;
+        }
+      }
+      parseHolder(bytes, start, len);
+      if (!holder.isLong()) {
+        throw decimalFormatException(bytes, start, len);
+      }
+      return holder.longValue();
+    }
+
+    /**
+     * Parses the value into holder and scales it to the unscaled value.
+     */
+    void parseHolder(byte[] bytes, int start, int len) {
+      if (!CSV2ParquetNumberUtils.parseDecimal(holder, bytes, start, len, precision, scale)) {
+        throw decimalFormatException(bytes, start, len);
+      }
+      holder.mutateScaleByPowerOfTen(scale);
+    }
+
+    NumberFormatException decimalFormatException(byte[] bytes, int start, int len) {
+      return new NumberFormatException("For input string: \"" + new String(bytes, start, len, StandardCharsets.UTF_8)
+          + "\" typed as decimal(" + precision + "," + scale + ")");
+    }
+  }
+
+  static final class DecimalIntWriter extends DecimalWriter {
+    DecimalIntWriter(String name, int index, DecimalMetadata decimal) {
+      super(name, index, decimal);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      long unscaled = parseUnscaled(bytes, start, len);
+      if (unscaled < Integer.MIN_VALUE || unscaled > Integer.MAX_VALUE) {
+        throw decimalFormatException(bytes, start, len);
+      }
+      consumer.addInteger((int) unscaled);
+    }
+  }
+
+  static final class DecimalLongWriter extends DecimalWriter {
+    DecimalLongWriter(String name, int index, DecimalMetadata decimal) {
+      super(name, index, decimal);
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      consumer.addLong(parseUnscaled(bytes, start, len));
+    }
+  }
+
+  // the big endian two's complement of the unscaled value, sign extended to
+  // the length of FIXED_LEN_BYTE_ARRAY columns
+  static final class DecimalBinaryWriter extends DecimalWriter {
+    private final int fixedLength;
+    private final long[] scratchLongs = new long[HiveDecimal.SCRATCH_LONGS_LEN];
+    private final byte[] scratchBytes = new byte[HiveDecimal.SCRATCH_BUFFER_LEN_BIG_INTEGER_BYTES];
+    private final byte[] fixed;
+
+    DecimalBinaryWriter(String name, int index, DecimalMetadata decimal, int fixedLength) {
+      super(name, index, decimal);
+      this.fixedLength = fixedLength;
+      this.fixed = new byte[fixedLength];
+    }
+
+    @Override
+    void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      parseHolder(bytes, start, len);
+      int length = holder.bigIntegerBytes(scratchLongs, scratchBytes);
+      if (fixedLength == 0) {
+        consumer.addBinary(Binary.fromReusedByteArray(scratchBytes, 0, length));
+        return;
+      }
+      if (length > fixedLength) {
+        throw decimalFormatException(bytes, start, len);
+      }
+      byte sign = holder.signum() < 0 ? (byte) -1 : 0;
+      Arrays.fill(fixed, 0, fixedLength - length, sign);
+      System.arraycopy(scratchBytes, 0, fixed, fixedLength - length, length);
+      consumer.addBinary(Binary.fromReusedByteArray(fixed));
+    }
+  }
+
+  /**
+   * Timestamp and time columns may hold plain integers instead, written as
+   * they are. The first value of the column decides what is tried first, the
+   * integer check or the fixed pattern parsers on the bytes of the field. Only
+   * values matching neither go through a String and the SimpleDateFormat,
+   * whose ParseException leaves an integer.
+   */
+  abstract static class TimeOrIntegerWriter extends MemoWriter {
+    private final AsciiSequence chars = new AsciiSequence();
+    private boolean firstValue = true;
+    private boolean integerValues;
+
+    TimeOrIntegerWriter(String name, int index, boolean memo) {
+      super(name, index, memo);
+    }
+
+    @Override
+    final void convert(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      if (firstValue) {
+        firstValue = false;
+        integerValues = CSV2ParquetNumberUtils.isInteger(bytes, start, len);
+      }
+      if (integerValues && CSV2ParquetNumberUtils.isInteger(bytes, start, len)) {
+        addInteger(consumer, CSV2ParquetNumberUtils.parseLong(bytes, start, len));
+        return;
+      }
+      long value = parseFixed(chars.set(bytes, start, len));
+      if (value == CSV2ParquetTimestampUtils.NOT_PARSED) {
+        if (!integerValues && CSV2ParquetNumberUtils.isInteger(bytes, start, len)) {
+          addInteger(consumer, CSV2ParquetNumberUtils.parseLong(bytes, start, len));
+          return;
+        }
+        String val = record.getString(index);
         try {
-          Type primtype = schema.getFields().get(i);
-          switch (cols.get(i).getType()) {
-          case BOOLEAN:
-            recordConsumer.addBoolean(rec.asBool);
-            break;
-          case INT96:
-            if (rec.binary.length() < 96 / 8) {
-              throw new IllegalArgumentException(" binary too short for int96");
-            }
-            Binary bin = rec.binary.slice(rec.binary.length() - 96 / 8, rec.binary.length());
-            recordConsumer.addBinary(bin);
-            break;
-          case FLOAT:
-            recordConsumer.addFloat(rec.asFloat);
-            break;
-          case DOUBLE:
-            recordConsumer.addDouble(rec.asDouble);
-            break;
-          case INT32:
-            recordConsumer.addInteger(rec.asInt);
-            break;
-          case INT64:
-            recordConsumer.addLong(rec.asLong);
-            break;
-          case BINARY:
-            recordConsumer.addBinary(rec.binary);
-            break;
-          case FIXED_LEN_BYTE_ARRAY:
-            recordConsumer.addBinary(rec.binary);
-          default:
-            throw new ParquetEncodingException("Unsupported column type: " + cols.get(i).getType());
-          }
-        } catch (java.lang.NumberFormatException e) {
-          throw new IllegalArgumentException("column nr:" + i + " \"" + cols.get(i).getPath()[0] + "\" typed as "
-              + cols.get(i).getType() + " \n value: \"" + val + "\"", e);
+          value = parse(val);
+        } catch (ParseException e) {
+          addInteger(consumer, Long.parseLong(val));
+          return;
         }
-        recordConsumer.endField(cols.get(i).getPath()[0], i);
       }
+      addAndRemember(consumer, value, null);
     }
-    recordConsumer.endMessage();
+
+    /**
+     * @return the value of the fixed pattern of the type, NOT_PARSED otherwise
+     */
+    abstract long parseFixed(CharSequence val);
+
+    abstract long parse(String val) throws ParseException;
+
+    abstract void addInteger(RecordConsumer consumer, long value);
+  }
+
+  static final class TimeWriter extends TimeOrIntegerWriter {
+    private final OriginalType type;
+
+    TimeWriter(String name, int index, OriginalType type, boolean memo) {
+      super(name, index, memo);
+      this.type = type;
+    }
+
+    @Override
+    long parseFixed(CharSequence val) {
+      switch (type) {
+      case TIME_MICROS:
+        return CSV2ParquetTimestampUtils.parseTimeOfDayMicros(val);
+      case TIMESTAMP_MICROS:
+        return CSV2ParquetTimestampUtils.parseEpochMicros(val);
+      default:
+        return CSV2ParquetTimestampUtils.parseEpochMillis(val);
+      }
+    }
+
+    @Override
+    long parse(String val) throws ParseException {
+      return parseTime(type, val);
+    }
+
+    @Override
+    void addInteger(RecordConsumer consumer, long value) {
+      consumer.addLong(value);
+    }
+
+    @Override
+    void add(RecordConsumer consumer, long value, Object object) {
+      consumer.addLong(value);
+    }
+  }
+
+  /**
+   * INT96 timestamps, encoded as NanoTime.toBinary into a buffer reused for
+   * every value; the memo keeps the epoch micros.
+   */
+  static final class Int96Writer extends TimeOrIntegerWriter {
+    private final byte[] buffer = new byte[12];
+
+    Int96Writer(String name, int index, boolean memo) {
+      super(name, index, memo);
+    }
+
+    @Override
+    long parseFixed(CharSequence val) {
+      return CSV2ParquetTimestampUtils.parseEpochMicros(val);
+    }
+
+    @Override
+    long parse(String val) throws ParseException {
+      // see
+      // https://www.programcreek.com/java-api-examples/index.php?source_dir=presto-master/presto-hive/src/test/java/com/facebook/presto/hive/parquet/TestParquetTimestampUtils.java
+      return CSV2ParquetTimestampUtils.parseTimeStampMicros(val, false);
+    }
+
+    @Override
+    void addInteger(RecordConsumer consumer, long value) {
+      consumer.addBinary(int96(value, buffer));
+    }
+
+    @Override
+    void add(RecordConsumer consumer, long value, Object object) {
+      CSV2ParquetTimestampUtils.putInt96(value, buffer);
+      consumer.addBinary(Binary.fromReusedByteArray(buffer));
+    }
+  }
+
+  private static long parseTime(OriginalType type, String val) throws ParseException {
+    switch (type) {
+    case TIME_MICROS:
+      return CSV2ParquetTimestampUtils.parseTimeMicros(val, false);
+    case TIMESTAMP_MICROS:
+      return CSV2ParquetTimestampUtils.parseTimeStampMicros(val, false);
+    default:
+      return CSV2ParquetTimestampUtils.parseTimeStampMillis(val, false);
+    }
+  }
+
+  // an integer written as INT96: 4 zero bytes followed by the big endian long, into buffer
+  private static Binary int96(long l, byte[] buffer) {
+    java.nio.ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN).putInt(0).putLong(l);
+    return Binary.fromReusedByteArray(buffer);
+  }
+
+  /**
+   * Binary csv: decodes 0x..x0 values into the representation of the column
+   * type, other values are written as text.
+   */
+  abstract static class HexWriter extends ColumnWriter {
+    final ParseHexRec.HexDecoder hex = new ParseHexRec.HexDecoder();
+    private final ColumnWriter text;
+
+    HexWriter(ColumnWriter text) {
+      super(text.name, text.index);
+      this.text = text;
+    }
+
+    @Override
+    ValueMemo getMemo() {
+      return text.getMemo();
+    }
+
+    @Override
+    final void write(RecordConsumer consumer, CsvRecord record, byte[] bytes, int start, int len) {
+      if (hex.decode(bytes, start, len)) {
+        writeHex(consumer);
+      } else {
+        text.write(consumer, record, bytes, start, len);
+      }
+    }
+
+    abstract void writeHex(RecordConsumer consumer);
   }
 
-  private Binary stringToBinary(Object value) {
-    return Binary.fromString(value.toString());
+  private static ColumnWriter hexWriter(PrimitiveTypeName type, ColumnWriter text) {
+    switch (type) {
+    case BOOLEAN:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addBoolean(hex.asLong() != 0);
+        }
+      };
+    case INT96:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addBinary(hex.toBinary(12));
+        }
+      };
+    case FLOAT:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addFloat(hex.asFloat());
+        }
+      };
+    case DOUBLE:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addDouble(hex.asDouble());
+        }
+      };
+    case INT32:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addInteger(hex.asInt());
+        }
+      };
+    case INT64:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addLong(hex.asLong());
+        }
+      };
+    default:
+      return new HexWriter(text) {
+        @Override
+        void writeHex(RecordConsumer consumer) {
+          consumer.addBinary(hex.toBinary());
+        }
+      };
+    }
   }
 }
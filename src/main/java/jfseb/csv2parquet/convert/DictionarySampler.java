@@ -0,0 +1,238 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hive.common.util.Murmur3;
+import org.apache.parquet.Log;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.parquet.ColumnEncodings;
+
+/**
+ * Chooses the dictionary encoded columns of a Parquet file from the first
+ * records of the CSV input (-D parquet.dictionary.sample.rows, default 10000)
+ * when -D parquet.enabledictionary is auto. Without the setting the
+ * dictionary stays off, as before.
+ *
+ * The distinct values of each column are counted by a {@link HyperLogLog}
+ * sketch of their bytes, empty fields and the null string of -n are not
+ * counted. The dictionary is chosen if the distinct values plus
+ * their bit packed indexes take at most {@link #MAX_DICTIONARY_RATIO} of the
+ * plain encoded values, and if the distinct values fit into the dictionary
+ * page (the page size of the column), beyond which the writer falls back to
+ * plain encoding anyway. The chosen columns are added to parquet.encodings,
+ * columns already given there and BOOLEAN columns are left alone. The
+ * decisions are logged.
+ *
+ * The sampled records are buffered and replayed by {@link #next()} before the
+ * rest of the input.
+ */
+public class DictionarySampler implements CsvRecordSource {
+  private static final Log LOG = Log.getLog(DictionarySampler.class);
+  public static final String ENABLE_DICTIONARY = "parquet.enabledictionary";
+  public static final String SAMPLE_ROWS = "parquet.dictionary.sample.rows";
+  public static final int DEFAULT_SAMPLE_ROWS = 10000;
+  static final double MAX_DICTIONARY_RATIO = 0.8;
+
+  private final CsvRecordSource input;
+  private final MessageType schema;
+  private final int sampleRows;
+  private final byte[] nullString;
+  private final ExternalSorter sample;
+  private final HyperLogLog[] sketches;
+  private final long[] values;
+  private final long[] valueBytes;
+  private int sampled;
+  private boolean replaying;
+
+  /**
+   * @param input
+   *          the records, their first fields are the columns of schema
+   */
+  public DictionarySampler(CsvRecordSource input, MessageType schema, CSVOptions csvOptions, Configuration conf) {
+    this.input = input;
+    this.schema = schema;
+    this.sampleRows = conf.getInt(SAMPLE_ROWS, DEFAULT_SAMPLE_ROWS);
+    this.nullString = (csvOptions.csvNullString == null) ? new byte[0]
+        : csvOptions.csvNullString.getBytes(StandardCharsets.UTF_8);
+    if (sampleRows <= 0) {
+      throw new IllegalArgumentException(SAMPLE_ROWS + " must be positive, not " + sampleRows);
+    }
+    // without keys the sorter keeps the input order, it spills large samples
+    this.sample = ExternalSorter.of(schema, new String[0], csvOptions, conf);
+    int columns = schema.getFieldCount();
+    this.sketches = new HyperLogLog[columns];
+    for (int i = 0; i < columns; ++i) {
+      sketches[i] = new HyperLogLog();
+    }
+    this.values = new long[columns];
+    this.valueBytes = new long[columns];
+  }
+
+  /**
+   * @return true if the dictionary encoded columns are chosen from a sample,
+   *         only for an explicit -D parquet.enabledictionary=auto unless
+   *         enableDictionary switches the dictionary on for all columns
+   */
+  public static boolean isAdaptive(Configuration conf, boolean enableDictionary) {
+    return !enableDictionary && "auto".equalsIgnoreCase(conf.getTrimmed(ENABLE_DICTIONARY));
+  }
+
+  /**
+   * Reads the sample and adds the chosen columns to parquet.encodings of conf.
+   *
+   * @param pageSize
+   *          the default page size of the columns
+   */
+  public void sample(Configuration conf, int pageSize) throws IOException {
+    while (sampled < sampleRows && input.next()) {
+      sample.add(input);
+      add(input.getRecord());
+      ++sampled;
+    }
+    sample.sort();
+    replaying = true;
+    decide(conf, pageSize);
+  }
+
+  private void add(CsvRecord record) {
+    int columns = Math.min(record.size, values.length);
+    for (int i = 0; i < columns; ++i) {
+      int length = record.ends[i] - record.starts[i];
+      if (length > 0 && !isNull(record.bytes, record.starts[i], length)) {
+        ++values[i];
+        valueBytes[i] += length;
+        sketches[i].addHash(Murmur3.hash64(record.bytes, record.starts[i], length));
+      }
+    }
+  }
+
+  private boolean isNull(byte[] bytes, int start, int length) {
+    if (length != nullString.length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (bytes[start + i] != nullString[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void decide(Configuration conf, int pageSize) {
+    ColumnEncodings encodings = ColumnEncodings.of(conf, pageSize, false);
+    StringBuilder spec = new StringBuilder(conf.getTrimmed(ColumnEncodings.ENCODINGS, ""));
+    List<String> chosen = new ArrayList<String>();
+    for (int i = 0; i < values.length; ++i) {
+      Type field = schema.getType(i);
+      String name = field.getName();
+      if (!field.isPrimitive()
+          || field.asPrimitiveType().getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.BOOLEAN) {
+        continue;
+      }
+      if (encodings.getEncoding(name) != null) {
+        LOG.info("Column " + name + ": " + encodings.getEncoding(name) + " set by " + ColumnEncodings.ENCODINGS);
+        continue;
+      }
+      long n = values[i];
+      if (n == 0) {
+        LOG.info("Column " + name + ": no values sampled -> plain");
+        continue;
+      }
+      long distinct = Math.max(1, Math.min(sketches[i].estimate(), n));
+      double width = getWidth(field.asPrimitiveType(), (double) valueBytes[i] / n);
+      double plainSize = n * width;
+      int bitWidth = Math.max(1, 64 - Long.numberOfLeadingZeros(distinct - 1));
+      double dictionarySize = distinct * width + n * bitWidth / 8.0;
+      boolean fits = distinct * width <= encodings.getPageSize(name);
+      boolean dictionary = fits && dictionarySize <= MAX_DICTIONARY_RATIO * plainSize;
+      LOG.info(String.format(Locale.ROOT, "Column %s: ~%d distinct of %d sampled values, %.1f bytes per value,"
+          + " dictionary %.0f%% of plain%s -> %s", name, distinct, n, width, 100 * dictionarySize / plainSize,
+          fits ? "" : ", larger than the page", dictionary ? "dictionary" : "plain"));
+      if (dictionary) {
+        chosen.add(name);
+        spec.append(spec.length() > 0 ? "," : "").append(name).append(':').append("dictionary");
+      }
+    }
+    LOG.info("parquet.enabledictionary=auto, dictionary encoded columns " + chosen + " of " + sampled
+        + " sampled records");
+    if (!chosen.isEmpty()) {
+      conf.set(ColumnEncodings.ENCODINGS, spec.toString());
+    }
+  }
+
+  /**
+   * @return the plain encoded bytes of a value, binary values with their 4
+   *         byte length
+   */
+  private static double getWidth(PrimitiveType type, double averageLength) {
+    switch (type.getPrimitiveTypeName()) {
+    case INT32:
+    case FLOAT:
+      return 4;
+    case INT64:
+    case DOUBLE:
+      return 8;
+    case INT96:
+      return 12;
+    case FIXED_LEN_BYTE_ARRAY:
+      return type.getTypeLength();
+    default:
+      return 4 + averageLength;
+    }
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    if (replaying) {
+      if (sample.next()) {
+        return true;
+      }
+      replaying = false;
+      sample.close();
+    }
+    return input.next();
+  }
+
+  @Override
+  public CsvRecord getRecord() {
+    return replaying ? sample.getRecord() : input.getRecord();
+  }
+
+  @Override
+  public long getRecordNumber() {
+    return replaying ? sample.getRecordNumber() : input.getRecordNumber();
+  }
+
+  @Override
+  public int getFieldCount() {
+    return replaying ? sample.getFieldCount() : input.getFieldCount();
+  }
+
+  @Override
+  public boolean isLastFieldEmpty() {
+    return replaying ? sample.isLastFieldEmpty() : input.isLastFieldEmpty();
+  }
+
+  @Override
+  public long getOffset() {
+    return input.getOffset();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      sample.close();
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,750 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.Log;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetNumberUtils;
+
+/**
+ * Sorts CSV records by the columns of --sort-by in a bounded amount of
+ * memory.
+ *
+ * The records are packed one after the other into a byte array together with
+ * their keys: numbers are parsed once when the record is added, decimals into
+ * their unscaled value at the scale of the column, rounded half up as they
+ * are written. Decimals of more than 18 digits at that scale are kept as text
+ * and compared as BigDecimals at the same scale. All other values, including
+ * dates and timestamps, are ordered by their bytes, which matches the order
+ * of ISO formatted values. NULL (empty) values come first. When the records reach the memory budget of
+ * -D sort.memory (default 256m) they are sorted and spilled as a run to a
+ * temporary file in -D sort.tmpdir (default java.io.tmpdir). At the end the
+ * runs and the records still in memory are merged through a priority queue,
+ * runs are merged {@link #MERGE_FACTOR} at a time until few enough are left.
+ * The sort is stable, records with equal keys keep their input order.
+ *
+ * Usage: {@link #add} the current record of the input for all records, then
+ * {@link #sort()} and read the sorted records with {@link #next()}.
+ * {@link #close()} removes the runs.
+ */
+public class ExternalSorter implements CsvRecordSource {
+  private static final Log LOG = Log.getLog(ExternalSorter.class);
+  public static final String MEMORY = "sort.memory";
+  public static final String TMPDIR = "sort.tmpdir";
+  public static final long DEFAULT_MEMORY = 256L << 20;
+  static final int MERGE_FACTOR = 64;
+  // records are addressed by int offsets
+  static final long MAX_MEMORY = 1L << 30;
+
+  enum KeyType {
+    LONG, DOUBLE, DECIMAL, TEXT
+  }
+
+  // A record is: the int length of the rest, the long record number, the int
+  // field count and the last field empty byte of the input, the int number of
+  // fields, per key a byte (0 for NULL, WIDE_DECIMAL for a decimal kept as
+  // text) and 8 bytes (the number, or the offset and length of the text), the
+  // int end offsets of the fields and the field bytes. Offsets are relative to
+  // the start of the record.
+  private static final int NUMBER = 4;
+  private static final int FIELD_COUNT = 12;
+  private static final int LAST_EMPTY = 16;
+  private static final int FIELDS = 17;
+  private static final int KEYS = 21;
+  private static final int KEY_SIZE = 9;
+  private static final byte WIDE_DECIMAL = 2;
+
+  private final int[] keyFields;
+  private final KeyType[] keyTypes;
+  // the scales of the DECIMAL keys
+  private final int[] keyScales;
+  private final byte[] nullString;
+  private final long memory;
+  private final File tmpDir;
+
+  // the records in memory
+  private byte[] arena = new byte[64 * 1024];
+  private int arenaSize;
+  private int[] offsets = new int[1024];
+  private int count;
+  private final List<File> runs = new ArrayList<File>();
+  private final List<File> files = new ArrayList<File>();
+
+  // the merged output
+  private PriorityQueue<Run> queue;
+  private Run current;
+  private final CsvRecord record = new CsvRecord();
+  private long recordNumber;
+  private int fieldCount;
+  private boolean lastFieldEmpty;
+
+  private long rows;
+  private long bytes;
+  private long bytesRead;
+  private long spilledBytes;
+  private int spilledRuns;
+
+  ExternalSorter(int[] keyFields, KeyType[] keyTypes, int[] keyScales, String nullString, long memory,
+      File tmpDir) {
+    this.keyFields = keyFields;
+    this.keyTypes = keyTypes;
+    this.keyScales = keyScales;
+    this.nullString = (nullString == null ? "" : nullString).getBytes(StandardCharsets.UTF_8);
+    this.memory = Math.min(memory, MAX_MEMORY);
+    this.tmpDir = tmpDir;
+  }
+
+  /**
+   * @return the sorter of the records of schema by columns
+   */
+  public static ExternalSorter of(MessageType schema, String[] columns, CSVOptions csvOptions, Configuration conf) {
+    List<String> fieldNames = new ArrayList<String>();
+    for (Type field : schema.getFields()) {
+      fieldNames.add(field.getName());
+    }
+    int[] keyFields = getKeyFields(fieldNames, columns);
+    KeyType[] keyTypes = new KeyType[columns.length];
+    int[] keyScales = new int[columns.length];
+    for (int k = 0; k < columns.length; ++k) {
+      Type field = schema.getType(keyFields[k]);
+      if (!field.isPrimitive()) {
+        throw new IllegalArgumentException("Cannot sort by column " + columns[k] + " of type " + field
+            + ", only primitive columns can be sorted by");
+      }
+      keyTypes[k] = getKeyType(field.asPrimitiveType());
+      if (keyTypes[k] == KeyType.DECIMAL) {
+        keyScales[k] = field.asPrimitiveType().getDecimalMetadata().getScale();
+      }
+    }
+    return new ExternalSorter(keyFields, keyTypes, keyScales, csvOptions.csvNullString, getMemory(conf),
+        getTmpDir(conf));
+  }
+
+  /**
+   * @return the sorter of the records of the ORC schema by columns
+   */
+  public static ExternalSorter of(TypeDescription schema, String[] columns, CSVOptions csvOptions,
+      Configuration conf) {
+    int[] keyFields = getKeyFields(schema.getFieldNames(), columns);
+    KeyType[] keyTypes = new KeyType[columns.length];
+    int[] keyScales = new int[columns.length];
+    for (int k = 0; k < columns.length; ++k) {
+      TypeDescription field = schema.getChildren().get(keyFields[k]);
+      keyTypes[k] = getKeyType(columns[k], field);
+      if (keyTypes[k] == KeyType.DECIMAL) {
+        keyScales[k] = field.getScale();
+      }
+    }
+    return new ExternalSorter(keyFields, keyTypes, keyScales, csvOptions.csvNullString, getMemory(conf),
+        getTmpDir(conf));
+  }
+
+  private static int[] getKeyFields(List<String> fieldNames, String[] columns) {
+    int[] keyFields = new int[columns.length];
+    for (int k = 0; k < columns.length; ++k) {
+      keyFields[k] = fieldNames.indexOf(columns[k]);
+      if (keyFields[k] < 0) {
+        throw new IllegalArgumentException("Unknown column " + columns[k] + " in --sort-by, the schema has "
+            + fieldNames);
+      }
+      if (Arrays.asList(columns).subList(0, k).contains(columns[k])) {
+        throw new IllegalArgumentException("Column " + columns[k] + " is given twice in --sort-by");
+      }
+    }
+    return keyFields;
+  }
+
+  static KeyType getKeyType(PrimitiveType field) {
+    OriginalType originalType = field.getOriginalType();
+    switch (field.getPrimitiveTypeName()) {
+    case INT32:
+    case INT64:
+      if (originalType == null || originalType.name().startsWith("INT_")
+          || originalType.name().startsWith("UINT_")) {
+        return KeyType.LONG;
+      }
+      // dates, times and timestamps are written as text
+      return originalType == OriginalType.DECIMAL ? KeyType.DECIMAL : KeyType.TEXT;
+    case FLOAT:
+    case DOUBLE:
+      return KeyType.DOUBLE;
+    default:
+      return originalType == OriginalType.DECIMAL ? KeyType.DECIMAL : KeyType.TEXT;
+    }
+  }
+
+  static KeyType getKeyType(String column, TypeDescription field) {
+    switch (field.getCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return KeyType.LONG;
+    case FLOAT:
+    case DOUBLE:
+      return KeyType.DOUBLE;
+    case DECIMAL:
+      return KeyType.DECIMAL;
+    case STRUCT:
+    case LIST:
+    case MAP:
+    case UNION:
+      throw new IllegalArgumentException("Cannot sort by column " + column + " of type " + field
+          + ", only primitive columns can be sorted by");
+    default:
+      return KeyType.TEXT;
+    }
+  }
+
+  private static long getMemory(Configuration conf) {
+    long memory = conf.getLongBytes(MEMORY, DEFAULT_MEMORY);
+    if (memory <= 0) {
+      throw new IllegalArgumentException(" " + MEMORY + " must be positive, not " + conf.get(MEMORY));
+    }
+    return memory;
+  }
+
+  private static File getTmpDir(Configuration conf) {
+    return new File(conf.get(TMPDIR, System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * Adds the current record of input.
+   */
+  public void add(CsvRecordSource input) throws IOException {
+    if (queue != null) {
+      throw new IllegalStateException("records added after sort()");
+    }
+    CsvRecord rec = input.getRecord();
+    int fields = rec.size();
+    int ends = KEYS + keyFields.length * KEY_SIZE;
+    int length = ends + 4 * fields;
+    for (int i = 0; i < fields; ++i) {
+      length += rec.getLength(i);
+    }
+    // the offsets and the copy of them taken by the merge sort
+    if (count > 0 && (long) arenaSize + length + 8L * (count + 1) > memory) {
+      spill();
+    }
+    reserve(length);
+    int start = arenaSize;
+    putInt(arena, start, length - 4);
+    putLong(arena, start + NUMBER, input.getRecordNumber());
+    putInt(arena, start + FIELD_COUNT, input.getFieldCount());
+    arena[start + LAST_EMPTY] = (byte) (input.isLastFieldEmpty() ? 1 : 0);
+    putInt(arena, start + FIELDS, fields);
+    int end = ends + 4 * fields;
+    for (int i = 0; i < fields; ++i) {
+      int fieldLength = rec.getLength(i);
+      System.arraycopy(rec.getBytes(), rec.getStart(i), arena, start + end, fieldLength);
+      end += fieldLength;
+      putInt(arena, start + ends + 4 * i, end);
+    }
+    for (int k = 0; k < keyFields.length; ++k) {
+      setKey(start, k);
+    }
+    arenaSize += length;
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, count * 2);
+    }
+    offsets[count++] = start;
+    ++rows;
+    bytes += length;
+  }
+
+  private void reserve(int length) {
+    if (arenaSize + length <= arena.length) {
+      return;
+    }
+    long size = Math.max(Math.min(2L * arena.length, memory), (long) arenaSize + length);
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("record of " + length + " bytes does not fit the sort buffer");
+    }
+    arena = Arrays.copyOf(arena, (int) size);
+  }
+
+  private void setKey(int start, int k) {
+    int slot = start + KEYS + k * KEY_SIZE;
+    int fields = getInt(arena, start + FIELDS);
+    int field = keyFields[k];
+    int ends = start + KEYS + keyFields.length * KEY_SIZE;
+    if (field >= fields) {
+      arena[slot] = 0;
+      return;
+    }
+    int fieldStart = (field == 0) ? ends - start + 4 * fields : getInt(arena, ends + 4 * (field - 1));
+    int fieldLength = getInt(arena, ends + 4 * field) - fieldStart;
+    if (fieldLength == 0 || isNullString(start + fieldStart, fieldLength)) {
+      arena[slot] = 0;
+      return;
+    }
+    arena[slot] = 1;
+    switch (keyTypes[k]) {
+    case LONG:
+      putLong(arena, slot + 1, CSV2ParquetNumberUtils.parseLong(arena, start + fieldStart, fieldLength));
+      break;
+    case DOUBLE:
+      putLong(arena, slot + 1, Double.doubleToLongBits(CSV2ParquetNumberUtils.parseDouble(arena, start
+          + fieldStart, fieldLength)));
+      break;
+    case DECIMAL:
+      long unscaled = CSV2ParquetNumberUtils.parseDecimal(arena, start + fieldStart, fieldLength,
+          CSV2ParquetNumberUtils.MAX_LONG_DECIMAL_PRECISION, keyScales[k]);
+      if (unscaled != CSV2ParquetNumberUtils.NOT_PARSED) {
+        putLong(arena, slot + 1, unscaled);
+        break;
+      }
+      // checked here, compared as text
+      toDecimal(arena, start + fieldStart, fieldLength, keyScales[k]);
+      arena[slot] = WIDE_DECIMAL;
+      putInt(arena, slot + 1, fieldStart);
+      putInt(arena, slot + 5, fieldLength);
+      break;
+    default:
+      putInt(arena, slot + 1, fieldStart);
+      putInt(arena, slot + 5, fieldLength);
+      break;
+    }
+  }
+
+  private boolean isNullString(int off, int len) {
+    if (len != nullString.length) {
+      return false;
+    }
+    for (int i = 0; i < len; ++i) {
+      if (arena[off + i] != nullString[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the keys of the records at a[pa] and b[pb].
+   */
+  int compare(byte[] a, int pa, byte[] b, int pb) {
+    for (int k = 0; k < keyTypes.length; ++k) {
+      int sa = pa + KEYS + k * KEY_SIZE;
+      int sb = pb + KEYS + k * KEY_SIZE;
+      if ((a[sa] == 0) != (b[sb] == 0)) {
+        return a[sa] == 0 ? -1 : 1;
+      }
+      if (a[sa] == 0) {
+        continue;
+      }
+      int c;
+      switch (keyTypes[k]) {
+      case LONG:
+        c = Long.compare(getLong(a, sa + 1), getLong(b, sb + 1));
+        break;
+      case DOUBLE:
+        c = Double.compare(Double.longBitsToDouble(getLong(a, sa + 1)), Double.longBitsToDouble(getLong(b, sb + 1)));
+        break;
+      case DECIMAL:
+        if (a[sa] != WIDE_DECIMAL && b[sb] != WIDE_DECIMAL) {
+          c = Long.compare(getLong(a, sa + 1), getLong(b, sb + 1));
+        } else {
+          c = getDecimalKey(a, pa, sa, keyScales[k]).compareTo(getDecimalKey(b, pb, sb, keyScales[k]));
+        }
+        break;
+      default:
+        c = compareBytes(a, pa + getInt(a, sa + 1), getInt(a, sa + 5), b, pb + getInt(b, sb + 1),
+            getInt(b, sb + 5));
+        break;
+      }
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the decimal key of the record at p with its slot at s
+   */
+  private static BigDecimal getDecimalKey(byte[] b, int p, int s, int scale) {
+    if (b[s] != WIDE_DECIMAL) {
+      return BigDecimal.valueOf(getLong(b, s + 1), scale);
+    }
+    return toDecimal(b, p + getInt(b, s + 1), getInt(b, s + 5), scale);
+  }
+
+  /**
+   * @return the decimal of the slice at scale, rounded half up as written
+   */
+  private static BigDecimal toDecimal(byte[] b, int off, int len, int scale) {
+    String value = new String(b, off, len, StandardCharsets.UTF_8);
+    try {
+      return new BigDecimal(value.trim()).setScale(scale, RoundingMode.HALF_UP);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("For input string: \"" + value + "\"");
+    }
+  }
+
+  private static int compareBytes(byte[] a, int pa, int la, byte[] b, int pb, int lb) {
+    int n = Math.min(la, lb);
+    for (int i = 0; i < n; ++i) {
+      int c = (a[pa + i] & 0xff) - (b[pb + i] & 0xff);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return la - lb;
+  }
+
+  /**
+   * Sorts the offsets of the records in memory, a stable merge sort.
+   */
+  private void sortRecords() {
+    mergeSort(offsets, Arrays.copyOf(offsets, count), 0, count);
+  }
+
+  private void mergeSort(int[] a, int[] tmp, int lo, int hi) {
+    if (hi - lo <= 16) {
+      for (int i = lo + 1; i < hi; ++i) {
+        int x = a[i];
+        int j = i;
+        for (; j > lo && compare(arena, a[j - 1], arena, x) > 0; --j) {
+          a[j] = a[j - 1];
+        }
+        a[j] = x;
+      }
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    mergeSort(a, tmp, lo, mid);
+    mergeSort(a, tmp, mid, hi);
+    if (compare(arena, a[mid - 1], arena, a[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(a, lo, tmp, lo, hi - lo);
+    int i = lo;
+    int j = mid;
+    for (int o = lo; o < hi; ++o) {
+      if (j >= hi || (i < mid && compare(arena, tmp[i], arena, tmp[j]) <= 0)) {
+        a[o] = tmp[i++];
+      } else {
+        a[o] = tmp[j++];
+      }
+    }
+  }
+
+  private File createRun() throws IOException {
+    File run = File.createTempFile("sort", ".run", tmpDir);
+    files.add(run);
+    return run;
+  }
+
+  /**
+   * Writes the records in memory as a sorted run.
+   */
+  private void spill() throws IOException {
+    sortRecords();
+    File run = createRun();
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(run), 64 * 1024);
+    try {
+      for (int i = 0; i < count; ++i) {
+        out.write(arena, offsets[i], getInt(arena, offsets[i]) + 4);
+      }
+    } finally {
+      out.close();
+    }
+    LOG.info("Spilled " + count + " records, " + arenaSize + " bytes to " + run);
+    runs.add(run);
+    spilledBytes += arenaSize;
+    ++spilledRuns;
+    arenaSize = 0;
+    count = 0;
+  }
+
+  /**
+   * Ends the input, the sorted records are read by {@link #next()}.
+   */
+  public void sort() throws IOException {
+    sortRecords();
+    while (runs.size() > MERGE_FACTOR) {
+      mergeRuns();
+    }
+    queue = open(runs);
+    Run memoryRun = new MemoryRun(runs.size());
+    if (memoryRun.next()) {
+      queue.add(memoryRun);
+    }
+  }
+
+  /**
+   * Merges the runs into MERGE_FACTOR times fewer ones.
+   */
+  private void mergeRuns() throws IOException {
+    List<File> merged = new ArrayList<File>();
+    for (int i = 0; i < runs.size(); i += MERGE_FACTOR) {
+      List<File> group = runs.subList(i, Math.min(i + MERGE_FACTOR, runs.size()));
+      if (group.size() == 1) {
+        merged.add(group.get(0));
+        continue;
+      }
+      File run = createRun();
+      PriorityQueue<Run> runQueue = open(group);
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(run), 64 * 1024);
+      Run head = null;
+      try {
+        while ((head = advance(runQueue, head)) != null) {
+          out.write(head.buf, head.pos, getInt(head.buf, head.pos) + 4);
+        }
+      } finally {
+        out.close();
+        for (Run open : runQueue) {
+          open.close();
+        }
+      }
+      for (File done : group) {
+        delete(done);
+      }
+      merged.add(run);
+    }
+    runs.clear();
+    runs.addAll(merged);
+  }
+
+  private PriorityQueue<Run> open(List<File> runFiles) throws IOException {
+    PriorityQueue<Run> runQueue = new PriorityQueue<Run>(runFiles.size() + 1, new Comparator<Run>() {
+      @Override
+      public int compare(Run a, Run b) {
+        int c = ExternalSorter.this.compare(a.buf, a.pos, b.buf, b.pos);
+        // equal keys in input order
+        return (c != 0) ? c : Integer.compare(a.index, b.index);
+      }
+    });
+    for (int i = 0; i < runFiles.size(); ++i) {
+      Run run = new FileRun(i, runFiles.get(i));
+      if (run.next()) {
+        runQueue.add(run);
+      } else {
+        run.close();
+      }
+    }
+    return runQueue;
+  }
+
+  /**
+   * Moves the previous head of runQueue to its next record.
+   *
+   * @return the run with the smallest record, null if all are exhausted
+   */
+  private static Run advance(PriorityQueue<Run> runQueue, Run head) throws IOException {
+    if (head != null) {
+      if (head.next()) {
+        runQueue.add(head);
+      } else {
+        head.close();
+      }
+    }
+    return runQueue.poll();
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    if (queue == null) {
+      throw new IllegalStateException("records read before sort()");
+    }
+    current = advance(queue, current);
+    if (current == null) {
+      record.clear();
+      return false;
+    }
+    byte[] buf = current.buf;
+    int pos = current.pos;
+    int fields = getInt(buf, pos + FIELDS);
+    int ends = pos + KEYS + keyTypes.length * KEY_SIZE;
+    int start = ends + 4 * fields;
+    record.bytes = buf;
+    record.clear();
+    for (int i = 0; i < fields; ++i) {
+      int end = pos + getInt(buf, ends + 4 * i);
+      record.addField(start, end);
+      start = end;
+    }
+    recordNumber = getLong(buf, pos + NUMBER);
+    fieldCount = getInt(buf, pos + FIELD_COUNT);
+    lastFieldEmpty = buf[pos + LAST_EMPTY] != 0;
+    bytesRead += getInt(buf, pos) + 4;
+    return true;
+  }
+
+  @Override
+  public CsvRecord getRecord() {
+    return record;
+  }
+
+  @Override
+  public long getRecordNumber() {
+    return recordNumber;
+  }
+
+  @Override
+  public int getFieldCount() {
+    return fieldCount;
+  }
+
+  @Override
+  public boolean isLastFieldEmpty() {
+    return lastFieldEmpty;
+  }
+
+  @Override
+  public long getOffset() {
+    return bytesRead;
+  }
+
+  /**
+   * @return the size of all records added
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public int getSpilledRuns() {
+    return spilledRuns;
+  }
+
+  public String getMetrics() {
+    return "sorted records: " + rows + ", " + bytes + " bytes, spilled runs: " + spilledRuns + ", "
+        + spilledBytes + " bytes";
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (queue != null) {
+      for (Run run : queue) {
+        run.close();
+      }
+      queue.clear();
+    }
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+    for (File file : files) {
+      delete(file);
+    }
+    files.clear();
+    arena = new byte[0];
+    count = 0;
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Could not delete " + file);
+    }
+  }
+
+  /**
+   * The sorted records of a run, the current one at buf[pos].
+   */
+  abstract static class Run {
+    final int index;
+    byte[] buf;
+    int pos;
+
+    Run(int index) {
+      this.index = index;
+    }
+
+    abstract boolean next() throws IOException;
+
+    void close() throws IOException {
+    }
+  }
+
+  private static final class FileRun extends Run {
+    private final DataInputStream in;
+
+    FileRun(int index, File file) throws IOException {
+      super(index);
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      this.buf = new byte[1024];
+    }
+
+    @Override
+    boolean next() throws IOException {
+      int length;
+      try {
+        length = in.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
+      if (buf.length < length + 4) {
+        buf = new byte[Math.max(length + 4, 2 * buf.length)];
+      }
+      putInt(buf, 0, length);
+      in.readFully(buf, 4, length);
+      return true;
+    }
+
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private final class MemoryRun extends Run {
+    private int next;
+
+    MemoryRun(int index) {
+      super(index);
+      this.buf = arena;
+    }
+
+    @Override
+    boolean next() {
+      if (next == count) {
+        return false;
+      }
+      pos = offsets[next++];
+      return true;
+    }
+  }
+
+  static int getInt(byte[] b, int off) {
+    return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+  }
+
+  static void putInt(byte[] b, int off, int value) {
+    b[off] = (byte) (value >>> 24);
+    b[off + 1] = (byte) (value >>> 16);
+    b[off + 2] = (byte) (value >>> 8);
+    b[off + 3] = (byte) value;
+  }
+
+  static long getLong(byte[] b, int off) {
+    return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xffffffffL);
+  }
+
+  static void putLong(byte[] b, int off, long value) {
+    putInt(b, off, (int) (value >>> 32));
+    putInt(b, off + 4, (int) value);
+  }
+}
@@ -0,0 +1,55 @@
+package jfseb.csv2parquet.convert;
+
+/**
+ * Estimates the number of distinct values of a column from their 64 bit
+ * hashes in 2^p one byte registers (HyperLogLog, with the linear counting
+ * correction for small counts). With the default p of 12 the registers take
+ * 4k and the standard error is about 1.6%.
+ */
+public final class HyperLogLog {
+  public static final int DEFAULT_P = 12;
+
+  private final int p;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_P);
+  }
+
+  public HyperLogLog(int p) {
+    if (p < 4 || p > 18) {
+      throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18, not " + p);
+    }
+    this.p = p;
+    this.registers = new byte[1 << p];
+  }
+
+  public void addHash(long hash) {
+    int register = (int) (hash >>> (64 - p));
+    // the position of the first 1 bit of the rest, at most 64 - p + 1
+    int rank = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+    if (rank > registers[register]) {
+      registers[register] = (byte) rank;
+    }
+  }
+
+  /**
+   * @return the estimated number of distinct hashes added
+   */
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte rank : registers) {
+      sum += 1.0 / (1L << rank);
+      if (rank == 0) {
+        ++zeros;
+      }
+    }
+    double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+}
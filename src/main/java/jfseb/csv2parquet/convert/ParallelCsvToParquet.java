@@ -0,0 +1,519 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Log;
+import org.apache.parquet.Version;
+import org.apache.parquet.bytes.BytesUtils;
+import org.apache.parquet.format.Util;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.schema.MessageType;
+
+import jfseb.csv2parquet.Utils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.parquet.CsvParquetWriter;
+import jfseb.csv2parquet.parquet.ParquetIndex;
+
+/**
+ * Converts one uncompressed CSV file with several threads into a single
+ * Parquet file.
+ *
+ * The input is cut into byte ranges, each range start is moved to the next
+ * plausible record start: a line break after which the following records
+ * tokenize into the same number of fields as the first data record. This
+ * skips line breaks within quoted fields. Every range is converted into a
+ * temporary part file by its own writer, the parts are then concatenated in
+ * input order by copying their row groups into the output file. All workers
+ * buffer a row group at the same time, so their writers should share the
+ * block size, see {@link PartWriterFactory}.
+ *
+ * Each worker starts at its range start and converts all records starting
+ * before the range end, so it stops at a true record boundary. If that
+ * boundary differs from the start chosen for the next range (the resync
+ * heuristic failed), the next range is converted again from the true boundary
+ * before stitching, all such ranges in parallel. So the output always has the
+ * same rows in the same order as a sequential conversion (each range ends its
+ * own row group, though).
+ *
+ * A probe or worker reads at most {@link #MAX_OVERRUN} bytes past its end, so
+ * a false start within a quoted field cannot buffer the rest of the file. A
+ * probe hitting that limit rejects its candidate, a range hitting it is
+ * converted again without the limit like a range with a false start.
+ */
+public class ParallelCsvToParquet {
+  private static final Log LOG = Log.getLog(ParallelCsvToParquet.class);
+
+  /** Ranges are not made smaller than this. */
+  public static final long MIN_RANGE_SIZE = 16 * 1024 * 1024;
+  /** Records which must tokenize consistently after a candidate record start. */
+  static final int VALIDATE_RECORDS = 8;
+  /** Line breaks tried as record start before giving up on a range. */
+  static final int MAX_CANDIDATES = 256;
+  private static final int PROBE_BUFFER_SIZE = 64 * 1024;
+  /** Bytes a probe or worker may read past its end. */
+  static final long MAX_OVERRUN = 4 * 1024 * 1024;
+
+  /**
+   * Creates the writer of one part file, all parts must be written with the
+   * same schema and settings. The workers buffer a row group each, so the
+   * writers are given a share of the block size, e.g. block size / threads.
+   */
+  public interface PartWriterFactory {
+    CsvParquetWriter create(Path path) throws IOException;
+  }
+
+  private final File csvFile;
+  private final CSVOptions csvOptions;
+  private final MessageType schema;
+  private final PartWriterFactory writerFactory;
+  private final boolean mapInput;
+  private final int mapWindowSize;
+  private final Configuration conf;
+  private long minRangeSize = MIN_RANGE_SIZE;
+  private long maxOverrun = MAX_OVERRUN;
+  private int[] projection;
+  // set when the conversion failed, stops the remaining workers
+  private volatile boolean aborted;
+
+  public ParallelCsvToParquet(File csvFile, CSVOptions csvOptions, MessageType schema, PartWriterFactory writerFactory,
+      boolean mapInput, int mapWindowSize, Configuration conf) {
+    this.csvFile = csvFile;
+    this.csvOptions = csvOptions;
+    this.schema = schema;
+    this.writerFactory = writerFactory;
+    this.mapInput = mapInput;
+    this.mapWindowSize = mapWindowSize;
+    this.conf = (conf != null) ? conf : new Configuration();
+  }
+
+  void setMinRangeSize(long minRangeSize) {
+    this.minRangeSize = minRangeSize;
+  }
+
+  void setMaxOverrun(long maxOverrun) {
+    this.maxOverrun = maxOverrun;
+  }
+
+  /**
+   * Converts only the given input columns, the schema and writers must be
+   * projected accordingly.
+   */
+  public void setProjection(int[] columns) {
+    this.projection = columns;
+  }
+
+  /** One byte range and the part file it is converted into. */
+  static class Range {
+    final int index;
+    final Path part;
+    long start;
+    final long end;
+    // offset after the last converted record, filled by the worker
+    long actualEnd;
+    long records;
+    // the worker hit the read limit past end, the range is converted again
+    boolean overrun;
+    // a failure is only reported if the range started at a true record boundary
+    Throwable failure;
+
+    Range(int index, Path part, long start, long end) {
+      this.index = index;
+      this.part = part;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * Converts the file into output using threads workers.
+   */
+  public void convert(Path output, int threads) throws IOException {
+    long fileSize = csvFile.length();
+    long dataStart;
+    int expectedFields;
+    CsvTokenizer tokenizer = openTokenizer(0, PROBE_BUFFER_SIZE);
+    try {
+      tokenizer.skipRecords(csvOptions.csvHeaderLines);
+      dataStart = tokenizer.getOffset();
+      expectedFields = tokenizer.next() ? tokenizer.getRecord().size() : 0;
+    } finally {
+      Utils.closeQuietly(tokenizer);
+    }
+
+    List<Range> ranges = splitRanges(output, dataStart, fileSize, threads, expectedFields);
+    LOG.info("Converting " + csvFile.getName() + " in " + ranges.size() + " ranges with " + threads + " threads");
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    FileSystem fs = output.getFileSystem(conf);
+    try {
+      List<Future<Range>> futures = new ArrayList<Future<Range>>();
+      for (Range range : ranges) {
+        futures.add(submit(executor, range, Math.min(range.end + maxOverrun, fileSize)));
+      }
+      for (Future<Range> future : futures) {
+        waitFor(future);
+      }
+      // repair ranges whose start was not the record boundary the predecessor stopped at, in parallel; a
+      // repair whose predecessor was repaired in the same round may have started wrongly again, but each
+      // round makes at least the first repaired range final
+      List<Range> repairs;
+      while (!(repairs = findRepairs(ranges, dataStart)).isEmpty()) {
+        futures.clear();
+        for (Range range : repairs) {
+          fs.delete(range.part, false);
+          fs.delete(ParquetIndex.getIndexFile(range.part), false);
+          futures.add(submit(executor, range, fileSize));
+        }
+        for (Future<Range> future : futures) {
+          waitFor(future);
+        }
+      }
+      stitch(output, ranges);
+    } finally {
+      aborted = true;
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      for (Range range : ranges) {
+        fs.delete(range.part, false);
+        fs.delete(ParquetIndex.getIndexFile(range.part), false);
+      }
+    }
+  }
+
+  private Future<Range> submit(ExecutorService executor, final Range range, final long inputEnd) {
+    return executor.submit(new Callable<Range>() {
+      @Override
+      public Range call() throws Exception {
+        try {
+          convertRange(range, inputEnd);
+        } catch (Throwable e) {
+          // also errors, a range with a false start may exhaust the memory
+          range.failure = e;
+        }
+        return range;
+      }
+    });
+  }
+
+  /**
+   * Moves the start of each range which did not start at the record boundary
+   * its predecessor stopped at, or which read too far past its end, to that
+   * boundary. A failed range is converted again as well if a range before it
+   * is, otherwise its failure is thrown.
+   *
+   * @return the ranges to convert again
+   */
+  private List<Range> findRepairs(List<Range> ranges, long dataStart) throws IOException {
+    List<Range> repairs = new ArrayList<Range>();
+    long expectedStart = dataStart;
+    for (Range range : ranges) {
+      if (range.start != expectedStart || range.overrun || range.failure != null && !repairs.isEmpty()) {
+        LOG.info("Range " + range.index + (range.overrun ? " read more than " + maxOverrun + " bytes past its end"
+            : range.start != expectedStart ? " started at " + range.start + " instead of record start "
+                + expectedStart : " failed after a range converted again") + ", converting it again");
+        range.start = expectedStart;
+        range.overrun = false;
+        range.failure = null;
+        repairs.add(range);
+      } else if (range.failure instanceof IOException) {
+        throw (IOException) range.failure;
+      } else if (range.failure instanceof RuntimeException) {
+        throw (RuntimeException) range.failure;
+      } else if (range.failure instanceof Error) {
+        throw (Error) range.failure;
+      } else if (range.failure != null) {
+        throw new IOException(range.failure);
+      }
+      // the end of a range being repaired is not known yet, the successor is checked again after the repair
+      expectedStart = range.actualEnd;
+    }
+    return repairs;
+  }
+
+  private static void waitFor(Future<Range> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while converting", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private CsvTokenizer openTokenizer(long start, int bufferSize) throws IOException {
+    if (mapInput) {
+      return CsvTokenizer.mapped(csvFile, csvOptions, mapWindowSize, start);
+    }
+    return CsvTokenizer.open(csvFile, csvOptions, start, bufferSize);
+  }
+
+  List<Range> splitRanges(Path output, long dataStart, long fileSize, int threads, int expectedFields)
+      throws IOException {
+    long rangeSize = Math.max(minRangeSize, (fileSize - dataStart + threads - 1) / Math.max(threads, 1));
+    List<Range> ranges = new ArrayList<Range>();
+    long start = dataStart;
+    while (start < fileSize || ranges.isEmpty()) {
+      long next = (rangeSize < fileSize - start) ? findRecordStart(start + rangeSize, fileSize, expectedFields)
+          : fileSize;
+      ranges.add(new Range(ranges.size(), partPath(output, ranges.size()), start, next));
+      start = next;
+    }
+    return ranges;
+  }
+
+  private static Path partPath(Path output, int index) {
+    return new Path(output.getParent(), "." + output.getName() + ".range" + index);
+  }
+
+  /**
+   * @return the first offset at or after from which is followed by
+   *         VALIDATE_RECORDS records of expectedFields fields, if there is none
+   *         the first line start found, fileSize if there is no further line.
+   */
+  long findRecordStart(long from, long fileSize, int expectedFields) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(csvFile, "r");
+    long firstCandidate = -1;
+    try {
+      byte[] chunk = new byte[PROBE_BUFFER_SIZE];
+      // a line break directly before from makes from itself a candidate
+      long pos = from - 1;
+      int candidates = 0;
+      while (pos < fileSize && candidates < MAX_CANDIDATES) {
+        raf.seek(pos);
+        int n = raf.read(chunk);
+        if (n <= 0) {
+          break;
+        }
+        for (int i = 0; i < n && candidates < MAX_CANDIDATES; ++i) {
+          byte c = chunk[i];
+          if (c != '\n' && c != '\r') {
+            continue;
+          }
+          if (c == '\r') {
+            // CR LF ends the record after the LF
+            if (i + 1 < n ? chunk[i + 1] == '\n' : pos + i + 1 < fileSize && peek(raf, pos + i + 1) == '\n') {
+              continue;
+            }
+          }
+          long candidate = pos + i + 1;
+          if (candidate >= fileSize) {
+            return fileSize;
+          }
+          ++candidates;
+          if (firstCandidate < 0) {
+            firstCandidate = candidate;
+          }
+          if (isRecordStart(candidate, fileSize, expectedFields)) {
+            return candidate;
+          }
+        }
+        pos += n;
+      }
+    } finally {
+      Utils.closeQuietly(raf);
+    }
+    return firstCandidate >= 0 ? firstCandidate : fileSize;
+  }
+
+  private static int peek(RandomAccessFile raf, long pos) throws IOException {
+    long old = raf.getFilePointer();
+    raf.seek(pos);
+    int c = raf.read();
+    raf.seek(old);
+    return c;
+  }
+
+  private boolean isRecordStart(long candidate, long fileSize, int expectedFields) throws IOException {
+    CsvTokenizer tokenizer = CsvTokenizer.open(csvFile, csvOptions, candidate, PROBE_BUFFER_SIZE);
+    long limit = Math.min(candidate + maxOverrun, fileSize);
+    tokenizer.setInputEnd(limit);
+    try {
+      for (int i = 0; i < VALIDATE_RECORDS && tokenizer.next(); ++i) {
+        if (tokenizer.getRecord().size() != expectedFields) {
+          return false;
+        }
+        if (tokenizer.getOffset() >= limit && limit < fileSize) {
+          // the record may go on beyond the limit
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      Utils.closeQuietly(tokenizer);
+    }
+  }
+
+  /**
+   * Converts the records starting in the range, reading no input beyond
+   * inputEnd.
+   */
+  Range convertRange(Range range, long inputEnd) throws IOException {
+    CsvParquetWriter writer = writerFactory.create(range.part);
+    CsvTokenizer tokenizer = openTokenizer(range.start, CsvTokenizer.DEFAULT_BUFFER_SIZE);
+    if (projection != null) {
+      tokenizer.setProjection(projection);
+    }
+    tokenizer.setInputEnd(inputEnd);
+    long records = 0;
+    boolean converted = false;
+    try {
+      while (!aborted && tokenizer.getOffset() < range.end && tokenizer.next()) {
+        writer.write(tokenizer.getRecord());
+        ++records;
+      }
+      range.actualEnd = tokenizer.getOffset();
+      range.records = records;
+      range.overrun = range.actualEnd >= inputEnd && inputEnd < csvFile.length();
+      converted = true;
+    } catch (java.lang.NumberFormatException e) {
+      throw new IllegalArgumentException(">>record number " + (records + 1) + " of range starting at byte offset "
+          + range.start, e);
+    } finally {
+      Utils.closeQuietly(tokenizer);
+      if (!converted) {
+        // a failure to close must not hide the failure of the conversion
+        Utils.closeQuietly(writer);
+      }
+    }
+    writer.close();
+    return range;
+  }
+
+  /**
+   * Copies the row groups of all part files into output and writes a footer
+   * listing all of them, the sidecar indexes of the parts are concatenated.
+   *
+   * The parts and the output are local files, the row groups of a part are
+   * transferred as one block of bytes from channel to channel, without the
+   * round trip through a heap buffer of ParquetFileWriter.appendFile, and
+   * their offsets in the footer are shifted to their new position.
+   */
+  void stitch(Path output, List<Range> ranges) throws IOException {
+    File outputFile = new File(output.toUri());
+    // the output is written without a checksum, a stale one would fail reading it
+    new File(outputFile.getParentFile(), "." + outputFile.getName() + ".crc").delete();
+    FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    boolean written = false;
+    try {
+      Map<String, String> keyValueMetaData = new HashMap<String, String>();
+      List<BlockMetaData> blocks = new ArrayList<BlockMetaData>();
+      List<ParquetIndex> indexes = new ArrayList<ParquetIndex>();
+      long records = 0;
+      writeFully(out, ByteBuffer.wrap(ParquetFileWriter.MAGIC));
+      for (Range range : ranges) {
+        ParquetMetadata footer = ParquetFileReader.readFooter(conf, range.part);
+        keyValueMetaData.putAll(footer.getFileMetaData().getKeyValueMetaData());
+        List<BlockMetaData> partBlocks = footer.getBlocks();
+        if (!partBlocks.isEmpty()) {
+          // the row groups follow the magic of the part, possibly with padding between them
+          long start = ParquetFileWriter.MAGIC.length;
+          BlockMetaData last = partBlocks.get(partBlocks.size() - 1);
+          long end = last.getStartingPos() + last.getCompressedSize();
+          long shift = out.position() - start;
+          transfer(new File(range.part.toUri()), start, end - start, out);
+          for (BlockMetaData block : partBlocks) {
+            blocks.add(shift(block, shift));
+          }
+        }
+        indexes.add(ParquetIndex.read(ParquetIndex.getIndexFile(range.part), conf));
+        records += range.records;
+      }
+      writeFooter(new ParquetMetadata(new FileMetaData(schema, keyValueMetaData, Version.FULL_VERSION), blocks), out);
+      out.close();
+      written = true;
+      ParquetIndex index = ParquetIndex.concat(indexes);
+      if (index != null) {
+        index.write(ParquetIndex.getIndexFile(output), conf);
+      }
+      LOG.info("Number of lines: " + records);
+    } finally {
+      Utils.closeQuietly(out);
+      if (!written) {
+        outputFile.delete();
+      }
+    }
+  }
+
+  private static void transfer(File part, long position, long count, FileChannel out) throws IOException {
+    FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ);
+    try {
+      for (long done = 0; done < count;) {
+        long n = in.transferTo(position + done, count - done, out);
+        if (n <= 0) {
+          throw new EOFException("part file " + part + " ends before its row groups");
+        }
+        done += n;
+      }
+    } finally {
+      Utils.closeQuietly(in);
+    }
+  }
+
+  /** @return the row group with all column chunk offsets moved by shift */
+  private static BlockMetaData shift(BlockMetaData block, long shift) {
+    BlockMetaData shifted = new BlockMetaData();
+    shifted.setRowCount(block.getRowCount());
+    shifted.setTotalByteSize(block.getTotalByteSize());
+    for (ColumnChunkMetaData chunk : block.getColumns()) {
+      long dictionaryPageOffset = chunk.getDictionaryPageOffset();
+      shifted.addColumn(ColumnChunkMetaData.get(chunk.getPath(), chunk.getType(), chunk.getCodec(),
+          chunk.getEncodingStats(), chunk.getEncodings(), chunk.getStatistics(),
+          chunk.getFirstDataPageOffset() + shift, dictionaryPageOffset > 0 ? dictionaryPageOffset + shift : 0,
+          chunk.getValueCount(), chunk.getTotalSize(), chunk.getTotalUncompressedSize()));
+    }
+    return shifted;
+  }
+
+  /** Writes the footer as ParquetFileWriter.end does. */
+  private static void writeFooter(ParquetMetadata footer, FileChannel out) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Util.writeFileMetaData(new ParquetMetadataConverter().toParquetMetadata(ParquetFileWriter.CURRENT_VERSION, footer),
+        bytes);
+    BytesUtils.writeIntLittleEndian(bytes, bytes.size());
+    bytes.write(ParquetFileWriter.MAGIC);
+    writeFully(out, ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
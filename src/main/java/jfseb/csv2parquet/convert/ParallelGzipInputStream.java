@@ -0,0 +1,536 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a multi member gzip file, e.g. concatenated dumps or BGZF,
+ * inflating several members in parallel.
+ *
+ * The file is cut into byte ranges at the next plausible member header after
+ * every TARGET_RANGE_SIZE compressed bytes; for BGZF the block sizes in the
+ * headers give the exact member boundaries. Each range is inflated by a worker
+ * into memory, a worker finishes the last member it started even beyond its
+ * range end, so it stops at a true member boundary. Ranges are emitted in file
+ * order, a range whose start is not the boundary its predecessor stopped at
+ * (the header was a false positive within compressed data) is dropped, as is
+ * the result of a worker which failed or produced more than MAX_RANGE_OUTPUT
+ * bytes. Members not covered by a usable range are inflated sequentially by
+ * the caller, which also reports corrupt data just like
+ * {@link java.util.zip.GZIPInputStream}. A file without a member header
+ * after the first range, e.g. a single member file, is not given to the
+ * workers at all but decompresses sequentially right away.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+  /** Compressed bytes per range, ranges are cut at the next member header. */
+  public static final long TARGET_RANGE_SIZE = 4 * 1024 * 1024;
+  /** Uncompressed bytes a worker may buffer, larger ranges are inflated sequentially. */
+  static final int MAX_RANGE_OUTPUT = 32 * 1024 * 1024;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int HEADER_SIZE = 10;
+  private static final int BGZF_HEADER_SIZE = 18;
+
+  /** The inflated content of a range. */
+  private static class Result {
+    final byte[] data;
+    final int length;
+    // offset after the last inflated member
+    final long end;
+    // false if the worker failed or gave up, the range must be inflated sequentially
+    final boolean complete;
+
+    Result(byte[] data, int length, long end, boolean complete) {
+      this.data = data;
+      this.length = length;
+      this.end = end;
+      this.complete = complete;
+    }
+  }
+
+  private static final Result INCOMPLETE = new Result(null, 0, -1, false);
+
+  private static class Range {
+    final long start;
+    final long end;
+    volatile boolean cancelled;
+    Future<Result> future;
+
+    Range(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final ExecutorService executor;
+  private final int maxPending;
+  private final ArrayDeque<Range> pending = new ArrayDeque<Range>();
+  private long rangeSize = TARGET_RANGE_SIZE;
+  // start of the next range to cut
+  private long splitPos;
+  // start of the next member to emit
+  private long expected;
+  private int scheduledRanges;
+
+  private byte[] out;
+  private int outPos;
+  private int outLimit;
+  private Member member;
+  private boolean eof;
+  private boolean closed;
+
+  public ParallelGzipInputStream(File file, int threads) throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive, got " + threads);
+    }
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.fileSize = channel.size();
+    this.maxPending = 2 * threads;
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "csv2parquet2orc-inflate");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  void setRangeSize(long rangeSize) {
+    this.rangeSize = rangeSize;
+  }
+
+  /** @return the number of ranges given to the workers so far */
+  int getScheduledRanges() {
+    return scheduledRanges;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n;
+    while ((n = read(b, 0, 1)) == 0) {
+      // nothing
+    }
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      if (outPos < outLimit) {
+        int n = Math.min(len, outLimit - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+      }
+      if (member != null) {
+        int n = member.read(b, off, len);
+        if (n > 0) {
+          return n;
+        }
+        if (n < 0) {
+          expected = member.getEnd();
+          member = null;
+        }
+        continue;
+      }
+      // an empty file is no gzip file, like GZIPInputStream report it
+      if (eof || (expected > 0 && expected >= fileSize)) {
+        return -1;
+      }
+      Range range = takeRange(expected);
+      if (range != null) {
+        Result result = waitFor(range);
+        if (result.complete) {
+          out = result.data;
+          outPos = 0;
+          outLimit = result.length;
+          expected = result.end;
+          continue;
+        }
+      }
+      out = null;
+      outPos = outLimit = 0;
+      member = openMember(expected);
+      if (member == null) {
+        eof = true;
+      }
+    }
+  }
+
+  /**
+   * Opens the member at start, null if start is after the first member and
+   * does not hold a gzip header: GZIPInputStream ignores such trailing bytes.
+   */
+  private Member openMember(long start) throws IOException {
+    try {
+      return new Member(channel, start);
+    } catch (IOException e) {
+      if (start > 0) {
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  /** @return the pending range starting at start, null if there is none */
+  private Range takeRange(long start) throws IOException {
+    while (true) {
+      if (pending.isEmpty() && splitPos < start) {
+        splitPos = start;
+      }
+      fillPending();
+      Range first = pending.peekFirst();
+      if (first == null || first.start > start) {
+        return null;
+      }
+      pending.removeFirst();
+      if (first.start == start) {
+        return first;
+      }
+      // the range started within a member
+      first.cancelled = true;
+      first.future.cancel(false);
+    }
+  }
+
+  private void fillPending() throws IOException {
+    while (pending.size() < maxPending && splitPos < fileSize) {
+      final Range range = new Range(splitPos, nextRangeEnd(splitPos));
+      if (range.start == 0 && range.end >= fileSize) {
+        // no further member header, e.g. a single member: a worker would
+        // buffer up to MAX_RANGE_OUTPUT bytes just to give up
+        splitPos = fileSize;
+        break;
+      }
+      range.future = executor.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return inflateRange(range);
+        }
+      });
+      pending.addLast(range);
+      ++scheduledRanges;
+      splitPos = range.end;
+    }
+  }
+
+  private static Result waitFor(Range range) throws IOException {
+    try {
+      return range.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while inflating");
+    } catch (ExecutionException e) {
+      // inflate it again sequentially to report the failure
+      return INCOMPLETE;
+    }
+  }
+
+  private Result inflateRange(Range range) {
+    byte[] data = new byte[(int) Math.min(MAX_RANGE_OUTPUT, Math.max(CHUNK_SIZE, 4 * (range.end - range.start)))];
+    int length = 0;
+    long pos = range.start;
+    try {
+      while (pos < range.end) {
+        Member m = new Member(channel, pos);
+        try {
+          while (true) {
+            if (range.cancelled) {
+              return INCOMPLETE;
+            }
+            if (data.length - length < CHUNK_SIZE) {
+              if (data.length >= MAX_RANGE_OUTPUT) {
+                return INCOMPLETE;
+              }
+              data = Arrays.copyOf(data, Math.min(MAX_RANGE_OUTPUT, 2 * data.length));
+            }
+            int n = m.read(data, length, Math.min(CHUNK_SIZE, data.length - length));
+            if (n < 0) {
+              break;
+            }
+            length += n;
+          }
+          pos = m.getEnd();
+        } finally {
+          m.close();
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      return INCOMPLETE;
+    }
+    return new Result(data, length, pos, true);
+  }
+
+  /**
+   * @return the offset of the first member header at least rangeSize bytes
+   *         after start, fileSize if there is none
+   */
+  long nextRangeEnd(long start) throws IOException {
+    long pos = start;
+    byte[] header = new byte[BGZF_HEADER_SIZE];
+    while (pos < fileSize && readFully(pos, header) == BGZF_HEADER_SIZE) {
+      int blockSize = bgzfBlockSize(header);
+      if (blockSize <= 0) {
+        break;
+      }
+      pos += blockSize;
+      if (pos - start >= rangeSize) {
+        return Math.min(pos, fileSize);
+      }
+    }
+    if (pos >= fileSize) {
+      return fileSize;
+    }
+    return findHeader(Math.max(pos, start + rangeSize));
+  }
+
+  private long findHeader(long from) throws IOException {
+    byte[] chunk = new byte[CHUNK_SIZE + HEADER_SIZE];
+    long pos = from;
+    while (pos < fileSize) {
+      int n = readFully(pos, chunk);
+      for (int i = 0; i + HEADER_SIZE <= n; ++i) {
+        if (isHeader(chunk, i)) {
+          return pos + i;
+        }
+      }
+      if (n < chunk.length) {
+        break;
+      }
+      pos += CHUNK_SIZE;
+    }
+    return fileSize;
+  }
+
+  /**
+   * Plausible member header: magic, deflate, no reserved flags, one of the
+   * extra flags and operating systems of RFC 1952.
+   */
+  static boolean isHeader(byte[] b, int i) {
+    int xfl = b[i + 8] & 0xff;
+    int os = b[i + 9] & 0xff;
+    return b[i] == (byte) 0x1f && b[i + 1] == (byte) 0x8b && b[i + 2] == 8 && (b[i + 3] & 0xe0) == 0
+        && (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+  }
+
+  /** @return the size of the BGZF block starting with header, -1 if it is none */
+  static int bgzfBlockSize(byte[] header) {
+    if (header[0] != (byte) 0x1f || header[1] != (byte) 0x8b || header[2] != 8 || header[3] != 4
+        || readUShort(header, 10) != 6 || header[12] != 'B' || header[13] != 'C' || readUShort(header, 14) != 2) {
+      return -1;
+    }
+    return readUShort(header, 16) + 1;
+  }
+
+  private static int readUShort(byte[] b, int i) {
+    return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8;
+  }
+
+  private int readFully(long pos, byte[] b) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(b);
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, pos + buffer.position());
+      if (n < 0) {
+        break;
+      }
+    }
+    return buffer.position();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Range range : pending) {
+      range.cancelled = true;
+      range.future.cancel(false);
+    }
+    pending.clear();
+    // no interrupts, they would close the shared channel
+    executor.shutdown();
+    if (member != null) {
+      member.close();
+    }
+    channel.close();
+  }
+
+  /**
+   * Inflates the single member starting at a file offset, verifying its
+   * trailer, and tells where it ends.
+   */
+  static class Member extends InputStream {
+    private final FileChannel channel;
+    // file offset of the next compressed chunk
+    private long inputPos;
+    private final byte[] input = new byte[CHUNK_SIZE];
+    private int inputOff;
+    private int inputLen;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private long end = -1;
+
+    Member(FileChannel channel, long start) throws IOException {
+      this.channel = channel;
+      this.inputPos = start;
+      try {
+        readHeader();
+      } catch (IOException e) {
+        inflater.end();
+        throw e;
+      }
+    }
+
+    private boolean fill() throws IOException {
+      int n = channel.read(ByteBuffer.wrap(input), inputPos);
+      if (n <= 0) {
+        return false;
+      }
+      inputPos += n;
+      inputOff = 0;
+      inputLen = n;
+      return true;
+    }
+
+    private int readByte() throws IOException {
+      if (inputOff >= inputLen && !fill()) {
+        throw new EOFException("Unexpected end of ZLIB input stream");
+      }
+      return input[inputOff++] & 0xff;
+    }
+
+    private int readUShort() throws IOException {
+      return readByte() | readByte() << 8;
+    }
+
+    private long readUInt() throws IOException {
+      return (readUShort() | (long) readUShort() << 16);
+    }
+
+    private void skipZeroTerminated() throws IOException {
+      while (readByte() != 0) {
+        // skip
+      }
+    }
+
+    private void readHeader() throws IOException {
+      if (readUShort() != 0x8b1f) {
+        throw new ZipException("Not in GZIP format");
+      }
+      if (readByte() != 8) {
+        throw new ZipException("Unsupported compression method");
+      }
+      int flags = readByte();
+      for (int i = 0; i < 6; ++i) {
+        readByte();
+      }
+      if ((flags & 4) != 0) {
+        for (int n = readUShort(); n > 0; --n) {
+          readByte();
+        }
+      }
+      if ((flags & 8) != 0) {
+        skipZeroTerminated();
+      }
+      if ((flags & 16) != 0) {
+        skipZeroTerminated();
+      }
+      if ((flags & 2) != 0) {
+        readUShort();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int n;
+      while ((n = read(b, 0, 1)) == 0) {
+        // nothing
+      }
+      return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (end >= 0) {
+        return -1;
+      }
+      while (true) {
+        int n;
+        try {
+          n = inflater.inflate(b, off, len);
+        } catch (DataFormatException e) {
+          String message = e.getMessage();
+          throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+        }
+        if (n > 0) {
+          crc.update(b, off, n);
+          return n;
+        }
+        if (inflater.finished()) {
+          readTrailer();
+          return -1;
+        }
+        if (inflater.needsDictionary()) {
+          throw new ZipException("Unexpected dictionary");
+        }
+        if (inflater.needsInput()) {
+          if (inputOff >= inputLen && !fill()) {
+            throw new EOFException("Unexpected end of ZLIB input stream");
+          }
+          inflater.setInput(input, inputOff, inputLen - inputOff);
+          inputOff = inputLen;
+        }
+      }
+    }
+
+    private void readTrailer() throws IOException {
+      inputOff = inputLen - inflater.getRemaining();
+      long written = inflater.getBytesWritten();
+      inflater.end();
+      if (readUInt() != crc.getValue() || readUInt() != (written & 0xffffffffL)) {
+        throw new ZipException("Corrupt GZIP trailer");
+      }
+      end = inputPos - (inputLen - inputOff);
+    }
+
+    /** @return the offset after the trailer, valid once read returned -1 */
+    long getEnd() {
+      return end;
+    }
+
+    @Override
+    public void close() {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+import org.threeten.bp.LocalDate;
+
+/**
+ * Routes the rows of VectorizedRowBatches to the part files of their
+ * partitions.
+ *
+ * The data columns of a row are copied into a batch per open partition, which
+ * is passed to the part writer when full and when the writer is closed or
+ * evicted from the {@link WriterPool}.
+ */
+public class PartitionedBatchWriter implements BatchPipeline.BatchSink, Closeable {
+
+  /**
+   * A writer of batches of the data schema into one part file.
+   */
+  public interface PartWriter extends BatchPipeline.BatchSink, Closeable {
+  }
+
+  public interface PartWriterFactory {
+    PartWriter create(Path file) throws IOException;
+  }
+
+  private final Partitioning partitioning;
+  private final TypeDescription dataSchema;
+  // batch columns of the data and of the partition columns
+  private final int[] dataColumns;
+  private final int[] partitionColumns;
+  private final TypeDescription.Category[] partitionTypes;
+  private final WriterPool<Partition> pool;
+  private final String[] values;
+
+  /**
+   * @param batchSchema
+   *          the schema of the batches written, including the partition
+   *          columns
+   * @param extension
+   *          of the part files, e.g. ".orc"
+   */
+  public PartitionedBatchWriter(TypeDescription batchSchema, Partitioning partitioning, final Path output,
+      final String extension, int maxOpen, final PartWriterFactory factory) {
+    this.partitioning = partitioning;
+    this.dataSchema = partitioning.getDataSchema(batchSchema);
+    List<String> fieldNames = batchSchema.getFieldNames();
+    List<String> dataNames = dataSchema.getFieldNames();
+    this.dataColumns = new int[dataNames.size()];
+    for (int i = 0; i < dataColumns.length; ++i) {
+      dataColumns[i] = fieldNames.indexOf(dataNames.get(i));
+    }
+    String[] columns = partitioning.getColumns();
+    this.partitionColumns = new int[columns.length];
+    this.partitionTypes = new TypeDescription.Category[columns.length];
+    for (int i = 0; i < columns.length; ++i) {
+      partitionColumns[i] = fieldNames.indexOf(columns[i]);
+      partitionTypes[i] = batchSchema.getChildren().get(partitionColumns[i]).getCategory();
+      if (partitionTypes[i] == TypeDescription.Category.STRUCT || partitionTypes[i] == TypeDescription.Category.LIST
+          || partitionTypes[i] == TypeDescription.Category.MAP || partitionTypes[i] == TypeDescription.Category.UNION) {
+        throw new IllegalArgumentException("Cannot partition by the " + partitionTypes[i] + " column " + columns[i]);
+      }
+    }
+    this.values = new String[columns.length];
+    this.pool = new WriterPool<Partition>(new WriterPool.Factory<Partition>() {
+      @Override
+      public Partition create(String directory, int part) throws IOException {
+        return new Partition(factory.create(Partitioning.getPartFile(output, directory, part, extension)));
+      }
+    }, maxOpen);
+  }
+
+  /**
+   * @return the schema of the part files, without the partition columns
+   */
+  public TypeDescription getDataSchema() {
+    return dataSchema;
+  }
+
+  @Override
+  public void write(VectorizedRowBatch batch) throws IOException {
+    Partition partition = null;
+    for (int r = 0; r < batch.size; ++r) {
+      if (partition == null || !isSameValues(batch, r, r - 1)) {
+        partition = pool.get(getDirectory(batch, r));
+      }
+      partition.add(batch, r);
+    }
+  }
+
+  private String getDirectory(VectorizedRowBatch batch, int row) {
+    for (int i = 0; i < partitionColumns.length; ++i) {
+      values[i] = toString(batch.cols[partitionColumns[i]], partitionTypes[i], row);
+    }
+    return partitioning.getDirectory(values);
+  }
+
+  /**
+   * @return true if the partition values of the rows are known to be equal
+   */
+  private boolean isSameValues(VectorizedRowBatch batch, int row, int previous) {
+    for (int column : partitionColumns) {
+      ColumnVector vector = batch.cols[column];
+      if (vector.isRepeating) {
+        continue;
+      }
+      if (!vector.noNulls && vector.isNull[row] != vector.isNull[previous]) {
+        return false;
+      }
+      if (!vector.noNulls && vector.isNull[row]) {
+        continue;
+      }
+      if (vector instanceof LongColumnVector) {
+        if (((LongColumnVector) vector).vector[row] != ((LongColumnVector) vector).vector[previous]) {
+          return false;
+        }
+      } else if (vector instanceof BytesColumnVector) {
+        BytesColumnVector bytes = (BytesColumnVector) vector;
+        int length = bytes.length[row];
+        if (length != bytes.length[previous]) {
+          return false;
+        }
+        for (int k = 0; k < length; ++k) {
+          if (bytes.vector[row][bytes.start[row] + k] != bytes.vector[previous][bytes.start[previous] + k]) {
+            return false;
+          }
+        }
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the partition value of the row, null for NULL
+   */
+  static String toString(ColumnVector vector, TypeDescription.Category category, int row) {
+    if (vector.isRepeating) {
+      row = 0;
+    }
+    if (!vector.noNulls && vector.isNull[row]) {
+      return null;
+    }
+    switch (category) {
+    case BOOLEAN:
+      return ((LongColumnVector) vector).vector[row] != 0 ? "true" : "false";
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return Long.toString(((LongColumnVector) vector).vector[row]);
+    case DATE:
+      return LocalDate.ofEpochDay(((LongColumnVector) vector).vector[row]).toString();
+    case FLOAT:
+      return Float.toString((float) ((DoubleColumnVector) vector).vector[row]);
+    case DOUBLE:
+      return Double.toString(((DoubleColumnVector) vector).vector[row]);
+    case DECIMAL:
+      return ((DecimalColumnVector) vector).vector[row].toString();
+    case TIMESTAMP:
+      return ((TimestampColumnVector) vector).asScratchTimestamp(row).toString();
+    default:
+      BytesColumnVector bytes = (BytesColumnVector) vector;
+      return new String(bytes.vector[row], bytes.start[row], bytes.length[row], StandardCharsets.UTF_8);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    pool.close();
+  }
+
+  public String getMetrics() {
+    return pool.getMetrics();
+  }
+
+  /**
+   * The part writer of an open partition and the batch of its rows not yet
+   * written.
+   */
+  final class Partition implements Closeable {
+    private final PartWriter out;
+    private final VectorizedRowBatch buffer = dataSchema.createRowBatch();
+
+    Partition(PartWriter out) {
+      this.out = out;
+    }
+
+    void add(VectorizedRowBatch batch, int row) throws IOException {
+      int outRow = buffer.size;
+      for (int c = 0; c < dataColumns.length; ++c) {
+        ColumnVector from = batch.cols[dataColumns[c]];
+        ColumnVector to = buffer.cols[c];
+        int fromRow = from.isRepeating ? 0 : row;
+        if (!from.noNulls && from.isNull[fromRow]) {
+          to.noNulls = false;
+          to.isNull[outRow] = true;
+        } else {
+          // not all vectors clear isNull in setElement
+          to.isNull[outRow] = false;
+          to.setElement(outRow, fromRow, from);
+        }
+      }
+      if (++buffer.size == buffer.getMaxSize()) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      if (buffer.size > 0) {
+        out.write(buffer);
+        buffer.reset();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
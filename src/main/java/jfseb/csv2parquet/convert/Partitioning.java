@@ -0,0 +1,253 @@
+package jfseb.csv2parquet.convert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * The columns of --partition-by: rows are written to part files under Hive
+ * style col=value/ directories, the partition columns are not written into
+ * the files.
+ *
+ * Values are escaped as Hive does, NULL (or empty CSV) values go to
+ * __HIVE_DEFAULT_PARTITION__. Not thread safe, the directory of the last CSV
+ * record is kept to skip building the path for runs of equal values.
+ */
+public class Partitioning {
+  public static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+  /** Default of -D partition.writers, the number of part files open at once. */
+  public static final int DEFAULT_OPEN_WRITERS = 8;
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  private final String[] columns;
+
+  // the partition values of the last CSV record and their directory
+  private byte[] lastValues = new byte[64];
+  private final int[] lastLengths;
+  private String lastDirectory;
+
+  public Partitioning(String[] columns) {
+    Set<String> seen = new HashSet<String>();
+    for (String column : columns) {
+      if (!seen.add(column)) {
+        throw new IllegalArgumentException("Column " + column + " is given twice in --partition-by");
+      }
+    }
+    this.columns = columns;
+    this.lastLengths = new int[columns.length];
+  }
+
+  /**
+   * @return the partitioning of the comma separated column list of
+   *         --partition-by
+   */
+  public static Partitioning parse(String spec) {
+    return new Partitioning(ColumnProjection.parseColumns(spec));
+  }
+
+  /**
+   * @return -D partition.writers, the maximum number of open part file writers
+   */
+  public static int getMaxOpenWriters(Configuration conf) {
+    int writers = (conf == null) ? DEFAULT_OPEN_WRITERS : conf.getInt("partition.writers", DEFAULT_OPEN_WRITERS);
+    if (writers < 1) {
+      throw new IllegalArgumentException(" partition.writers must be at least 1");
+    }
+    return writers;
+  }
+
+  public String[] getColumns() {
+    return columns;
+  }
+
+  public boolean isPartitionColumn(String name) {
+    return Arrays.asList(columns).contains(name);
+  }
+
+  /**
+   * @param selected
+   *          the columns of --columns, null for all
+   * @return the selected columns of the schema fields which are written into
+   *         the part files, i.e. all but the partition columns
+   */
+  public String[] getDataColumns(List<String> fieldNames, String[] selected) {
+    for (String column : columns) {
+      if (!fieldNames.contains(column)) {
+        throw new IllegalArgumentException("Unknown column " + column + " in --partition-by, the schema has "
+            + fieldNames);
+      }
+    }
+    List<String> data = new ArrayList<String>();
+    for (String name : (selected != null) ? Arrays.asList(selected) : fieldNames) {
+      if (!isPartitionColumn(name)) {
+        data.add(name);
+      }
+    }
+    if (data.isEmpty()) {
+      throw new IllegalArgumentException("No columns left to write besides the --partition-by columns "
+          + Arrays.toString(columns));
+    }
+    return data.toArray(new String[data.size()]);
+  }
+
+  /**
+   * @return the data columns followed by the partition columns, the columns
+   *         read per row
+   */
+  public String[] getReadColumns(String[] dataColumns) {
+    String[] read = Arrays.copyOf(dataColumns, dataColumns.length + columns.length);
+    System.arraycopy(columns, 0, read, dataColumns.length, columns.length);
+    return read;
+  }
+
+  public MessageType getDataSchema(MessageType schema) {
+    List<Type> fields = new ArrayList<Type>();
+    for (String name : getDataColumns(schemaFieldNames(schema), null)) {
+      fields.add(schema.getType(name));
+    }
+    return new MessageType(schema.getName(), fields);
+  }
+
+  public TypeDescription getDataSchema(TypeDescription schema) {
+    TypeDescription data = TypeDescription.createStruct();
+    List<String> fieldNames = schema.getFieldNames();
+    for (String name : getDataColumns(fieldNames, null)) {
+      data.addField(name, schema.getChildren().get(fieldNames.indexOf(name)).clone());
+    }
+    return data;
+  }
+
+  private static List<String> schemaFieldNames(MessageType schema) {
+    List<String> names = new ArrayList<String>();
+    for (Type field : schema.getFields()) {
+      names.add(field.getName());
+    }
+    return names;
+  }
+
+  /**
+   * @param values
+   *          the partition values, null for NULL
+   * @return the relative directory, e.g. dt=2017-01-02/region=eu
+   */
+  public String getDirectory(String[] values) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < columns.length; ++i) {
+      if (i > 0) {
+        sb.append('/');
+      }
+      sb.append(escape(columns[i])).append('=');
+      if (values[i] == null || values[i].isEmpty()) {
+        sb.append(DEFAULT_PARTITION);
+      } else {
+        sb.append(escape(values[i]));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the directory of the partition values in the fields first to
+   *         first + columns - 1 of the record
+   */
+  public String getDirectory(CsvRecord record, int first) {
+    if (lastDirectory != null && isLastValues(record, first)) {
+      return lastDirectory;
+    }
+    String[] values = new String[columns.length];
+    int pos = 0;
+    for (int i = 0; i < columns.length; ++i) {
+      int length = record.getLength(first + i);
+      if (pos + length > lastValues.length) {
+        lastValues = Arrays.copyOf(lastValues, Math.max(2 * lastValues.length, pos + length));
+      }
+      if (length > 0) {
+        System.arraycopy(record.getBytes(), record.getStart(first + i), lastValues, pos, length);
+        values[i] = record.getString(first + i);
+      }
+      lastLengths[i] = length;
+      pos += length;
+    }
+    lastDirectory = getDirectory(values);
+    return lastDirectory;
+  }
+
+  private boolean isLastValues(CsvRecord record, int first) {
+    byte[] bytes = record.getBytes();
+    int pos = 0;
+    for (int i = 0; i < columns.length; ++i) {
+      int length = record.getLength(first + i);
+      if (length != lastLengths[i]) {
+        return false;
+      }
+      int start = record.getStart(first + i);
+      for (int k = 0; k < length; ++k) {
+        if (bytes[start + k] != lastValues[pos + k]) {
+          return false;
+        }
+      }
+      pos += length;
+    }
+    return true;
+  }
+
+  /**
+   * @return value with the characters Hive escapes in partition paths as %XX
+   */
+  public static String escape(String value) {
+    StringBuilder sb = null;
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (needsEscape(c)) {
+        if (sb == null) {
+          sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+        }
+        sb.append('%').append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+      } else if (sb != null) {
+        sb.append(c);
+      }
+    }
+    return (sb == null) ? value : sb.toString();
+  }
+
+  private static boolean needsEscape(char c) {
+    if (c < ' ' || c == 0x7F) {
+      return true;
+    }
+    switch (c) {
+    case '"':
+    case '#':
+    case '%':
+    case '\'':
+    case '*':
+    case '/':
+    case ':':
+    case '=':
+    case '?':
+    case '\\':
+    case '[':
+    case ']':
+    case '^':
+    case '{':
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return output/directory/part-NNNNN followed by extension
+   */
+  public static Path getPartFile(Path output, String directory, int part, String extension) {
+    return new Path(new Path(output, directory), String.format("part-%05d%s", part, extension));
+  }
+}
@@ -0,0 +1,193 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an input stream on a dedicated thread into a ring of large buffers
+ * ahead of the consumer.
+ *
+ * Wrapped around a decompressing stream this moves inflating off the parsing
+ * thread: the reader thread takes a free buffer, fills it completely from the
+ * source and queues it, the consumer drains the queued buffers in order and
+ * hands them back. At most all buffers are filled ahead of the consumer.
+ * A failure of the source is rethrown by the consumer once it has read all
+ * data before the failure.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+  public static final int DEFAULT_BUFFERS = 4;
+
+  /** A filled buffer, length -1 marks the end of the input. */
+  private static class Chunk {
+    final byte[] data;
+    final int length;
+
+    Chunk(byte[] data, int length) {
+      this.data = data;
+      this.length = length;
+    }
+  }
+
+  private static final Chunk END_OF_INPUT = new Chunk(new byte[0], -1);
+
+  private final InputStream source;
+  private final BlockingQueue<byte[]> free;
+  private final BlockingQueue<Chunk> filled;
+  private final Thread reader;
+  private volatile Throwable failure;
+
+  private Chunk current;
+  private int pos;
+  private boolean closed;
+
+  public ReadAheadInputStream(InputStream source) {
+    this(source, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+  }
+
+  public ReadAheadInputStream(InputStream source, int bufferSize, int buffers) {
+    if (bufferSize < 1 || buffers < 2) {
+      throw new IllegalArgumentException(
+          "read ahead needs at least 2 buffers of at least 1 byte, got " + buffers + " of " + bufferSize);
+    }
+    this.source = source;
+    this.free = new ArrayBlockingQueue<byte[]>(buffers);
+    // one more slot for the end marker
+    this.filled = new ArrayBlockingQueue<Chunk>(buffers + 1);
+    for (int i = 0; i < buffers; ++i) {
+      free.add(new byte[bufferSize]);
+    }
+    this.reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        readAhead();
+      }
+    }, "csv2parquet2orc-readahead");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  private void readAhead() {
+    // the buffer being filled, null once queued
+    byte[] buffer = null;
+    int length = 0;
+    try {
+      boolean eof = false;
+      while (!eof) {
+        buffer = free.take();
+        length = 0;
+        while (length < buffer.length) {
+          int n = source.read(buffer, length, buffer.length - length);
+          if (n < 0) {
+            eof = true;
+            break;
+          }
+          length += n;
+        }
+        if (length > 0) {
+          filled.put(new Chunk(buffer, length));
+        }
+        buffer = null;
+      }
+    } catch (InterruptedException e) {
+      // closed, nobody waits for the end marker
+      return;
+    } catch (Throwable t) {
+      // the bytes read before the failure go first, the buffer came from free
+      if (buffer != null && length > 0) {
+        filled.add(new Chunk(buffer, length));
+      }
+      failure = t;
+    }
+    filled.add(END_OF_INPUT);
+  }
+
+  /** @return false at the end of the input */
+  private boolean nextChunk() throws IOException {
+    if (current == END_OF_INPUT) {
+      return false;
+    }
+    if (current != null) {
+      free.add(current.data);
+    }
+    try {
+      current = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for input");
+    }
+    pos = 0;
+    if (current == END_OF_INPUT) {
+      Throwable t = failure;
+      if (t instanceof IOException) {
+        throw (IOException) t;
+      } else if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (current == null || pos >= current.length) {
+      if (!nextChunk()) {
+        return -1;
+      }
+    }
+    return current.data[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (current == null || pos >= current.length) {
+      if (!nextChunk()) {
+        return -1;
+      }
+    }
+    int n = Math.min(len, current.length - pos);
+    System.arraycopy(current.data, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (current == null || current == END_OF_INPUT) ? 0 : current.length - pos;
+  }
+
+  /**
+   * Stops the reader thread and closes the source, a read blocked in the
+   * source is given a second to finish.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    reader.interrupt();
+    try {
+      reader.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    source.close();
+  }
+}
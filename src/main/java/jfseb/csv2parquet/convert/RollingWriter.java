@@ -0,0 +1,175 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.StringUtils;
+
+import jfseb.csv2parquet.Utils;
+
+/**
+ * Writes the output as part-00000, part-00001, ... files of a directory,
+ * rolling over to the next part when the current one reaches
+ * --max-rows-per-file rows or --max-file-size bytes.
+ *
+ * The size of a part is checked every {@link #SIZE_CHECK_ROWS} rows, a part
+ * is thus closed at the next row group (Parquet) or stripe (ORC) boundary
+ * after it reached the size. On close the directory gets a _manifest file
+ * listing the rows and bytes of each part, tab separated.
+ */
+public abstract class RollingWriter<W extends Closeable> implements Closeable {
+  public static final String MANIFEST = "_manifest";
+  static final int SIZE_CHECK_ROWS = 1024;
+
+  private final Path directory;
+  private final String extension;
+  private final long maxFileSize;
+  private final long maxRows;
+  private final Configuration conf;
+
+  private W writer;
+  private Path part;
+  private long partRows;
+  private long rowsAtSizeCheck;
+  private final List<String> manifest = new ArrayList<String>();
+
+  /**
+   * @param maxFileSize
+   *          bytes per part, 0 for no limit
+   * @param maxRows
+   *          rows per part, 0 for no limit
+   */
+  protected RollingWriter(Path directory, String extension, long maxFileSize, long maxRows, Configuration conf) {
+    this.directory = directory;
+    this.extension = extension;
+    this.maxFileSize = maxFileSize;
+    this.maxRows = maxRows;
+    this.conf = conf;
+  }
+
+  /**
+   * @return the size of a --max-file-size or --max-rows-per-file option,
+   *         with an optional k, m, g, ... suffix, 0 if not given
+   */
+  public static long parseLimit(String value, String option) {
+    if (value == null) {
+      return 0;
+    }
+    long limit;
+    try {
+      limit = StringUtils.TraditionalBinaryPrefix.string2long(value.trim());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("--" + option + " must be a positive number, not " + value, e);
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("--" + option + " must be a positive number, not " + value);
+    }
+    return limit;
+  }
+
+  /**
+   * Opens the writer of a part file.
+   */
+  protected abstract W open(Path file) throws IOException;
+
+  /**
+   * @return the bytes written to file and buffered by writer
+   */
+  protected abstract long getSize(W writer, Path file) throws IOException;
+
+  /**
+   * @return the writer of the current part, opened if needed
+   */
+  public W get() throws IOException {
+    if (writer == null) {
+      part = new Path(directory, String.format("part-%05d%s", manifest.size(), extension));
+      writer = open(part);
+      partRows = 0;
+      rowsAtSizeCheck = 0;
+    }
+    return writer;
+  }
+
+  /**
+   * Counts rows written to the current writer, closing it if it is full.
+   */
+  public void added(long rows) throws IOException {
+    partRows += rows;
+    if (maxRows > 0 && partRows >= maxRows) {
+      roll();
+    } else if (maxFileSize > 0 && partRows - rowsAtSizeCheck >= SIZE_CHECK_ROWS) {
+      rowsAtSizeCheck = partRows;
+      if (getSize(writer, part) >= maxFileSize) {
+        roll();
+      }
+    }
+  }
+
+  private void roll() throws IOException {
+    W full = writer;
+    writer = null;
+    full.close();
+    long bytes = part.getFileSystem(conf).getFileStatus(part).getLen();
+    manifest.add(part.getName() + "\t" + partRows + "\t" + bytes);
+  }
+
+  /**
+   * Discards the part being written after a failure, the closed parts are
+   * kept. A no-op after {@link #close()}.
+   */
+  public void abort() {
+    if (writer != null) {
+      W failed = writer;
+      writer = null;
+      abort(failed);
+    }
+  }
+
+  /**
+   * Discards the writer of a failed part, by default it is closed quietly.
+   */
+  protected void abort(W failed) {
+    Utils.closeQuietly(failed);
+  }
+
+  /**
+   * @return the number of part files closed
+   */
+  public int getParts() {
+    return manifest.size();
+  }
+
+  /**
+   * Closes the last part, at least one part is written, and writes the
+   * manifest.
+   */
+  @Override
+  public void close() throws IOException {
+    if (writer == null && manifest.isEmpty()) {
+      get();
+    }
+    if (writer != null) {
+      roll();
+    }
+    Path manifestFile = new Path(directory, MANIFEST);
+    FileSystem fs = manifestFile.getFileSystem(conf);
+    Writer out = new OutputStreamWriter(fs.create(manifestFile, false), StandardCharsets.UTF_8);
+    try {
+      out.write("file\trows\tbytes\n");
+      for (String line : manifest) {
+        out.write(line);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package jfseb.csv2parquet.convert;
+
+import java.util.List;
+
+/**
+ * Remembers the converted values of one column, keyed on the raw field bytes,
+ * so repeated values (the same business date on millions of rows, a status
+ * code) are parsed once.
+ *
+ * The table is a small open addressing hash table: a value is looked for in
+ * the slots following its hash, a miss replaces the first free or else the
+ * first probed slot. A memo checks its hit rate every {@link #WINDOW} lookups
+ * and, if it is below {@link #MIN_HIT_RATE}, is bypassed for the next
+ * {@link #PAUSE} values before it is tried again, so columns of unique values
+ * pay little more than the counting.
+ *
+ * Usage: {@link #lookup} the field; on a hit take the entry, otherwise convert
+ * and {@link #put} the result, before the next lookup.
+ */
+public final class ValueMemo {
+  static final int CAPACITY = 1024;
+  static final int MAX_PROBES = 4;
+  // longer values are not remembered
+  static final int MAX_KEY_LENGTH = 64;
+  static final int WINDOW = 4096;
+  static final double MIN_HIT_RATE = 0.5;
+  static final int PAUSE = 64 * WINDOW;
+
+  private final String column;
+  private final int[] hashes = new int[CAPACITY];
+  private final byte[][] keys = new byte[CAPACITY][];
+  private final int[] keyLengths = new int[CAPACITY];
+  private final long[] values = new long[CAPACITY];
+  private final long[] extras = new long[CAPACITY];
+  private final Object[] objects = new Object[CAPACITY];
+
+  // the key of the last missed lookup, to be put
+  private byte[] missBytes;
+  private int missStart;
+  private int missLength = -1;
+  private int missHash;
+
+  private long lookups;
+  private long hits;
+  private long bypassed;
+  private int windowLookups;
+  private int windowHits;
+  private int paused;
+
+  public ValueMemo(String column) {
+    this.column = column;
+  }
+
+  private static int hash(byte[] b, int off, int len) {
+    int h = len;
+    for (int i = off; i < off + len; ++i) {
+      h = 31 * h + b[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot of the value remembered for the len bytes at off, -1 if
+   *         there is none or the memo is bypassed
+   */
+  public int lookup(byte[] b, int off, int len) {
+    missLength = -1;
+    if (paused > 0) {
+      --paused;
+      ++bypassed;
+      return -1;
+    }
+    if (++windowLookups == WINDOW) {
+      endWindow();
+    }
+    ++lookups;
+    if (len > MAX_KEY_LENGTH) {
+      return -1;
+    }
+    int h = hash(b, off, len);
+    for (int p = 0; p < MAX_PROBES; ++p) {
+      int slot = (h + p) & (CAPACITY - 1);
+      byte[] key = keys[slot];
+      if (key == null) {
+        break;
+      }
+      if (hashes[slot] == h && keyLengths[slot] == len && equal(key, b, off, len)) {
+        ++hits;
+        ++windowHits;
+        return slot;
+      }
+    }
+    missBytes = b;
+    missStart = off;
+    missLength = len;
+    missHash = h;
+    return -1;
+  }
+
+  private void endWindow() {
+    if (windowHits < WINDOW * MIN_HIT_RATE) {
+      paused = PAUSE;
+    }
+    windowLookups = 0;
+    windowHits = 0;
+  }
+
+  private static boolean equal(byte[] key, byte[] b, int off, int len) {
+    for (int i = 0; i < len; ++i) {
+      if (key[i] != b[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remembers the converted value for the key of the last lookup, if it
+   * missed.
+   */
+  public void put(long value, long extra, Object object) {
+    if (missLength < 0) {
+      return;
+    }
+    int slot = missHash & (CAPACITY - 1);
+    for (int p = 0; p < MAX_PROBES; ++p) {
+      int probe = (missHash + p) & (CAPACITY - 1);
+      if (keys[probe] == null) {
+        slot = probe;
+        break;
+      }
+    }
+    byte[] key = keys[slot];
+    if (key == null || key.length < missLength) {
+      key = keys[slot] = new byte[Math.max(missLength, 16)];
+    }
+    System.arraycopy(missBytes, missStart, key, 0, missLength);
+    hashes[slot] = missHash;
+    keyLengths[slot] = missLength;
+    values[slot] = value;
+    extras[slot] = extra;
+    objects[slot] = object;
+    missBytes = null;
+    missLength = -1;
+  }
+
+  public long getValue(int slot) {
+    return values[slot];
+  }
+
+  public long getExtra(int slot) {
+    return extras[slot];
+  }
+
+  public Object getObject(int slot) {
+    return objects[slot];
+  }
+
+  public String getColumn() {
+    return column;
+  }
+
+  public long getLookups() {
+    return lookups;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of values converted without looking at the memo, as
+   *         the hit rate was too low
+   */
+  public long getBypassed() {
+    return bypassed;
+  }
+
+  public double getHitRate() {
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: memo hits %d of %d lookups (%.1f%%), %d bypassed", column, hits, lookups,
+        100 * getHitRate(), bypassed);
+  }
+
+  /**
+   * @return one line per memo which was looked at, for the log
+   */
+  public static String getMetrics(List<ValueMemo> memos) {
+    StringBuilder sb = new StringBuilder();
+    for (ValueMemo memo : memos) {
+      if (memo.getLookups() + memo.getBypassed() > 0) {
+        sb.append(sb.length() == 0 ? "" : "\n").append(memo);
+      }
+    }
+    return sb.toString();
+  }
+}
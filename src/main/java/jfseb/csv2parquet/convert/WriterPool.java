@@ -0,0 +1,136 @@
+package jfseb.csv2parquet.convert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jfseb.csv2parquet.Utils;
+
+/**
+ * The writers of the partitions, at most maxOpen of them open at once.
+ *
+ * Each open Parquet writer buffers a row group, so the pool bounds the memory
+ * of a partitioned conversion. When a writer for another partition is
+ * needed, the least recently used one is closed; writing to its partition
+ * again starts the next part file of the partition.
+ */
+public class WriterPool<W extends Closeable> implements Closeable {
+
+  /**
+   * Creates the writer of one part file.
+   */
+  public interface Factory<W> {
+    /**
+     * @param part
+     *          the number of the part file in the partition, from 0
+     */
+    W create(String directory, int part) throws IOException;
+  }
+
+  private final Factory<W> factory;
+  private final int maxOpen;
+  // access ordered, the eldest entry is the least recently used writer
+  private final LinkedHashMap<String, W> open = new LinkedHashMap<String, W>(16, 0.75f, true);
+  // the last part number of each partition
+  private final HashMap<String, Integer> parts = new HashMap<String, Integer>();
+  private long files;
+  private long evicted;
+
+  public WriterPool(Factory<W> factory, int maxOpen) {
+    if (maxOpen < 1) {
+      throw new IllegalArgumentException("at least one writer must be open, not " + maxOpen);
+    }
+    this.factory = factory;
+    this.maxOpen = maxOpen;
+  }
+
+  /**
+   * @return the open writer of the partition directory, opening the next part
+   *         file of the partition if needed
+   */
+  public W get(String directory) throws IOException {
+    W writer = open.get(directory);
+    if (writer != null) {
+      return writer;
+    }
+    if (open.size() >= maxOpen) {
+      Iterator<Map.Entry<String, W>> eldest = open.entrySet().iterator();
+      W evict = eldest.next().getValue();
+      eldest.remove();
+      ++evicted;
+      evict.close();
+    }
+    Integer last = parts.get(directory);
+    int part = (last == null) ? 0 : last.intValue() + 1;
+    writer = factory.create(directory, part);
+    parts.put(directory, Integer.valueOf(part));
+    open.put(directory, writer);
+    ++files;
+    return writer;
+  }
+
+  /**
+   * Closes all open writers, the first failure is thrown after trying all.
+   */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (W writer : open.values()) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    open.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Discards the open writers after a failure, the closed part files are
+   * kept. A no-op after {@link #close()}.
+   */
+  public void abort() {
+    for (W writer : open.values()) {
+      abort(writer);
+    }
+    open.clear();
+  }
+
+  /**
+   * Discards the writer of a failed part, by default it is closed quietly.
+   */
+  protected void abort(W failed) {
+    Utils.closeQuietly(failed);
+  }
+
+  public int getPartitions() {
+    return parts.size();
+  }
+
+  /**
+   * @return the number of part files opened
+   */
+  public long getFiles() {
+    return files;
+  }
+
+  /**
+   * @return the number of writers closed to open another one
+   */
+  public long getEvicted() {
+    return evicted;
+  }
+
+  public String getMetrics() {
+    return "partitions: " + getPartitions() + ", part files: " + files + ", writers evicted: " + evicted
+        + " (max open " + maxOpen + ")";
+  }
+}
@@ -0,0 +1,45 @@
+package jfseb.csv2parquet.convert.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable CharSequence view of a byte slice, one char per byte, to run the
+ * fixed pattern parsers of {@link CSV2ParquetTimestampUtils} on the bytes of
+ * a CSV field without creating a String. Bytes beyond ASCII do not match any
+ * of the patterns.
+ */
+public final class AsciiSequence implements CharSequence {
+  private byte[] bytes;
+  private int start;
+  private int length;
+
+  /**
+   * @return this, viewing the len bytes at off
+   */
+  public AsciiSequence set(byte[] b, int off, int len) {
+    this.bytes = b;
+    this.start = off;
+    this.length = len;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char) (bytes[start + index] & 0xff);
+  }
+
+  @Override
+  public CharSequence subSequence(int from, int to) {
+    return toString().subSequence(from, to);
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, start, length, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,428 @@
+package jfseb.csv2parquet.convert.utils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+
+/**
+ * Number parsing directly on UTF-8 encoded byte slices, avoiding the
+ * intermediate String of Long.parseLong and friends.
+ *
+ * Accepted syntax and failure behaviour (NumberFormatException) match the
+ * java.lang counterparts.
+ */
+public class CSV2ParquetNumberUtils {
+
+  public static long parseLong(byte[] b, int off, int len) {
+    if (len <= 0) {
+      throw numberFormatException(b, off, len);
+    }
+    int i = off;
+    int end = off + len;
+    boolean negative = false;
+    long limit = -Long.MAX_VALUE;
+    byte first = b[i];
+    if (first == '-' || first == '+') {
+      if (len == 1) {
+        throw numberFormatException(b, off, len);
+      }
+      if (first == '-') {
+        negative = true;
+        limit = Long.MIN_VALUE;
+      }
+      ++i;
+    }
+    // accumulate negatively to be able to represent Long.MIN_VALUE
+    long multmin = limit / 10;
+    long result = 0;
+    while (i < end) {
+      int digit = b[i++] - '0';
+      if (digit < 0 || digit > 9 || result < multmin) {
+        throw numberFormatException(b, off, len);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw numberFormatException(b, off, len);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  public static int parseInt(byte[] b, int off, int len) {
+    long value = parseLong(b, off, len);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw numberFormatException(b, off, len);
+    }
+    return (int) value;
+  }
+
+  /**
+   * @return true if the slice is an optional sign followed by decimal digits
+   */
+  public static boolean isInteger(byte[] b, int off, int len) {
+    int i = off;
+    int end = off + len;
+    if (i < end && (b[i] == '-' || b[i] == '+')) {
+      ++i;
+    }
+    if (i == end) {
+      return false;
+    }
+    for (; i < end; ++i) {
+      if (b[i] < '0' || b[i] > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // exactly representable powers of ten
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+      1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+  private static final float[] FLOAT_POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+      1e10f };
+  // at most 19 significant digits fit an unsigned long
+  private static final int MAX_SIGNIFICANT_DIGITS = 19;
+  // returned by parseBits if the slice is left to the java.lang parsers
+  private static final long SLOW_PATH = -1;
+
+  /*
+   * Decimal to binary conversion after Eisel and Lemire ("Number Parsing at a
+   * Gigabyte per Second", 2021, as in fast_float): the significand w is
+   * multiplied with a 128 bit approximation of 5^q, which determines the
+   * correctly rounded result for any w of at most 19 digits.
+   */
+  private static final int SMALLEST_POWER_OF_FIVE = -342;
+  private static final int LARGEST_POWER_OF_FIVE = 308;
+  private static final long[] POWERS_OF_FIVE_HIGH = new long[LARGEST_POWER_OF_FIVE - SMALLEST_POWER_OF_FIVE + 1];
+  private static final long[] POWERS_OF_FIVE_LOW = new long[POWERS_OF_FIVE_HIGH.length];
+
+  static {
+    BigInteger five = BigInteger.valueOf(5);
+    for (int q = SMALLEST_POWER_OF_FIVE; q <= LARGEST_POWER_OF_FIVE; ++q) {
+      BigInteger c;
+      if (q >= 0) {
+        // 5^q with the most significant of 128 bits set, truncated
+        c = five.pow(q);
+        int shift = 128 - c.bitLength();
+        c = shift >= 0 ? c.shiftLeft(shift) : c.shiftRight(-shift);
+      } else {
+        // the reciprocal, rounded up and truncated
+        BigInteger power5 = five.pow(-q);
+        int z = power5.bitLength();
+        int bits = q >= -27 ? z + 127 : 2 * z + 128;
+        c = BigInteger.ONE.shiftLeft(bits).divide(power5).add(BigInteger.ONE);
+        if (c.bitLength() > 128) {
+          c = c.shiftRight(c.bitLength() - 128);
+        }
+      }
+      POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER_OF_FIVE] = c.shiftRight(64).longValue();
+      POWERS_OF_FIVE_LOW[q - SMALLEST_POWER_OF_FIVE] = c.longValue();
+    }
+  }
+
+  /**
+   * Parses a double like Double.parseDouble, bit for bit.
+   *
+   * Decimals ([sign] digits [. digits] [e [sign] digits]) of at most 19
+   * significant digits are converted on the bytes: exactly by a single
+   * multiplication or division if both the significand and the power of ten
+   * are exact doubles, else with the Eisel-Lemire algorithm. Everything else
+   * (more digits, NaN, Infinity, hex, suffixes, blanks) is handed to
+   * Double.parseDouble.
+   */
+  public static double parseDouble(byte[] b, int off, int len) {
+    long bits = parseBits(b, off, len, false);
+    return bits != SLOW_PATH ? Double.longBitsToDouble(bits) : parseDoubleSlow(b, off, len);
+  }
+
+  /**
+   * Parses a float like Float.parseFloat, bit for bit, see
+   * {@link #parseDouble(byte[], int, int)}.
+   */
+  public static float parseFloat(byte[] b, int off, int len) {
+    long bits = parseBits(b, off, len, true);
+    return bits != SLOW_PATH ? Float.intBitsToFloat((int) bits) : parseFloatSlow(b, off, len);
+  }
+
+  /**
+   * @return the IEEE bits of the double or float value of the slice or
+   *         SLOW_PATH, which no result has as it is a NaN
+   */
+  private static long parseBits(byte[] b, int off, int len, boolean isFloat) {
+    int i = off;
+    int end = off + len;
+    boolean negative = false;
+    if (i < end && (b[i] == '-' || b[i] == '+')) {
+      negative = b[i] == '-';
+      ++i;
+    }
+    long w = 0;
+    int q = 0;
+    int significantDigits = 0;
+    boolean digits = false;
+    boolean dot = false;
+    for (; i < end; ++i) {
+      int c = b[i];
+      if (c >= '0' && c <= '9') {
+        digits = true;
+        if (w != 0 || c != '0') {
+          if (significantDigits++ == MAX_SIGNIFICANT_DIGITS) {
+            return SLOW_PATH;
+          }
+          w = w * 10 + (c - '0');
+        }
+        if (dot) {
+          --q;
+        }
+      } else if (c == '.' && !dot) {
+        dot = true;
+      } else {
+        break;
+      }
+    }
+    if (!digits) {
+      return SLOW_PATH;
+    }
+    if (i < end && (b[i] | 0x20) == 'e') {
+      ++i;
+      boolean negativeExponent = false;
+      if (i < end && (b[i] == '-' || b[i] == '+')) {
+        negativeExponent = b[i] == '-';
+        ++i;
+      }
+      if (i == end) {
+        return SLOW_PATH;
+      }
+      int exponent = 0;
+      for (; i < end; ++i) {
+        int c = b[i];
+        if (c < '0' || c > '9') {
+          return SLOW_PATH;
+        }
+        // beyond any range, but without overflowing
+        if (exponent < 100000) {
+          exponent = exponent * 10 + (c - '0');
+        }
+      }
+      q += negativeExponent ? -exponent : exponent;
+    }
+    if (i != end) {
+      return SLOW_PATH;
+    }
+    long bits = isFloat ? floatBits(w, q) : doubleBits(w, q);
+    if (negative) {
+      bits |= isFloat ? 1L << 31 : 1L << 63;
+    }
+    return bits;
+  }
+
+  // w is unsigned, 19 digits may exceed Long.MAX_VALUE
+  private static long doubleBits(long w, int q) {
+    if (w >= 0 && w <= 1L << 53 && q >= -22 && q <= 22) {
+      double value = q < 0 ? (double) w / POWERS_OF_TEN[-q] : (double) w * POWERS_OF_TEN[q];
+      return Double.doubleToRawLongBits(value);
+    }
+    return eiselLemire(w, q, 52, -1023, 0x7FF, -4, 23, -342, 308);
+  }
+
+  private static long floatBits(long w, int q) {
+    if (w >= 0 && w <= 1L << 24 && q >= -10 && q <= 10) {
+      float value = q < 0 ? (float) w / FLOAT_POWERS_OF_TEN[-q] : (float) w * FLOAT_POWERS_OF_TEN[q];
+      return Float.floatToRawIntBits(value);
+    }
+    return eiselLemire(w, q, 23, -127, 0xFF, -17, 10, -65, 38);
+  }
+
+  /**
+   * @return the bits (without sign) of the binary floating point format with
+   *         mantissaBits explicit bits which is nearest to w * 10^q, ties to
+   *         even
+   */
+  private static long eiselLemire(long w, int q, int mantissaBits, int minimumExponent, int infinitePower,
+      int minRoundToEven, int maxRoundToEven, int smallestPowerOfTen, int largestPowerOfTen) {
+    if (w == 0 || q < smallestPowerOfTen) {
+      return 0;
+    }
+    if (q > largestPowerOfTen) {
+      return (long) infinitePower << mantissaBits;
+    }
+    int lz = Long.numberOfLeadingZeros(w);
+    w <<= lz;
+    int index = q - SMALLEST_POWER_OF_FIVE;
+    long high = multiplyHigh(w, POWERS_OF_FIVE_HIGH[index]);
+    long low = w * POWERS_OF_FIVE_HIGH[index];
+    long precisionMask = -1L >>> (mantissaBits + 3);
+    if ((high & precisionMask) == precisionMask) {
+      // the truncated low half of 5^q may matter
+      long secondHigh = multiplyHigh(w, POWERS_OF_FIVE_LOW[index]);
+      low += secondHigh;
+      if (unsignedLess(low, secondHigh)) {
+        ++high;
+      }
+    }
+    int upperBit = (int) (high >>> 63);
+    int shift = upperBit + 64 - mantissaBits - 3;
+    long mantissa = high >>> shift;
+    // floor(log2(10^q)) + 63, exact for the range of q
+    int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz - minimumExponent;
+    if (power2 <= 0) {
+      // subnormal, ties cannot occur with at most 19 digits
+      if (-power2 + 1 >= 64) {
+        return 0;
+      }
+      mantissa >>>= -power2 + 1;
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      // rounding up may end at the smallest normal
+      return mantissa;
+    }
+    if ((low == 0 || low == 1) && q >= minRoundToEven && q <= maxRoundToEven && (mantissa & 3) == 1
+        && (mantissa << shift) == high) {
+      // exactly halfway, round to even
+      mantissa &= ~1L;
+    }
+    mantissa += mantissa & 1;
+    mantissa >>>= 1;
+    if (mantissa >= 2L << mantissaBits) {
+      mantissa = 1L << mantissaBits;
+      ++power2;
+    }
+    mantissa &= ~(1L << mantissaBits);
+    if (power2 >= infinitePower) {
+      return (long) infinitePower << mantissaBits;
+    }
+    return mantissa | (long) power2 << mantissaBits;
+  }
+
+  /**
+   * @return the high 64 bits of the unsigned 128 bit product
+   */
+  static long multiplyHigh(long a, long b) {
+    long aLow = a & 0xFFFFFFFFL;
+    long aHigh = a >>> 32;
+    long bLow = b & 0xFFFFFFFFL;
+    long bHigh = b >>> 32;
+    long lowHigh = aLow * bHigh;
+    long cross = ((aLow * bLow) >>> 32) + ((aHigh * bLow) & 0xFFFFFFFFL) + lowHigh;
+    return aHigh * bHigh + ((aHigh * bLow) >>> 32) + (cross >>> 32);
+  }
+
+  private static boolean unsignedLess(long a, long b) {
+    return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+  }
+
+  static double parseDoubleSlow(byte[] b, int off, int len) {
+    return Double.parseDouble(new String(b, off, len, StandardCharsets.UTF_8));
+  }
+
+  static float parseFloatSlow(byte[] b, int off, int len) {
+    return Float.parseFloat(new String(b, off, len, StandardCharsets.UTF_8));
+  }
+
+  /** The largest decimal precision whose unscaled values fit a long. */
+  public static final int MAX_LONG_DECIMAL_PRECISION = 18;
+
+  /** Returned by {@link #parseDecimal} for values it does not handle. */
+  public static final long NOT_PARSED = Long.MIN_VALUE;
+
+  private static final long[] LONG_POWERS_OF_TEN = new long[MAX_LONG_DECIMAL_PRECISION + 1];
+
+  static {
+    LONG_POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < LONG_POWERS_OF_TEN.length; ++i) {
+      LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /**
+   * Parses a plain decimal ([sign] digits [. digits]) into its unscaled value
+   * at the given scale. Missing fraction digits are filled in, surplus ones are
+   * rounded half up, like HiveDecimal does when enforcing a scale.
+   *
+   * @param precision
+   *          at most {@link #MAX_LONG_DECIMAL_PRECISION}
+   * @return the unscaled value or NOT_PARSED if the slice is no plain decimal
+   *         or has more than precision digits at the scale
+   */
+  public static long parseDecimal(byte[] b, int off, int len, int precision, int scale) {
+    int i = off;
+    int end = off + len;
+    boolean negative = false;
+    if (i < end && (b[i] == '-' || b[i] == '+')) {
+      negative = b[i] == '-';
+      ++i;
+    }
+    final long limit = LONG_POWERS_OF_TEN[precision - 1];
+    long unscaled = 0;
+    int fractionDigits = 0;
+    boolean dot = false;
+    boolean digits = false;
+    boolean truncated = false;
+    boolean roundUp = false;
+    for (; i < end; ++i) {
+      int c = b[i];
+      if (c >= '0' && c <= '9') {
+        digits = true;
+        if (dot && fractionDigits == scale) {
+          // the first surplus digit decides the rounding, the rest are dropped
+          if (!truncated) {
+            truncated = true;
+            roundUp = c >= '5';
+          }
+          continue;
+        }
+        if (unscaled >= limit) {
+          return NOT_PARSED;
+        }
+        unscaled = unscaled * 10 + (c - '0');
+        if (dot) {
+          ++fractionDigits;
+        }
+      } else if (c == '.' && !dot) {
+        dot = true;
+      } else {
+        return NOT_PARSED;
+      }
+    }
+    if (!digits) {
+      return NOT_PARSED;
+    }
+    if (fractionDigits < scale) {
+      int missing = scale - fractionDigits;
+      if (missing > precision || unscaled >= LONG_POWERS_OF_TEN[precision - missing]) {
+        return NOT_PARSED;
+      }
+      unscaled *= LONG_POWERS_OF_TEN[missing];
+    } else if (roundUp && ++unscaled >= LONG_POWERS_OF_TEN[precision]) {
+      return NOT_PARSED;
+    }
+    return negative ? -unscaled : unscaled;
+  }
+
+  /**
+   * Parses any decimal HiveDecimal accepts into the reused holder and enforces
+   * precision and scale on it, rounding half up.
+   *
+   * @return false if the slice is no decimal or does not fit the precision
+   */
+  public static boolean parseDecimal(HiveDecimalWritable holder, byte[] b, int off, int len, int precision,
+      int scale) {
+    holder.setFromBytes(b, off, len, true);
+    return holder.isSet() && holder.mutateEnforcePrecisionScale(precision, scale);
+  }
+
+  /**
+   * @return true if the slice is "true" in any case, like Boolean.parseBoolean
+   */
+  public static boolean parseBoolean(byte[] b, int off, int len) {
+    return len == 4 && (b[off] | 0x20) == 't' && (b[off + 1] | 0x20) == 'r' && (b[off + 2] | 0x20) == 'u'
+        && (b[off + 3] | 0x20) == 'e';
+  }
+
+  static NumberFormatException numberFormatException(byte[] b, int off, int len) {
+    return new NumberFormatException("For input string: \"" + new String(b, off, len, StandardCharsets.UTF_8) + "\"");
+  }
+}
@@ -1,7 +1,8 @@
 
 package jfseb.csv2parquet.convert.utils;
 
-import java.io.Console;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.sql.Date;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -10,12 +11,8 @@ import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.TimeZone;
 
-import javax.print.attribute.standard.DateTimeAtCompleted;
-
-import org.apache.parquet.example.data.simple.Int96Value;
 import org.apache.parquet.example.data.simple.NanoTime;
 import org.apache.parquet.io.api.Binary;
-import org.relaxng.datatype.DatatypeStreamingValidator;
 
 public class CSV2ParquetTimestampUtils {
 
@@ -32,12 +29,31 @@ public class CSV2ParquetTimestampUtils {
     // todo : parse millis
     long unixSecs = result.getTime() / 1000l;
     */
+    return new NanoTime(getJulianDay(micros), getJulianTimeOfDayNanos(micros));
+  }
+
+  /**
+   * @return the julian day of the INT96 timestamp of the epoch micros
+   */
+  public static int getJulianDay(long micros) {
+    return getJulianDaysFromUnix(micros / 1000000);
+  }
+
+  /**
+   * @return the nanos of the day of the INT96 timestamp of the epoch micros
+   */
+  public static long getJulianTimeOfDayNanos(long micros) {
     long unixSecs = micros / 1000000;
-    int julianDay = getJulianDaysFromUnix(unixSecs);
-    long timeOfDayNanos = getJulianTimeInNanosFromUnix(unixSecs, 0);
-    timeOfDayNanos +=  1000l*(micros - (((long) (micros/1000000)) * 1000000));
+    return getJulianTimeInNanosFromUnix(unixSecs, 0) + 1000l * (micros - unixSecs * 1000000);
+  }
 
-    return new NanoTime(julianDay, timeOfDayNanos);
+  /**
+   * Writes the INT96 timestamp of the epoch micros to the first 12 bytes of
+   * buffer, as NanoTime.toBinary.
+   */
+  public static void putInt96(long micros, byte[] buffer) {
+    ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).putLong(getJulianTimeOfDayNanos(micros))
+        .putInt(getJulianDay(micros));
   }
   
  /*
@@ -121,40 +137,66 @@ public class CSV2ParquetTimestampUtils {
   }
 
   public static String parseDateOrIntStrict(String val) {
-    DateFormat df = new SimpleDateFormat("yyyy-MM-dd"); // , Locale.ENGLISH);
-    df.setTimeZone(TimeZone.getTimeZone("UTC"));
-    java.util.Date result;
+    return Long.toString(parseDaysOrLongStrict(val));
+  }
+
+  public static String parseDateOrIntSloppy(String val) {
+    return Long.toString(parseDaysOrLongSloppy(val));
+  }
+
+  /**
+   * @return the days since 1970-01-01 of a yyyy-MM-dd date, otherwise the
+   *         value parsed as long
+   * @throws NumberFormatException
+   *           if val is neither
+   */
+  public static long parseDaysOrLongStrict(String val) {
+    if (isLong(val)) {
+      return Long.parseLong(val);
+    }
+    long days = parseEpochDay(val);
+    if (days != NOT_PARSED) {
+      return days;
+    }
     try {
-      result = df.parse(val);
-      return "" + Double.valueOf(Math.floor(result.getTime() / (DayInSeconds * 1000l))).intValue();
+      return epochDays(DATE_FORMAT.get().parse(val));
     } catch (ParseException e) {
-      return "" + Long.parseLong(val);
+      return Long.parseLong(val);
     }
   }
 
-  public static String parseDateOrIntSloppy(String val) {
-    DateFormat df = new SimpleDateFormat("yyyy-MM-dd"); // , Locale.ENGLISH);
-    df.setTimeZone(TimeZone.getTimeZone("UTC"));
-    java.util.Date result;
+  /**
+   * Like {@link #parseDaysOrLongStrict(String)}, additionally accepting
+   * yyyyMMdd dates.
+   */
+  public static long parseDaysOrLongSloppy(String val) {
+    if (val != null && val.length() == 8) {
+      long days = parseCompactDays(val);
+      if (days != NOT_PARSED) {
+        return days;
+      }
+    } else if (isLong(val)) {
+      return Long.parseLong(val);
+    }
     try {
-      result = df.parse(val);
-      return "" + Double.valueOf(Math.floor(result.getTime() / (DayInSeconds * 1000l))).intValue();
+      return epochDays(DATE_FORMAT.get().parse(val));
     } catch (ParseException e) {
       if (val != null && (val.length() == "yyyyMMdd".length())) {
-        DateFormat df2 = new SimpleDateFormat("yyyyMMdd"); // , Locale.ENGLISH);
-        df2.setTimeZone(TimeZone.getTimeZone("UTC"));
         try {
-          result = df2.parse(val);
-          return "" +  Double.valueOf(Math.floor(result.getTime() / (DayInSeconds * 1000l))).intValue();
+          return epochDays(COMPACT_DATE_FORMAT.get().parse(val));
         } catch (ParseException e2) {
-          return "" + Long.parseLong(val);
+          return Long.parseLong(val);
         }
       } else {
-        return "" + Long.parseLong(val);
+        return Long.parseLong(val);
       }
     }
   }
 
+  private static long epochDays(java.util.Date date) {
+    return Double.valueOf(Math.floor(date.getTime() / (DayInSeconds * 1000l))).intValue();
+  }
+
   public static String formatDate(int value) {
     long milliseconds = (long) value * (24l * 60 * 60 * 1000);
     java.util.Date dt = Date.from(Instant.ofEpochMilli(milliseconds));
@@ -178,7 +220,11 @@ public class CSV2ParquetTimestampUtils {
   }
 
   public static long parseTimeMicros(String val, boolean strict) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss"); // , Locale.ENGLISH);
+    long fast = parseTimeOfDayMicros(val);
+    if (fast != NOT_PARSED) {
+      return fast;
+    }
+    DateFormat df = TIMESTAMP_FORMAT.get();
     java.util.Date result;
     int micros = 0;
     try {
@@ -206,7 +252,11 @@ public class CSV2ParquetTimestampUtils {
   }
 
   public static long parseTimeStampMicros(String val, boolean strict) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss"); // , Locale.ENGLISH);
+    long fast = parseEpochMicros(val);
+    if (fast != NOT_PARSED) {
+      return fast;
+    }
+    DateFormat df = TIMESTAMP_FORMAT.get();
     java.util.Date result;
     int micros = 0;
     try {
@@ -234,7 +284,17 @@ public class CSV2ParquetTimestampUtils {
   }
   
   public static long parseTimeStampMillis(String val, boolean strict) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss.SSS"); // , Locale.ENGLISH);
+    long seconds = parseTimestampSeconds(val);
+    if (seconds != NOT_PARSED) {
+      if (val.length() == TIMESTAMP_LENGTH && !strict) {
+        return seconds * 1000;
+      }
+      int fraction = parseFraction(val, TIMESTAMP_LENGTH);
+      if (fraction >= 0) {
+        return seconds * 1000 + fraction;
+      }
+    }
+    DateFormat df = TIMESTAMP_MILLIS_FORMAT.get();
     java.util.Date result;
     try {
       String dateval = "GMT "+ val;
@@ -254,6 +314,9 @@ public class CSV2ParquetTimestampUtils {
   
   
   public static int parseTimeMillisOrInt(String val) {
+    if (isLong(val)) {
+      return Integer.parseInt(val);
+    }
     try {
       return parseTimeMillisInt(val, false);
     } catch (ParseException e) {
@@ -262,7 +325,7 @@ public class CSV2ParquetTimestampUtils {
   }
 
   public static long parseTimeMicrosSloppy(String val) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss"); // , Locale.ENGLISH);
+    DateFormat df = TIMESTAMP_FORMAT.get();
     java.util.Date result;
     result = df.parse("GMT 1970-01-01 " + val);
     long tm = result.getTime() * 1000;
@@ -271,7 +334,7 @@ public class CSV2ParquetTimestampUtils {
   
 
   public static long parseTimestampMicrosSloppy(String val) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss"); // , Locale.ENGLISH);
+    DateFormat df = TIMESTAMP_FORMAT.get();
     java.util.Date result;
     result = df.parse("GMT " + val); // val);
     long tm = result.getTime() * 1000;
@@ -283,12 +346,21 @@ public class CSV2ParquetTimestampUtils {
   }
 
   public static int parseTimeMillisInt(String val, boolean b) throws ParseException {
-    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss.SSS"); // , Locale.ENGLISH);
+    long seconds = parseSeconds(val, 0);
+    if (seconds != NOT_PARSED) {
+      int fraction = parseFraction(val, 8);
+      if (fraction >= 0) {
+        return (int) (seconds * 1000 + fraction);
+      }
+      if (val.length() == 8 && !b) {
+        // as the sloppy path below, which truncates the micros to int first
+        return (int) (seconds * MICROS_PER_SECOND) / 1000;
+      }
+    }
+    DateFormat df = TIMESTAMP_MILLIS_FORMAT.get();
     java.util.Date result;
     try {
       result = df.parse("GMT 1970-01-01 " + val);
-      long a = result.getTime();
-      int bdd =(int) a;
       return (int) result.getTime();
     } catch (ParseException e) {
       if (b)
@@ -297,4 +369,259 @@ public class CSV2ParquetTimestampUtils {
     long parseTimeMicros = parseTimeMicrosSloppy(val);
     return (int) parseTimeMicros / 1000;
   }
+
+  /*
+   * Fast paths for the fixed patterns yyyy-MM-dd HH:mm:ss[.fraction],
+   * HH:mm:ss[.fraction], yyyy-MM-dd and yyyyMMdd with two digit fields and a
+   * four digit year. They compute the same values as the lenient
+   * SimpleDateFormat parsing above, including fields out of range (month 13,
+   * hour 24), without a Date or Calendar. A fraction is taken as a number of
+   * micros respectively millis, as SimpleDateFormat does. Anything else, and
+   * years before 1600 where GregorianCalendar switches to the Julian calendar,
+   * still goes through the SimpleDateFormat of the calling thread.
+   */
+
+  /**
+   * Returned by the parsers that do not throw if the value does not have
+   * their fixed pattern.
+   */
+  public static final long NOT_PARSED = Long.MIN_VALUE;
+  private static final long MICROS_PER_SECOND = 1000000L;
+  private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss".length();
+  private static final int MIN_FAST_YEAR = 1600;
+  // days before the first of the month in a non leap year
+  private static final int[] CUMULATIVE_DAYS = { 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334 };
+  private static final long LEAP_DAYS_BEFORE_1970 = 1969 / 4 - 1969 / 100 + 1969 / 400;
+
+  private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT = format("zzz yyyy-MM-dd HH:mm:ss", false);
+  private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_MILLIS_FORMAT = format("zzz yyyy-MM-dd HH:mm:ss.SSS",
+      false);
+  private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = format("yyyy-MM-dd", true);
+  private static final ThreadLocal<SimpleDateFormat> COMPACT_DATE_FORMAT = format("yyyyMMdd", true);
+
+  private static ThreadLocal<SimpleDateFormat> format(final String pattern, final boolean utc) {
+    return new ThreadLocal<SimpleDateFormat>() {
+      @Override
+      protected SimpleDateFormat initialValue() {
+        SimpleDateFormat df = new SimpleDateFormat(pattern);
+        if (utc) {
+          df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return df;
+      }
+    };
+  }
+
+  /**
+   * @return the days since 1970-01-01, month and day may be out of range
+   */
+  static long epochDay(long year, int month, int day) {
+    long m = month - 1;
+    year += floorDiv(m, 12);
+    m -= 12 * floorDiv(m, 12);
+    long y = year - 1;
+    long days = 365 * (year - 1970) + floorDiv(y, 4) - floorDiv(y, 100) + floorDiv(y, 400)
+        - LEAP_DAYS_BEFORE_1970 + CUMULATIVE_DAYS[(int) m];
+    if (m >= 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+      ++days;
+    }
+    return days + day - 1;
+  }
+
+  /**
+   * @return a / b rounded towards negative infinity, for positive b
+   */
+  public static long floorDiv(long a, long b) {
+    long q = a / b;
+    return (a % b < 0) ? q - 1 : q;
+  }
+
+  private static int twoDigits(CharSequence s, int i) {
+    int a = s.charAt(i) - '0';
+    int b = s.charAt(i + 1) - '0';
+    if (a < 0 || a > 9 || b < 0 || b > 9) {
+      return -1;
+    }
+    return a * 10 + b;
+  }
+
+  private static long days(int hi, int lo, int month, int day) {
+    if ((hi | lo | month | day) < 0 || hi * 100 + lo < MIN_FAST_YEAR) {
+      return NOT_PARSED;
+    }
+    return epochDay(hi * 100 + lo, month, day);
+  }
+
+  /**
+   * @return the days since 1970-01-01 of a yyyy-MM-dd date, as
+   *         {@link #parseDaysOrLongStrict(String)}, or NOT_PARSED for any
+   *         other value
+   */
+  public static long parseEpochDay(String val) {
+    if (val == null || val.length() != 10) {
+      return NOT_PARSED;
+    }
+    return parseDays(val, 0);
+  }
+
+  /**
+   * @return the micros of a HH:mm:ss[.fraction] time, as
+   *         {@link #parseTimeMicros(String, boolean)}, or NOT_PARSED for any
+   *         other value
+   */
+  public static long parseTimeOfDayMicros(CharSequence val) {
+    long seconds = parseSeconds(val, 0);
+    if (seconds != NOT_PARSED) {
+      if (val.length() == 8) {
+        return seconds * MICROS_PER_SECOND;
+      }
+      int fraction = parseFraction(val, 8);
+      if (fraction >= 0) {
+        return seconds * MICROS_PER_SECOND + fraction;
+      }
+    }
+    return NOT_PARSED;
+  }
+
+  /**
+   * @return the seconds since 1970-01-01T00:00:00 of a yyyy-MM-dd HH:mm:ss
+   *         local date-time, with ' ' or 'T' between date and time, or
+   *         NOT_PARSED for any other value, including out of range fields
+   */
+  public static long parseLocalEpochSecond(String val) {
+    if (val == null || val.length() != TIMESTAMP_LENGTH || (val.charAt(10) != ' ' && val.charAt(10) != 'T')
+        || val.charAt(4) != '-' || val.charAt(7) != '-') {
+      return NOT_PARSED;
+    }
+    int hi = twoDigits(val, 0);
+    int lo = twoDigits(val, 2);
+    int month = twoDigits(val, 5);
+    int day = twoDigits(val, 8);
+    long seconds = parseSeconds(val, 11);
+    if (month < 1 || month > 12 || day < 1 || seconds == NOT_PARSED || seconds >= DayInSeconds
+        || val.charAt(14) > '5' || val.charAt(17) > '5') {
+      return NOT_PARSED;
+    }
+    long days = days(hi, lo, month, day);
+    // beyond the end of the month
+    if (days == NOT_PARSED || days >= epochDay(hi * 100 + lo, month + 1, 1)) {
+      return NOT_PARSED;
+    }
+    return days * DayInSeconds + seconds;
+  }
+
+  // yyyy-MM-dd at from
+  private static long parseDays(CharSequence s, int from) {
+    if (s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-') {
+      return NOT_PARSED;
+    }
+    return days(twoDigits(s, from), twoDigits(s, from + 2), twoDigits(s, from + 5), twoDigits(s, from + 8));
+  }
+
+  // yyyyMMdd
+  private static long parseCompactDays(String s) {
+    return days(twoDigits(s, 0), twoDigits(s, 2), twoDigits(s, 4), twoDigits(s, 6));
+  }
+
+  // HH:mm:ss at from
+  private static long parseSeconds(CharSequence s, int from) {
+    if (s == null || s.length() < from + 8 || s.charAt(from + 2) != ':' || s.charAt(from + 5) != ':') {
+      return NOT_PARSED;
+    }
+    int hours = twoDigits(s, from);
+    int minutes = twoDigits(s, from + 3);
+    int seconds = twoDigits(s, from + 6);
+    if ((hours | minutes | seconds) < 0) {
+      return NOT_PARSED;
+    }
+    return hours * 3600L + minutes * 60 + seconds;
+  }
+
+  /**
+   * @return the micros of a yyyy-MM-dd HH:mm:ss[.fraction] timestamp, as
+   *         {@link #parseTimeStampMicros(String, boolean)}, or NOT_PARSED for
+   *         any other value
+   */
+  public static long parseEpochMicros(CharSequence val) {
+    long seconds = parseTimestampSeconds(val);
+    if (seconds != NOT_PARSED) {
+      if (val.length() == TIMESTAMP_LENGTH) {
+        return seconds * MICROS_PER_SECOND;
+      }
+      int fraction = parseFraction(val, TIMESTAMP_LENGTH);
+      if (fraction >= 0) {
+        return seconds * MICROS_PER_SECOND + fraction;
+      }
+    }
+    return NOT_PARSED;
+  }
+
+  /**
+   * @return the millis of a yyyy-MM-dd HH:mm:ss[.fraction] timestamp, as
+   *         {@link #parseTimeStampMillis(String, boolean)} not strict, or
+   *         NOT_PARSED for any other value
+   */
+  public static long parseEpochMillis(CharSequence val) {
+    long seconds = parseTimestampSeconds(val);
+    if (seconds != NOT_PARSED) {
+      if (val.length() == TIMESTAMP_LENGTH) {
+        return seconds * 1000;
+      }
+      int fraction = parseFraction(val, TIMESTAMP_LENGTH);
+      if (fraction >= 0) {
+        return seconds * 1000 + fraction;
+      }
+    }
+    return NOT_PARSED;
+  }
+
+  // yyyy-MM-dd HH:mm:ss
+  private static long parseTimestampSeconds(CharSequence s) {
+    if (s == null || s.length() < TIMESTAMP_LENGTH || s.charAt(10) != ' ') {
+      return NOT_PARSED;
+    }
+    long days = parseDays(s, 0);
+    long seconds = parseSeconds(s, 11);
+    if (days == NOT_PARSED || seconds == NOT_PARSED) {
+      return NOT_PARSED;
+    }
+    return days * DayInSeconds + seconds;
+  }
+
+  /**
+   * @return the value of '.' followed by 1 to 9 digits up to the end of s at
+   *         from, -1 otherwise
+   */
+  private static int parseFraction(CharSequence s, int from) {
+    int end = s.length();
+    if (end <= from + 1 || end > from + 10 || s.charAt(from) != '.') {
+      return -1;
+    }
+    int value = 0;
+    for (int i = from + 1; i < end; ++i) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  // an optional '-' followed by digits, never a date
+  private static boolean isLong(String s) {
+    if (s == null) {
+      return false;
+    }
+    int i = s.startsWith("-") ? 1 : 0;
+    if (i == s.length()) {
+      return false;
+    }
+    for (; i < s.length(); ++i) {
+      if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
 }
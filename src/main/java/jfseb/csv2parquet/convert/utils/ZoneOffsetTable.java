@@ -0,0 +1,152 @@
+package jfseb.csv2parquet.convert.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.threeten.bp.DateTimeException;
+import org.threeten.bp.Instant;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.ZoneId;
+import org.threeten.bp.ZoneOffset;
+import org.threeten.bp.zone.ZoneOffsetTransition;
+import org.threeten.bp.zone.ZoneRules;
+
+/**
+ * The UTC offsets of a time zone for a range of years, to convert local
+ * date-times to epoch seconds with a binary search instead of
+ * LocalDateTime.atZone.
+ *
+ * A transition takes effect at the later of its local times before and
+ * after it. Local times in a gap thus keep the earlier offset (are moved
+ * later by the length of the gap) and local times in an overlap keep the
+ * earlier offset, as in LocalDateTime.atZone. Local times outside of the
+ * years of the table are converted through the zone rules.
+ */
+public final class ZoneOffsetTable {
+  public static final int DEFAULT_FROM_YEAR = 1900;
+  public static final int DEFAULT_TO_YEAR = 2100;
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+  private final ZoneId zone;
+  // local epoch seconds covered, to exclusive
+  private final long from;
+  private final long to;
+  // the offset before the first transition
+  private final int initialOffset;
+  // per transition the local epoch second it takes effect at and the offset after it
+  private final long[] localStarts;
+  private final int[] offsets;
+
+  private ZoneOffsetTable(ZoneId zone, long from, long to, int initialOffset, long[] localStarts, int[] offsets) {
+    this.zone = zone;
+    this.from = from;
+    this.to = to;
+    this.initialOffset = initialOffset;
+    this.localStarts = localStarts;
+    this.offsets = offsets;
+  }
+
+  /**
+   * @return the table of zone for the years fromYear to toYear, inclusive
+   */
+  public static ZoneOffsetTable of(ZoneId zone, int fromYear, int toYear) {
+    if (fromYear > toYear) {
+      throw new IllegalArgumentException("empty year range " + fromYear + " to " + toYear);
+    }
+    ZoneRules rules = zone.getRules();
+    long from = CSV2ParquetTimestampUtils.epochDay(fromYear, 1, 1) * SECONDS_PER_DAY;
+    long to = CSV2ParquetTimestampUtils.epochDay(toYear + 1, 1, 1) * SECONDS_PER_DAY;
+    if (rules.isFixedOffset()) {
+      return new ZoneOffsetTable(zone, Long.MIN_VALUE, Long.MAX_VALUE,
+          rules.getOffset(Instant.EPOCH).getTotalSeconds(), new long[0], new int[0]);
+    }
+    // a day earlier, the offset is at most 18 hours
+    Instant start = Instant.ofEpochSecond(from - SECONDS_PER_DAY);
+    int initialOffset = rules.getOffset(start).getTotalSeconds();
+    long[] localStarts = new long[16];
+    int[] offsets = new int[16];
+    int n = 0;
+    ZoneOffsetTransition transition = rules.nextTransition(start);
+    while (transition != null && transition.toEpochSecond() < to + SECONDS_PER_DAY) {
+      if (n == localStarts.length) {
+        localStarts = Arrays.copyOf(localStarts, 2 * n);
+        offsets = Arrays.copyOf(offsets, 2 * n);
+      }
+      localStarts[n] = transition.toEpochSecond() + Math.max(transition.getOffsetBefore().getTotalSeconds(),
+          transition.getOffsetAfter().getTotalSeconds());
+      offsets[n] = transition.getOffsetAfter().getTotalSeconds();
+      ++n;
+      transition = rules.nextTransition(transition.getInstant());
+    }
+    return new ZoneOffsetTable(zone, from, to, initialOffset, Arrays.copyOf(localStarts, n),
+        Arrays.copyOf(offsets, n));
+  }
+
+  public static ZoneOffsetTable of(ZoneId zone) {
+    return of(zone, DEFAULT_FROM_YEAR, DEFAULT_TO_YEAR);
+  }
+
+  /**
+   * @return the table of the zone id, e.g. "Europe/Berlin" or "+02:00", or of
+   *         the default zone of the JVM if id is null or empty
+   */
+  public static ZoneOffsetTable of(String id) {
+    if (id == null || id.isEmpty()) {
+      return of(ZoneId.systemDefault());
+    }
+    try {
+      return of(ZoneId.of(id));
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("not a time zone: " + id, e);
+    }
+  }
+
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * @return the number of offset transitions in the table
+   */
+  public int getTransitions() {
+    return localStarts.length;
+  }
+
+  /**
+   * @return the UTC offset in seconds of the local epoch second
+   */
+  public int getOffset(long localSecond) {
+    if (localSecond < from || localSecond >= to) {
+      List<ZoneOffset> valid = zone.getRules().getValidOffsets(LocalDateTime.ofEpochSecond(localSecond, 0,
+          ZoneOffset.UTC));
+      if (valid.isEmpty()) {
+        // in a gap
+        return zone.getRules().getTransition(LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC))
+            .getOffsetBefore().getTotalSeconds();
+      }
+      return valid.get(0).getTotalSeconds();
+    }
+    int low = 0;
+    int high = localStarts.length - 1;
+    int offset = initialOffset;
+    // the last transition in effect at localSecond
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (localStarts[mid] <= localSecond) {
+        offset = offsets[mid];
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * @return the epoch second of the local date-time given as seconds since
+   *         1970-01-01T00:00:00, as LocalDateTime.atZone(zone).toEpochSecond()
+   */
+  public long toEpochSecond(long localSecond) {
+    return localSecond - getOffset(localSecond);
+  }
+}
@@ -0,0 +1,349 @@
+package jfseb.csv2parquet.parquet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.column.impl.ColumnWriteStoreV1;
+import org.apache.parquet.column.page.PageWriteStore;
+import org.apache.parquet.column.values.factory.DefaultV1ValuesWriterFactory;
+import org.apache.parquet.column.values.factory.DefaultV2ValuesWriterFactory;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * The encoding settings of the columns of a Parquet file.
+ *
+ * By default all columns use the page size, dictionary flag and writer
+ * version of the file, the writer version being -D
+ * parquet.writer.version=[v1|v2]. Single columns are set by
+ *
+ * <pre>
+ * -D parquet.encodings=id:delta_binary_packed,url:delta_byte_array,country:dictionary,note:plain
+ * -D parquet.page.sizes=url:64k,payload:4m
+ * </pre>
+ *
+ * The delta encodings are the value encodings of the PARQUET_2_0 writer with
+ * the dictionary switched off, they are only valid for INT32 and INT64
+ * (DELTA_BINARY_PACKED), respectively BINARY and FIXED_LEN_BYTE_ARRAY
+ * (DELTA_BYTE_ARRAY) columns. Columns of the same settings share one
+ * ColumnWriteStore, the data pages are V1 pages in all cases.
+ */
+public class ColumnEncodings {
+  public static final String WRITER_VERSION = "parquet.writer.version";
+  public static final String ENCODINGS = "parquet.encodings";
+  public static final String PAGE_SIZES = "parquet.page.sizes";
+
+  public enum ColumnEncoding {
+    PLAIN, DICTIONARY, DELTA_BINARY_PACKED, DELTA_BYTE_ARRAY;
+
+    /**
+     * @return the encoding of a name as given in parquet.encodings, delta is
+     *         short for delta_binary_packed
+     */
+    public static ColumnEncoding of(String name, String column) {
+      String value = name.trim().toUpperCase(Locale.ROOT);
+      if ("DELTA".equals(value)) {
+        return DELTA_BINARY_PACKED;
+      }
+      try {
+        return valueOf(value);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown encoding " + name + " of column " + column + " in " + ENCODINGS
+            + ", use one of plain, dictionary, delta_binary_packed, delta_byte_array");
+      }
+    }
+  }
+
+  private final int pageSize;
+  private final boolean enableDictionary;
+  private final WriterVersion writerVersion;
+  private final Map<String, ColumnEncoding> encodings = new LinkedHashMap<String, ColumnEncoding>();
+  private final Map<String, Integer> pageSizes = new LinkedHashMap<String, Integer>();
+  // one instance per distinct setting, the key of the shared write stores
+  private final Map<String, ParquetProperties> properties = new HashMap<String, ParquetProperties>();
+
+  public ColumnEncodings(int pageSize, boolean enableDictionary, WriterVersion writerVersion) {
+    this.pageSize = pageSize;
+    this.enableDictionary = enableDictionary;
+    this.writerVersion = writerVersion;
+  }
+
+  /**
+   * @return the settings of the -D parquet.writer.version, parquet.encodings
+   *         and parquet.page.sizes options of conf
+   */
+  public static ColumnEncodings of(Configuration conf, int pageSize, boolean enableDictionary) {
+    String version = conf.get(WRITER_VERSION);
+    WriterVersion writerVersion = WriterVersion.PARQUET_1_0;
+    if (version != null) {
+      try {
+        writerVersion = WriterVersion.fromString(version.trim().toLowerCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(WRITER_VERSION + " must be v1 or v2, not " + version);
+      }
+    }
+    ColumnEncodings encodings = new ColumnEncodings(pageSize, enableDictionary, writerVersion);
+    for (Map.Entry<String, String> entry : parseMap(conf.get(ENCODINGS), ENCODINGS).entrySet()) {
+      encodings.setEncoding(entry.getKey(), ColumnEncoding.of(entry.getValue(), entry.getKey()));
+    }
+    for (Map.Entry<String, String> entry : parseMap(conf.get(PAGE_SIZES), PAGE_SIZES).entrySet()) {
+      long size;
+      try {
+        size = StringUtils.TraditionalBinaryPrefix.string2long(entry.getValue().trim());
+      } catch (IllegalArgumentException e) {
+        size = -1;
+      }
+      if (size <= 0 || size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid page size " + entry.getValue() + " of column " + entry.getKey()
+            + " in " + PAGE_SIZES);
+      }
+      encodings.setPageSize(entry.getKey(), (int) size);
+    }
+    return encodings;
+  }
+
+  /**
+   * @return the column:value pairs of a comma separated list
+   */
+  static Map<String, String> parseMap(String spec, String option) {
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    if (spec == null || spec.trim().isEmpty()) {
+      return map;
+    }
+    for (String item : spec.split(",")) {
+      int colon = item.lastIndexOf(':');
+      if (colon <= 0 || colon == item.length() - 1) {
+        throw new IllegalArgumentException(option + " must be a list of column:value, not " + spec);
+      }
+      map.put(item.substring(0, colon).trim(), item.substring(colon + 1).trim());
+    }
+    return map;
+  }
+
+  public ColumnEncodings setEncoding(String column, ColumnEncoding encoding) {
+    encodings.put(column, encoding);
+    return this;
+  }
+
+  public ColumnEncodings setPageSize(String column, int size) {
+    pageSizes.put(column, Integer.valueOf(size));
+    return this;
+  }
+
+  /**
+   * @return the page size of the columns without a page size of their own
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * @return the page size of the column, also the size its dictionary may
+   *         reach before the writer falls back to plain encoding
+   */
+  public int getPageSize(String column) {
+    Integer size = pageSizes.get(column);
+    return (size != null) ? size.intValue() : pageSize;
+  }
+
+  /**
+   * @return the encoding set for the column, null if not set
+   */
+  public ColumnEncoding getEncoding(String column) {
+    return encodings.get(column);
+  }
+
+  /**
+   * @return the properties the values of the column are written with
+   */
+  public ParquetProperties getProperties(ColumnDescriptor column) {
+    String name = getName(column);
+    int columnPageSize = getPageSize(name);
+    boolean dictionary = enableDictionary;
+    WriterVersion version = writerVersion;
+    ColumnEncoding encoding = encodings.get(name);
+    if (encoding != null) {
+      check(column, encoding);
+      switch (encoding) {
+      case PLAIN:
+        // the v2 writer has no plain encoding of binary values
+        dictionary = false;
+        version = WriterVersion.PARQUET_1_0;
+        break;
+      case DICTIONARY:
+        dictionary = true;
+        break;
+      default:
+        dictionary = false;
+        version = WriterVersion.PARQUET_2_0;
+        break;
+      }
+    }
+    String key = version + "/" + dictionary + "/" + columnPageSize;
+    ParquetProperties columnProperties = properties.get(key);
+    if (columnProperties == null) {
+      // the default factories are shared, they keep the properties initializing them last
+      columnProperties = ParquetProperties.builder().withPageSize(columnPageSize)
+          .withDictionaryPageSize(columnPageSize).withDictionaryEncoding(dictionary).withWriterVersion(version)
+          .withValuesWriterFactory(version == WriterVersion.PARQUET_1_0 ? new DefaultV1ValuesWriterFactory()
+              : new DefaultV2ValuesWriterFactory())
+          .build();
+      properties.put(key, columnProperties);
+    }
+    return columnProperties;
+  }
+
+  private static void check(ColumnDescriptor column, ColumnEncoding encoding) {
+    PrimitiveTypeName type = column.getType();
+    if (encoding == ColumnEncoding.DELTA_BINARY_PACKED && type != PrimitiveTypeName.INT32
+        && type != PrimitiveTypeName.INT64) {
+      throw new IllegalArgumentException("Column " + getName(column) + " of type " + type
+          + " cannot be written as delta_binary_packed, only INT32 and INT64 columns can");
+    }
+    if (encoding == ColumnEncoding.DELTA_BYTE_ARRAY && type != PrimitiveTypeName.BINARY
+        && type != PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY) {
+      throw new IllegalArgumentException("Column " + getName(column) + " of type " + type
+          + " cannot be written as delta_byte_array, only BINARY and FIXED_LEN_BYTE_ARRAY columns can");
+    }
+  }
+
+  static String getName(ColumnDescriptor column) {
+    StringBuilder name = new StringBuilder();
+    for (String part : column.getPath()) {
+      if (name.length() > 0) {
+        name.append('.');
+      }
+      name.append(part);
+    }
+    return name.toString();
+  }
+
+  /**
+   * Checks that the columns set exist in schema and their encodings fit their
+   * types.
+   */
+  public void check(MessageType schema) {
+    List<String> names = new ArrayList<String>();
+    for (ColumnDescriptor column : schema.getColumns()) {
+      names.add(getName(column));
+      ColumnEncoding encoding = encodings.get(getName(column));
+      if (encoding != null) {
+        check(column, encoding);
+      }
+    }
+    checkColumns(encodings.keySet(), names, ENCODINGS);
+    checkColumns(pageSizes.keySet(), names, PAGE_SIZES);
+  }
+
+  /**
+   * @return a store writing each column of schema with its properties into
+   *         pages
+   */
+  public ColumnWriteStore newColumnWriteStore(MessageType schema, PageWriteStore pages) {
+    Map<ParquetProperties, ColumnWriteStore> stores = new LinkedHashMap<ParquetProperties, ColumnWriteStore>();
+    Map<ColumnDescriptor, ColumnWriteStore> columns = new HashMap<ColumnDescriptor, ColumnWriteStore>();
+    for (ColumnDescriptor column : schema.getColumns()) {
+      ParquetProperties columnProperties = getProperties(column);
+      ColumnWriteStore store = stores.get(columnProperties);
+      if (store == null) {
+        store = new ColumnWriteStoreV1(pages, columnProperties);
+        stores.put(columnProperties, store);
+      }
+      columns.put(column, store);
+    }
+    if (stores.size() == 1) {
+      return stores.values().iterator().next();
+    }
+    return new PerColumnWriteStore(columns, new ArrayList<ColumnWriteStore>(stores.values()));
+  }
+
+  private static void checkColumns(Iterable<String> columns, List<String> names, String option) {
+    for (String column : columns) {
+      if (!names.contains(column)) {
+        throw new IllegalArgumentException("Unknown column " + column + " in " + option + ", the schema has "
+            + names);
+      }
+    }
+  }
+
+  /**
+   * Delegates each column to the store of its properties.
+   */
+  static final class PerColumnWriteStore implements ColumnWriteStore {
+    private final Map<ColumnDescriptor, ColumnWriteStore> columns;
+    private final List<ColumnWriteStore> stores;
+
+    PerColumnWriteStore(Map<ColumnDescriptor, ColumnWriteStore> columns, List<ColumnWriteStore> stores) {
+      this.columns = columns;
+      this.stores = stores;
+    }
+
+    @Override
+    public ColumnWriter getColumnWriter(ColumnDescriptor path) {
+      ColumnWriteStore store = columns.get(path);
+      if (store == null) {
+        throw new IllegalArgumentException("Unknown column " + path);
+      }
+      return store.getColumnWriter(path);
+    }
+
+    @Override
+    public void flush() {
+      for (ColumnWriteStore store : stores) {
+        store.flush();
+      }
+    }
+
+    @Override
+    public void endRecord() {
+      for (ColumnWriteStore store : stores) {
+        store.endRecord();
+      }
+    }
+
+    @Override
+    public long getAllocatedSize() {
+      long size = 0;
+      for (ColumnWriteStore store : stores) {
+        size += store.getAllocatedSize();
+      }
+      return size;
+    }
+
+    @Override
+    public long getBufferedSize() {
+      long size = 0;
+      for (ColumnWriteStore store : stores) {
+        size += store.getBufferedSize();
+      }
+      return size;
+    }
+
+    @Override
+    public String memUsageString() {
+      StringBuilder sb = new StringBuilder();
+      for (ColumnWriteStore store : stores) {
+        sb.append(store.memUsageString());
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public void close() {
+      for (ColumnWriteStore store : stores) {
+        store.close();
+      }
+    }
+  }
+}
@@ -15,19 +15,36 @@
  */
 package jfseb.csv2parquet.parquet;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.schema.MessageType;
 
+import jfseb.csv2parquet.convert.CsvRecord;
 import jfseb.csv2parquet.convert.CsvWriteSupport;
 
-public class CsvParquetWriter extends ParquetWriter<List<String>> {
+/**
+ * Writes CsvRecords through the {@link CsvWriteSupport} into the row groups
+ * of a {@link RowGroupWriter}, with the {@link ColumnEncodings} of the -D
+ * settings of conf.
+ */
+public class CsvParquetWriter implements Closeable {
+
+	private final CsvWriteSupport writeSupport;
+	private final Map<String, String> extraMetaData;
+	private final MessageColumnIO columnIO;
+	private final RowGroupWriter rowGroups;
 
 	public CsvParquetWriter(Path file, MessageType schema) throws IOException {
 		this(file, schema, false, false);
@@ -39,14 +56,65 @@ public class CsvParquetWriter extends ParquetWriter<List<String>> {
 
 	public CsvParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, boolean enableDictionary, boolean readAsBinary)
 			throws IOException {
-		super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema, readAsBinary), codecName, DEFAULT_BLOCK_SIZE,
-				DEFAULT_PAGE_SIZE, enableDictionary, false);
+		this(file, schema, codecName, ParquetWriter.DEFAULT_BLOCK_SIZE, ParquetWriter.DEFAULT_PAGE_SIZE,
+				enableDictionary, readAsBinary);
 	}
 
 	public CsvParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size,
 			int page_size, boolean enableDictionary, boolean readAsBinary) throws IOException {
-		super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema, readAsBinary), codecName, block_size, page_size,
-				enableDictionary, false);
+		this(file, schema, codecName, block_size, page_size, enableDictionary, readAsBinary, new Configuration());
+	}
+
+	/**
+	 * The -D settings of conf are passed on to the {@link CsvWriteSupport} and
+	 * the {@link ColumnEncodings}.
+	 */
+	public CsvParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size,
+			int page_size, boolean enableDictionary, boolean readAsBinary, Configuration conf) throws IOException {
+		this.writeSupport = new CsvWriteSupport(schema, readAsBinary);
+		WriteSupport.WriteContext context = writeSupport.init(conf);
+		this.extraMetaData = context.getExtraMetaData();
+		this.columnIO = new ColumnIOFactory(false).getColumnIO(context.getSchema());
+		this.rowGroups = new RowGroupWriter(file, context.getSchema(), codecName, block_size,
+				ColumnEncodings.of(conf, page_size, enableDictionary), conf);
+		writeSupport.prepareForWrite(columnIO.getRecordWriter(rowGroups.getStore()));
+	}
+
+	public void write(CsvRecord record) throws IOException {
+		writeSupport.write(record);
+		if (rowGroups.endRecord()) {
+			writeSupport.prepareForWrite(columnIO.getRecordWriter(rowGroups.getStore()));
+		}
+	}
+
+	/**
+	 * Writes an already split record, e.g. for callers not using the
+	 * {@link jfseb.csv2parquet.convert.CsvTokenizer}.
+	 */
+	public void write(List<String> values) throws IOException {
+		write(CsvRecord.fromStrings(values));
+	}
+
+	/**
+	 * @return the bytes written to the file and buffered for the current row
+	 *         group
+	 */
+	public long getDataSize() throws IOException {
+		return rowGroups.getDataSize();
+	}
+
+	@Override
+	public void close() throws IOException {
+		Map<String, String> metaData = new HashMap<String, String>(extraMetaData);
+		metaData.putAll(writeSupport.finalizeWrite().getExtraMetaData());
+		rowGroups.close(metaData);
+	}
 
+	/**
+	 * Releases the writer after a failed record without writing the footer, a
+	 * no-op once closed.
+	 */
+	public void abort() {
+		rowGroups.abort();
 	}
 }
@@ -0,0 +1,213 @@
+package jfseb.csv2parquet.parquet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Log;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+import jfseb.csv2parquet.convert.ConvertUtils;
+
+/**
+ * The lookup command: writes the rows of Parquet files whose key column
+ * equals a value as CSV, e.g.
+ *
+ * <pre>
+ * lookup -c order_id -k 12345 out/
+ * </pre>
+ *
+ * Directories are searched recursively, hidden files are skipped. Only the
+ * row groups the {@link ParquetIndex} of a file does not rule out are read,
+ * all row groups of files without an index of the column.
+ */
+public class Lookup {
+  private static final Log LOG = Log.getLog(Lookup.class);
+
+  private final Configuration conf;
+  private final String column;
+  private final String key;
+  private long files;
+  private long rowGroups;
+  private long rowGroupsRead;
+  private long rows;
+
+  public Lookup(Configuration conf, String column, String key) {
+    this.conf = conf;
+    this.column = column;
+    this.key = key;
+  }
+
+  public static void main(Configuration conf, String[] args) throws Exception {
+    Options options = new Options();
+    options.addOption(Option.builder("c").longOpt("column").hasArg().required()
+        .desc("The key column, a top level column of the files").build());
+    options.addOption(Option.builder("k").longOpt("key").hasArg().required()
+        .desc("The value searched, yyyy-mm-dd for DATE columns").build());
+    CommandLine cli;
+    try {
+      cli = new DefaultParser().parse(options, args);
+    } catch (ParseException e) {
+      new HelpFormatter().printHelp("lookup -c <column> -k <key> <file or directory>...", options);
+      throw e;
+    }
+    if (cli.getArgs().length == 0) {
+      throw new IllegalArgumentException("lookup needs a Parquet file or directory");
+    }
+    Lookup lookup = new Lookup(conf, cli.getOptionValue('c'), cli.getOptionValue('k'));
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    for (String input : cli.getArgs()) {
+      lookup.lookup(new Path(input), out);
+    }
+    out.flush();
+    System.err.println(lookup.getMetrics());
+  }
+
+  /**
+   * Writes the matching rows of the Parquet files of input, a file or
+   * directory, to out.
+   */
+  public void lookup(Path input, Writer out) throws IOException {
+    FileSystem fs = input.getFileSystem(conf);
+    List<Path> parquetFiles = new ArrayList<Path>();
+    collect(fs, fs.getFileStatus(input), parquetFiles);
+    for (Path file : parquetFiles) {
+      lookupFile(file, out);
+    }
+  }
+
+  private static void collect(FileSystem fs, FileStatus status, List<Path> parquetFiles) throws IOException {
+    if (!status.isDirectory()) {
+      parquetFiles.add(status.getPath());
+      return;
+    }
+    FileStatus[] children = fs.listStatus(status.getPath());
+    Arrays.sort(children);
+    for (FileStatus child : children) {
+      String name = child.getPath().getName();
+      if (name.startsWith(".") || name.startsWith("_")) {
+        continue;
+      }
+      if (child.isDirectory() || name.endsWith(".parquet")) {
+        collect(fs, child, parquetFiles);
+      }
+    }
+  }
+
+  private void lookupFile(Path file, Writer out) throws IOException {
+    ParquetMetadata footer = ParquetFileReader.readFooter(conf, file);
+    MessageType schema = footer.getFileMetaData().getSchema();
+    if (!schema.containsField(column)) {
+      throw new IllegalArgumentException("Unknown column " + column + " in " + file + ", the schema has "
+          + ParquetIndex.getFieldNames(schema));
+    }
+    Type field = schema.getType(column);
+    int fieldIndex = schema.getFieldIndex(column);
+    byte[] keyBytes = ParquetIndex.toKey(field, key);
+    List<BlockMetaData> blocks = footer.getBlocks();
+    ++files;
+    rowGroups += blocks.size();
+
+    ParquetIndex index = ParquetIndex.read(ParquetIndex.getIndexFile(file), conf);
+    int indexColumn = (index != null) ? index.getColumn(column) : -1;
+    if (indexColumn >= 0 && index.getRowGroups().size() != blocks.size()) {
+      LOG.warn("Ignoring the index of " + file + ", it has " + index.getRowGroups().size() + " row groups instead of "
+          + blocks.size());
+      indexColumn = -1;
+    }
+    List<BlockMetaData> selected = new ArrayList<BlockMetaData>();
+    for (int i = 0; i < blocks.size(); ++i) {
+      if (indexColumn < 0 || index.mightContain(i, indexColumn, keyBytes)) {
+        selected.add(blocks.get(i));
+      }
+    }
+    if (selected.isEmpty()) {
+      return;
+    }
+    rowGroupsRead += selected.size();
+    MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+    ParquetFileReader reader = new ParquetFileReader(conf, footer.getFileMetaData(), file, selected,
+        schema.getColumns());
+    try {
+      PageReadStore pages;
+      while ((pages = reader.readNextRowGroup()) != null) {
+        RecordReader<Group> records = columnIO.getRecordReader(pages, new GroupRecordConverter(schema));
+        for (long r = pages.getRowCount(); r > 0; --r) {
+          Group group = records.read();
+          if (matches(group, field, fieldIndex, keyBytes)) {
+            ConvertUtils.writeGroup(out, group, schema, ConvertUtils.DEFAULT_CSV_DELIMITER);
+            ++rows;
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static boolean matches(Group group, Type field, int fieldIndex, byte[] key) {
+    if (group.getFieldRepetitionCount(fieldIndex) == 0) {
+      return false;
+    }
+    byte[] value;
+    switch (field.asPrimitiveType().getPrimitiveTypeName()) {
+    case INT32:
+      value = ParquetIndex.toBytes(group.getInteger(fieldIndex, 0));
+      break;
+    case INT64:
+      value = ParquetIndex.toBytes(group.getLong(fieldIndex, 0));
+      break;
+    case FLOAT:
+      value = ParquetIndex.toBytes(group.getFloat(fieldIndex, 0));
+      break;
+    case DOUBLE:
+      value = ParquetIndex.toBytes(group.getDouble(fieldIndex, 0));
+      break;
+    default:
+      value = group.getBinary(fieldIndex, 0).getBytes();
+      break;
+    }
+    return Arrays.equals(key, value);
+  }
+
+  public long getRowGroups() {
+    return rowGroups;
+  }
+
+  public long getRowGroupsRead() {
+    return rowGroupsRead;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public String getMetrics() {
+    return "files: " + files + ", row groups read: " + rowGroupsRead + " of " + rowGroups + ", rows found: " + rows;
+  }
+}
@@ -0,0 +1,676 @@
+package jfseb.csv2parquet.parquet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.threeten.bp.LocalDate;
+
+import jfseb.csv2parquet.convert.HyperLogLog;
+
+/**
+ * The sidecar index of a Parquet file: the min and max value and a
+ * {@link SplitBlockBloomFilter} per row group of the key columns given by -D
+ * parquet.index.columns=col1,col2.
+ *
+ * The index of out.parquet is written next to it as .out.parquet.index, a
+ * hidden file which readers of the directory skip. Values are kept as their
+ * little endian bytes (INT32, INT64, FLOAT, DOUBLE) or as is (BINARY,
+ * FIXED_LEN_BYTE_ARRAY), the Bloom filter hashes these bytes.
+ *
+ * The Bloom filter of a row group is sized for its distinct values: a few
+ * values are buffered and counted exactly, beyond that the values go straight
+ * into a filter large enough for the most distinct values a row group of the
+ * block size can hold, which is folded down to the {@link HyperLogLog}
+ * estimate of the distinct values at the end of the row group.
+ */
+public class ParquetIndex {
+  public static final String COLUMNS = "parquet.index.columns";
+  public static final String FPP = "parquet.index.fpp";
+  public static final double DEFAULT_FPP = 0.01;
+
+  static final int MAGIC = 0x50494458; // PIDX
+  static final int VERSION = 1;
+
+  /**
+   * The index entries of one row group, per key column.
+   */
+  public static final class RowGroup {
+    final long firstRow;
+    final long rowCount;
+    // null if the row group has no non null value of the column
+    final byte[][] min;
+    final byte[][] max;
+    final SplitBlockBloomFilter[] filters;
+
+    RowGroup(long firstRow, long rowCount, int columns) {
+      this(firstRow, rowCount, new byte[columns][], new byte[columns][], new SplitBlockBloomFilter[columns]);
+    }
+
+    RowGroup(long firstRow, long rowCount, byte[][] min, byte[][] max, SplitBlockBloomFilter[] filters) {
+      this.firstRow = firstRow;
+      this.rowCount = rowCount;
+      this.min = min;
+      this.max = max;
+      this.filters = filters;
+    }
+
+    public long getFirstRow() {
+      return firstRow;
+    }
+
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    /**
+     * @return the Bloom filter of the key column, null without values
+     */
+    public SplitBlockBloomFilter getFilter(int column) {
+      return filters[column];
+    }
+  }
+
+  private final String[] columns;
+  private final PrimitiveTypeName[] types;
+  private final List<RowGroup> rowGroups = new ArrayList<RowGroup>();
+
+  ParquetIndex(String[] columns, PrimitiveTypeName[] types) {
+    this.columns = columns;
+    this.types = types;
+  }
+
+  /**
+   * @return the sidecar index file of a Parquet file
+   */
+  public static Path getIndexFile(Path file) {
+    return new Path(file.getParent(), "." + file.getName() + ".index");
+  }
+
+  public List<RowGroup> getRowGroups() {
+    return rowGroups;
+  }
+
+  /**
+   * @return the number of the key column, -1 if the column is not indexed
+   */
+  public int getColumn(String name) {
+    return Arrays.asList(columns).indexOf(name);
+  }
+
+  /**
+   * @return false if the row group certainly has no row with the key in the
+   *         column
+   */
+  public boolean mightContain(int rowGroup, int column, byte[] key) {
+    RowGroup group = rowGroups.get(rowGroup);
+    if (group.min[column] == null) {
+      return false;
+    }
+    PrimitiveTypeName type = types[column];
+    if (compare(type, key, group.min[column]) < 0 || compare(type, key, group.max[column]) > 0) {
+      return false;
+    }
+    return group.filters[column].mightContain(SplitBlockBloomFilter.hash(key, 0, key.length));
+  }
+
+  /**
+   * Checks that field can be a key column.
+   */
+  static List<String> getFieldNames(MessageType schema) {
+    List<String> names = new ArrayList<String>();
+    for (Type field : schema.getFields()) {
+      names.add(field.getName());
+    }
+    return names;
+  }
+
+  static void checkIndexable(Type field) {
+    if (field.isPrimitive() && field.getOriginalType() != OriginalType.DECIMAL) {
+      switch (field.asPrimitiveType().getPrimitiveTypeName()) {
+      case INT32:
+      case INT64:
+      case FLOAT:
+      case DOUBLE:
+      case BINARY:
+      case FIXED_LEN_BYTE_ARRAY:
+        return;
+      default:
+        break;
+      }
+    }
+    throw new IllegalArgumentException("Cannot index column " + field.getName() + " of type " + field
+        + ", only top level INT32, INT64, FLOAT, DOUBLE and binary columns can be key columns");
+  }
+
+  /**
+   * @return the key bytes of the value of field given as text, a date for
+   *         DATE columns
+   */
+  public static byte[] toKey(Type field, String value) {
+    checkIndexable(field);
+    try {
+      switch (field.asPrimitiveType().getPrimitiveTypeName()) {
+      case INT32:
+        if (field.getOriginalType() == OriginalType.DATE) {
+          return toBytes((int) LocalDate.parse(value).toEpochDay());
+        }
+        return toBytes(Integer.parseInt(value));
+      case INT64:
+        return toBytes(Long.parseLong(value));
+      case FLOAT:
+        return toBytes(Float.parseFloat(value));
+      case DOUBLE:
+        return toBytes(Double.parseDouble(value));
+      default:
+        return value.getBytes(StandardCharsets.UTF_8);
+      }
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Key " + value + " is not a value of column " + field, e);
+    }
+  }
+
+  static byte[] toBytes(int value) {
+    return new byte[] { (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24) };
+  }
+
+  static byte[] toBytes(long value) {
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < 8; ++i) {
+      bytes[i] = (byte) (value >>> (8 * i));
+    }
+    return bytes;
+  }
+
+  static byte[] toBytes(float value) {
+    // +0.0 and -0.0 are equal
+    return toBytes(Float.floatToIntBits(value == 0 ? 0f : value));
+  }
+
+  static byte[] toBytes(double value) {
+    return toBytes(Double.doubleToLongBits(value == 0 ? 0d : value));
+  }
+
+  private static int getInt(byte[] bytes) {
+    return (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8 | (bytes[2] & 0xff) << 16 | (bytes[3] & 0xff) << 24;
+  }
+
+  private static long getLong(byte[] bytes) {
+    long value = 0;
+    for (int i = 7; i >= 0; --i) {
+      value = (value << 8) | (bytes[i] & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * Compares key bytes in the order of the type, binary values unsigned.
+   */
+  static int compare(PrimitiveTypeName type, byte[] a, byte[] b) {
+    switch (type) {
+    case INT32:
+      return Integer.compare(getInt(a), getInt(b));
+    case INT64:
+      return Long.compare(getLong(a), getLong(b));
+    case FLOAT:
+      return Float.compare(Float.intBitsToFloat(getInt(a)), Float.intBitsToFloat(getInt(b)));
+    case DOUBLE:
+      return Double.compare(Double.longBitsToDouble(getLong(a)), Double.longBitsToDouble(getLong(b)));
+    default:
+      int length = Math.min(a.length, b.length);
+      for (int i = 0; i < length; ++i) {
+        int diff = (a[i] & 0xff) - (b[i] & 0xff);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return a.length - b.length;
+    }
+  }
+
+  public void write(Path indexFile, Configuration conf) throws IOException {
+    FileSystem fs = indexFile.getFileSystem(conf);
+    DataOutputStream out = fs.create(indexFile, true);
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(columns.length);
+      for (int c = 0; c < columns.length; ++c) {
+        out.writeUTF(columns[c]);
+        out.writeUTF(types[c].name());
+      }
+      out.writeInt(rowGroups.size());
+      for (RowGroup group : rowGroups) {
+        out.writeLong(group.firstRow);
+        out.writeLong(group.rowCount);
+        for (int c = 0; c < columns.length; ++c) {
+          out.writeBoolean(group.min[c] != null);
+          if (group.min[c] == null) {
+            continue;
+          }
+          out.writeInt(group.min[c].length);
+          out.write(group.min[c]);
+          out.writeInt(group.max[c].length);
+          out.write(group.max[c]);
+          int[] words = group.filters[c].getWords();
+          out.writeInt(words.length);
+          for (int word : words) {
+            out.writeInt(word);
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @return the index in indexFile, null if there is none
+   */
+  public static ParquetIndex read(Path indexFile, Configuration conf) throws IOException {
+    FileSystem fs = indexFile.getFileSystem(conf);
+    if (!fs.exists(indexFile)) {
+      return null;
+    }
+    DataInputStream in = fs.open(indexFile);
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(indexFile + " is not a Parquet index file");
+      }
+      int count = in.readInt();
+      String[] columns = new String[count];
+      PrimitiveTypeName[] types = new PrimitiveTypeName[count];
+      for (int c = 0; c < count; ++c) {
+        columns[c] = in.readUTF();
+        types[c] = PrimitiveTypeName.valueOf(in.readUTF());
+      }
+      ParquetIndex index = new ParquetIndex(columns, types);
+      int rowGroups = in.readInt();
+      for (int r = 0; r < rowGroups; ++r) {
+        RowGroup group = new RowGroup(in.readLong(), in.readLong(), count);
+        for (int c = 0; c < count; ++c) {
+          if (!in.readBoolean()) {
+            continue;
+          }
+          group.min[c] = new byte[in.readInt()];
+          in.readFully(group.min[c]);
+          group.max[c] = new byte[in.readInt()];
+          in.readFully(group.max[c]);
+          int[] words = new int[in.readInt()];
+          for (int w = 0; w < words.length; ++w) {
+            words[w] = in.readInt();
+          }
+          group.filters[c] = new SplitBlockBloomFilter(words);
+        }
+        index.rowGroups.add(group);
+      }
+      return index;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return the index of the file concatenating the row groups of parts, null
+   *         if a part has no index
+   */
+  public static ParquetIndex concat(List<ParquetIndex> parts) {
+    ParquetIndex index = null;
+    long rows = 0;
+    for (ParquetIndex part : parts) {
+      if (part == null) {
+        return null;
+      }
+      if (index == null) {
+        index = new ParquetIndex(part.columns, part.types);
+      }
+      for (RowGroup group : part.rowGroups) {
+        index.rowGroups.add(new RowGroup(rows, group.rowCount, group.min, group.max, group.filters));
+        rows += group.rowCount;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Collects the index of a file while its row groups are written, see
+   * {@link #wrap(ColumnWriteStore)}.
+   */
+  public static final class Builder {
+    private final ParquetIndex index;
+    private final KeyWriter[] writers;
+    private final Map<ColumnDescriptor, KeyWriter> byColumn = new HashMap<ColumnDescriptor, KeyWriter>();
+    private long rows;
+
+    Builder(MessageType schema, String[] columns, double fpp, long blockSize) {
+      PrimitiveTypeName[] types = new PrimitiveTypeName[columns.length];
+      this.writers = new KeyWriter[columns.length];
+      for (int c = 0; c < columns.length; ++c) {
+        if (!schema.containsField(columns[c])) {
+          throw new IllegalArgumentException("Unknown column " + columns[c] + " in " + COLUMNS + ", the schema has "
+              + getFieldNames(schema));
+        }
+        Type field = schema.getType(columns[c]);
+        checkIndexable(field);
+        types[c] = field.asPrimitiveType().getPrimitiveTypeName();
+        // every distinct value takes at least its plain width in the row group
+        int width = Math.max(4, field.asPrimitiveType().getTypeLength());
+        if (types[c] == PrimitiveTypeName.INT64 || types[c] == PrimitiveTypeName.DOUBLE) {
+          width = 8;
+        }
+        writers[c] = new KeyWriter(types[c], fpp, SplitBlockBloomFilter.optimalBytes(Math.max(1, blockSize / width),
+            fpp));
+        byColumn.put(schema.getColumnDescription(new String[] { columns[c] }), writers[c]);
+      }
+      this.index = new ParquetIndex(columns, types);
+    }
+
+    /**
+     * @return the builder of the -D parquet.index.columns of conf, null if
+     *         none are given
+     */
+    public static Builder of(Configuration conf, MessageType schema, long blockSize) {
+      String spec = conf.get(COLUMNS);
+      if (spec == null || spec.trim().isEmpty()) {
+        return null;
+      }
+      String[] columns = spec.split(",");
+      for (int c = 0; c < columns.length; ++c) {
+        columns[c] = columns[c].trim();
+      }
+      return new Builder(schema, columns, conf.getDouble(FPP, DEFAULT_FPP), blockSize);
+    }
+
+    /**
+     * @return store, passing the values of the key columns through the
+     *         builder
+     */
+    public ColumnWriteStore wrap(final ColumnWriteStore store) {
+      return new ColumnWriteStore() {
+        @Override
+        public ColumnWriter getColumnWriter(ColumnDescriptor path) {
+          ColumnWriter writer = store.getColumnWriter(path);
+          KeyWriter key = byColumn.get(path);
+          if (key == null) {
+            return writer;
+          }
+          key.out = writer;
+          return key;
+        }
+
+        @Override
+        public void flush() {
+          store.flush();
+        }
+
+        @Override
+        public void endRecord() {
+          store.endRecord();
+        }
+
+        @Override
+        public long getAllocatedSize() {
+          return store.getAllocatedSize();
+        }
+
+        @Override
+        public long getBufferedSize() {
+          return store.getBufferedSize();
+        }
+
+        @Override
+        public String memUsageString() {
+          return store.memUsageString();
+        }
+
+        @Override
+        public void close() {
+          store.close();
+        }
+      };
+    }
+
+    /**
+     * Adds the entries of the row group written.
+     */
+    public void endRowGroup(long rowCount) {
+      RowGroup group = new RowGroup(rows, rowCount, writers.length);
+      for (int c = 0; c < writers.length; ++c) {
+        writers[c].end(group, c);
+      }
+      index.rowGroups.add(group);
+      rows += rowCount;
+    }
+
+    public ParquetIndex build() {
+      return index;
+    }
+  }
+
+  /**
+   * Passes the values of a key column on to the column writer, keeping their
+   * min, max and hashes. Numbers are compared as such, their bytes are only
+   * written to a scratch buffer to be hashed.
+   */
+  static final class KeyWriter implements ColumnWriter {
+    static final int BUFFERED_HASHES = 8192;
+
+    private final PrimitiveTypeName type;
+    private final double fpp;
+    private final int maxFilterBytes;
+    private final byte[] scratch = new byte[8];
+    ColumnWriter out;
+    private boolean hasBounds;
+    private long minLong;
+    private long maxLong;
+    private double minDouble;
+    private double maxDouble;
+    private byte[] minBytes;
+    private byte[] maxBytes;
+    private final long[] hashes = new long[BUFFERED_HASHES];
+    private int count;
+    // allocated for the first row group with more than BUFFERED_HASHES values
+    private SplitBlockBloomFilter filter;
+    private HyperLogLog distinct;
+    private boolean filtered;
+
+    KeyWriter(PrimitiveTypeName type, double fpp, int maxFilterBytes) {
+      this.type = type;
+      this.fpp = fpp;
+      this.maxFilterBytes = maxFilterBytes;
+    }
+
+    private void addHash(byte[] value, int length) {
+      long hash = SplitBlockBloomFilter.hash(value, 0, length);
+      if (filtered) {
+        filter.insertHash(hash);
+        distinct.addHash(hash);
+        return;
+      }
+      hashes[count++] = hash;
+      if (count == hashes.length) {
+        if (filter == null) {
+          filter = new SplitBlockBloomFilter(maxFilterBytes);
+          distinct = new HyperLogLog();
+        }
+        for (int i = 0; i < count; ++i) {
+          filter.insertHash(hashes[i]);
+          distinct.addHash(hashes[i]);
+        }
+        filtered = true;
+        count = 0;
+      }
+    }
+
+    private void addLong(long value, int length) {
+      for (int i = 0; i < length; ++i) {
+        scratch[i] = (byte) (value >>> (8 * i));
+      }
+      addHash(scratch, length);
+    }
+
+    private void addBounds(long value) {
+      if (!hasBounds || value < minLong) {
+        minLong = value;
+      }
+      if (!hasBounds || value > maxLong) {
+        maxLong = value;
+      }
+      hasBounds = true;
+    }
+
+    private void addBounds(double value) {
+      // NaN is hashed but no bound
+      if (Double.isNaN(value)) {
+        return;
+      }
+      if (!hasBounds || value < minDouble) {
+        minDouble = value;
+      }
+      if (!hasBounds || value > maxDouble) {
+        maxDouble = value;
+      }
+      hasBounds = true;
+    }
+
+    @Override
+    public void write(int value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+      addLong(value, 4);
+      addBounds(value);
+    }
+
+    @Override
+    public void write(long value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+      addLong(value, 8);
+      addBounds(value);
+    }
+
+    @Override
+    public void write(boolean value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+    }
+
+    @Override
+    public void write(Binary value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+      // the bytes of a reused binary change with the next value, new bounds are copied
+      byte[] bytes = value.getBytesUnsafe();
+      addHash(bytes, bytes.length);
+      if (minBytes == null || compare(type, bytes, minBytes) < 0) {
+        minBytes = bytes.clone();
+      }
+      if (maxBytes == null || compare(type, bytes, maxBytes) > 0) {
+        maxBytes = bytes.clone();
+      }
+      hasBounds = true;
+    }
+
+    @Override
+    public void write(float value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+      // +0.0 and -0.0 are equal
+      addLong(Float.floatToIntBits(value == 0 ? 0f : value), 4);
+      addBounds(value);
+    }
+
+    @Override
+    public void write(double value, int repetitionLevel, int definitionLevel) {
+      out.write(value, repetitionLevel, definitionLevel);
+      addLong(Double.doubleToLongBits(value == 0 ? 0d : value), 8);
+      addBounds(value);
+    }
+
+    @Override
+    public void writeNull(int repetitionLevel, int definitionLevel) {
+      out.writeNull(repetitionLevel, definitionLevel);
+    }
+
+    @Override
+    public void close() {
+      out.close();
+    }
+
+    @Override
+    public long getBufferedSizeInMemory() {
+      return out.getBufferedSizeInMemory();
+    }
+
+    /**
+     * Sets the entries of the column in group and starts the next row group.
+     */
+    void end(RowGroup group, int column) {
+      // a row group of NULLs and NaNs only has no bounds, it is treated as empty
+      if (hasBounds) {
+        switch (type) {
+        case INT32:
+          group.min[column] = toBytes((int) minLong);
+          group.max[column] = toBytes((int) maxLong);
+          break;
+        case INT64:
+          group.min[column] = toBytes(minLong);
+          group.max[column] = toBytes(maxLong);
+          break;
+        case FLOAT:
+          group.min[column] = toBytes((float) minDouble);
+          group.max[column] = toBytes((float) maxDouble);
+          break;
+        case DOUBLE:
+          group.min[column] = toBytes(minDouble);
+          group.max[column] = toBytes(maxDouble);
+          break;
+        default:
+          group.min[column] = minBytes;
+          group.max[column] = maxBytes;
+          break;
+        }
+        group.filters[column] = buildFilter();
+      }
+      if (filtered) {
+        filter.clear();
+        distinct = new HyperLogLog();
+        filtered = false;
+      }
+      hasBounds = false;
+      minBytes = null;
+      maxBytes = null;
+      count = 0;
+    }
+
+    private SplitBlockBloomFilter buildFilter() {
+      if (filtered) {
+        return filter.fold(SplitBlockBloomFilter.optimalBytes(distinct.estimate(), fpp));
+      }
+      Arrays.sort(hashes, 0, count);
+      int n = 0;
+      for (int i = 0; i < count; ++i) {
+        if (i == 0 || hashes[i] != hashes[i - 1]) {
+          hashes[n++] = hashes[i];
+        }
+      }
+      SplitBlockBloomFilter exact = new SplitBlockBloomFilter(SplitBlockBloomFilter.optimalBytes(n, fpp));
+      for (int i = 0; i < n; ++i) {
+        exact.insertHash(hashes[i]);
+      }
+      return exact;
+    }
+  }
+}
@@ -0,0 +1,546 @@
+package jfseb.csv2parquet.parquet;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Log;
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageWriteStore;
+import org.apache.parquet.column.page.PageWriter;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.CodecFactory.BytesCompressor;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Writes the row groups of a Parquet file from the ColumnWriteStore of the
+ * {@link ColumnEncodings} of its columns.
+ *
+ * The pages of a row group are compressed when the ColumnWriters emit them
+ * and kept per column until the row group is full (the buffered size reaches
+ * the block size), then written in column order through a ParquetFileWriter.
+ * Records are counted one by one and the buffered size is checked after an
+ * adaptive number of them, as parquet-mr's record writer does; batches of
+ * rows are checked as a whole.
+ *
+ * With -D parquet.compress.threads above 1 the pages are compressed by a pool
+ * of that many workers while the writer thread goes on encoding, so the pages
+ * of all columns, including the last ones emitted at the flush of a row
+ * group, are compressed in parallel. The compressed sizes of the finished
+ * pages are taken as they come, the writer thread waits only for the pages
+ * still pending when it checks the buffered size and when it writes the
+ * column chunks in schema order. The checks see the same compressed sizes as
+ * with inline compression, so the row groups and the file are the same.
+ * The pool is shut down by {@link #close(Map)}, {@link #abort()} or a failed
+ * flush of a row group, the last two delete the partial file.
+ */
+public class RowGroupWriter {
+  private static final Log LOG = Log.getLog(RowGroupWriter.class);
+  static final long MIN_ROWS_FOR_SIZE_CHECK = 100;
+  static final long MAX_ROWS_FOR_SIZE_CHECK = 10000;
+  public static final String COMPRESS_THREADS = "parquet.compress.threads";
+
+  private final MessageType schema;
+  private final CompressionCodecName codecName;
+  private final long blockSize;
+  private final ColumnEncodings encodings;
+  private final CodecFactory codecFactory;
+  private final BytesCompressor compressor;
+  private final ParquetFileWriter fileWriter;
+  private final Path file;
+  private final Configuration conf;
+  // null unless -D parquet.index.columns is given
+  private final ParquetIndex.Builder index;
+  // null unless pages are compressed by a pool, see COMPRESS_THREADS
+  private final ExecutorService compressionPool;
+  private final List<CodecFactory> poolCodecFactories = new ArrayList<CodecFactory>();
+  private final ThreadLocal<BytesCompressor> poolCompressors = new ThreadLocal<BytesCompressor>() {
+    @Override
+    protected BytesCompressor initialValue() {
+      CodecFactory factory = new CodecFactory(conf, encodings.getPageSize());
+      synchronized (poolCodecFactories) {
+        poolCodecFactories.add(factory);
+      }
+      return factory.getCompressor(codecName);
+    }
+  };
+
+  // the row group being written
+  private ColumnChunks chunks;
+  private ColumnWriteStore store;
+  private long rowGroupRows;
+  private long rowsForSizeCheck = MIN_ROWS_FOR_SIZE_CHECK;
+  private long rows;
+  private boolean closed;
+  // where a failed flush left the ParquetFileWriter
+  private boolean inBlock;
+  private boolean inColumn;
+
+  public RowGroupWriter(Path file, MessageType schema, CompressionCodecName codecName, long blockSize,
+      ColumnEncodings encodings, Configuration conf) throws IOException {
+    this.schema = schema;
+    this.codecName = codecName;
+    this.blockSize = blockSize;
+    this.encodings = encodings;
+    this.file = file;
+    this.conf = conf;
+    // the settings are checked before the file is created
+    encodings.check(schema);
+    this.index = ParquetIndex.Builder.of(conf, schema, blockSize);
+    this.codecFactory = new CodecFactory(conf, encodings.getPageSize());
+    this.compressor = codecFactory.getCompressor(codecName);
+    int threads = conf.getInt(COMPRESS_THREADS, 1);
+    if (threads < 1) {
+      throw new IllegalArgumentException(COMPRESS_THREADS + " must be positive, not " + threads);
+    }
+    this.fileWriter = new ParquetFileWriter(conf, schema, file, ParquetFileWriter.Mode.CREATE, blockSize,
+        ParquetWriter.MAX_PADDING_SIZE_DEFAULT);
+    fileWriter.start();
+    this.compressionPool = (threads > 1 && codecName != CompressionCodecName.UNCOMPRESSED)
+        ? newCompressionPool(threads) : null;
+    startRowGroup();
+  }
+
+  private static ExecutorService newCompressionPool(int threads) {
+    LOG.info("Compressing pages on " + threads + " threads");
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "csv2parquet2orc-compress");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private void startRowGroup() {
+    chunks = new ColumnChunks();
+    store = encodings.newColumnWriteStore(schema, chunks);
+    if (index != null) {
+      store = index.wrap(store);
+    }
+    rowGroupRows = 0;
+  }
+
+  /**
+   * @return the store of the current row group, changed by
+   *         {@link #endRecord()} or {@link #endRows(long)} returning true
+   */
+  public ColumnWriteStore getStore() {
+    return store;
+  }
+
+  /**
+   * Counts a record written to the store, the size of the row group is
+   * checked after an adaptive number of records.
+   *
+   * @return true if a new row group was started, the column writers of the
+   *         previous store must not be used any more
+   */
+  public boolean endRecord() throws IOException {
+    ++rowGroupRows;
+    ++rows;
+    return rowGroupRows >= rowsForSizeCheck && checkSize();
+  }
+
+  /**
+   * Counts a batch of rows written to the store and checks the size of the
+   * row group.
+   *
+   * @return true if a new row group was started, see {@link #endRecord()}
+   */
+  public boolean endRows(long count) throws IOException {
+    rowGroupRows += count;
+    rows += count;
+    return checkSize();
+  }
+
+  /**
+   * Flushes the row group when it reached the block size.
+   */
+  private boolean checkSize() throws IOException {
+    long size = store.getBufferedSize();
+    long rowSize = Math.max(1, size / rowGroupRows);
+    if (size > blockSize - 2 * rowSize) {
+      long previousRows = rowGroupRows;
+      boolean flushed = false;
+      try {
+        flushRowGroup();
+        flushed = true;
+      } finally {
+        if (!flushed) {
+          abort();
+        }
+      }
+      startRowGroup();
+      rowsForSizeCheck = Math.min(Math.max(MIN_ROWS_FOR_SIZE_CHECK, previousRows / 2), MAX_ROWS_FOR_SIZE_CHECK);
+      return true;
+    }
+    rowsForSizeCheck = Math.min(Math.max(MIN_ROWS_FOR_SIZE_CHECK, (rowGroupRows + blockSize / rowSize) / 2),
+        rowGroupRows + MAX_ROWS_FOR_SIZE_CHECK);
+    return false;
+  }
+
+  private void flushRowGroup() throws IOException {
+    if (rowGroupRows == 0) {
+      return;
+    }
+    LOG.info("Flushing row group of " + rowGroupRows + " rows, " + store.getBufferedSize() + " bytes buffered");
+    store.flush();
+    fileWriter.startBlock(rowGroupRows);
+    inBlock = true;
+    for (ColumnDescriptor column : schema.getColumns()) {
+      chunks.get(column).writeTo(fileWriter);
+    }
+    fileWriter.endBlock();
+    inBlock = false;
+    store.close();
+    if (index != null) {
+      index.endRowGroup(rowGroupRows);
+    }
+  }
+
+  /**
+   * @return the page writers of the current row group
+   */
+  PageWriteStore getPageWriteStore() {
+    return chunks;
+  }
+
+  /**
+   * @return the bytes written to the file and buffered for the current row
+   *         group
+   */
+  public long getDataSize() throws IOException {
+    return fileWriter.getPos() + store.getBufferedSize();
+  }
+
+  /**
+   * @return the number of rows written
+   */
+  public long getRowCount() {
+    return rows;
+  }
+
+  /**
+   * Writes the last row group and the footer, and the sidecar
+   * {@link ParquetIndex} if key columns are given.
+   */
+  public void close(Map<String, String> extraMetaData) throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    boolean written = false;
+    try {
+      flushRowGroup();
+      fileWriter.end(extraMetaData);
+      written = true;
+      if (index != null) {
+        index.build().write(ParquetIndex.getIndexFile(file), conf);
+      }
+    } finally {
+      if (!written) {
+        discard();
+      }
+      release();
+    }
+  }
+
+  /**
+   * Deletes the partial file and releases the compressors and the compression
+   * pool, e.g. after a failed record, a no-op once closed.
+   */
+  public void abort() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      discard();
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Closes and deletes the partial file, failures are logged only so that
+   * they do not hide the failure of the conversion.
+   */
+  private void discard() {
+    // the ParquetFileWriter of parquet 1.9 closes its stream only at the end
+    try {
+      if (inColumn) {
+        fileWriter.endColumn();
+      }
+      if (inBlock) {
+        fileWriter.endBlock();
+      }
+      fileWriter.end(new HashMap<String, String>());
+    } catch (IOException e) {
+      LOG.warn("Closing the partial file " + file + " failed", e);
+    }
+    try {
+      file.getFileSystem(conf).delete(file, false);
+    } catch (IOException e) {
+      LOG.warn("Deleting the partial file " + file + " failed", e);
+    }
+  }
+
+  private void release() {
+    codecFactory.release();
+    if (compressionPool != null) {
+      compressionPool.shutdownNow();
+      synchronized (poolCodecFactories) {
+        for (CodecFactory factory : poolCodecFactories) {
+          factory.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the compressed bytes of a page, compressed by the pool if there is
+   *         one
+   */
+  private Future<BytesInput> compress(BytesInput bytes) throws IOException {
+    if (compressionPool == null) {
+      // the values writers reuse their buffers after the page
+      return new Compressed(BytesInput.copy(compressor.compress(bytes)));
+    }
+    final BytesInput page = BytesInput.copy(bytes);
+    return compressionPool.submit(new Callable<BytesInput>() {
+      @Override
+      public BytesInput call() throws IOException {
+        return BytesInput.copy(poolCompressors.get().compress(page));
+      }
+    });
+  }
+
+  private static BytesInput waitFor(Future<BytesInput> bytes) throws IOException {
+    try {
+      return bytes.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while compressing");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("compressing a page failed", e.getCause());
+    }
+  }
+
+  /**
+   * The bytes of a page compressed inline.
+   */
+  static final class Compressed implements Future<BytesInput> {
+    private final BytesInput bytes;
+
+    Compressed(BytesInput bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return true;
+    }
+
+    @Override
+    public BytesInput get() {
+      return bytes;
+    }
+
+    @Override
+    public BytesInput get(long timeout, TimeUnit unit) {
+      return bytes;
+    }
+  }
+
+  /**
+   * A data page of a column chunk, its bytes possibly still being compressed.
+   */
+  static final class Page {
+    final Future<BytesInput> bytes;
+    final int valueCount;
+    final int uncompressedSize;
+    final Statistics<?> statistics;
+    final Encoding rlEncoding;
+    final Encoding dlEncoding;
+    final Encoding valuesEncoding;
+
+    Page(Future<BytesInput> bytes, int valueCount, int uncompressedSize, Statistics<?> statistics,
+        Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) {
+      this.bytes = bytes;
+      this.valueCount = valueCount;
+      this.uncompressedSize = uncompressedSize;
+      this.statistics = statistics;
+      this.rlEncoding = rlEncoding;
+      this.dlEncoding = dlEncoding;
+      this.valuesEncoding = valuesEncoding;
+    }
+  }
+
+  /**
+   * The pages of one column chunk, compressed as they are written.
+   */
+  final class ColumnChunk implements PageWriter {
+    private final ColumnDescriptor descriptor;
+    private final List<Page> pages = new ArrayList<Page>();
+    // the first page whose compressed size is not yet in memSize
+    private int pendingPages;
+    // null without a dictionary page
+    private Future<BytesInput> dictionaryBytes;
+    private int dictionaryUncompressedSize;
+    private int dictionarySize;
+    private Encoding dictionaryEncoding;
+    private long valueCount;
+    private long memSize;
+
+    ColumnChunk(ColumnDescriptor descriptor) {
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public void writePage(BytesInput bytes, int valueCount, Statistics<?> statistics, Encoding rlEncoding,
+        Encoding dlEncoding, Encoding valuesEncoding) throws IOException {
+      long uncompressedSize = bytes.size();
+      if (uncompressedSize > Integer.MAX_VALUE) {
+        throw new ParquetEncodingException("page of " + descriptor + " too large: " + uncompressedSize);
+      }
+      Future<BytesInput> compressed = compress(bytes);
+      pages.add(new Page(compressed, valueCount, (int) uncompressedSize, statistics, rlEncoding, dlEncoding,
+          valuesEncoding));
+      this.valueCount += valueCount;
+      // adds the pages compressed meanwhile without waiting, all of them inline
+      while (pendingPages < pages.size() && pages.get(pendingPages).bytes.isDone()) {
+        memSize += waitFor(pages.get(pendingPages++).bytes).size();
+      }
+    }
+
+    /**
+     * Writes a V2 page as the V1 page of the same values, the ParquetFileWriter
+     * of parquet 1.9 writes V1 data pages only. The levels of a V1 page are
+     * prefixed by their length, levels of maximum 0 are left out.
+     */
+    @Override
+    public void writePageV2(int rowCount, int nullCount, int valueCount, BytesInput repetitionLevels,
+        BytesInput definitionLevels, Encoding dataEncoding, BytesInput data, Statistics<?> statistics)
+        throws IOException {
+      Encoding rlEncoding = levelEncoding(descriptor.getMaxRepetitionLevel());
+      Encoding dlEncoding = levelEncoding(descriptor.getMaxDefinitionLevel());
+      writePage(BytesInput.concat(levels(repetitionLevels, rlEncoding), levels(definitionLevels, dlEncoding), data),
+          valueCount, statistics, rlEncoding, dlEncoding, dataEncoding);
+    }
+
+    private Encoding levelEncoding(int maxLevel) {
+      return maxLevel == 0 ? Encoding.BIT_PACKED : Encoding.RLE;
+    }
+
+    private BytesInput levels(BytesInput levels, Encoding encoding) throws IOException {
+      if (encoding == Encoding.BIT_PACKED) {
+        return BytesInput.empty();
+      }
+      return BytesInput.concat(BytesInput.fromInt((int) levels.size()), levels);
+    }
+
+    /**
+     * @return the compressed size of the data pages, waits for the pages
+     *         still being compressed by the pool
+     */
+    @Override
+    public long getMemSize() {
+      try {
+        for (; pendingPages < pages.size(); ++pendingPages) {
+          memSize += waitFor(pages.get(pendingPages).bytes).size();
+        }
+      } catch (IOException e) {
+        throw new ParquetEncodingException("compressing a page of " + descriptor + " failed", e);
+      }
+      return memSize;
+    }
+
+    @Override
+    public long allocatedSize() {
+      return getMemSize();
+    }
+
+    @Override
+    public void writeDictionaryPage(DictionaryPage page) throws IOException {
+      dictionaryBytes = compress(page.getBytes());
+      dictionaryUncompressedSize = (int) page.getBytes().size();
+      dictionarySize = page.getDictionarySize();
+      dictionaryEncoding = page.getEncoding();
+    }
+
+    @Override
+    public String memUsageString(String prefix) {
+      return prefix + " ColumnChunk " + Arrays.toString(descriptor.getPath()) + " " + getMemSize() + " bytes";
+    }
+
+    void writeTo(ParquetFileWriter writer) throws IOException {
+      writer.startColumn(descriptor, valueCount, codecName);
+      inColumn = true;
+      if (dictionaryBytes != null) {
+        writer.writeDictionaryPage(new DictionaryPage(waitFor(dictionaryBytes), dictionaryUncompressedSize,
+            dictionarySize, dictionaryEncoding));
+      }
+      for (Page page : pages) {
+        writer.writeDataPage(page.valueCount, page.uncompressedSize, waitFor(page.bytes), page.statistics,
+            page.rlEncoding, page.dlEncoding, page.valuesEncoding);
+      }
+      writer.endColumn();
+      inColumn = false;
+    }
+  }
+
+  final class ColumnChunks implements PageWriteStore {
+    private final HashMap<ColumnDescriptor, ColumnChunk> chunks = new HashMap<ColumnDescriptor, ColumnChunk>();
+
+    @Override
+    public PageWriter getPageWriter(ColumnDescriptor descriptor) {
+      return get(descriptor);
+    }
+
+    ColumnChunk get(ColumnDescriptor descriptor) {
+      ColumnChunk chunk = chunks.get(descriptor);
+      if (chunk == null) {
+        chunk = new ColumnChunk(descriptor);
+        chunks.put(descriptor, chunk);
+      }
+      return chunk;
+    }
+  }
+}
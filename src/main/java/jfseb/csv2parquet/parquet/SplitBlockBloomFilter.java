@@ -0,0 +1,125 @@
+package jfseb.csv2parquet.parquet;
+
+import java.util.Arrays;
+
+import org.apache.hive.common.util.Murmur3;
+
+/**
+ * A split block Bloom filter as specified for Parquet: the filter is an array
+ * of 256 bit blocks of eight 32 bit words, a value sets one bit in each word
+ * of the block selected by the upper half of its 64 bit hash.
+ *
+ * The hash is Murmur3, as used by the ORC Bloom filters, instead of the
+ * xxHash of the specification; the filters are only read by
+ * {@link ParquetIndex}.
+ */
+public class SplitBlockBloomFilter {
+  static final int BYTES_PER_BLOCK = 32;
+  static final int MIN_BYTES = BYTES_PER_BLOCK;
+  static final int MAX_BYTES = 128 << 20;
+
+  private static final int[] SALT = { 0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b,
+      0x9efc4947, 0x5c6bfb31 };
+
+  private final int[] words;
+
+  /**
+   * @param bytes
+   *          the size of the filter, a power of 2 of at least 32
+   */
+  public SplitBlockBloomFilter(int bytes) {
+    if (bytes < MIN_BYTES || Integer.bitCount(bytes) != 1) {
+      throw new IllegalArgumentException("Bloom filter size must be a power of 2 of at least " + MIN_BYTES
+          + " bytes, not " + bytes);
+    }
+    this.words = new int[bytes / 4];
+  }
+
+  SplitBlockBloomFilter(int[] words) {
+    this.words = words;
+  }
+
+  /**
+   * @return the size in bytes of a filter of ndv distinct values with the
+   *         false positive probability fpp
+   */
+  public static int optimalBytes(long ndv, double fpp) {
+    if (fpp <= 0 || fpp >= 1) {
+      throw new IllegalArgumentException("false positive probability must be between 0 and 1, not " + fpp);
+    }
+    double bits = -8 * ndv / Math.log(1 - Math.pow(fpp, 1.0 / 8));
+    if (bits >= MAX_BYTES * 8.0) {
+      return MAX_BYTES;
+    }
+    int bytes = MIN_BYTES;
+    while (bytes * 8.0 < bits) {
+      bytes <<= 1;
+    }
+    return bytes;
+  }
+
+  public static long hash(byte[] value, int offset, int length) {
+    return Murmur3.hash64(value, offset, length);
+  }
+
+  private int block(long hash) {
+    long blocks = words.length / 8;
+    return (int) (((hash >>> 32) * blocks) >>> 32) * 8;
+  }
+
+  public void insertHash(long hash) {
+    int block = block(hash);
+    int key = (int) hash;
+    for (int i = 0; i < 8; ++i) {
+      words[block + i] |= 1 << ((key * SALT[i]) >>> 27);
+    }
+  }
+
+  /**
+   * @return false if the value of hash was certainly not inserted
+   */
+  public boolean mightContain(long hash) {
+    int block = block(hash);
+    int key = (int) hash;
+    for (int i = 0; i < 8; ++i) {
+      if ((words[block + i] & (1 << ((key * SALT[i]) >>> 27))) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the filter of bytes, a power of 2 not larger than this one, with
+   *         the bits the hashes inserted here set in it, as if they had been
+   *         inserted into a filter of that size. The block of a hash is
+   *         chosen by its upper bits, so each block of the smaller filter is
+   *         the union of adjacent blocks of this one.
+   */
+  public SplitBlockBloomFilter fold(int bytes) {
+    if (bytes >= getBytes()) {
+      return new SplitBlockBloomFilter(words.clone());
+    }
+    SplitBlockBloomFilter folded = new SplitBlockBloomFilter(bytes);
+    int factor = getBytes() / bytes;
+    for (int block = 0; block < words.length; block += 8) {
+      int target = block / 8 / factor * 8;
+      for (int i = 0; i < 8; ++i) {
+        folded.words[target + i] |= words[block + i];
+      }
+    }
+    return folded;
+  }
+
+  public void clear() {
+    Arrays.fill(words, 0);
+  }
+
+  int[] getWords() {
+    return words;
+  }
+
+  public int getBytes() {
+    return words.length * 4;
+  }
+}
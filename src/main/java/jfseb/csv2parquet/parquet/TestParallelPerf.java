@@ -0,0 +1,51 @@
+package jfseb.csv2parquet.parquet;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.Log;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Utils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.ConvertUtils;
+
+/**
+ * Measures the scaling of the --threads conversion on a generated tpch
+ * customer like file.
+ */
+public class TestParallelPerf {
+  private static final Log LOG = Log.getLog(TestParallelPerf.class);
+
+  private static final int fileSizeMegs = 500;
+
+  static final String CUSTOMER_SCHEMA = "message customer {\n" + "  optional int64 c_custkey;\n"
+      + "  optional binary c_name (UTF8);\n" + "  optional binary c_address (UTF8);\n"
+      + "  optional int32 c_nationkey;\n" + "  optional binary c_phone (UTF8);\n" + "  optional double c_acctbal;\n"
+      + "  optional binary c_mktsegment (UTF8);\n" + "  optional binary c_comment (UTF8);\n" + "}\n";
+
+  @Test
+  public void testParallelPerf() throws IOException {
+    File csvFile = TestTokenizerPerf.createCustomerLikeFile(fileSizeMegs);
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    Configuration conf = new Configuration();
+    conf.set("parquet.compress", "SNAPPY");
+    long sequentialTime = 0;
+    int maxThreads = Integer.getInteger("perf.threads", Runtime.getRuntime().availableProcessors());
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      File parquetFile = Utils.getParquetOutputFile("perfparallel", String.valueOf(threads), true);
+      long start = System.currentTimeMillis();
+      ConvertUtils.convertCsvToParquet(csvFile, parquetFile, CUSTOMER_SCHEMA, false, options, conf, threads);
+      long time = Math.max(1, System.currentTimeMillis() - start);
+      if (threads == 1) {
+        sequentialTime = time;
+      }
+      LOG.info(String.format("%d threads: %d ms, speedup %.2f", threads, time, sequentialTime / (double) time));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package jfseb.csv2parquet.parquet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.parquet.Log;
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.CsvRecord;
+import jfseb.csv2parquet.convert.CsvTokenizer;
+
+/**
+ * Compares the former readLine/split loop of ConvertUtils with the byte level
+ * {@link CsvTokenizer}, reading a stream or memory mapped windows, on a
+ * generated tpch customer like file.
+ */
+public class TestTokenizerPerf {
+  private static final Log LOG = Log.getLog(TestTokenizerPerf.class);
+
+  private static final int fileSizeMegs = 200;
+  private static final int rounds = 3;
+
+  static File createCustomerLikeFile(long largerThanMB) throws IOException {
+    File file = new File("target/test/csv/perftokenizer/customer_" + largerThanMB + ".csv");
+    if (file.exists()) {
+      return file;
+    }
+    file.getParentFile().mkdirs();
+    Random random = new Random(4711);
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    try {
+      long size = 0;
+      for (int key = 1; size < largerThanMB * 1024 * 1024; ++key) {
+        String line = key + "|Customer#" + String.format("%09d", key) + "|" + Long.toString(random.nextLong(), 36)
+            + "|" + random.nextInt(25) + "|" + (10 + random.nextInt(25)) + "-" + (100 + random.nextInt(900)) + "-"
+            + (1000 + random.nextInt(9000)) + "|" + (random.nextInt(1100000) - 100000) / 100.0 + "|BUILDING|"
+            + "regular deposits cajole carefully furiously final packages|";
+        out.write(line);
+        out.write('\n');
+        size += line.length() + 1;
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static long splitLoop(File file, String delimiter, int cols) throws IOException {
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    long chars = 0;
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] fields = line.split(Pattern.quote(delimiter));
+        ArrayList<String> lst = new ArrayList<String>(Arrays.asList(fields));
+        while (lst.size() < cols) {
+          lst.add("");
+        }
+        chars += lst.get(cols - 1).length();
+      }
+    } finally {
+      br.close();
+    }
+    return chars;
+  }
+
+  static long tokenizerLoop(CsvTokenizer tokenizer, int cols) throws IOException {
+    long chars = 0;
+    try {
+      while (tokenizer.next()) {
+        CsvRecord rec = tokenizer.getRecord();
+        chars += rec.getLength(cols - 1);
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return chars;
+  }
+
+  @Test
+  public void testTokenizerPerf() throws IOException {
+    File csvFile = createCustomerLikeFile(fileSizeMegs);
+    double megs = csvFile.length() / (1024.0 * 1024.0);
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    int cols = 8;
+    for (int round = 0; round < rounds; ++round) {
+      long start = System.currentTimeMillis();
+      long splitChars = splitLoop(csvFile, "|", cols);
+      long splitTime = Math.max(1, System.currentTimeMillis() - start);
+      start = System.currentTimeMillis();
+      long tokenizerChars = tokenizerLoop(new CsvTokenizer(new FileInputStream(csvFile), options), cols);
+      long tokenizerTime = Math.max(1, System.currentTimeMillis() - start);
+      start = System.currentTimeMillis();
+      long mappedChars = tokenizerLoop(CsvTokenizer.mapped(csvFile, options, CsvTokenizer.DEFAULT_WINDOW_SIZE), cols);
+      long mappedTime = Math.max(1, System.currentTimeMillis() - start);
+      assertEquals(splitChars, tokenizerChars);
+      assertEquals(splitChars, mappedChars);
+      LOG.info(String.format("round %d: split %d ms (%.1f MB/s), tokenizer %d ms (%.1f MB/s), mapped %d ms (%.1f MB/s)",
+          round, splitTime, megs * 1000 / splitTime, tokenizerTime, megs * 1000 / tokenizerTime, mappedTime,
+          megs * 1000 / mappedTime));
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package jfseb.csv2parquet.parquet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.Log;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.CsvRecord;
+import jfseb.csv2parquet.convert.CsvTokenizer;
+import jfseb.csv2parquet.convert.CsvWriteSupport;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetNumberUtils;
+
+/**
+ * Compares writing tpch customer like records through the per-column writers
+ * compiled by CsvWriteSupport with the former per-value dispatch on the
+ * column types, both into a RecordConsumer which only counts.
+ */
+public class TestWritePlanPerf {
+  private static final Log LOG = Log.getLog(TestWritePlanPerf.class);
+
+  private static final int fileSizeMegs = 200;
+  private static final int rounds = 3;
+
+  static class CountingConsumer extends RecordConsumer {
+    long values;
+
+    @Override
+    public void startMessage() {
+    }
+
+    @Override
+    public void endMessage() {
+    }
+
+    @Override
+    public void startField(String field, int index) {
+    }
+
+    @Override
+    public void endField(String field, int index) {
+    }
+
+    @Override
+    public void startGroup() {
+    }
+
+    @Override
+    public void endGroup() {
+    }
+
+    @Override
+    public void addInteger(int value) {
+      values += value;
+    }
+
+    @Override
+    public void addLong(long value) {
+      values += value;
+    }
+
+    @Override
+    public void addBoolean(boolean value) {
+      ++values;
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      values += value.length();
+    }
+
+    @Override
+    public void addFloat(float value) {
+      values += (long) value;
+    }
+
+    @Override
+    public void addDouble(double value) {
+      values += (long) value;
+    }
+  }
+
+  /**
+   * The dispatch of the former CsvWriteSupport.write for the column types of
+   * the customer schema: the types are looked up and switched on per value.
+   */
+  static void dispatchWrite(MessageType schema, List<ColumnDescriptor> cols, RecordConsumer consumer,
+      CsvRecord record) {
+    consumer.startMessage();
+    byte[] bytes = record.getBytes();
+    for (int i = 0; i < cols.size(); ++i) {
+      int len = record.getLength(i);
+      if (len > 0) {
+        int start = record.getStart(i);
+        OriginalType ot = schema.getFields().get(i).getOriginalType();
+        String val = null;
+        if (cols.get(i).getType() == PrimitiveTypeName.DOUBLE || ot == OriginalType.DECIMAL) {
+          val = record.getString(i);
+        }
+        consumer.startField(cols.get(i).getPath()[0], i);
+        switch (cols.get(i).getType()) {
+        case INT32:
+          consumer.addInteger(ot == OriginalType.DECIMAL ? Integer.parseInt(val.replaceAll("\\.", ""))
+              : CSV2ParquetNumberUtils.parseInt(bytes, start, len));
+          break;
+        case INT64:
+          consumer.addLong(ot == OriginalType.DECIMAL ? Long.parseLong(val.replaceAll("\\.", ""))
+              : CSV2ParquetNumberUtils.parseLong(bytes, start, len));
+          break;
+        case DOUBLE:
+          consumer.addDouble(Double.parseDouble(val));
+          break;
+        case BINARY:
+          consumer.addBinary(record.getBinary(i));
+          break;
+        default:
+          throw new IllegalArgumentException("not a customer column type: " + cols.get(i).getType());
+        }
+        consumer.endField(cols.get(i).getPath()[0], i);
+      }
+    }
+    consumer.endMessage();
+  }
+
+  static long dispatchLoop(CsvTokenizer tokenizer, MessageType schema) throws IOException {
+    CountingConsumer consumer = new CountingConsumer();
+    List<ColumnDescriptor> cols = schema.getColumns();
+    try {
+      while (tokenizer.next()) {
+        dispatchWrite(schema, cols, consumer, tokenizer.getRecord());
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return consumer.values;
+  }
+
+  static long planLoop(CsvTokenizer tokenizer, MessageType schema) throws IOException {
+    CountingConsumer consumer = new CountingConsumer();
+    CsvWriteSupport writeSupport = new CsvWriteSupport(schema, false);
+    writeSupport.init(new Configuration());
+    writeSupport.prepareForWrite(consumer);
+    try {
+      while (tokenizer.next()) {
+        writeSupport.write(tokenizer.getRecord());
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return consumer.values;
+  }
+
+  @Test
+  public void testWritePlanPerf() throws IOException {
+    File csvFile = TestTokenizerPerf.createCustomerLikeFile(fileSizeMegs);
+    double megs = csvFile.length() / (1024.0 * 1024.0);
+    MessageType schema = MessageTypeParser.parseMessageType(TestParallelPerf.CUSTOMER_SCHEMA);
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    for (int round = 0; round < rounds; ++round) {
+      long start = System.currentTimeMillis();
+      long dispatchValues = dispatchLoop(CsvTokenizer.mapped(csvFile, options, CsvTokenizer.DEFAULT_WINDOW_SIZE),
+          schema);
+      long dispatchTime = Math.max(1, System.currentTimeMillis() - start);
+      start = System.currentTimeMillis();
+      long planValues = planLoop(CsvTokenizer.mapped(csvFile, options, CsvTokenizer.DEFAULT_WINDOW_SIZE), schema);
+      long planTime = Math.max(1, System.currentTimeMillis() - start);
+      assertEquals(dispatchValues, planValues);
+      LOG.info(String.format("round %d: dispatch %d ms (%.1f MB/s), plan %d ms (%.1f MB/s)", round, dispatchTime,
+          megs * 1000 / dispatchTime, planTime, megs * 1000 / planTime));
+    }
+  }
+}
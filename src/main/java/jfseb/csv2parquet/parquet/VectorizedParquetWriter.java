@@ -0,0 +1,386 @@
+package jfseb.csv2parquet.parquet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.DecimalMetadata;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
+
+/**
+ * Writes VectorizedRowBatches, as read by the ORC style CsvReader and
+ * JsonReader, to a Parquet file column by column, without a record per row.
+ *
+ * Each ColumnVector is written straight into the Parquet ColumnWriter of its
+ * column, the row groups are written by a {@link RowGroupWriter} with the
+ * {@link ColumnEncodings} of the -D settings. Only flat schemas are
+ * supported: the struct fields of the ORC schema map one to one to the
+ * primitive fields of the Parquet schema.
+ */
+public class VectorizedParquetWriter implements Closeable {
+
+  private final MessageType schema;
+  private final RowGroupWriter rowGroups;
+  private final VectorWriter[] writers;
+
+  public VectorizedParquetWriter(Path file, TypeDescription orcSchema, MessageType schema,
+      CompressionCodecName codecName, int blockSize, int pageSize, boolean enableDictionary, Configuration conf)
+      throws IOException {
+    this.schema = schema;
+    this.writers = compile(orcSchema, schema);
+    this.rowGroups = new RowGroupWriter(file, schema, codecName, blockSize,
+        ColumnEncodings.of(conf, pageSize, enableDictionary), conf);
+    startRowGroup();
+  }
+
+  private void startRowGroup() {
+    ColumnWriteStore store = rowGroups.getStore();
+    for (VectorWriter writer : writers) {
+      writer.out = store.getColumnWriter(writer.descriptor);
+    }
+  }
+
+  /**
+   * Writes the batch.size rows of batch, column by column.
+   */
+  public void write(VectorizedRowBatch batch) throws IOException {
+    if (batch.cols.length < writers.length) {
+      throw new IllegalArgumentException("batch of " + batch.cols.length + " columns for " + writers.length
+          + " columns of " + schema.getName());
+    }
+    if (batch.size == 0) {
+      return;
+    }
+    for (int c = 0; c < writers.length; ++c) {
+      writers[c].write(batch.cols[c], batch.size);
+    }
+    // the V1 store does not track records, no endRecord per row
+    if (rowGroups.endRows(batch.size)) {
+      startRowGroup();
+    }
+  }
+
+  /**
+   * @return the bytes written to the file and buffered for the current row
+   *         group
+   */
+  public long getDataSize() throws IOException {
+    return rowGroups.getDataSize();
+  }
+
+  /**
+   * @return the number of rows written
+   */
+  public long getRowCount() {
+    return rowGroups.getRowCount();
+  }
+
+  @Override
+  public void close() throws IOException {
+    rowGroups.close(new HashMap<String, String>());
+  }
+
+  /**
+   * Writes one ColumnVector into the ColumnWriter of its column.
+   */
+  abstract static class VectorWriter {
+    final ColumnDescriptor descriptor;
+    final String name;
+    final int maxDefinitionLevel;
+    ColumnWriter out;
+
+    VectorWriter(ColumnDescriptor descriptor, String name) {
+      this.descriptor = descriptor;
+      this.name = name;
+      this.maxDefinitionLevel = descriptor.getMaxDefinitionLevel();
+    }
+
+    final void write(ColumnVector vector, int size) {
+      for (int r = 0; r < size; ++r) {
+        int row = vector.isRepeating ? 0 : r;
+        if (!vector.noNulls && vector.isNull[row]) {
+          if (maxDefinitionLevel == 0) {
+            throw new ParquetEncodingException("null value in required column " + name + ", row " + r);
+          }
+          out.writeNull(0, 0);
+        } else {
+          writeValue(vector, row);
+        }
+      }
+    }
+
+    abstract void writeValue(ColumnVector vector, int row);
+  }
+
+  static final class BooleanWriter extends VectorWriter {
+    BooleanWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      out.write(((LongColumnVector) vector).vector[row] != 0, 0, maxDefinitionLevel);
+    }
+  }
+
+  static final class IntWriter extends VectorWriter {
+    IntWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      long value = ((LongColumnVector) vector).vector[row];
+      if (value != (int) value) {
+        throw new ParquetEncodingException("value " + value + " out of range of INT32 column " + name);
+      }
+      out.write((int) value, 0, maxDefinitionLevel);
+    }
+  }
+
+  static final class LongWriter extends VectorWriter {
+    LongWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      out.write(((LongColumnVector) vector).vector[row], 0, maxDefinitionLevel);
+    }
+  }
+
+  static final class FloatWriter extends VectorWriter {
+    FloatWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      out.write((float) ((DoubleColumnVector) vector).vector[row], 0, maxDefinitionLevel);
+    }
+  }
+
+  static final class DoubleWriter extends VectorWriter {
+    DoubleWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      out.write(((DoubleColumnVector) vector).vector[row], 0, maxDefinitionLevel);
+    }
+  }
+
+  static final class BinaryWriter extends VectorWriter {
+    private final int fixedLength;
+
+    BinaryWriter(ColumnDescriptor descriptor, String name) {
+      super(descriptor, name);
+      this.fixedLength = descriptor.getTypeLength();
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      BytesColumnVector bytes = (BytesColumnVector) vector;
+      if (fixedLength > 0 && bytes.length[row] != fixedLength) {
+        throw new ParquetEncodingException("value of " + bytes.length[row] + " bytes in column " + name
+            + " of fixed length " + fixedLength);
+      }
+      out.write(Binary.fromReusedByteArray(bytes.vector[row], bytes.start[row], bytes.length[row]), 0,
+          maxDefinitionLevel);
+    }
+  }
+
+  /**
+   * Timestamps as INT96 or as epoch micros or millis in INT64.
+   */
+  static final class TimestampWriter extends VectorWriter {
+    private final OriginalType type;
+    private final byte[] int96 = new byte[12];
+
+    TimestampWriter(ColumnDescriptor descriptor, String name, OriginalType type) {
+      super(descriptor, name);
+      this.type = type;
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      TimestampColumnVector timestamps = (TimestampColumnVector) vector;
+      long millis = timestamps.time[row];
+      if (type == OriginalType.TIMESTAMP_MILLIS) {
+        out.write(millis, 0, maxDefinitionLevel);
+        return;
+      }
+      // time holds the millis of nanos as well
+      long micros = CSV2ParquetTimestampUtils.floorDiv(millis, 1000) * 1000000 + timestamps.nanos[row] / 1000;
+      if (descriptor.getType() == PrimitiveType.PrimitiveTypeName.INT64) {
+        out.write(micros, 0, maxDefinitionLevel);
+      } else {
+        CSV2ParquetTimestampUtils.putInt96(micros, int96);
+        out.write(Binary.fromReusedByteArray(int96), 0, maxDefinitionLevel);
+      }
+    }
+  }
+
+  /**
+   * Decimals as the unscaled value at the scale of the column: INT32, INT64
+   * or the big endian two's complement, sign extended to the length of
+   * FIXED_LEN_BYTE_ARRAY columns. Extra fraction digits are rounded half up,
+   * values beyond the precision of the column are rejected.
+   */
+  static final class DecimalWriter extends VectorWriter {
+    private final int precision;
+    private final int scale;
+    private final int fixedLength;
+    private final HiveDecimalWritable holder = new HiveDecimalWritable();
+    private final long[] scratchLongs = new long[HiveDecimal.SCRATCH_LONGS_LEN];
+    private final byte[] scratchBytes = new byte[HiveDecimal.SCRATCH_BUFFER_LEN_BIG_INTEGER_BYTES];
+    private final byte[] fixed;
+
+    DecimalWriter(ColumnDescriptor descriptor, String name, int precision, int scale) {
+      super(descriptor, name);
+      this.precision = precision;
+      this.scale = scale;
+      this.fixedLength = descriptor.getTypeLength();
+      this.fixed = new byte[fixedLength];
+    }
+
+    @Override
+    void writeValue(ColumnVector vector, int row) {
+      holder.set(((DecimalColumnVector) vector).vector[row]);
+      if (!holder.mutateEnforcePrecisionScale(precision, scale)) {
+        throw new ParquetEncodingException("decimal " + ((DecimalColumnVector) vector).vector[row]
+            + " out of range of column " + name + " decimal(" + precision + "," + scale + ")");
+      }
+      holder.mutateScaleByPowerOfTen(scale);
+      switch (descriptor.getType()) {
+      case INT32:
+      case INT64:
+        if (!holder.isLong() || (descriptor.getType() == PrimitiveType.PrimitiveTypeName.INT32 && !holder.isInt())) {
+          throw new ParquetEncodingException("decimal " + ((DecimalColumnVector) vector).vector[row]
+              + " out of range of column " + name);
+        }
+        if (descriptor.getType() == PrimitiveType.PrimitiveTypeName.INT32) {
+          out.write(holder.intValue(), 0, maxDefinitionLevel);
+        } else {
+          out.write(holder.longValue(), 0, maxDefinitionLevel);
+        }
+        return;
+      default:
+        int length = holder.bigIntegerBytes(scratchLongs, scratchBytes);
+        if (fixedLength == 0) {
+          out.write(Binary.fromReusedByteArray(scratchBytes, 0, length), 0, maxDefinitionLevel);
+          return;
+        }
+        if (length > fixedLength) {
+          throw new ParquetEncodingException("decimal " + ((DecimalColumnVector) vector).vector[row]
+              + " out of range of column " + name);
+        }
+        Arrays.fill(fixed, 0, fixedLength - length, holder.signum() < 0 ? (byte) -1 : 0);
+        System.arraycopy(scratchBytes, 0, fixed, fixedLength - length, length);
+        out.write(Binary.fromReusedByteArray(fixed), 0, maxDefinitionLevel);
+      }
+    }
+  }
+
+  /**
+   * @return a writer per field of the flat schemas, by the ORC category and
+   *         the Parquet type of the field
+   */
+  static VectorWriter[] compile(TypeDescription orcSchema, MessageType schema) {
+    List<TypeDescription> children = orcSchema.getChildren();
+    if (orcSchema.getCategory() != TypeDescription.Category.STRUCT || children.size() != schema.getFieldCount()) {
+      throw new IllegalArgumentException("schema " + orcSchema + " does not match " + schema);
+    }
+    List<ColumnDescriptor> columns = schema.getColumns();
+    if (columns.size() != schema.getFieldCount()) {
+      throw new IllegalArgumentException("only flat schemas can be written from row batches: " + schema);
+    }
+    VectorWriter[] writers = new VectorWriter[columns.size()];
+    for (int i = 0; i < writers.length; ++i) {
+      Type field = schema.getType(i);
+      writers[i] = writer(children.get(i), field, columns.get(i));
+    }
+    return writers;
+  }
+
+  private static VectorWriter writer(TypeDescription orcType, Type field, ColumnDescriptor descriptor) {
+    String name = field.getName();
+    PrimitiveType.PrimitiveTypeName type = descriptor.getType();
+    switch (orcType.getCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case DATE:
+      switch (type) {
+      case BOOLEAN:
+        return new BooleanWriter(descriptor, name);
+      case INT32:
+        return new IntWriter(descriptor, name);
+      case INT64:
+        return new LongWriter(descriptor, name);
+      default:
+        break;
+      }
+      break;
+    case FLOAT:
+    case DOUBLE:
+      if (type == PrimitiveType.PrimitiveTypeName.FLOAT) {
+        return new FloatWriter(descriptor, name);
+      } else if (type == PrimitiveType.PrimitiveTypeName.DOUBLE) {
+        return new DoubleWriter(descriptor, name);
+      }
+      break;
+    case STRING:
+    case CHAR:
+    case VARCHAR:
+    case BINARY:
+      if (type == PrimitiveType.PrimitiveTypeName.BINARY
+          || type == PrimitiveType.PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY) {
+        return new BinaryWriter(descriptor, name);
+      }
+      break;
+    case TIMESTAMP:
+      if (type == PrimitiveType.PrimitiveTypeName.INT96 || type == PrimitiveType.PrimitiveTypeName.INT64) {
+        return new TimestampWriter(descriptor, name, field.getOriginalType());
+      }
+      break;
+    case DECIMAL:
+      if (field.getOriginalType() == OriginalType.DECIMAL && type != PrimitiveType.PrimitiveTypeName.BOOLEAN) {
+        DecimalMetadata decimal = field.asPrimitiveType().getDecimalMetadata();
+        return new DecimalWriter(descriptor, name, decimal.getPrecision(), decimal.getScale());
+      }
+      break;
+    default:
+      break;
+    }
+    throw new IllegalArgumentException("cannot write " + orcType + " column " + name + " as " + field);
+  }
+}
@@ -1,5 +1,6 @@
 package jfseb.csv2parquet.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -79,30 +80,143 @@ public class ParseHexRec {
   public static ParsedRec parse(String baseval) {
     // content is supposed to be hexadecimal,
     //
-    if (!baseval.matches("0x([a-fA-F0-9][a-fA-F0-9])+x0")) {
+    HexDecoder decoder = new HexDecoder();
+    byte[] b = baseval.getBytes(StandardCharsets.ISO_8859_1);
+    if (!decoder.decode(b, 0, b.length)) {
       return null;
     }
-    String val = baseval.substring(2, baseval.length() - 2);
     ParsedRec res = new ParsedRec();
-    String len16 = getLen(val, 16);
-    String len8 = getLen(val, 8);
-    res.asLong = Long.parseUnsignedLong(len16, 16);
-    res.asInt = Integer.parseUnsignedInt(len8, 16);
-    res.asFloat = Float.intBitsToFloat(res.asInt);
-    res.asDouble = Double.longBitsToDouble(res.asLong);
-    if (val.length() % 2 != 0) {
-      throw new IllegalArgumentException(" odd number of hex digits in " + val);
-    }
-    byte[] bytes = new byte[val.length() / 2];
-    for (int i = 0; i < val.length() / 2; ++i) {
-      String v = new StringBuilder().append(val.charAt(i * 2)).append(val.charAt(i * 2 + 1)).toString();
-      int u = Integer.parseUnsignedInt(v, 16);
-      bytes[i] = (byte) u;
-    }
-    res.binary = Binary.fromConstantByteArray(bytes);
+    res.asLong = decoder.asLong();
+    res.asInt = decoder.asInt();
+    res.asFloat = decoder.asFloat();
+    res.asDouble = decoder.asDouble();
+    res.binary = Binary.fromConstantByteArray(decoder.toByteArray());
     return res;
   }
 
+  private static final byte[] HEX_DIGITS = new byte[128];
+
+  static {
+    Arrays.fill(HEX_DIGITS, (byte) -1);
+    for (int i = 0; i < 10; ++i) {
+      HEX_DIGITS['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; ++i) {
+      HEX_DIGITS['a' + i] = (byte) (10 + i);
+      HEX_DIGITS['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  /**
+   * Decodes the 0x..x0 fields of binary CSV straight from the field bytes into
+   * a buffer reused for every field, a decoder belongs to one column.
+   *
+   * Only the representation asked for by the column type is computed from the
+   * buffer: the number getters take the trailing 8 (4) bytes big endian, like
+   * the fields of {@link ParsedRec}.
+   */
+  public static class HexDecoder {
+    private byte[] bytes = new byte[16];
+    private byte[] padded = new byte[0];
+    private int length;
+
+    /**
+     * @return true if the len bytes at off are 0x, pairs of hex digits and x0,
+     *         which are then decoded
+     */
+    public boolean decode(byte[] b, int off, int len) {
+      if (len < 6 || (len & 1) != 0 || b[off] != '0' || b[off + 1] != 'x' || b[off + len - 2] != 'x'
+          || b[off + len - 1] != '0') {
+        return false;
+      }
+      int n = (len - 4) / 2;
+      if (bytes.length < n) {
+        bytes = new byte[Math.max(n, 2 * bytes.length)];
+      }
+      for (int i = 0, p = off + 2; i < n; ++i, p += 2) {
+        int hi = digit(b[p]);
+        int lo = digit(b[p + 1]);
+        if ((hi | lo) < 0) {
+          return false;
+        }
+        bytes[i] = (byte) ((hi << 4) | lo);
+      }
+      length = n;
+      return true;
+    }
+
+    private static int digit(byte c) {
+      return c >= 0 ? HEX_DIGITS[c] : -1;
+    }
+
+    /**
+     * @return the number of decoded bytes
+     */
+    public int length() {
+      return length;
+    }
+
+    public long asLong() {
+      long v = 0;
+      for (int i = Math.max(0, length - 8); i < length; ++i) {
+        v = (v << 8) | (bytes[i] & 0xff);
+      }
+      return v;
+    }
+
+    public int asInt() {
+      int v = 0;
+      for (int i = Math.max(0, length - 4); i < length; ++i) {
+        v = (v << 8) | (bytes[i] & 0xff);
+      }
+      return v;
+    }
+
+    public float asFloat() {
+      return Float.intBitsToFloat(asInt());
+    }
+
+    public double asDouble() {
+      return Double.longBitsToDouble(asLong());
+    }
+
+    /**
+     * @return the decoded bytes, valid up to {@link #length()} until the next
+     *         decode
+     */
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    public byte[] toByteArray() {
+      return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * @return a binary backed by the reused buffer, consumers which keep the
+     *         value must copy it.
+     */
+    public Binary toBinary() {
+      return Binary.fromReusedByteArray(bytes, 0, length);
+    }
+
+    /**
+     * @return the trailing len bytes, left padded with 0, like
+     *         {@link ParsedRec#getBinary(int)} but backed by a reused buffer
+     */
+    public Binary toBinary(int len) {
+      if (length >= len) {
+        return Binary.fromReusedByteArray(bytes, length - len, len);
+      }
+      if (padded.length != len) {
+        padded = new byte[len];
+      }
+      Arrays.fill(padded, 0, len - length, (byte) 0);
+      System.arraycopy(bytes, 0, padded, len - length, length);
+      return Binary.fromReusedByteArray(padded, 0, len);
+    }
+  }
+
   static private Binary stringToBinary(String value) {
     return Binary.fromString(value);
   }
@@ -26,6 +26,10 @@ public class SQLSchemaScanner {
   }
 
   public static SQLType extractSQLType(String line) {
+    return extractSQLType(line, TimestampType.INT96);
+  }
+
+  public static SQLType extractSQLType(String line, TimestampType timestamps) {
     Pattern ptnHasNull = Pattern.compile("\\s+NULL", Pattern.CASE_INSENSITIVE);
     boolean hasNull = ptnHasNull.matcher(line).find();
     Repetition repetition = hasNull ? Repetition.OPTIONAL : Repetition.REQUIRED; 
@@ -44,7 +48,9 @@ public class SQLSchemaScanner {
       SQLType tt = new SQLType();
       tt.name = m.group(1);
       tt.length = 0;
-      tt.primitiveType = new PrimitiveType(repetition,  PrimitiveTypeName.INT96,tt.name,OriginalType.TIMESTAMP_MICROS); 
+      tt.primitiveType = (timestamps == TimestampType.INT96)
+          ? new PrimitiveType(repetition,  PrimitiveTypeName.INT96,tt.name,OriginalType.TIMESTAMP_MICROS)
+          : timestamps.makePrimitiveType(repetition, tt.name);
       return tt; 
     } 
     reCV = Pattern.compile("([A-Za-z0-9_]+)\\s+((TIME))",Pattern.CASE_INSENSITIVE);
@@ -10,6 +10,7 @@ import java.util.regex.Pattern;
 
 import org.apache.orc.TypeDescription;
 import org.apache.orc.TypeDescription.Category;
+import org.apache.parquet.schema.DecimalMetadata;
 import org.apache.parquet.schema.GroupType;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
@@ -30,6 +31,14 @@ import jfseb.csv2parquet.utils.USchema;
 public class SchemaCreator {
 
   public static USchema makeSchema(File csvFile, String schemaStr) {
+    return makeSchema(csvFile, schemaStr, TimestampType.INT96);
+  }
+
+  /**
+   * @param timestamps
+   *          the Parquet type of ORC and SQL timestamps
+   */
+  public static USchema makeSchema(File csvFile, String schemaStr, TimestampType timestamps) {
     // attempt to parse a schema from schemastr.
 
     USchema res = new USchema();
@@ -51,7 +60,7 @@ public class SchemaCreator {
       List<SQLType> sqlTypes = new ArrayList<SQLType>();
       for (int i = 0; i < lines.length; ++i) {
         String line = lines[i];
-        SQLType pt = SQLSchemaScanner.extractSQLType(line);
+        SQLType pt = SQLSchemaScanner.extractSQLType(line, timestamps);
         if (pt != null) {
           fields.add(pt.primitiveType);
           sqlTypes.add(pt);
@@ -65,7 +74,7 @@ public class SchemaCreator {
       res.typeDescription = makeTypeDescriptionFrom(res.messageType);
     }
     if (res.messageType == null && res.typeDescription != null) {
-      res.messageType = makeTypeDescriptionFrom(res.typeDescription);
+      res.messageType = makeTypeDescriptionFrom(res.typeDescription, timestamps);
     }
     return res;
   }
@@ -87,12 +96,12 @@ public class SchemaCreator {
     return result;
   }
 
-  private static MessageType makeTypeDescriptionFrom(TypeDescription td) {
+  private static MessageType makeTypeDescriptionFrom(TypeDescription td, TimestampType timestamps) {
     List<Type> fields = new ArrayList<Type>();
     for (int i = 0; i < td.getChildren().size(); ++i) {
       TypeDescription tdf = td.getChildren().get(i);
       String name = td.getFieldNames().get(i);
-      PrimitiveType prim = makePrimitiveType(name, tdf);
+      PrimitiveType prim = makePrimitiveType(name, tdf, timestamps);
       // boolean Null = TypeMapping.getNull(tp);
       // Main.out.println(tp.getName() + " " + TypeMapping.getSqlType(tp) + (Null ? "
       // NULL" : "") + ";"
@@ -102,27 +111,34 @@ public class SchemaCreator {
     return new MessageType("m", fields);
   }
 
-  private static PrimitiveType makePrimitiveType(String name, TypeDescription tdf) {
+  private static PrimitiveType makePrimitiveType(String name, TypeDescription tdf, TimestampType timestamps) {
     Repetition rep = TypeMapping.getNull(tdf) ? Repetition.OPTIONAL : Repetition.REQUIRED;
     switch (tdf.getCategory()) {
     case BOOLEAN:
       return new PrimitiveType(rep, PrimitiveTypeName.BOOLEAN, name);
     case BINARY:
       return new PrimitiveType(rep, PrimitiveTypeName.BINARY, name);
+    case STRING:
+    case CHAR:
     case VARCHAR:
-      return new PrimitiveType(rep, PrimitiveTypeName.BINARY, name);
+      return new PrimitiveType(rep, PrimitiveTypeName.BINARY, name, OriginalType.UTF8);
     case DECIMAL:
-      return new PrimitiveType(rep, PrimitiveTypeName.BINARY, name);
+      return new PrimitiveType(rep, PrimitiveTypeName.BINARY, 0, name, OriginalType.DECIMAL,
+          new DecimalMetadata(tdf.getPrecision(), tdf.getScale()), null);
     case DOUBLE:
       return new PrimitiveType(rep, PrimitiveTypeName.DOUBLE, name);
     case FLOAT:
       return new PrimitiveType(rep, PrimitiveTypeName.FLOAT, name);
+    case BYTE:
+    case SHORT:
     case INT:
       return new PrimitiveType(rep, PrimitiveTypeName.INT32, name);
+    case DATE:
+      return new PrimitiveType(rep, PrimitiveTypeName.INT32, name, OriginalType.DATE);
     case LONG:
       return new PrimitiveType(rep, PrimitiveTypeName.INT64, name);
     case TIMESTAMP:
-      return new PrimitiveType(rep, PrimitiveTypeName.INT96, name);
+      return timestamps.makePrimitiveType(rep, name);
     default:
       throw new IllegalArgumentException(tdf.toString() + "\n" + tdf.toJson());
     }
@@ -0,0 +1,62 @@
+package jfseb.csv2parquet.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Type.Repetition;
+
+/**
+ * The Parquet type timestamps are written as, -D parquet.timestamp.
+ *
+ * INT96 (the default, as read by Impala and older Hive) has no usable
+ * statistics and is not delta encoded; the INT64 types are.
+ */
+public enum TimestampType {
+  INT64_MICROS, INT64_MILLIS, INT96;
+
+  public static TimestampType of(Configuration conf) {
+    String value = (conf == null) ? null : conf.get("parquet.timestamp");
+    if (value == null) {
+      return INT96;
+    }
+    try {
+      return valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(" parquet.timestamp must be [int64_micros, int64_millis, int96]");
+    }
+  }
+
+  public PrimitiveType makePrimitiveType(Repetition rep, String name) {
+    switch (this) {
+    case INT64_MICROS:
+      return new PrimitiveType(rep, PrimitiveTypeName.INT64, name, OriginalType.TIMESTAMP_MICROS);
+    case INT64_MILLIS:
+      return new PrimitiveType(rep, PrimitiveTypeName.INT64, name, OriginalType.TIMESTAMP_MILLIS);
+    default:
+      return new PrimitiveType(rep, PrimitiveTypeName.INT96, name);
+    }
+  }
+
+  /**
+   * @return schema with its INT96 columns replaced by columns of this type
+   */
+  public MessageType apply(MessageType schema) {
+    if (this == INT96) {
+      return schema;
+    }
+    List<Type> fields = new ArrayList<Type>(schema.getFieldCount());
+    for (Type field : schema.getFields()) {
+      if (field.isPrimitive() && field.asPrimitiveType().getPrimitiveTypeName() == PrimitiveTypeName.INT96) {
+        field = makePrimitiveType(field.getRepetition(), field.getName());
+      }
+      fields.add(field);
+    }
+    return new MessageType(schema.getName(), fields);
+  }
+}
@@ -15,96 +15,149 @@ import org.apache.orc.RecordReader;
 import org.apache.orc.TypeDescription;
 import org.apache.parquet.Log;
 import org.threeten.bp.LocalDateTime;
-import org.threeten.bp.ZoneId;
+import org.threeten.bp.ZoneOffset;
 import org.threeten.bp.ZonedDateTime;
 import org.threeten.bp.format.DateTimeFormatter;
 import org.threeten.bp.format.DateTimeParseException;
 import org.threeten.bp.temporal.TemporalAccessor;
 
-import com.opencsv.CSVReader;
-
 import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.CsvRecord;
+import jfseb.csv2parquet.convert.CsvRecordSource;
+import jfseb.csv2parquet.convert.CsvTokenizer;
+import jfseb.csv2parquet.convert.ValueMemo;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetNumberUtils;
 import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
+import jfseb.csv2parquet.convert.utils.ZoneOffsetTable;
 import jfseb.csv2parquet.utils.ParseHexRec;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.math.BigInteger;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.ParseException;
-
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV into row batches.
+ *
+ * Records are split by a {@link CsvTokenizer} on the raw bytes, string fields
+ * are copied straight into the shared buffer of the BytesColumnVector
+ * (setVal, the buffer is initialized by batch.reset()) and plain integer and
+ * decimal numbers are parsed from the byte slice, decimals of precision up to
+ * 18 straight into the unscaled long. Only the less common formats (dates,
+ * times, timestamps) are decoded into a String first. Timestamps without
+ * offset are local to the zone of -D csv.timezone (default the zone of the
+ * JVM), looked up in a precomputed {@link ZoneOffsetTable}.
+ */
 public class CsvReader implements RecordReader {
+  private static final Log LOG = Log.getLog(CsvReader.class);
   private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
       .ofPattern("yyyy[[-][/]]MM[[-][/]]dd[['T'][ ]]HH:mm:ss[ ][XXX][X]");
 
   private long rowNumber = 0;
   private final Converter converter;
   private final int columns;
-  private final CSVReader reader;
-  private final String nullString;
+  private final CsvRecordSource reader;
+  private final byte[] nullString;
   private final FSDataInputStream underlying;
   private final long totalSize;
 
   public TypeDescription schema;
 
   private final boolean csvFormatBinary;
+  // the memos of the date and timestamp columns, empty if switched off
+  private final boolean memo;
+  private final List<ValueMemo> memos = new ArrayList<ValueMemo>();
+  // the offsets of the zone of timestamps without offset
+  private final ZoneOffsetTable zoneOffsets;
 
   /**
    * Create a CSV reader
    * 
-   * @param reader
-   *          the stream to read from
    * @param input
+   *          the (decompressed) stream to read from
+   * @param underlying
    *          the underlying file that is only used for getting the position
    *          within the file
    * @param size
    *          the number of bytes in the underlying stream
    * @param schema
    *          the schema to read into
-   * @param separatorChar
-   *          the character between fields
-   * @param quoteChar
-   *          the quote character
-   * @param escapeChar
-   *          the escape character
-   * @param headerLines
-   *          the number of header lines
-   * @param nullString
-   *          the string that is translated to null
+   * @param csvoptions
+   *          separator, quote, escape, header lines and the string that is
+   *          translated to null
    * @throws IOException
    */
-  public CsvReader(java.io.Reader reader, FSDataInputStream input, long size, TypeDescription schema,
+  public CsvReader(InputStream input, FSDataInputStream underlying, long size, TypeDescription schema,
+      CSVOptions csvoptions) throws IOException {
+    this(new CsvTokenizer(input, csvoptions), underlying, size, schema, csvoptions);
+  }
+
+  /**
+   * Create a CSV reader on a tokenizer, e.g. a memory mapped one. Without an
+   * underlying stream the progress is taken from the tokenizer offset.
+   */
+  public CsvReader(CsvTokenizer tokenizer, FSDataInputStream underlying, long size, TypeDescription schema,
       CSVOptions csvoptions) throws IOException {
-    this.underlying = input;
+    this(tokenizer, underlying, size, schema, csvoptions, -1);
+  }
+
+  /**
+   * Create a CSV reader on a projecting tokenizer, schema describes the
+   * projected record and each input record must have inputColumns columns.
+   */
+  public CsvReader(CsvTokenizer tokenizer, FSDataInputStream underlying, long size, TypeDescription schema,
+      CSVOptions csvoptions, int inputColumns) throws IOException {
+    this((CsvRecordSource) tokenizer, underlying, size, schema, csvoptions, inputColumns);
+    tokenizer.skipRecords(csvoptions.csvHeaderLines);
+  }
+
+  /**
+   * Create a CSV reader on records without header lines, e.g. the sorted
+   * records of an {@link jfseb.csv2parquet.convert.ExternalSorter}, the
+   * progress is taken from their offset.
+   */
+  public CsvReader(CsvRecordSource records, long size, TypeDescription schema, CSVOptions csvoptions,
+      int inputColumns) throws IOException {
+    this(records, null, size, schema, csvoptions, inputColumns);
+  }
+
+  private CsvReader(CsvRecordSource records, FSDataInputStream underlying, long size, TypeDescription schema,
+      CSVOptions csvoptions, int inputColumns) throws IOException {
+    this.underlying = underlying;
     this.schema = schema;
-    this.reader = new CSVReader(reader, csvoptions.csvSeparatorAsChar, csvoptions.csvQuote, csvoptions.csvEscape,
-        csvoptions.csvHeaderLines);
-    this.nullString = csvoptions.csvNullString;
+    this.reader = records;
+    this.nullString = (csvoptions.csvNullString == null ? "" : csvoptions.csvNullString)
+        .getBytes(StandardCharsets.UTF_8);
     this.csvFormatBinary = csvoptions.csvFormatBinary;
+    this.memo = csvoptions.csvMemo;
+    this.zoneOffsets = ZoneOffsetTable.of(csvoptions.csvTimezone);
     this.totalSize = size;
     IntWritable nextColumn = new IntWritable(0);
     this.converter = buildConverter(nextColumn, schema);
-    this.columns = nextColumn.get();
+    this.columns = inputColumns >= 0 ? inputColumns : nextColumn.get();
   }
 
   interface Converter {
-    void convert(String[] values, VectorizedRowBatch batch, int row);
+    void convert(CsvRecord values, VectorizedRowBatch batch, int row);
 
-    void convert(String[] values, ColumnVector column, int row);
+    void convert(CsvRecord values, ColumnVector column, int row);
   }
 
   @Override
   public boolean nextBatch(VectorizedRowBatch batch) throws IOException {
     batch.reset();
     final int BATCH_SIZE = batch.getMaxSize();
-    String[] nextLine;
     // Read the CSV rows and place them into the column vectors.
-    while ((nextLine = reader.readNext()) != null) {
+    while (reader.next()) {
+      CsvRecord nextLine = reader.getRecord();
       rowNumber++;
-      if (nextLine.length != columns && !(nextLine.length == columns + 1 && "".equals(nextLine[columns]))) {
+      int fields = reader.getFieldCount();
+      if (fields != columns && !(fields == columns + 1 && reader.isLastFieldEmpty())) {
         throw new IllegalArgumentException(
-            "Too many columns on line " + rowNumber + ". Expected " + columns + ", but got " + nextLine.length + ".");
+            "Too many columns on line " + rowNumber + ". Expected " + columns + ", but got " + fields + ".");
       }
       converter.convert(nextLine, batch, batch.size++);
       if (batch.size == BATCH_SIZE) {
@@ -121,15 +174,26 @@ public class CsvReader implements RecordReader {
 
   @Override
   public float getProgress() throws IOException {
-    long pos = underlying.getPos();
+    long pos = (underlying != null) ? underlying.getPos() : reader.getOffset();
     return totalSize != 0 && pos < totalSize ? (float) pos / totalSize : 1;
   }
 
   @Override
   public void close() throws IOException {
+    String metrics = getMemoMetrics();
+    if (!metrics.isEmpty()) {
+      LOG.info(metrics);
+    }
     reader.close();
   }
 
+  /**
+   * @return the hit counts of the value memos, one line per column
+   */
+  public String getMemoMetrics() {
+    return ValueMemo.getMetrics(memos);
+  }
+
   @Override
   public void seekToRow(long rowCount) throws IOException {
     throw new UnsupportedOperationException("Seeking not supported");
@@ -137,6 +201,8 @@ public class CsvReader implements RecordReader {
 
   abstract class ConverterImpl implements Converter {
     final int offset;
+    // null unless reading binary csv
+    final ParseHexRec.HexDecoder hex = csvFormatBinary ? new ParseHexRec.HexDecoder() : null;
 
     ConverterImpl(IntWritable offset) {
       this.offset = offset.get();
@@ -144,9 +210,45 @@ public class CsvReader implements RecordReader {
     }
 
     @Override
-    public void convert(String[] values, VectorizedRowBatch batch, int row) {
+    public void convert(CsvRecord values, VectorizedRowBatch batch, int row) {
       convert(values, batch.cols[0], row);
     }
+
+    boolean isNull(CsvRecord values) {
+      int len = values.getLength(offset);
+      if (len != nullString.length) {
+        return false;
+      }
+      byte[] bytes = values.getBytes();
+      int start = len == 0 ? 0 : values.getStart(offset);
+      for (int i = 0; i < len; ++i) {
+        if (bytes[start + i] != nullString[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return a memo for the converted values of this column, registered for
+     *         the metrics, or null if switched off
+     */
+    ValueMemo newMemo() {
+      if (!memo) {
+        return null;
+      }
+      ValueMemo result = new ValueMemo("column " + offset);
+      memos.add(result);
+      return result;
+    }
+
+    /**
+     * @return true if reading binary csv and the value is hex encoded, it is
+     *         then decoded into hex
+     */
+    boolean parseBinary(CsvRecord values) {
+      return hex != null && hex.decode(values.getBytes(), values.getStart(offset), values.getLength(offset));
+    }
   }
 
   class BooleanConverter extends ConverterImpl {
@@ -155,91 +257,165 @@ public class CsvReader implements RecordReader {
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          ((LongColumnVector) column).vector[row] = (rec.asLong != 0) ? 1 : 0;
-        }
-        if (values[offset].equalsIgnoreCase("true") || values[offset].equalsIgnoreCase("t")
-            || values[offset].equals("1")) {
+        if (parseBinary(values)) {
+          ((LongColumnVector) column).vector[row] = (hex.asLong() != 0) ? 1 : 0;
+        } else if (isTrue(values.getBytes(), values.getStart(offset), values.getLength(offset))) {
           ((LongColumnVector) column).vector[row] = 1;
         } else {
           ((LongColumnVector) column).vector[row] = 0;
         }
       }
     }
+
+    /** "true" or "t" in any case or "1" */
+    private boolean isTrue(byte[] b, int start, int len) {
+      if (len == 1) {
+        return b[start] == '1' || (b[start] | 0x20) == 't';
+      }
+      return CSV2ParquetNumberUtils.parseBoolean(b, start, len);
+    }
+  }
+
+  /** The format of the values of an integer column, see LongConverter. */
+  enum ValueFormat {
+    INTEGER, DATE, TIME, OTHER
   }
 
+  /**
+   * Integer columns may hold plain integers, yyyy-MM-dd dates (as days) or
+   * HH:mm:ss times (as micros). The format of a value is remembered per
+   * column, and the next value is first parsed by the parser of that format
+   * alone. Only a value failing that parser goes through the detection and the
+   * full chain of parsers, which then sets the format for the following
+   * values.
+   */
   class LongConverter extends ConverterImpl {
+    private ValueFormat format = ValueFormat.INTEGER;
+
     LongConverter(IntWritable offset) {
       super(offset);
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          ((LongColumnVector) column).vector[row] = rec.asLong;
+        if (parseBinary(values)) {
+          ((LongColumnVector) column).vector[row] = hex.asLong();
         } else {
+          long value = parseAsFormat(values, row);
+          if (value == CSV2ParquetTimestampUtils.NOT_PARSED) {
+            value = parseDetectingFormat(values, row);
+          }
+          ((LongColumnVector) column).vector[row] = value;
+        }
+      }
+    }
+
+    private long parseAsFormat(CsvRecord values, int row) {
+      switch (format) {
+      case INTEGER:
+        if (CSV2ParquetNumberUtils.isInteger(values.getBytes(), values.getStart(offset), values.getLength(offset))) {
+          return parseInteger(values, row);
+        }
+        return CSV2ParquetTimestampUtils.NOT_PARSED;
+      case DATE:
+        return CSV2ParquetTimestampUtils.parseEpochDay(values.getString(offset));
+      case TIME:
+        return CSV2ParquetTimestampUtils.parseTimeOfDayMicros(values.getString(offset));
+      default:
+        return CSV2ParquetTimestampUtils.NOT_PARSED;
+      }
+    }
+
+    private long parseDetectingFormat(CsvRecord values, int row) {
+      if (CSV2ParquetNumberUtils.isInteger(values.getBytes(), values.getStart(offset), values.getLength(offset))) {
+        // plain integers are never dates or times
+        format = ValueFormat.INTEGER;
+        return parseInteger(values, row);
+      }
+      String value = values.getString(offset);
+      long parsed = CSV2ParquetTimestampUtils.parseEpochDay(value);
+      if (parsed != CSV2ParquetTimestampUtils.NOT_PARSED) {
+        format = ValueFormat.DATE;
+        return parsed;
+      }
+      parsed = CSV2ParquetTimestampUtils.parseTimeOfDayMicros(value);
+      if (parsed != CSV2ParquetTimestampUtils.NOT_PARSED) {
+        format = ValueFormat.TIME;
+        return parsed;
+      }
+      format = ValueFormat.OTHER;
+      try {
+        try {
+          return CSV2ParquetTimestampUtils.parseDaysOrLongStrict(value);
+        } catch (NumberFormatException e) {
           try {
-            String val = null;
+            return CSV2ParquetTimestampUtils.parseTimeMicros(value, true);
+          } catch (ParseException e2) {
             try {
-              val = CSV2ParquetTimestampUtils.parseDateOrIntStrict(values[offset]);
-            } catch (NumberFormatException e) {
-
-            }
-            if (val == null) {
-              try {
-                val = Long.valueOf(CSV2ParquetTimestampUtils.parseTimeMicros(values[offset], true)).toString();
-              } catch (ParseException e) {
-              }
+              return CSV2ParquetTimestampUtils.parseTimeMillisInt(value, false);
+            } catch (ParseException p) {
+              return Long.parseLong(value);
             }
-            if (val == null) {
-              try {
-                val = Integer.valueOf(CSV2ParquetTimestampUtils.parseTimeMillisInt(values[offset], false)).toString();
-              } catch (ParseException p) {
-              }
-            }
-            if (val == null) {
-              val = values[offset];
-            }
-            ((LongColumnVector) column).vector[row] = Long.parseLong(val);
-          } catch (NumberFormatException ex) {
-            System.err.println("Error in row:" + row + " column:" + offset + " expected parseable " + values[offset]);
-            System.err.println(" type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
-                + CsvReader.this.schema.getChildren().get(offset).toString());
-            throw ex;
           }
         }
+      } catch (NumberFormatException ex) {
+        reportError(values, row);
+        throw ex;
+      }
+    }
+
+    private long parseInteger(CsvRecord values, int row) {
+      try {
+        return CSV2ParquetNumberUtils.parseLong(values.getBytes(), values.getStart(offset), values.getLength(offset));
+      } catch (NumberFormatException ex) {
+        reportError(values, row);
+        throw ex;
       }
     }
+
+    private void reportError(CsvRecord values, int row) {
+      System.err.println("Error in row:" + row + " column:" + offset + " expected parseable " + values.getString(offset));
+      System.err.println(" type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
+          + CsvReader.this.schema.getChildren().get(offset).toString());
+    }
   }
 
   class DateConverter extends ConverterImpl {
+    private final ValueMemo memo = newMemo();
+
     DateConverter(IntWritable offset) {
       super(offset);
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          ((LongColumnVector) column).vector[row] = rec.asLong;
+        if (parseBinary(values)) {
+          ((LongColumnVector) column).vector[row] = hex.asLong();
+          return;
+        }
+        int slot = memo != null ? memo.lookup(values.getBytes(), values.getStart(offset), values.getLength(offset))
+            : -1;
+        if (slot >= 0) {
+          ((LongColumnVector) column).vector[row] = memo.getValue(slot);
         } else {
-          String val = CSV2ParquetTimestampUtils.parseDateOrIntSloppy(values[offset]);
-          ((LongColumnVector) column).vector[row] = Long.parseLong(val);
+          long days = CSV2ParquetTimestampUtils.parseDaysOrLongSloppy(values.getString(offset));
+          if (memo != null) {
+            memo.put(days, 0, null);
+          }
+          ((LongColumnVector) column).vector[row] = days;
         }
 
       }
@@ -252,53 +428,62 @@ public class CsvReader implements RecordReader {
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          if (rec.binary.length() == 4) {
-            ((DoubleColumnVector) column).vector[row] = rec.asFloat;
+        if (parseBinary(values)) {
+          if (hex.length() == 4) {
+            ((DoubleColumnVector) column).vector[row] = hex.asFloat();
           } else {
-            ((DoubleColumnVector) column).vector[row] = rec.asDouble;
+            ((DoubleColumnVector) column).vector[row] = hex.asDouble();
           }
         } else {
-          ((DoubleColumnVector) column).vector[row] = Double.parseDouble(values[offset]);
+          ((DoubleColumnVector) column).vector[row] = CSV2ParquetNumberUtils.parseDouble(values.getBytes(),
+              values.getStart(offset), values.getLength(offset));
         }
       }
     }
   }
 
   class DecimalConverter extends ConverterImpl {
+    private final int precision;
     private final int scale;
 
-    DecimalConverter(IntWritable offset, int scale) {
+    DecimalConverter(IntWritable offset, int precision, int scale) {
       super(offset);
+      this.precision = precision;
       this.scale = scale;
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          if (rec.binary.length() <= 8) {
-            HiveDecimalWritable hdw = new HiveDecimalWritable();
-            hdw.setFromLongAndScale(rec.asLong, scale);
-            ((DecimalColumnVector) column).vector[row].set(hdw);
+        // the writables of the vector are set in place
+        HiveDecimalWritable value = ((DecimalColumnVector) column).vector[row];
+        if (parseBinary(values)) {
+          if (hex.length() <= 8) {
+            value.setFromLongAndScale(hex.asLong(), scale);
           } else {
-            BigInteger bi = new BigInteger(rec.binary.getBytes());// (bytes, row, length); = rec.asDouble;
-            HiveDecimalWritable hdw = new HiveDecimalWritable();
-            hdw.setFromBigIntegerBytesAndScale(bi.toByteArray(), scale);
-            ((DecimalColumnVector) column).vector[row].set(hdw);
+            value.setFromBigIntegerBytesAndScale(hex.getBytes(), 0, hex.length(), scale);
           }
-        } else {
-          ((DecimalColumnVector) column).vector[row].set(new HiveDecimalWritable(values[offset]));
+          return;
+        }
+        byte[] bytes = values.getBytes();
+        int start = values.getStart(offset);
+        int len = values.getLength(offset);
+        long unscaled = precision <= CSV2ParquetNumberUtils.MAX_LONG_DECIMAL_PRECISION
+            ? CSV2ParquetNumberUtils.parseDecimal(bytes, start, len, precision, scale)
+            : CSV2ParquetNumberUtils.NOT_PARSED;
+        if (unscaled != CSV2ParquetNumberUtils.NOT_PARSED) {
+          value.setFromLongAndScale(unscaled, scale);
+        } else if (!CSV2ParquetNumberUtils.parseDecimal(value, bytes, start, len, precision, scale)) {
+          throw new NumberFormatException("For input string: \"" + values.getString(offset) + "\" typed as decimal("
+              + precision + "," + scale + ")");
         }
       }
     }
@@ -310,82 +495,110 @@ public class CsvReader implements RecordReader {
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          byte[] value = rec.binary.getBytes();
-          ((BytesColumnVector) column).setRef(row, value, 0, value.length);
+        if (parseBinary(values)) {
+          // copied, the buffer of the decoder is reused
+          ((BytesColumnVector) column).setVal(row, hex.getBytes(), 0, hex.length());
         } else {
-          byte[] value = values[offset].getBytes(StandardCharsets.UTF_8);
-          ((BytesColumnVector) column).setRef(row, value, 0, value.length);
+          // copied into the shared buffer of the vector, the record buffer is reused
+          ((BytesColumnVector) column).setVal(row, values.getBytes(), values.getStart(offset),
+              values.getLength(offset));
         }
       }
     }
   }
 
   class TimestampConverter extends ConverterImpl {
+    private final ValueMemo memo = newMemo();
+
     TimestampConverter(IntWritable offset) {
       super(offset);
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
-      if (values[offset] == null || nullString.equals(values[offset])) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
+      if (isNull(values)) {
         column.noNulls = false;
         column.isNull[row] = true;
       } else {
         TimestampColumnVector vector = (TimestampColumnVector) column;
 
-        ParseHexRec.ParsedRec rec = ParseHexRec.parse(values[offset]);
-        if (rec != null && CsvReader.this.csvFormatBinary) {
-          Timestamp timestamp = new Timestamp(rec.asLong);
+        if (parseBinary(values)) {
+          Timestamp timestamp = new Timestamp(hex.asLong());
           vector.set(row, timestamp);
-        } else {
-          TemporalAccessor temporalAccessor = null;
-          try {
-            temporalAccessor = DATE_TIME_FORMATTER.parseBest(values[offset], ZonedDateTime.FROM, LocalDateTime.FROM);
-          } catch (DateTimeParseException ex) {
-            try {
-              long tm = CSV2ParquetTimestampUtils.parseTimeStampMicros(values[offset], false);
-              Timestamp a = new Timestamp(tm / 1000);
-              long remainder = (tm - ((long) (tm / 1000)) * 1000);
-              while (remainder < 0) {
-                remainder += 1000;
-              }
-              a.setNanos((int) remainder * 1000);
-              vector.set(row, a);
-            } catch (ParseException ex2) {
-              try {
-                long u = Long.parseLong(values[offset]);
-                Timestamp a = new Timestamp(u);
-                vector.set(row, a);
-              } catch (NumberFormatException ex3) {
-                System.err.println(
-                    "Error in row:" + row + " column:" + offset + " expected Timestamp parseable " + values[offset]);
-                System.err.println(" type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
-                    + CsvReader.this.schema.getChildren().get(offset).toString());
-                String msg = "Error in row:" + row + " column:" + offset + " expected Timestamp parseable "
-                    + values[offset] + " type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
-                    + CsvReader.this.schema.getChildren().get(offset).toString();
-                throw new DateTimeParseException(msg, values[offset], ex2.getErrorOffset(), ex2);
-              }
-            }
-          }
-          if (temporalAccessor instanceof ZonedDateTime) {
-            vector.set(row, new Timestamp(((ZonedDateTime) temporalAccessor).toEpochSecond() * 1000L));
-          } else if (temporalAccessor instanceof LocalDateTime) {
-            vector.set(row, new Timestamp(
-                ((LocalDateTime) temporalAccessor).atZone(ZoneId.systemDefault()).toEpochSecond() * 1000L));
-          } else {
+          return;
+        }
+        int slot = memo != null ? memo.lookup(values.getBytes(), values.getStart(offset), values.getLength(offset))
+            : -1;
+        if (slot >= 0) {
+          vector.time[row] = memo.getValue(slot);
+          vector.nanos[row] = (int) memo.getExtra(slot);
+          // the object marks a value converted to null
+          if (memo.getObject(slot) != null) {
             column.noNulls = false;
             column.isNull[row] = true;
           }
+        } else {
+          convertText(values.getString(offset), vector, row);
+          if (memo != null) {
+            memo.put(vector.time[row], vector.nanos[row], column.isNull[row] ? Boolean.TRUE : null);
+          }
+        }
+      }
+    }
+
+    private void convertText(String value, TimestampColumnVector vector, int row) {
+      long localSecond = CSV2ParquetTimestampUtils.parseLocalEpochSecond(value);
+      if (localSecond != CSV2ParquetTimestampUtils.NOT_PARSED) {
+        vector.time[row] = zoneOffsets.toEpochSecond(localSecond) * 1000L;
+        vector.nanos[row] = 0;
+        return;
+      }
+      TemporalAccessor temporalAccessor = null;
+      try {
+        temporalAccessor = DATE_TIME_FORMATTER.parseBest(value, ZonedDateTime.FROM, LocalDateTime.FROM);
+      } catch (DateTimeParseException ex) {
+        try {
+          long tm = CSV2ParquetTimestampUtils.parseTimeStampMicros(value, false);
+          Timestamp a = new Timestamp(tm / 1000);
+          long remainder = (tm - ((long) (tm / 1000)) * 1000);
+          while (remainder < 0) {
+            remainder += 1000;
+          }
+          a.setNanos((int) remainder * 1000);
+          vector.set(row, a);
+        } catch (ParseException ex2) {
+          try {
+            long u = Long.parseLong(value);
+            Timestamp a = new Timestamp(u);
+            vector.set(row, a);
+          } catch (NumberFormatException ex3) {
+            System.err.println(
+                "Error in row:" + row + " column:" + offset + " expected Timestamp parseable " + value);
+            System.err.println(" type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
+                + CsvReader.this.schema.getChildren().get(offset).toString());
+            String msg = "Error in row:" + row + " column:" + offset + " expected Timestamp parseable "
+                + value + " type expected is : " + CsvReader.this.schema.getFieldNames().get(offset) + " "
+                + CsvReader.this.schema.getChildren().get(offset).toString();
+            throw new DateTimeParseException(msg, value, ex2.getErrorOffset(), ex2);
+          }
         }
       }
+      if (temporalAccessor instanceof ZonedDateTime) {
+        vector.time[row] = ((ZonedDateTime) temporalAccessor).toEpochSecond() * 1000L;
+        vector.nanos[row] = 0;
+      } else if (temporalAccessor instanceof LocalDateTime) {
+        vector.time[row] = zoneOffsets
+            .toEpochSecond(((LocalDateTime) temporalAccessor).toEpochSecond(ZoneOffset.UTC)) * 1000L;
+        vector.nanos[row] = 0;
+      } else {
+        vector.noNulls = false;
+        vector.isNull[row] = true;
+      }
     }
   }
 
@@ -401,14 +614,14 @@ public class CsvReader implements RecordReader {
     }
 
     @Override
-    public void convert(String[] values, VectorizedRowBatch batch, int row) {
+    public void convert(CsvRecord values, VectorizedRowBatch batch, int row) {
       for (int c = 0; c < children.length; ++c) {
         children[c].convert(values, batch.cols[c], row);
       }
     }
 
     @Override
-    public void convert(String[] values, ColumnVector column, int row) {
+    public void convert(CsvRecord values, ColumnVector column, int row) {
       StructColumnVector cv = (StructColumnVector) column;
       for (int c = 0; c < children.length; ++c) {
         children[c].convert(values, cv.fields[c], row);
@@ -431,7 +644,7 @@ public class CsvReader implements RecordReader {
     case DOUBLE:
       return new DoubleConverter(startOffset);
     case DECIMAL:
-      return new DecimalConverter(startOffset, schema.getScale());
+      return new DecimalConverter(startOffset, schema.getPrecision(), schema.getScale());
     case BINARY:
     case STRING:
     case CHAR:
@@ -301,12 +301,17 @@ public class JsonReader implements RecordReader {
 
   @Override
   public float getProgress() throws IOException {
+    if (input == null) {
+      return 0;
+    }
     long pos = input.getPos();
     return totalSize != 0 && pos < totalSize ? (float) pos / totalSize : 1;
   }
 
   public void close() throws IOException {
-    input.close();
+    if (input != null) {
+      input.close();
+    }
   }
 
   @Override
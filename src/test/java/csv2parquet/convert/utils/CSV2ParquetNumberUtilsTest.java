@@ -0,0 +1,253 @@
+package csv2parquet.convert.utils;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.utils.CSV2ParquetNumberUtils;
+
+public class CSV2ParquetNumberUtilsTest {
+
+  static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  static long parseLong(String s) {
+    return CSV2ParquetNumberUtils.parseLong(bytes(s), 0, bytes(s).length);
+  }
+
+  static double parseDouble(String s) {
+    return CSV2ParquetNumberUtils.parseDouble(bytes(s), 0, bytes(s).length);
+  }
+
+  static float parseFloat(String s) {
+    return CSV2ParquetNumberUtils.parseFloat(bytes(s), 0, bytes(s).length);
+  }
+
+  static void assertSameDouble(String s) {
+    assertEquals(s, Double.doubleToRawLongBits(Double.parseDouble(s)), Double.doubleToRawLongBits(parseDouble(s)));
+  }
+
+  static void assertSameFloat(String s) {
+    assertEquals(s, Float.floatToRawIntBits(Float.parseFloat(s)), Float.floatToRawIntBits(parseFloat(s)));
+  }
+
+  @Test
+  public void testParseLong() {
+    assertEquals(0, parseLong("0"));
+    assertEquals(-17, parseLong("-17"));
+    assertEquals(17, parseLong("+17"));
+    assertEquals(Long.MAX_VALUE, parseLong("9223372036854775807"));
+    assertEquals(Long.MIN_VALUE, parseLong("-9223372036854775808"));
+    for (String bad : new String[] { "", "-", "+", "1a", "9223372036854775808", " 1", "1.0" }) {
+      try {
+        parseLong(bad);
+        fail("expected NumberFormatException for " + bad);
+      } catch (NumberFormatException e) {
+        assertEquals("For input string: \"" + bad + "\"", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testParseInt() {
+    assertEquals(Integer.MIN_VALUE, CSV2ParquetNumberUtils.parseInt(bytes("-2147483648"), 0, 11));
+    try {
+      CSV2ParquetNumberUtils.parseInt(bytes("2147483648"), 0, 10);
+      fail();
+    } catch (NumberFormatException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testIsInteger() {
+    assertTrue(CSV2ParquetNumberUtils.isInteger(bytes("-12"), 0, 3));
+    assertTrue(CSV2ParquetNumberUtils.isInteger(bytes("x12"), 1, 2));
+    assertFalse(CSV2ParquetNumberUtils.isInteger(bytes("-"), 0, 1));
+    assertFalse(CSV2ParquetNumberUtils.isInteger(bytes("2017-01-01"), 0, 10));
+    assertFalse(CSV2ParquetNumberUtils.isInteger(bytes(""), 0, 0));
+  }
+
+  @Test
+  public void testParseDouble() {
+    for (String s : new String[] { "0", "-0", "-0.0", "1.5", ".5", "5.", "+3.25", "123456789.123456", "1e10", "NaN",
+        "-Infinity", "0.1", "9007199254740993", "0.30000000000000004", "1234567890123456789012", " 1.5 ", "2d" }) {
+      assertEquals(s, Double.doubleToRawLongBits(Double.parseDouble(s)), Double.doubleToRawLongBits(parseDouble(s)));
+    }
+    for (String bad : new String[] { "", "-", ".", "1.2.3", "abc" }) {
+      try {
+        parseDouble(bad);
+        fail("expected NumberFormatException for " + bad);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testParseDoubleRandom() {
+    Random random = new Random(4711);
+    for (int i = 0; i < 100000; ++i) {
+      long mantissa = random.nextLong() % 10000000000000000L;
+      String s = Long.toString(mantissa);
+      int scale = random.nextInt(Math.min(s.length(), 20));
+      if (scale > 0 && mantissa >= 0) {
+        s = s.substring(0, s.length() - scale) + "." + s.substring(s.length() - scale);
+      }
+      assertEquals(s, Double.doubleToRawLongBits(Double.parseDouble(s)), Double.doubleToRawLongBits(parseDouble(s)));
+    }
+  }
+
+  static final String[] EDGE_CASES = { "1e-400", "-1e-400", "1e309", "-1e309", "4.9e-324", "2.4703282292062327e-324",
+      "2.4703282292062328e-324", "2.2250738585072011e-308", "2.2250738585072012e-308", "1.7976931348623157e308",
+      "1.7976931348623158e308", "1.7976931348623159e308", "9007199254740993", "9007199254740992.5",
+      "9223372036854775807", "18446744073709551615", "1e22", "1e23", "8.589973e9", "1.4e-45", "7.0e-46",
+      "7.1e-46", "1.17549435e-38", "3.4028235e38", "3.4028236e38", "3.5e38", "16777217", "16777216.5",
+      "33554435", "0.000000000000000000001", "123456789012345678e-20", "1234567890123456789e300",
+      "1e2147483647", "1e-2147483648", "0e99999999999", "-0e-5", "0.0000", "000123.4500", "1E5", "1e+5", "2.5F",
+      " 1", "NaN", "Infinity", "0x1p3" };
+
+  @Test
+  public void testParseEdgeCases() {
+    for (String s : EDGE_CASES) {
+      assertSameDouble(s);
+      assertSameFloat(s);
+    }
+    for (String bad : new String[] { "", "-", ".", "e5", "1e", "1e+", "1.2.3", "1e5.0", "abc" }) {
+      try {
+        parseFloat(bad);
+        fail("expected NumberFormatException for " + bad);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  // the shortest representations, as printed by Double.toString, of random bit patterns
+  @Test
+  public void testParseRandomBits() {
+    Random random = new Random(4711);
+    for (int i = 0; i < 1000000; ++i) {
+      double d = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+        assertSameDouble(Double.toString(d));
+      }
+      float f = Float.intBitsToFloat(random.nextInt());
+      if (!Float.isNaN(f) && !Float.isInfinite(f)) {
+        assertSameFloat(Float.toString(f));
+      }
+    }
+  }
+
+  // random digit strings and exponents across the range, and values halfway between two doubles or floats
+  @Test
+  public void testParseRandomDigits() {
+    Random random = new Random(4711);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000000; ++i) {
+      sb.setLength(0);
+      if (random.nextBoolean()) {
+        sb.append('-');
+      }
+      int digits = 1 + random.nextInt(20);
+      int dot = random.nextInt(digits + 1);
+      for (int d = 0; d < digits; ++d) {
+        if (d == dot) {
+          sb.append('.');
+        }
+        sb.append((char) ('0' + random.nextInt(10)));
+      }
+      if (random.nextInt(4) > 0) {
+        sb.append('e').append(random.nextInt(700) - 350);
+      }
+      String s = sb.toString();
+      assertSameDouble(s);
+      assertSameFloat(s);
+    }
+    for (int i = 0; i < 100000; ++i) {
+      double d = Math.abs(Double.longBitsToDouble(random.nextLong()));
+      if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+        String halfway = new BigDecimal(d).add(new BigDecimal(Math.nextUp(d))).divide(BigDecimal.valueOf(2))
+            .toString();
+        assertSameDouble(halfway);
+      }
+      float f = Math.abs(Float.intBitsToFloat(random.nextInt()));
+      if (!Float.isNaN(f) && !Float.isInfinite(f)) {
+        String halfway = new BigDecimal(f).add(new BigDecimal(Math.nextUp(f))).divide(BigDecimal.valueOf(2))
+            .toString();
+        assertSameFloat(halfway);
+        // those of small integers fit 19 digits
+        long n = random.nextInt(1 << 30) | 1L << 24;
+        assertSameFloat(Long.toString(n));
+        assertSameDouble(Long.toString(n << 30 | 1L << 53) + "e" + (random.nextInt(40) - 20));
+      }
+    }
+  }
+
+  static long parseDecimal(String s, int precision, int scale) {
+    return CSV2ParquetNumberUtils.parseDecimal(bytes(s), 0, bytes(s).length, precision, scale);
+  }
+
+  // the unscaled value of HiveDecimal with enforced precision and scale
+  static long referenceDecimal(String s, int precision, int scale) {
+    HiveDecimal dec = HiveDecimal.create(s);
+    dec = dec == null ? null : HiveDecimal.enforcePrecisionScale(dec, precision, scale);
+    return dec == null ? CSV2ParquetNumberUtils.NOT_PARSED
+        : dec.bigDecimalValue().setScale(scale).unscaledValue().longValue();
+  }
+
+  @Test
+  public void testParseDecimal() {
+    assertEquals(150, parseDecimal("1.5", 5, 2));
+    assertEquals(-150, parseDecimal("-1.5", 5, 2));
+    assertEquals(157, parseDecimal("+1.565", 5, 2));
+    assertEquals(-157, parseDecimal("-1.5650", 5, 2));
+    assertEquals(156, parseDecimal("1.56499", 5, 2));
+    assertEquals(50, parseDecimal(".5", 3, 2));
+    assertEquals(500, parseDecimal("5.", 3, 2));
+    assertEquals(999999999999999999L, parseDecimal("999999999999999999", 18, 0));
+    assertEquals(-999999999999999999L, parseDecimal("-99999999.99999999994999", 18, 10));
+    assertEquals(CSV2ParquetNumberUtils.NOT_PARSED, parseDecimal("9.995", 3, 2));
+    assertEquals(CSV2ParquetNumberUtils.NOT_PARSED, parseDecimal("1000", 5, 2));
+    assertEquals(CSV2ParquetNumberUtils.NOT_PARSED, parseDecimal("1", 2, 2));
+    for (String bad : new String[] { "", "-", ".", "1.2.3", "1e5", " 1", "abc" }) {
+      assertEquals(bad, CSV2ParquetNumberUtils.NOT_PARSED, parseDecimal(bad, 10, 2));
+    }
+    HiveDecimalWritable holder = new HiveDecimalWritable();
+    assertTrue(CSV2ParquetNumberUtils.parseDecimal(holder, bytes(" 1.5e2 "), 0, 7, 5, 2));
+    assertEquals(new BigDecimal("150"), holder.getHiveDecimal().bigDecimalValue());
+    assertFalse(CSV2ParquetNumberUtils.parseDecimal(holder, bytes("1000"), 0, 4, 5, 2));
+    assertFalse(CSV2ParquetNumberUtils.parseDecimal(holder, bytes("x"), 0, 1, 5, 2));
+  }
+
+  @Test
+  public void testParseDecimalRandom() {
+    Random random = new Random(4711);
+    for (int i = 0; i < 100000; ++i) {
+      int precision = 1 + random.nextInt(18);
+      int scale = random.nextInt(precision + 1);
+      StringBuilder sb = new StringBuilder();
+      for (int d = random.nextInt(22); d >= 0; --d) {
+        sb.append((char) ('0' + random.nextInt(10)));
+      }
+      String digits = sb.toString();
+      int dot = random.nextInt(digits.length() + 1);
+      String s = (random.nextBoolean() ? "-" : "") + digits.substring(0, dot) + "." + digits.substring(dot);
+      if (s.endsWith(".") && random.nextBoolean()) {
+        s = s.substring(0, s.length() - 1);
+      }
+      if (s.equals("-.") || s.equals(".")) {
+        continue;
+      }
+      assertEquals(s + " " + precision + "," + scale, referenceDecimal(s, precision, scale),
+          parseDecimal(s, precision, scale));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package csv2parquet.convert.utils;
+
+import static org.junit.Assert.*;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
+
+/**
+ * Compares the fixed pattern parsers with the SimpleDateFormat based
+ * parsing they replace.
+ */
+public class CSV2ParquetTimestampUtilsFastPathTest {
+
+  static long referenceTimestampMicros(String val) throws ParseException {
+    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss");
+    String dateval = "GMT " + val;
+    ParsePosition pp = new ParsePosition(0);
+    java.util.Date result = df.parse(dateval, pp);
+    if (pp.getErrorIndex() >= 0) {
+      throw new ParseException("error parsing" + val, pp.getErrorIndex());
+    }
+    int micros = 0;
+    int index = pp.getIndex();
+    if (index < dateval.length() && dateval.charAt(index) == '.') {
+      try {
+        micros = Integer.parseInt(dateval.substring(index + 1));
+      } catch (NumberFormatException e) {
+        // absorbed like the original
+      }
+    }
+    return result.getTime() * 1000l + micros;
+  }
+
+  static long referenceTimestampMillis(String val) throws ParseException {
+    DateFormat df = new SimpleDateFormat("zzz yyyy-MM-dd HH:mm:ss.SSS");
+    ParsePosition pp = new ParsePosition(0);
+    java.util.Date result = df.parse("GMT " + val, pp);
+    if (pp.getErrorIndex() >= 0) {
+      throw new ParseException("error parsing" + val, pp.getErrorIndex());
+    }
+    return result.getTime();
+  }
+
+  static String referenceDate(String val) {
+    DateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+    df.setTimeZone(TimeZone.getTimeZone("UTC"));
+    try {
+      return "" + Double.valueOf(Math.floor(df.parse(val).getTime() / (86400 * 1000l))).intValue();
+    } catch (ParseException e) {
+      if (val.length() == 8) {
+        DateFormat df2 = new SimpleDateFormat("yyyyMMdd");
+        df2.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+          return "" + Double.valueOf(Math.floor(df2.parse(val).getTime() / (86400 * 1000l))).intValue();
+        } catch (ParseException e2) {
+          return "" + Long.parseLong(val);
+        }
+      }
+      return "" + Long.parseLong(val);
+    }
+  }
+
+  static String two(int v) {
+    return v < 10 ? "0" + v : Integer.toString(v);
+  }
+
+  static List<String> timestamps() {
+    List<String> values = new ArrayList<String>();
+    Random random = new Random(4711);
+    for (int i = 0; i < 2000; ++i) {
+      int year = 1600 + random.nextInt(8400);
+      // months, days and hours out of range are accepted leniently
+      String ts = year + "-" + two(random.nextInt(14)) + "-" + two(random.nextInt(33)) + " "
+          + two(random.nextInt(26)) + ":" + two(random.nextInt(61)) + ":" + two(random.nextInt(61));
+      values.add(ts);
+      values.add(ts + "." + random.nextInt(1000));
+      values.add(ts + "." + random.nextInt(1000000000));
+    }
+    String[] edges = { "1970-01-01 00:00:00", "1969-12-31 23:59:59.999999", "2000-02-29 12:00:00.5",
+        "1900-02-29 00:00:00", "2016-12-31 24:00:00", "1600-00-00 00:00:00", "9999-12-31 23:59:59",
+        "2017-01-02 00:13:45.0123", "2017-01-02 00:13:45.", "2017-01-02 00:13:45.12x", "2017-01-02 00:13:45Z",
+        "2017-1-2 3:04:05", " 2017-01-02 00:13:45", "1582-10-10 00:00:00", "0999-01-01 00:00:00" };
+    for (String edge : edges) {
+      values.add(edge);
+    }
+    return values;
+  }
+
+  @Test
+  public void testTimestamps() throws ParseException {
+    for (String ts : timestamps()) {
+      assertEquals(ts, referenceTimestampMicros(ts), CSV2ParquetTimestampUtils.parseTimeStampMicros(ts, true));
+      long millis;
+      try {
+        millis = referenceTimestampMillis(ts);
+      } catch (ParseException e) {
+        millis = referenceTimestampMicros(ts) / 1000;
+        try {
+          CSV2ParquetTimestampUtils.parseTimeStampMillis(ts, true);
+          fail("strict millis accepted " + ts);
+        } catch (ParseException expected) {
+          // no fraction
+        }
+      }
+      assertEquals(ts, millis, CSV2ParquetTimestampUtils.parseTimeStampMillis(ts, false));
+    }
+  }
+
+  @Test
+  public void testTimes() throws ParseException {
+    Random random = new Random(11);
+    for (int i = 0; i < 2000; ++i) {
+      String time = two(random.nextInt(100)) + ":" + two(random.nextInt(100)) + ":" + two(random.nextInt(100));
+      String fraction = time + "." + random.nextInt(1000);
+      assertEquals(time, referenceTimestampMicros("1970-01-01 " + time),
+          CSV2ParquetTimestampUtils.parseTimeMicros(time, true));
+      assertEquals(fraction, referenceTimestampMicros("1970-01-01 " + fraction),
+          CSV2ParquetTimestampUtils.parseTimeMicros(fraction, true));
+      assertEquals(fraction, (int) referenceTimestampMillis("1970-01-01 " + fraction),
+          CSV2ParquetTimestampUtils.parseTimeMillisInt(fraction, true));
+      assertEquals(time, (int) referenceTimestampMicros("1970-01-01 " + time) / 1000,
+          CSV2ParquetTimestampUtils.parseTimeMillisInt(time, false));
+    }
+    assertEquals(12345, CSV2ParquetTimestampUtils.parseTimeMillisOrInt("12345"));
+    assertEquals(5123, CSV2ParquetTimestampUtils.parseTimeMillisOrInt("00:00:05.123"));
+  }
+
+  @Test
+  public void testDates() {
+    List<String> values = new ArrayList<String>();
+    Random random = new Random(3);
+    for (int i = 0; i < 2000; ++i) {
+      String year = Integer.toString(1600 + random.nextInt(8400));
+      String month = two(random.nextInt(14));
+      String day = two(random.nextInt(33));
+      values.add(year + "-" + month + "-" + day);
+      values.add(year + month + day);
+    }
+    String[] edges = { "1970-01-01", "1969-12-31", "2000-02-29", "2100-02-29", "2017-1-2", "2017-01-02 10:00:00",
+        "1500-01-01", "15000101", "12345", "-5", "0", "123456789012", "-1234567" };
+    for (String edge : edges) {
+      values.add(edge);
+    }
+    for (String date : values) {
+      assertEquals(date, referenceDate(date), CSV2ParquetTimestampUtils.parseDateOrIntSloppy(date));
+      if (date.length() != 8) {
+        assertEquals(date, referenceDate(date), CSV2ParquetTimestampUtils.parseDateOrIntStrict(date));
+      }
+    }
+    try {
+      CSV2ParquetTimestampUtils.parseDaysOrLongStrict("x");
+      fail("no date");
+    } catch (NumberFormatException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package csv2parquet.convert.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+
+import org.junit.Test;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.ZoneId;
+import org.threeten.bp.ZoneOffset;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.convert.CsvTokenizer;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
+import jfseb.csv2parquet.convert.utils.ZoneOffsetTable;
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
+public class ZoneOffsetTableTest {
+
+  static long atZone(long localSecond, ZoneId zone) {
+    return LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC).atZone(zone).toEpochSecond();
+  }
+
+  static long local(String value) {
+    return LocalDateTime.parse(value).toEpochSecond(ZoneOffset.UTC);
+  }
+
+  @Test
+  public void testGapAndOverlap() {
+    ZoneId berlin = ZoneId.of("Europe/Berlin");
+    ZoneOffsetTable table = ZoneOffsetTable.of(berlin);
+    assertTrue(table.getTransitions() > 100);
+    // 02:30 does not exist on 2017-03-26 (taken as 03:30), and exists twice on 2017-10-29 (the first one)
+    for (String value : new String[] { "2017-03-26T01:59:59", "2017-03-26T02:00:00", "2017-03-26T02:30:00",
+        "2017-03-26T03:00:00", "2017-10-29T01:59:59", "2017-10-29T02:00:00", "2017-10-29T02:30:00",
+        "2017-10-29T03:00:00", "1899-06-01T00:00:00", "2150-06-01T12:00:00", "2150-03-28T02:30:00" }) {
+      assertEquals(value, atZone(local(value), berlin), table.toEpochSecond(local(value)));
+    }
+    assertEquals(local("2017-03-26T02:30:00") - 3600, table.toEpochSecond(local("2017-03-26T02:30:00")));
+    assertEquals(local("2017-10-29T02:30:00") - 7200, table.toEpochSecond(local("2017-10-29T02:30:00")));
+  }
+
+  @Test
+  public void testRandomLocalTimes() {
+    Random random = new Random(4711);
+    long from = local("1880-01-01T00:00:00");
+    long to = local("2120-01-01T00:00:00");
+    for (String id : new String[] { "Europe/Berlin", "America/New_York", "Australia/Lord_Howe", "Asia/Kolkata",
+        "America/Sao_Paulo", "Pacific/Apia", "UTC", "+05:30" }) {
+      ZoneId zone = ZoneId.of(id);
+      ZoneOffsetTable table = ZoneOffsetTable.of(id);
+      for (int i = 0; i < 100000; ++i) {
+        long localSecond = from + (long) (random.nextDouble() * (to - from));
+        assertEquals(id + " " + localSecond, atZone(localSecond, zone), table.toEpochSecond(localSecond));
+      }
+    }
+  }
+
+  @Test
+  public void testDefaultZone() {
+    assertEquals(ZoneId.systemDefault(), ZoneOffsetTable.of((String) null).getZone());
+    try {
+      ZoneOffsetTable.of("Nowhere/Special");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("not a time zone: Nowhere/Special", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testParseLocalEpochSecond() {
+    assertEquals(local("2017-02-28T23:59:59"), CSV2ParquetTimestampUtils.parseLocalEpochSecond("2017-02-28 23:59:59"));
+    assertEquals(local("2016-02-29T10:00:00"), CSV2ParquetTimestampUtils.parseLocalEpochSecond("2016-02-29T10:00:00"));
+    for (String other : new String[] { "2017-02-29 10:00:00", "2017-13-01 10:00:00", "2017-00-01 10:00:00",
+        "2017-01-00 10:00:00", "2017-01-01 24:00:00", "2017-01-01 10:60:00", "2017-01-01 10:00:60",
+        "2017-01-01 10:00:00.5", "2017/01/01 10:00:00", "2017-01-01 10:00:00Z", "1500-01-01 10:00:00", "x" }) {
+      assertEquals(other, CSV2ParquetTimestampUtils.NOT_PARSED, CSV2ParquetTimestampUtils.parseLocalEpochSecond(other));
+    }
+  }
+
+  static TimestampColumnVector readOrc(String csv, String timezone) throws Exception {
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    options.csvTimezone = timezone;
+    TypeDescription schema = TypeDescription.fromString("struct<ts:timestamp>");
+    CsvReader reader = new CsvReader(new CsvTokenizer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+        options), null, 0, schema, options);
+    VectorizedRowBatch batch = schema.createRowBatch();
+    assertTrue(reader.nextBatch(batch));
+    reader.close();
+    return (TimestampColumnVector) batch.cols[0];
+  }
+
+  @Test
+  public void testOrcTimezone() throws Exception {
+    String csv = "2017-07-01 12:00:00\n2017-07-01T12:00:00\n2017/07/01 12:00:00\n2017-07-01 12:00:00Z\n"
+        + "2017-03-26 02:30:00\n";
+    TimestampColumnVector utc = readOrc(csv, "UTC");
+    TimestampColumnVector berlin = readOrc(csv, "Europe/Berlin");
+    long noon = local("2017-07-01T12:00:00") * 1000;
+    for (int row = 0; row < 3; ++row) {
+      assertEquals(noon, utc.time[row]);
+      assertEquals(noon - 7200 * 1000, berlin.time[row]);
+      assertEquals(0, berlin.nanos[row]);
+    }
+    // with an offset the zone does not matter
+    assertEquals(noon, berlin.time[3]);
+    assertEquals((local("2017-03-26T02:30:00") - 3600) * 1000, berlin.time[4]);
+  }
+}
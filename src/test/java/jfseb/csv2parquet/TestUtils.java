@@ -0,0 +1,70 @@
+package jfseb.csv2parquet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixtures shared by the tests.
+ */
+public final class TestUtils {
+  public static final String OUTPUT_DIRECTORY = "target/test/output/";
+  public static final List<String> NO_SETTINGS = Collections.emptyList();
+
+  private TestUtils() {
+  }
+
+  /**
+   * @return a file of the test output directory, an existing one and its
+   *         checksum are deleted
+   */
+  public static File outputFile(String name) {
+    File file = new File(OUTPUT_DIRECTORY + name);
+    file.getParentFile().mkdirs();
+    file.delete();
+    new File(file.getParentFile(), "." + file.getName() + ".crc").delete();
+    return file;
+  }
+
+  /**
+   * @return the output file of the name holding content as UTF-8
+   */
+  public static File writeFile(String name, CharSequence content) throws IOException {
+    File file = outputFile(name);
+    Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * Converts the '|' separated csv into out, a Parquet or ORC file by its
+   * extension.
+   *
+   * @param schema an ORC struct given inline or the schema text written to
+   *          an output file named after out
+   * @param settings the key=value settings given as -D options
+   * @param options further options of the convert command
+   */
+  public static File convertCsv(File csv, String schema, File out, List<String> settings, String... options)
+      throws Exception {
+    String schemaOption = schema;
+    if (!schema.startsWith("struct<")) {
+      schemaOption = writeFile(out.getName() + ".schema", schema).toString();
+    }
+    // -D options go before the command
+    List<String> args = new ArrayList<String>();
+    for (String setting : settings) {
+      args.add("-D");
+      args.add(setting);
+    }
+    args.addAll(Arrays.asList("convert", "-S", "|", "-s", schemaOption));
+    args.addAll(Arrays.asList(options));
+    args.addAll(Arrays.asList(csv.toString(), "-o", out.toString()));
+    Driver.main(args.toArray(new String[args.size()]));
+    return out;
+  }
+}
@@ -0,0 +1,106 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+import org.junit.Test;
+
+public class BatchPipelineTest {
+
+  static final TypeDescription SCHEMA = TypeDescription.fromString("struct<x:bigint>");
+
+  /** produces batches of 10 rows with consecutive numbers */
+  static class CountingSource implements BatchPipeline.BatchSource {
+    final int batches;
+    int produced;
+
+    CountingSource(int batches) {
+      this.batches = batches;
+    }
+
+    @Override
+    public boolean nextBatch(VectorizedRowBatch batch) throws IOException {
+      if (produced == batches) {
+        return false;
+      }
+      batch.reset();
+      LongColumnVector x = (LongColumnVector) batch.cols[0];
+      for (int i = 0; i < 10; ++i) {
+        x.vector[batch.size++] = produced * 10 + i;
+      }
+      ++produced;
+      return true;
+    }
+  }
+
+  @Test
+  public void testOrderAndRecycling() throws IOException {
+    final List<Long> values = new ArrayList<Long>();
+    final List<VectorizedRowBatch> seen = new ArrayList<VectorizedRowBatch>();
+    BatchPipeline pipeline = new BatchPipeline(SCHEMA, 3);
+    pipeline.run(new CountingSource(100), new BatchPipeline.BatchSink() {
+      @Override
+      public void write(VectorizedRowBatch batch) throws IOException {
+        if (!seen.contains(batch)) {
+          seen.add(batch);
+        }
+        for (int i = 0; i < batch.size; ++i) {
+          values.add(((LongColumnVector) batch.cols[0]).vector[i]);
+        }
+      }
+    });
+    assertEquals(1000, values.size());
+    for (int i = 0; i < values.size(); ++i) {
+      assertEquals(i, values.get(i).longValue());
+    }
+    assertTrue(seen.size() <= 3);
+    assertEquals(100, pipeline.getBatches());
+    assertEquals(1000, pipeline.getRows());
+    assertTrue(pipeline.getMaxQueueDepth() <= 3);
+  }
+
+  @Test
+  public void testParseFailure() {
+    BatchPipeline pipeline = new BatchPipeline(SCHEMA, 2);
+    try {
+      pipeline.run(new CountingSource(5) {
+        @Override
+        public boolean nextBatch(VectorizedRowBatch batch) throws IOException {
+          if (produced == 3) {
+            throw new IOException("broken input");
+          }
+          return super.nextBatch(batch);
+        }
+      }, new BatchPipeline.BatchSink() {
+        @Override
+        public void write(VectorizedRowBatch batch) {
+        }
+      });
+      fail("expected failure");
+    } catch (IOException e) {
+      assertEquals("broken input", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testWriteFailure() {
+    BatchPipeline pipeline = new BatchPipeline(SCHEMA, 2);
+    try {
+      pipeline.run(new CountingSource(1000), new BatchPipeline.BatchSink() {
+        @Override
+        public void write(VectorizedRowBatch batch) throws IOException {
+          throw new IOException("disk full");
+        }
+      });
+      fail("expected failure");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.parquet.ColumnEncodings;
+
+public class ColumnEncodingsTest {
+
+  static final String SCHEMA = "message m { required int64 id; optional binary url (UTF8);"
+      + " optional binary country (UTF8); optional double v; }";
+
+  static File csvFile() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; ++i) {
+      // sorted ids, urls with a long common prefix
+      sb.append(1000000 + i * 3).append("|https://example.com/events/2017/01/item-").append(i).append('|')
+          .append(i % 3 == 0 ? "de" : "fr").append('|').append(i * 0.25).append('\n');
+    }
+    return TestUtils.writeFile("encodings.csv", sb);
+  }
+
+  /**
+   * @return the value encodings of the columns of the first row group
+   */
+  static Map<String, Set<Encoding>> encodings(File file) throws Exception {
+    BlockMetaData block = ParquetFileReader.readFooter(new Configuration(), new Path(file.toURI())).getBlocks()
+        .get(0);
+    Map<String, Set<Encoding>> encodings = new HashMap<String, Set<Encoding>>();
+    for (ColumnChunkMetaData column : block.getColumns()) {
+      encodings.put(column.getPath().toDotString(), column.getEncodings());
+    }
+    return encodings;
+  }
+
+  static long columnSize(File file, String column) throws Exception {
+    long size = 0;
+    for (BlockMetaData block : ParquetFileReader.readFooter(new Configuration(), new Path(file.toURI()))
+        .getBlocks()) {
+      for (ColumnChunkMetaData chunk : block.getColumns()) {
+        if (chunk.getPath().toDotString().equals(column)) {
+          size += chunk.getTotalSize();
+        }
+      }
+    }
+    return size;
+  }
+
+  @Test
+  public void testPerColumnEncodings() throws Exception {
+    File csv = csvFile();
+    File plain = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("encodings_plain.parquet"),
+        Arrays.asList("parquet.compress=NONE", "parquet.encodings=id:plain,url:plain"));
+    File encoded = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("encodings_delta.parquet"),
+        Arrays.asList("parquet.compress=NONE",
+            "parquet.encodings=id:delta,url:delta_byte_array,country:dictionary,v:plain",
+            "parquet.page.sizes=url:8k"));
+    Map<String, Set<Encoding>> encodings = encodings(encoded);
+    assertTrue(encodings.toString(), encodings.get("id").contains(Encoding.DELTA_BINARY_PACKED));
+    assertTrue(encodings.toString(), encodings.get("url").contains(Encoding.DELTA_BYTE_ARRAY));
+    assertTrue(encodings.toString(), encodings.get("country").contains(Encoding.PLAIN_DICTIONARY));
+    assertFalse(encodings.toString(), encodings.get("v").contains(Encoding.PLAIN_DICTIONARY));
+    assertTrue(encodings(plain).get("id").contains(Encoding.PLAIN));
+
+    assertEquals(ParallelCsvToParquetTest.read(plain), ParallelCsvToParquetTest.read(encoded));
+    assertTrue(columnSize(encoded, "id") * 4 < columnSize(plain, "id"));
+    assertTrue(columnSize(encoded, "url") * 2 < columnSize(plain, "url"));
+  }
+
+  @Test
+  public void testWriterVersion() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3000; ++i) {
+      sb.append("{\"k\":").append(i).append(",\"s\":\"row ").append(i % 10).append("\",\"b\":")
+          .append(i % 2 == 0).append("}\n");
+    }
+    File json = TestUtils.writeFile("encodings.json", sb);
+    File out = TestUtils.outputFile("encodings_v2.parquet");
+    Driver.main(new String[] { "-D", "parquet.writer.version=v2", "-D", "parquet.encodings=s:plain", "convert",
+        "-s", "struct<k:int,s:string,b:boolean>", json.toString(), "-o", out.toString() });
+    Map<String, Set<Encoding>> encodings = encodings(out);
+    assertTrue(encodings.toString(), encodings.get("k").contains(Encoding.DELTA_BINARY_PACKED));
+    assertTrue(encodings.toString(), encodings.get("s").contains(Encoding.PLAIN));
+    assertTrue(encodings.toString(), encodings.get("b").contains(Encoding.RLE));
+    assertEquals("k: 2999\ns: row 9\nb: false\n", ParallelCsvToParquetTest.read(out).get(2999));
+  }
+
+  @Test
+  public void testInvalidSettings() {
+    MessageType schema = MessageTypeParser.parseMessageType(SCHEMA);
+    String[][] invalid = new String[][] {
+        { ColumnEncodings.ENCODINGS, "v:delta",
+            "Column v of type DOUBLE cannot be written as delta_binary_packed, only INT32 and INT64 columns can" },
+        { ColumnEncodings.ENCODINGS, "id:delta_byte_array", "Column id of type INT64 cannot be written as"
+            + " delta_byte_array, only BINARY and FIXED_LEN_BYTE_ARRAY columns can" },
+        { ColumnEncodings.ENCODINGS, "id:rle", "Unknown encoding rle of column id in parquet.encodings, use one of"
+            + " plain, dictionary, delta_binary_packed, delta_byte_array" },
+        { ColumnEncodings.ENCODINGS, "x:plain", "Unknown column x in parquet.encodings, the schema has [id, url,"
+            + " country, v]" },
+        { ColumnEncodings.PAGE_SIZES, "url:none", "Invalid page size none of column url in parquet.page.sizes" },
+        { ColumnEncodings.PAGE_SIZES, "url", "parquet.page.sizes must be a list of column:value, not url" },
+        { ColumnEncodings.WRITER_VERSION, "v3", "parquet.writer.version must be v1 or v2, not v3" } };
+    for (String[] setting : invalid) {
+      Configuration conf = new Configuration();
+      conf.set(setting[0], setting[1]);
+      try {
+        ColumnEncodings.of(conf, 1024, true).check(schema);
+        fail(setting[1]);
+      } catch (IllegalArgumentException e) {
+        assertEquals(setting[2], e.getMessage());
+      }
+    }
+  }
+}
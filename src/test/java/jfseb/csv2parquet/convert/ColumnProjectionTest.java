@@ -0,0 +1,120 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
+public class ColumnProjectionTest {
+
+  static final String NATION_CSV = "parquet-testdata/tpch/nation.csv";
+
+  @Test
+  public void testParseColumns() {
+    assertEquals(Arrays.asList("a", "b c", "d"), Arrays.asList(ColumnProjection.parseColumns(" a,b c ,d")));
+    try {
+      ColumnProjection.parseColumns("a,,b");
+      fail("empty name");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMessageType() {
+    MessageType schema = MessageTypeParser
+        .parseMessageType("message m { optional int32 a; optional binary b; optional int64 c; }");
+    ColumnProjection projection = ColumnProjection.of(schema, new String[] { "c", "a" });
+    assertArrayEquals(new int[] { 2, 0 }, projection.getColumns());
+    assertEquals(3, projection.getInputColumns());
+    assertEquals(MessageTypeParser.parseMessageType("message m { optional int64 c; optional int32 a; }"),
+        projection.getMessageType());
+    try {
+      ColumnProjection.of(schema, new String[] { "x" });
+      fail("unknown column");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown column x"));
+    }
+    try {
+      ColumnProjection.of(schema, new String[] { "a", "a" });
+      fail("duplicate column");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTypeDescription() {
+    TypeDescription schema = TypeDescription.fromString("struct<a:int,s:struct<x:string,y:int>,c:bigint>");
+    ColumnProjection projection = ColumnProjection.of(schema, new String[] { "c", "s" });
+    assertArrayEquals(new int[] { 3, 1, 2 }, projection.getColumns());
+    assertEquals(4, projection.getInputColumns());
+    assertEquals("struct<c:bigint,s:struct<x:string,y:int>>", projection.getTypeDescription().toString());
+  }
+
+  @Test
+  public void testParquet() throws Exception {
+    File out = TestUtils.outputFile("nation_projected.parquet");
+    Driver.main(new String[] { "convert", "-S", "|", "--columns", "name,nation_key", NATION_CSV, "-o",
+        out.toString() });
+    List<String> rows = ParallelCsvToParquetTest.read(out);
+    assertEquals(25, rows.size());
+    assertEquals("name: ALGERIA\nnation_key: 0\n", rows.get(0));
+    assertEquals("name: BRAZIL\nnation_key: 2\n", rows.get(2));
+  }
+
+  @Test
+  public void testOrc() throws Exception {
+    File out = TestUtils.outputFile("nation_projected.orc");
+    Driver.main(new String[] { "convert", "-S", "|", "-c", "region_key,name", NATION_CSV, "-o", out.toString() });
+    Reader reader = OrcFile.createReader(new Path(out.toURI()), OrcFile.readerOptions(new Configuration()));
+    assertEquals("struct<region_key:smallint,name:string>", reader.getSchema().toString());
+    assertEquals(25, reader.getNumberOfRows());
+    RecordReader rows = reader.rows();
+    VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+    assertTrue(rows.nextBatch(batch));
+    assertEquals(1, ((LongColumnVector) batch.cols[0]).vector[1]);
+    assertEquals("ARGENTINA", ((BytesColumnVector) batch.cols[1]).toString(1));
+    rows.close();
+  }
+
+  @Test
+  public void testOrcRejectsMismatchingRecords() throws IOException {
+    byte[] input = "1|a|x\n2|b\n".getBytes(StandardCharsets.UTF_8);
+    CsvTokenizer tokenizer = new CsvTokenizer(new ByteArrayInputStream(input), CsvTokenizerTest.options("|"));
+    ColumnProjection projection = ColumnProjection.of(TypeDescription.fromString("struct<k:int,s:string,t:string>"),
+        new String[] { "s" });
+    tokenizer.setProjection(projection.getColumns());
+    CsvReader reader = new CsvReader(tokenizer, null, 0, projection.getTypeDescription(),
+        CsvTokenizerTest.options("|"), projection.getInputColumns());
+    VectorizedRowBatch batch = projection.getTypeDescription().createRowBatch();
+    try {
+      reader.nextBatch(batch);
+      fail("short record accepted");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Too many columns on line 2. Expected 3, but got 2.", e.getMessage());
+    }
+    reader.close();
+  }
+}
@@ -0,0 +1,231 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+
+public class CsvTokenizerTest {
+
+  static CSVOptions options(String separator) {
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = separator;
+    options.csvSeparatorAsChar = separator.charAt(0);
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    return options;
+  }
+
+  static List<List<String>> tokenize(String input, CSVOptions options, int bufferSize) throws IOException {
+    return tokenize(new CsvTokenizer(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), options,
+        bufferSize), options);
+  }
+
+  static List<List<String>> tokenizeMapped(String input, CSVOptions options, int windowSize) throws IOException {
+    File file = File.createTempFile("tokenizer", ".csv");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(input.getBytes(StandardCharsets.UTF_8));
+    } finally {
+      out.close();
+    }
+    try {
+      return tokenize(CsvTokenizer.mapped(file, options, windowSize), options);
+    } finally {
+      file.delete();
+    }
+  }
+
+  static List<List<String>> tokenize(CsvTokenizer tokenizer, CSVOptions options) throws IOException {
+    List<List<String>> res = new ArrayList<List<String>>();
+    try {
+      tokenizer.skipRecords(options.csvHeaderLines);
+      while (tokenizer.next()) {
+        CsvRecord rec = tokenizer.getRecord();
+        List<String> fields = new ArrayList<String>();
+        for (int i = 0; i < rec.size(); ++i) {
+          fields.add(rec.getString(i));
+        }
+        res.add(fields);
+      }
+    } finally {
+      tokenizer.close();
+    }
+    return res;
+  }
+
+  /**
+   * tokenizes with all buffer and window sizes from tiny to large, to cover
+   * records split at every possible position.
+   */
+  static void assertTokens(String input, CSVOptions options, String[]... expected) throws IOException {
+    for (int bufferSize : new int[] { 1, 2, 3, 5, 7, 16, 1024 }) {
+      assertRecords("buffer " + bufferSize, tokenize(input, options, bufferSize), expected);
+      assertRecords("window " + bufferSize, tokenizeMapped(input, options, bufferSize), expected);
+    }
+  }
+
+  static void assertRecords(String what, List<List<String>> res, String[]... expected) {
+    assertEquals("records with " + what, expected.length, res.size());
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals("record " + i + " with " + what, Arrays.asList(expected[i]), res.get(i));
+    }
+  }
+
+  @Test
+  public void testSimple() throws IOException {
+    assertTokens("a|b|c\n1|2|3\n", options("|"), new String[] { "a", "b", "c" }, new String[] { "1", "2", "3" });
+  }
+
+  @Test
+  public void testLineTerminators() throws IOException {
+    assertTokens("a|b\r\nc|d\re|f\ng|h", options("|"), new String[] { "a", "b" }, new String[] { "c", "d" },
+        new String[] { "e", "f" }, new String[] { "g", "h" });
+  }
+
+  @Test
+  public void testEmptyFields() throws IOException {
+    assertTokens("|a||\n\n", options("|"), new String[] { "", "a", "", "" }, new String[] { "" });
+  }
+
+  @Test
+  public void testQuoted() throws IOException {
+    assertTokens("\"a,b\",\"x\"\"y\",\"multi\nline\"\n\"\",c\n", options(","),
+        new String[] { "a,b", "x\"y", "multi\nline" }, new String[] { "", "c" });
+  }
+
+  @Test
+  public void testEscaped() throws IOException {
+    assertTokens("a\\\"b,\"c\\\"d\",e\\\\f,g\\nh\n", options(","), new String[] { "a\"b", "c\"d", "e\\f", "g\\nh" });
+  }
+
+  @Test
+  public void testQuoteOnlyAtFieldStart() throws IOException {
+    assertTokens("ab\"c,d\n", options(","), new String[] { "ab\"c", "d" });
+  }
+
+  @Test
+  public void testUnterminatedQuote() throws IOException {
+    assertTokens("a,\"bc,d\n", options(","), new String[] { "a", "bc,d\n" });
+  }
+
+  @Test
+  public void testQuoteDisabled() throws IOException {
+    CSVOptions options = options(",");
+    options.csvQuote = 0;
+    options.csvEscape = 0;
+    assertTokens("\"a\",b\\\"\n", options, new String[] { "\"a\"", "b\\\"" });
+  }
+
+  @Test
+  public void testMultiByteSeparator() throws IOException {
+    assertTokens("a::b:c::\n::\n", options("::"), new String[] { "a", "b:c", "" }, new String[] { "", "" });
+  }
+
+  @Test
+  public void testUtf8() throws IOException {
+    assertTokens("äö|€\n", options("|"), new String[] { "äö", "€" });
+  }
+
+  @Test
+  public void testHeaderLines() throws IOException {
+    CSVOptions options = options("|");
+    options.csvHeaderLines = 2;
+    assertTokens("h1\nh2\na|b\n", options, new String[] { "a", "b" });
+    assertTokens("h1\n", options);
+  }
+
+  @Test
+  public void testRecordNumber() throws IOException {
+    CsvTokenizer tokenizer = new CsvTokenizer(new ByteArrayInputStream("a\nb\nc".getBytes(StandardCharsets.UTF_8)),
+        options("|"), 2);
+    tokenizer.skipRecords(1);
+    assertTrue(tokenizer.next());
+    assertEquals(2, tokenizer.getRecordNumber());
+    assertEquals("b", tokenizer.getRecord().getString(0));
+    assertTrue(tokenizer.next());
+    assertFalse(tokenizer.next());
+    assertEquals(3, tokenizer.getRecordNumber());
+    tokenizer.close();
+  }
+
+  @Test
+  public void testMappedWindowBoundaries() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    List<String[]> expected = new ArrayList<String[]>();
+    for (int i = 0; i < 200; ++i) {
+      String quoted = "q" + i + "|\n\"\"";
+      sb.append(i).append("|\"").append(quoted.replace("\"", "\"\"")).append("\"|").append(i * 7).append("\r\n");
+      expected.add(new String[] { String.valueOf(i), quoted, String.valueOf(i * 7) });
+    }
+    String input = sb.toString();
+    for (int windowSize : new int[] { 16, 17, 31, 64, 100, 4096 }) {
+      assertRecords("window " + windowSize, tokenizeMapped(input, options("|"), windowSize),
+          expected.toArray(new String[0][]));
+    }
+  }
+
+  @Test
+  public void testInputEnd() throws IOException {
+    String input = "a|\"b\nc\"|d\ne|f\n";
+    File file = File.createTempFile("tokenizer", ".csv");
+    file.deleteOnExit();
+    Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+    try {
+      for (boolean mapped : new boolean[] { false, true }) {
+        // the end within the quoted field ends the unterminated field there
+        CsvTokenizer tokenizer = mapped ? CsvTokenizer.mapped(file, options("|"), 4, 2)
+            : CsvTokenizer.open(file, options("|"), 2, 4);
+        tokenizer.setInputEnd(6);
+        assertRecords("mapped " + mapped, tokenize(tokenizer, options("|")), new String[] { "b\nc" });
+        assertEquals(6, tokenizer.getOffset());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testMappedEmptyFile() throws IOException {
+    assertRecords("empty", tokenizeMapped("", options("|"), 16));
+  }
+
+  @Test
+  public void testProjection() throws IOException {
+    String input = "a|\"b|x\"|c|d\r\n1|2\n|\"q\"\"\"|3|4|\"\"\n";
+    for (int bufferSize : new int[] { 1, 3, 7, 1024 }) {
+      CsvTokenizer tokenizer = new CsvTokenizer(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+          options("|"), bufferSize);
+      tokenizer.setProjection(new int[] { 3, 1 });
+      List<List<String>> res = tokenize(tokenizer, options("|"));
+      assertRecords("buffer " + bufferSize, res, new String[] { "d", "b|x" }, new String[] { "", "2" },
+          new String[] { "4", "q\"" });
+    }
+    CsvTokenizer tokenizer = new CsvTokenizer(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+        options("|"), 2);
+    tokenizer.setProjection(new int[] { 0 });
+    assertTrue(tokenizer.next());
+    assertEquals(4, tokenizer.getFieldCount());
+    assertFalse(tokenizer.isLastFieldEmpty());
+    assertTrue(tokenizer.next());
+    assertEquals(2, tokenizer.getFieldCount());
+    assertTrue(tokenizer.next());
+    assertEquals(5, tokenizer.getFieldCount());
+    assertTrue(tokenizer.isLastFieldEmpty());
+    assertEquals(1, tokenizer.getRecord().size());
+    assertFalse(tokenizer.next());
+    tokenizer.close();
+  }
+}
@@ -0,0 +1,94 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+
+/**
+ * Decimals are written at the scale of their column, rounded half up.
+ */
+public class DecimalTest {
+
+  static final String CSV = "1.5|1.5|123456789012345678901.123456|-1.5\n-0.125|-12.34567|-1e3|0.0005\n"
+      + "0|0|0|99999999999999999999.999\n";
+
+  static File csvFile() throws Exception {
+    return TestUtils.writeFile("decimals.csv", CSV);
+  }
+
+  @Test
+  public void testParquet() throws Exception {
+    File out = TestUtils.outputFile("decimals.parquet");
+    String schema = "message m { optional int32 a (DECIMAL(9,2)); optional int64 b (DECIMAL(18,4));"
+        + " optional fixed_len_byte_array(13) c (DECIMAL(30,5)); optional binary d (DECIMAL(25,3)); }";
+    ConvertUtils.convertCsvToParquet(csvFile(), out, schema, false, CsvTokenizerTest.options("|"), new Configuration());
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(out.toURI())).build();
+    List<String> rows = new ArrayList<String>();
+    try {
+      Group group;
+      while ((group = reader.read()) != null) {
+        rows.add(group.getInteger("a", 0) + "|" + group.getLong("b", 0) + "|"
+            + new BigDecimal(new BigInteger(group.getBinary("c", 0).getBytes()), 5) + "|"
+            + new BigDecimal(new BigInteger(group.getBinary("d", 0).getBytes()), 3));
+      }
+    } finally {
+      reader.close();
+    }
+    assertEquals("150|15000|123456789012345678901.12346|-1.500", rows.get(0));
+    assertEquals("-13|-123457|-1000.00000|0.001", rows.get(1));
+    assertEquals("0|0|0.00000|99999999999999999999.999", rows.get(2));
+  }
+
+  @Test
+  public void testParquetOverflow() throws Exception {
+    File out = TestUtils.outputFile("decimals_overflow.parquet");
+    try {
+      ConvertUtils.convertCsvToParquet(csvFile(), out,
+          "message m { optional int32 a (DECIMAL(3,2)); optional int32 b (DECIMAL(3,2)); }", false,
+          CsvTokenizerTest.options("|"), new Configuration());
+      fail("-12.34567 accepted as decimal(3,2)");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("typed as decimal(3,2)"));
+    }
+  }
+
+  @Test
+  public void testOrc() throws Exception {
+    File out = TestUtils.outputFile("decimals.orc");
+    TestUtils.convertCsv(csvFile(), "struct<a:decimal(9,2),b:decimal(18,4),c:decimal(30,5),d:decimal(25,3)>", out,
+        TestUtils.NO_SETTINGS);
+    Reader reader = OrcFile.createReader(new Path(out.toURI()), OrcFile.readerOptions(new Configuration()));
+    RecordReader rows = reader.rows();
+    VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+    assertTrue(rows.nextBatch(batch));
+    rows.close();
+    assertEquals(3, batch.size);
+    String[] expected = { "1.5|1.5|123456789012345678901.12346|-1.5", "-0.13|-12.3457|-1000|0.001",
+        "0|0|0|99999999999999999999.999" };
+    for (int r = 0; r < batch.size; ++r) {
+      StringBuilder row = new StringBuilder();
+      for (int c = 0; c < 4; ++c) {
+        row.append(c == 0 ? "" : "|").append(((DecimalColumnVector) batch.cols[c]).vector[r].toString());
+      }
+      assertEquals(expected[r], row.toString());
+    }
+  }
+}
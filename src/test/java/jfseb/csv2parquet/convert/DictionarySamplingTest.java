@@ -0,0 +1,157 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hive.common.util.Murmur3;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+
+public class DictionarySamplingTest {
+
+  static final String SCHEMA = "message m { required int64 id; optional binary country (UTF8);"
+      + " optional binary comment (UTF8); optional boolean b; }";
+  static final int ROWS = 3000;
+  static final String[] COUNTRIES = { "france", "germany", "switzerland" };
+  static final String AUTO = DictionarySampler.ENABLE_DICTIONARY + "=auto";
+
+  static File csvFile() throws Exception {
+    StringBuilder sb = new StringBuilder("id|country|comment|b\n");
+    for (int i = 0; i < ROWS; ++i) {
+      sb.append(i).append('|').append(i % 10 == 0 ? "" : COUNTRIES[i % 3]).append("|comment number ").append(i)
+          .append('|').append(i % 2 == 0).append('\n');
+    }
+    return TestUtils.writeFile("sampling.csv", sb);
+  }
+
+  /**
+   * @return the settings of the tests followed by settings
+   */
+  static List<String> settings(String... settings) {
+    List<String> result = new ArrayList<String>(Arrays.asList("parquet.compress=NONE",
+        "parquet.dictionary.sample.rows=500"));
+    result.addAll(Arrays.asList(settings));
+    return result;
+  }
+
+  /**
+   * @return the columns with their first chunk dictionary encoded or not
+   */
+  static Map<String, Boolean> getDictionaryColumns(File file) throws Exception {
+    Map<String, Boolean> result = new HashMap<String, Boolean>();
+    for (ColumnChunkMetaData column : ParquetFileReader.readFooter(new Configuration(), new Path(file.toURI()))
+        .getBlocks().get(0).getColumns()) {
+      result.put(column.getPath().toDotString(), column.getEncodings().contains(Encoding.PLAIN_DICTIONARY)
+          || column.getEncodings().contains(Encoding.RLE_DICTIONARY));
+    }
+    return result;
+  }
+
+  static void assertRows(File file) throws Exception {
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI())).build();
+    try {
+      Group g;
+      int i = 0;
+      while ((g = reader.read()) != null) {
+        assertEquals(i, g.getLong("id", 0));
+        assertEquals("comment number " + i, g.getString("comment", 0));
+        if (i % 10 != 0) {
+          assertEquals(COUNTRIES[i % 3], g.getString("country", 0));
+        }
+        ++i;
+      }
+      assertEquals(ROWS, i);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSampledDictionaries() throws Exception {
+    File csv = csvFile();
+    File out = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("sampling_auto.parquet"), settings(AUTO),
+        "-H", "1");
+    Map<String, Boolean> dictionary = getDictionaryColumns(out);
+    assertTrue(dictionary.get("country"));
+    assertFalse(dictionary.get("id"));
+    assertFalse(dictionary.get("comment"));
+    assertFalse(dictionary.get("b"));
+    // the sampled records are written once, in order
+    assertRows(out);
+
+    // a column of parquet.encodings keeps its encoding
+    Map<String, Boolean> given = getDictionaryColumns(TestUtils.convertCsv(csv, SCHEMA,
+        TestUtils.outputFile("sampling_given.parquet"), settings(AUTO, "parquet.encodings=country:plain"), "-H", "1"));
+    assertFalse(given.get("country"));
+  }
+
+  @Test
+  public void testGlobalDictionary() throws Exception {
+    File csv = csvFile();
+    Map<String, Boolean> off = getDictionaryColumns(TestUtils.convertCsv(csv, SCHEMA,
+        TestUtils.outputFile("sampling_off.parquet"), settings("parquet.enabledictionary=false"), "-H", "1"));
+    assertFalse(off.get("country"));
+    // without the setting there is no sampling
+    assertFalse(DictionarySampler.isAdaptive(new Configuration(), false));
+    File unset = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("sampling_unset.parquet"), settings(),
+        "-H", "1");
+    assertFalse(getDictionaryColumns(unset).get("country"));
+    Map<String, Boolean> on = getDictionaryColumns(TestUtils.convertCsv(csv, SCHEMA,
+        TestUtils.outputFile("sampling_on.parquet"), settings("parquet.enabledictionary=true"), "-H", "1"));
+    assertTrue(on.get("country"));
+  }
+
+  @Test
+  public void testParallelSampling() throws Exception {
+    File csv = csvFile();
+    File out = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("sampling_threads.parquet"), settings(AUTO),
+        "-H", "1", "-t", "2");
+    Map<String, Boolean> dictionary = getDictionaryColumns(out);
+    assertTrue(dictionary.get("country"));
+    assertFalse(dictionary.get("id"));
+  }
+
+  @Test
+  public void testNullStringNotSampled() throws Exception {
+    StringBuilder sb = new StringBuilder("id|country|comment|b\n");
+    for (int i = 0; i < ROWS; ++i) {
+      sb.append(i).append("|NULL|").append(i % 10 == 0 ? "comment number " + i : "NULL").append("|true\n");
+    }
+    File out = TestUtils.convertCsv(TestUtils.writeFile("sampling_nulls.csv", sb), SCHEMA,
+        TestUtils.outputFile("sampling_nulls.parquet"), settings(AUTO), "-H", "1", "-n", "NULL");
+    Map<String, Boolean> dictionary = getDictionaryColumns(out);
+    // the distinct comments only, not the repeated null string
+    assertFalse(dictionary.get("comment"));
+    assertFalse(dictionary.get("country"));
+  }
+
+  @Test
+  public void testHyperLogLog() {
+    for (int n : new int[] { 1, 100, 5000, 200000 }) {
+      HyperLogLog sketch = new HyperLogLog();
+      for (int repeat = 0; repeat < 2; ++repeat) {
+        for (int i = 0; i < n; ++i) {
+          byte[] value = ("value" + i).getBytes(StandardCharsets.UTF_8);
+          sketch.addHash(Murmur3.hash64(value, 0, value.length));
+        }
+      }
+      assertEquals(String.valueOf(n), n, sketch.estimate(), Math.max(1, n * 0.05));
+    }
+  }
+}
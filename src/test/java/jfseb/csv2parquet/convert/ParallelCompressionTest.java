@@ -0,0 +1,109 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+
+public class ParallelCompressionTest {
+
+  static final int COLUMNS = 24;
+  static final int ROWS = 20000;
+
+  static File csvFile() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < ROWS; ++i) {
+      for (int c = 0; c < COLUMNS; ++c) {
+        sb.append(c == 0 ? "" : "|");
+        if (c % 3 == 0) {
+          sb.append(i * 31 + c);
+        } else if (c % 3 == 1) {
+          sb.append("value ").append((i * c) % 1000);
+        } else {
+          sb.append(i % 7 == 0 ? "" : String.valueOf(i * 0.25));
+        }
+      }
+      sb.append('\n');
+    }
+    return TestUtils.writeFile("compress.csv", sb);
+  }
+
+  static String schema() {
+    StringBuilder schema = new StringBuilder("message m {");
+    for (int c = 0; c < COLUMNS; ++c) {
+      schema.append(c % 3 == 0 ? " required int64" : c % 3 == 1 ? " optional binary" : " optional double")
+          .append(" c").append(c).append(c % 3 == 1 ? " (UTF8);" : ";");
+    }
+    return schema.append(" }").toString();
+  }
+
+  static List<String> settings(String codec, int threads) {
+    return Arrays.asList("parquet.compress=" + codec, "parquet.BLOCK_SIZE=262144", "parquet.PAGE_SIZE=16384",
+        "parquet.compress.threads=" + threads);
+  }
+
+  @Test
+  public void testSameFile() throws Exception {
+    File csv = csvFile();
+    for (String codec : new String[] { "GZIP", "SNAPPY" }) {
+      File inline = TestUtils.convertCsv(csv, schema(), TestUtils.outputFile("compress_inline.parquet"),
+          settings(codec, 1));
+      File parallel = TestUtils.convertCsv(csv, schema(), TestUtils.outputFile("compress_parallel.parquet"),
+          settings(codec, 4));
+      assertTrue(ParquetFileReader.readFooter(new Configuration(), new Path(parallel.toURI())).getBlocks()
+          .size() > 2);
+      assertArrayEquals(codec, Files.readAllBytes(inline.toPath()), Files.readAllBytes(parallel.toPath()));
+    }
+  }
+
+  static int compressThreads() {
+    int n = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && "csv2parquet2orc-compress".equals(thread.getName())) {
+        ++n;
+      }
+    }
+    return n;
+  }
+
+  @Test
+  public void testFailedConversion() throws Exception {
+    File csv = csvFile();
+    Files.write(csv.toPath(), "x|y\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    File out = TestUtils.outputFile("compress_failed.parquet");
+    try {
+      TestUtils.convertCsv(csv, schema(), out, settings("GZIP", 4));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("column nr:0 \"c0\" typed as INT64"));
+    }
+    // the partial file is closed and deleted
+    assertFalse(out.exists());
+    // the pool of the failed writer is shut down
+    for (int i = 0; i < 100 && compressThreads() > 0; ++i) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, compressThreads());
+  }
+
+  @Test
+  public void testInvalidThreads() throws Exception {
+    try {
+      TestUtils.convertCsv(csvFile(), schema(), TestUtils.outputFile("compress_invalid.parquet"), settings("GZIP", 0));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("parquet.compress.threads must be positive, not 0", e.getMessage());
+    }
+  }
+}
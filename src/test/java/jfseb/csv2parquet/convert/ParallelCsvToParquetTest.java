@@ -0,0 +1,188 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.parquet.CsvParquetWriter;
+
+public class ParallelCsvToParquetTest {
+
+  static final String SCHEMA = "message m { optional int64 id; optional binary text (UTF8); optional int64 v; }";
+
+  static File writeCsv(String name, String content) throws IOException {
+    File file = new File("target/test/csv/parallel/" + name + ".csv");
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static File outputFile(String name) {
+    File file = new File("target/test/csv/parallel/" + name + ".parquet");
+    file.delete();
+    new File(file.getParentFile(), "." + file.getName() + ".crc").delete();
+    return file;
+  }
+
+  static CSVOptions options() {
+    CSVOptions options = new CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    options.csvHeaderLines = 1;
+    return options;
+  }
+
+  static List<String> read(File parquetFile) throws IOException {
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI()))
+        .build();
+    List<String> rows = new ArrayList<String>();
+    try {
+      Group group;
+      while ((group = reader.read()) != null) {
+        rows.add(group.toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  static void convertParallel(File csvFile, File out, int threads, long minRangeSize) throws IOException {
+    convertParallel(csvFile, out, threads, minRangeSize, ParallelCsvToParquet.MAX_OVERRUN);
+  }
+
+  static void convertParallel(File csvFile, File out, int threads, long minRangeSize, long maxOverrun)
+      throws IOException {
+    final MessageType schema = MessageTypeParser.parseMessageType(SCHEMA);
+    ParallelCsvToParquet.PartWriterFactory factory = new ParallelCsvToParquet.PartWriterFactory() {
+      @Override
+      public CsvParquetWriter create(Path path) throws IOException {
+        return new CsvParquetWriter(path, schema, CompressionCodecName.SNAPPY, 1024, 256, true, false);
+      }
+    };
+    ParallelCsvToParquet converter = new ParallelCsvToParquet(csvFile, options(), schema, factory, false,
+        CsvTokenizer.DEFAULT_WINDOW_SIZE, new Configuration());
+    converter.setMinRangeSize(minRangeSize);
+    converter.setMaxOverrun(maxOverrun);
+    converter.convert(new Path(out.toURI()), threads);
+  }
+
+  static void assertSameAsSequential(String name, String csv) throws IOException {
+    File csvFile = writeCsv(name, csv);
+    File expectedFile = outputFile(name + "_seq");
+    convertParallel(csvFile, expectedFile, 1, Long.MAX_VALUE);
+    List<String> expected = read(expectedFile);
+    for (int threads : new int[] { 2, 3, 8 }) {
+      for (long minRangeSize : new long[] { 1, 7, 100 }) {
+        File out = outputFile(name + "_" + threads + "_" + minRangeSize);
+        convertParallel(csvFile, out, threads, minRangeSize);
+        assertEquals(threads + " threads, range " + minRangeSize, expected, read(out));
+        assertFalse(new File(out.getParentFile(), "." + out.getName() + ".range0").exists());
+      }
+    }
+  }
+
+  @Test
+  public void testSimple() throws IOException {
+    StringBuilder sb = new StringBuilder("id|text|v\n");
+    for (int i = 0; i < 500; ++i) {
+      sb.append(i).append("|text").append(i % 17).append("|").append(i * 3).append("\n");
+    }
+    assertSameAsSequential("simple", sb.toString());
+    assertEquals(500, read(new File("target/test/csv/parallel/simple_2_1.parquet")).size());
+  }
+
+  @Test
+  public void testQuotedLineBreaks() throws IOException {
+    StringBuilder sb = new StringBuilder("id|text|v\r\n");
+    for (int i = 0; i < 300; ++i) {
+      sb.append(i).append("|\"line\n").append(i).append("|x\n\"\"q\"\"\n").append("\"|").append(i).append("\r\n");
+    }
+    assertSameAsSequential("quoted", sb.toString());
+  }
+
+  @Test
+  public void testRaggedRecordsAreRepaired() throws IOException {
+    // the first record has a different field count, so no range start validates
+    // and ranges start at line breaks within quoted fields
+    StringBuilder sb = new StringBuilder("id|text|v\n0|first\n");
+    for (int i = 1; i < 200; ++i) {
+      sb.append(i).append("|\"a\nb\nc").append(i).append("\"|").append(i).append("\n");
+    }
+    assertSameAsSequential("ragged", sb.toString());
+  }
+
+  @Test
+  public void testRunawayQuote() throws IOException {
+    // no range start validates, a range starting at the line '"|1' opens a
+    // quoted field which is never closed
+    StringBuilder sb = new StringBuilder("id|text|v\n0|first\n1|\"x\n\"|1\n");
+    for (int i = 2; i < 400; ++i) {
+      sb.append(i).append("|text").append(i).append('|').append(i).append('\n');
+    }
+    File csvFile = writeCsv("runaway", sb.toString());
+    File expectedFile = outputFile("runaway_seq");
+    convertParallel(csvFile, expectedFile, 1, Long.MAX_VALUE);
+    List<String> expected = read(expectedFile);
+    assertEquals(400, expected.size());
+    // limits below a record length make every range read too far and be converted again
+    for (long maxOverrun : new long[] { 1, 16, 200 }) {
+      for (long minRangeSize : new long[] { 1, 7, 100 }) {
+        File out = outputFile("runaway_" + maxOverrun + "_" + minRangeSize);
+        convertParallel(csvFile, out, 3, minRangeSize, maxOverrun);
+        assertEquals(maxOverrun + " overrun, range " + minRangeSize, expected, read(out));
+      }
+    }
+  }
+
+  @Test
+  public void testStitchedFooter() throws IOException {
+    StringBuilder sb = new StringBuilder("id|text|v\n");
+    for (int i = 0; i < 1000; ++i) {
+      sb.append(i).append("|t").append(i % 5).append("|").append(i).append("\n");
+    }
+    File csvFile = writeCsv("footer", sb.toString());
+    File out = outputFile("footer");
+    convertParallel(csvFile, out, 4, 1000);
+    List<BlockMetaData> blocks = ParquetFileReader.readFooter(new Configuration(), new Path(out.toURI()))
+        .getBlocks();
+    assertTrue(blocks.size() >= 4);
+    long rows = 0;
+    long end = ParquetFileWriter.MAGIC.length;
+    for (BlockMetaData block : blocks) {
+      rows += block.getRowCount();
+      // the row groups are transferred in order, their offsets shifted
+      assertTrue(block.getStartingPos() >= end);
+      end = block.getStartingPos() + block.getCompressedSize();
+    }
+    assertTrue(end < out.length());
+    assertEquals(1000, rows);
+    assertEquals(1000, read(out).size());
+  }
+}
@@ -0,0 +1,231 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+public class ParallelGzipInputStreamTest {
+
+  static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bos);
+    out.write(data);
+    out.close();
+    return bos.toByteArray();
+  }
+
+  /** A BGZF block: a gzip member with the BC extra field holding its size. */
+  static byte[] bgzfBlock(byte[] data) throws IOException {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] deflated = new byte[data.length + 1024];
+    int n = deflater.deflate(deflated);
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    int blockSize = 18 + n + 8;
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+        (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8) });
+    bos.write(deflated, 0, n);
+    writeInt(bos, (int) crc.getValue());
+    writeInt(bos, data.length);
+    return bos.toByteArray();
+  }
+
+  private static void writeInt(ByteArrayOutputStream bos, int v) {
+    for (int i = 0; i < 4; ++i) {
+      bos.write(v >>> (8 * i));
+    }
+  }
+
+  static byte[] lines(int from, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = from; i < from + count; ++i) {
+      sb.append(i).append("|text").append(i % 13).append("|").append(i * 31).append("\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static File writeFile(String name, byte[]... parts) throws IOException {
+    File file = new File("target/test/gzip/" + name + ".csv.gz");
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      for (byte[] part : parts) {
+        out.write(part);
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1000];
+    try {
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        bos.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return bos.toByteArray();
+  }
+
+  /** compares with GZIPInputStream for several thread counts and range sizes */
+  static void assertInflatesLikeGzip(File file) throws IOException {
+    byte[] expected = readAll(new GZIPInputStream(new FileInputStream(file)));
+    for (int threads : new int[] { 1, 2, 4 }) {
+      for (long rangeSize : new long[] { 1, 100, 5000, ParallelGzipInputStream.TARGET_RANGE_SIZE }) {
+        ParallelGzipInputStream in = new ParallelGzipInputStream(file, threads);
+        in.setRangeSize(rangeSize);
+        assertArrayEquals(threads + " threads, range " + rangeSize, expected, readAll(in));
+      }
+    }
+  }
+
+  @Test
+  public void testSingleMember() throws IOException {
+    assertInflatesLikeGzip(writeFile("single", gzip(lines(0, 5000))));
+  }
+
+  @Test
+  public void testSingleMemberIsNotScheduled() throws IOException {
+    File file = writeFile("single", gzip(lines(0, 5000)));
+    byte[] expected = readAll(new GZIPInputStream(new FileInputStream(file)));
+    ParallelGzipInputStream in = new ParallelGzipInputStream(file, 4);
+    in.setRangeSize(100);
+    assertArrayEquals(expected, readAll(in));
+    assertEquals(0, in.getScheduledRanges());
+
+    in = new ParallelGzipInputStream(writeFile("two", gzip(lines(0, 5000)), gzip(lines(5000, 5000))), 4);
+    in.setRangeSize(100);
+    readAll(in);
+    assertTrue(in.getScheduledRanges() > 0);
+  }
+
+  @Test
+  public void testConcatenatedMembers() throws IOException {
+    Random random = new Random(17);
+    byte[][] parts = new byte[40][];
+    int line = 0;
+    for (int i = 0; i < parts.length; ++i) {
+      int count = random.nextInt(300);
+      parts[i] = gzip(lines(line, count));
+      line += count;
+    }
+    assertInflatesLikeGzip(writeFile("concatenated", parts));
+  }
+
+  @Test
+  public void testBgzf() throws IOException {
+    byte[][] parts = new byte[31][];
+    for (int i = 0; i < 30; ++i) {
+      parts[i] = bgzfBlock(lines(i * 100, 100));
+    }
+    // the empty end of file block
+    parts[30] = bgzfBlock(new byte[0]);
+    File file = writeFile("bgzf", parts);
+    assertEquals(parts[0].length, ParallelGzipInputStream.bgzfBlockSize(parts[0]));
+    assertInflatesLikeGzip(file);
+  }
+
+  @Test
+  public void testFalseHeaderInCompressedData() throws IOException {
+    // stored bytes looking like a member header, within a single member
+    byte[] data = lines(0, 1000);
+    byte[] fake = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 3 };
+    System.arraycopy(fake, 0, data, 5000, fake.length);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bos);
+    out.write(data);
+    out.close();
+    byte[] member = bos.toByteArray();
+    Deflater stored = new Deflater(Deflater.NO_COMPRESSION, true);
+    stored.setInput(data);
+    stored.finish();
+    byte[] deflated = new byte[data.length + 1024];
+    int n = stored.deflate(deflated);
+    stored.end();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    bos = new ByteArrayOutputStream();
+    bos.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 3 });
+    bos.write(deflated, 0, n);
+    writeInt(bos, (int) crc.getValue());
+    writeInt(bos, data.length);
+    assertInflatesLikeGzip(writeFile("falseheader", bos.toByteArray(), member, gzip(lines(1000, 10))));
+  }
+
+  @Test
+  public void testTrailingGarbageIsIgnored() throws IOException {
+    assertInflatesLikeGzip(writeFile("garbage", gzip(lines(0, 100)), gzip(lines(100, 100)), new byte[100]));
+  }
+
+  @Test
+  public void testCorruptTrailer() throws IOException {
+    byte[] second = gzip(lines(100, 100));
+    second[second.length - 5] ^= 1;
+    File file = writeFile("corrupt", gzip(lines(0, 100)), second);
+    for (int threads : new int[] { 1, 3 }) {
+      ParallelGzipInputStream in = new ParallelGzipInputStream(file, threads);
+      in.setRangeSize(1);
+      try {
+        readAll(in);
+        fail("corrupt trailer not detected");
+      } catch (ZipException e) {
+        assertEquals("Corrupt GZIP trailer", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testNotGzip() throws IOException {
+    File file = writeFile("notgzip", "a|b\n".getBytes(StandardCharsets.UTF_8));
+    try {
+      readAll(new ParallelGzipInputStream(file, 2));
+      fail("no gzip file");
+    } catch (ZipException e) {
+      assertEquals("Not in GZIP format", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testTokenizerOnMultiMemberFile() throws IOException {
+    File file = writeFile("tokenizer", gzip(lines(0, 300)), gzip(lines(300, 200)));
+    for (String threads : new String[] { "1", "3" }) {
+      Configuration conf = new Configuration();
+      conf.set("csv.gzip.threads", threads);
+      CsvTokenizer tokenizer = ConvertUtils.getTokenizer(file, CsvTokenizerTest.options("|"), false, 0, conf);
+      try {
+        int records = 0;
+        while (tokenizer.next()) {
+          assertEquals(String.valueOf(records * 31), tokenizer.getRecord().getString(2));
+          ++records;
+        }
+        assertEquals(500, records);
+      } finally {
+        tokenizer.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.parquet.Lookup;
+import jfseb.csv2parquet.parquet.ParquetIndex;
+import jfseb.csv2parquet.parquet.SplitBlockBloomFilter;
+
+public class ParquetIndexTest {
+
+  static final String SCHEMA = "message m { required int64 id; optional binary email (UTF8);"
+      + " optional int32 day (DATE); optional double v; }";
+
+  static File csvFile() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 4000; ++i) {
+      // ids grow with the rows, emails are in no order
+      sb.append(100000 + i * 7).append("|user").append((i * 7919) % 4000).append("@example.com|2017-01-")
+          .append(10 + i % 20).append('|').append(i * 0.5).append('\n');
+    }
+    return TestUtils.writeFile("index.csv", sb);
+  }
+
+  static File convert(File csv, String name, String... options) throws Exception {
+    File out = TestUtils.outputFile(name);
+    new File(out.getParentFile(), "." + name + ".index").delete();
+    return TestUtils.convertCsv(csv, SCHEMA, out,
+        Arrays.asList("parquet.compress=NONE", "parquet.BLOCK_SIZE=16384", "parquet.index.columns=id,email"), options);
+  }
+
+  static String lookup(Lookup lookup, File file) throws Exception {
+    StringWriter out = new StringWriter();
+    lookup.lookup(new Path(file.toURI()), out);
+    return out.toString();
+  }
+
+  @Test
+  public void testLookup() throws Exception {
+    File out = convert(csvFile(), "index.parquet");
+    assertTrue(new File(out.getParentFile(), ".index.parquet.index").exists());
+    Configuration conf = new Configuration();
+    Path path = new Path(out.toURI());
+    int rowGroups = ParquetFileReader.readFooter(conf, path).getBlocks().size();
+    assertTrue(rowGroups > 4);
+    ParquetIndex index = ParquetIndex.read(ParquetIndex.getIndexFile(path), conf);
+    assertEquals(rowGroups, index.getRowGroups().size());
+
+    // min/max of the sorted ids rule out all other row groups
+    Lookup byId = new Lookup(conf, "id", "107000");
+    assertEquals("107000|user3000@example.com|2017-01-10|500.0\n", lookup(byId, out));
+    assertEquals(1, byId.getRowGroupsRead());
+    assertEquals(rowGroups, byId.getRowGroups());
+
+    // the Bloom filters of the emails have no false negatives
+    for (int i = 0; i < 4000; i += 97) {
+      Lookup byEmail = new Lookup(conf, "email", "user" + (i * 7919) % 4000 + "@example.com");
+      assertTrue(lookup(byEmail, out).startsWith((100000 + i * 7) + "|"));
+      assertEquals(1, byEmail.getRows());
+      assertTrue(byEmail.getRowGroupsRead() < rowGroups);
+    }
+    Lookup missing = new Lookup(conf, "id", "100001");
+    assertEquals("", lookup(missing, out));
+    assertEquals(0, missing.getRowGroupsRead());
+
+    // without an index of the column all row groups are read
+    Lookup byDay = new Lookup(conf, "day", "2017-01-29");
+    lookup(byDay, out);
+    assertEquals(200, byDay.getRows());
+    assertEquals(rowGroups, byDay.getRowGroupsRead());
+  }
+
+  @Test
+  public void testParallelIndex() throws Exception {
+    File csv = csvFile();
+    File sequential = convert(csv, "index_seq.parquet");
+    File parallel = convert(csv, "index_parallel.parquet", "-t", "3");
+    assertFalse(new File(parallel.getParentFile(), ".index_parallel.parquet.range0.index").exists());
+    Configuration conf = new Configuration();
+    Path path = new Path(parallel.toURI());
+    ParquetIndex index = ParquetIndex.read(ParquetIndex.getIndexFile(path), conf);
+    assertEquals(ParquetFileReader.readFooter(conf, path).getBlocks().size(), index.getRowGroups().size());
+    long rows = 0;
+    for (ParquetIndex.RowGroup group : index.getRowGroups()) {
+      assertEquals(rows, group.getFirstRow());
+      rows += group.getRowCount();
+    }
+    assertEquals(4000, rows);
+    for (String key : new String[] { "100000", "103500", "127993" }) {
+      Lookup lookup = new Lookup(conf, "id", key);
+      assertEquals(lookup(new Lookup(conf, "id", key), sequential), lookup(lookup, parallel));
+      assertEquals(1, lookup.getRows());
+    }
+  }
+
+  @Test
+  public void testBloomFilter() {
+    SplitBlockBloomFilter filter = new SplitBlockBloomFilter(SplitBlockBloomFilter.optimalBytes(10000, 0.01));
+    for (int i = 0; i < 10000; ++i) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      filter.insertHash(SplitBlockBloomFilter.hash(key, 0, key.length));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; ++i) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      assertTrue(filter.mightContain(SplitBlockBloomFilter.hash(key, 0, key.length)));
+      byte[] other = ("other" + i).getBytes(StandardCharsets.UTF_8);
+      if (filter.mightContain(SplitBlockBloomFilter.hash(other, 0, other.length))) {
+        ++falsePositives;
+      }
+    }
+    assertTrue(String.valueOf(falsePositives), falsePositives < 200);
+  }
+
+  @Test
+  public void testFold() {
+    int bytes = SplitBlockBloomFilter.optimalBytes(10000, 0.01);
+    SplitBlockBloomFilter large = new SplitBlockBloomFilter(bytes * 16);
+    SplitBlockBloomFilter direct = new SplitBlockBloomFilter(bytes);
+    for (int i = 0; i < 10000; ++i) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      large.insertHash(SplitBlockBloomFilter.hash(key, 0, key.length));
+      direct.insertHash(SplitBlockBloomFilter.hash(key, 0, key.length));
+    }
+    SplitBlockBloomFilter folded = large.fold(bytes);
+    assertEquals(bytes, folded.getBytes());
+    // the same bits as the filter of the smaller size
+    for (int i = 0; i < 50000; ++i) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      long hash = SplitBlockBloomFilter.hash(key, 0, key.length);
+      assertEquals(String.valueOf(i), direct.mightContain(hash), folded.mightContain(hash));
+    }
+  }
+
+  @Test
+  public void testLargeRowGroup() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 30000; ++i) {
+      sb.append(i).append("|user").append(i % 20000).append("@example.com|2017-01-10|").append(i).append('\n');
+    }
+    File out = TestUtils.convertCsv(TestUtils.writeFile("index_large.csv", sb), SCHEMA,
+        TestUtils.outputFile("index_large.parquet"),
+        Arrays.asList("parquet.BLOCK_SIZE=8388608", "parquet.index.columns=email"));
+    Configuration conf = new Configuration();
+    Path path = new Path(out.toURI());
+    ParquetIndex index = ParquetIndex.read(ParquetIndex.getIndexFile(path), conf);
+    assertEquals(1, index.getRowGroups().size());
+    // folded from the filter of the block size to the ~20000 distinct emails
+    int bytes = index.getRowGroups().get(0).getFilter(0).getBytes();
+    assertTrue(String.valueOf(bytes), bytes <= 2 * SplitBlockBloomFilter.optimalBytes(20000, 0.01));
+    for (int i = 0; i < 20000; i += 997) {
+      Lookup byEmail = new Lookup(conf, "email", "user" + i + "@example.com");
+      lookup(byEmail, out);
+      assertEquals(i < 10000 ? 2 : 1, byEmail.getRows());
+    }
+  }
+
+  @Test
+  public void testInvalidColumns() {
+    MessageType schema = MessageTypeParser.parseMessageType(SCHEMA.replace(" }", " optional boolean b; }"));
+    String[][] invalid = new String[][] {
+        { "x", "Unknown column x in parquet.index.columns, the schema has [id, email, day, v, b]" },
+        { "b", "Cannot index column b of type optional boolean b, only top level INT32, INT64, FLOAT, DOUBLE and"
+            + " binary columns can be key columns" } };
+    for (String[] setting : invalid) {
+      Configuration conf = new Configuration();
+      conf.set(ParquetIndex.COLUMNS, setting[0]);
+      try {
+        ParquetIndex.Builder.of(conf, schema, 1 << 20);
+        fail(setting[0]);
+      } catch (IllegalArgumentException e) {
+        assertEquals(setting[1], e.getMessage());
+      }
+    }
+    try {
+      ParquetIndex.toKey(schema.getType("id"), "abc");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Key abc is not a value of column"));
+    }
+  }
+}
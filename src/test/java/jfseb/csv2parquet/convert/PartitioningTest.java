@@ -0,0 +1,215 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+
+public class PartitioningTest {
+
+  static File outputDirectory(String name) throws IOException {
+    File dir = TestUtils.outputFile(name);
+    FileUtils.deleteDirectory(dir);
+    return dir;
+  }
+
+  @Test
+  public void testDirectory() {
+    Partitioning partitioning = Partitioning.parse("dt, region");
+    assertEquals("dt=2017-01-02/region=eu", partitioning.getDirectory(new String[] { "2017-01-02", "eu" }));
+    assertEquals("dt=__HIVE_DEFAULT_PARTITION__/region=a%2Fb%3Dc%25", partitioning.getDirectory(new String[] {
+        null, "a/b=c%" }));
+    assertEquals("dt=" + Partitioning.DEFAULT_PARTITION + "/region=x y", partitioning.getDirectory(new String[] {
+        "", "x y" }));
+    assertEquals("new%0Aline", Partitioning.escape("new\nline"));
+    assertEquals(new Path("out/dt=1/part-00012.orc"), Partitioning.getPartFile(new Path("out"), "dt=1", 12, ".orc"));
+    assertArrayEquals(new String[] { "a", "c" }, partitioning.getDataColumns(Arrays.asList("a", "dt", "c",
+        "region"), null));
+    assertArrayEquals(new String[] { "c", "dt", "region" }, partitioning.getReadColumns(partitioning
+        .getDataColumns(Arrays.asList("a", "dt", "c", "region"), new String[] { "c", "dt" })));
+    try {
+      partitioning.getDataColumns(Arrays.asList("a", "dt"), null);
+      fail("unknown column");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Unknown column region in --partition-by, the schema has [a, dt]", e.getMessage());
+    }
+    try {
+      partitioning.getDataColumns(Arrays.asList("dt", "region"), null);
+      fail("no data columns");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("No columns left to write"));
+    }
+  }
+
+  @Test
+  public void testCsvRecordDirectory() {
+    Partitioning partitioning = Partitioning.parse("dt");
+    CsvRecord a = CsvRecord.fromStrings(Arrays.asList("1", "2017-01-02"));
+    String dir = partitioning.getDirectory(a, 1);
+    assertEquals("dt=2017-01-02", dir);
+    // the same values give the same directory
+    assertSame(dir, partitioning.getDirectory(CsvRecord.fromStrings(Arrays.asList("2", "2017-01-02")), 1));
+    assertEquals("dt=2017-01-03", partitioning.getDirectory(CsvRecord.fromStrings(Arrays.asList("2",
+        "2017-01-03")), 1));
+    assertEquals("dt=" + Partitioning.DEFAULT_PARTITION, partitioning.getDirectory(CsvRecord.fromStrings(Arrays
+        .asList("2")), 1));
+  }
+
+  static final class Part implements Closeable {
+    final String name;
+    final List<String> closed;
+
+    Part(String name, List<String> closed) {
+      this.name = name;
+      this.closed = closed;
+    }
+
+    @Override
+    public void close() {
+      closed.add(name);
+    }
+  }
+
+  @Test
+  public void testWriterPoolEvictsLeastRecentlyUsed() throws IOException {
+    final List<String> closed = new ArrayList<String>();
+    WriterPool<Part> pool = new WriterPool<Part>(new WriterPool.Factory<Part>() {
+      @Override
+      public Part create(String directory, int part) {
+        return new Part(directory + "/" + part, closed);
+      }
+    }, 2);
+    Part a = pool.get("a");
+    assertEquals("a/0", a.name);
+    pool.get("b");
+    assertSame(a, pool.get("a"));
+    // b is the least recently used
+    assertEquals("c/0", pool.get("c").name);
+    assertEquals(Arrays.asList("b/0"), closed);
+    assertEquals("b/1", pool.get("b").name);
+    assertEquals(Arrays.asList("b/0", "a/0"), closed);
+    pool.close();
+    assertEquals(4, closed.size());
+    assertEquals(3, pool.getPartitions());
+    assertEquals(4, pool.getFiles());
+    assertEquals(2, pool.getEvicted());
+  }
+
+  static String csv() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      // the region alternates per row, the day changes once
+      sb.append(i).append('|').append(i % 2 == 0 ? "eu" : "us").append('|').append("2017-01-0").append(1 + i / 50)
+          .append('|').append(i * 1.5).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testCsvToPartitionedParquet() throws Exception {
+    File csv = TestUtils.outputFile("partitioned.csv");
+    Files.write(csv.toPath(), csv().getBytes(StandardCharsets.UTF_8));
+    File schema = TestUtils.outputFile("partitioned.schema");
+    Files.write(schema.toPath(), ("message m { required int32 id; optional binary region (UTF8);"
+        + " optional int32 dt (DATE); optional double v; }").getBytes(StandardCharsets.UTF_8));
+    File out = outputDirectory("partitioned.parquet");
+    Driver.main(new String[] { "-D", "partition.writers=1", "convert", "-S", "|", "-s", schema.toString(), "-p",
+        "dt,region", csv.toString(), "-o", out.toString() });
+    // one open writer, every row switches the partition
+    File eu = new File(out, "dt=2017-01-01/region=eu");
+    assertEquals(25, listFiles(eu, ".parquet").length);
+    List<String> rows = ParallelCsvToParquetTest.read(new File(eu, "part-00000.parquet"));
+    assertEquals(Arrays.asList("id: 0\nv: 0.0\n"), rows);
+    assertEquals("message m {\n  required int32 id;\n  optional double v;\n}\n", ParquetFileReader.readFooter(
+        new Configuration(), new Path(new File(eu, "part-00001.parquet").toURI())).getFileMetaData().getSchema()
+        .toString());
+
+    out = outputDirectory("partitioned_wide.parquet");
+    Driver.main(new String[] { "convert", "-S", "|", "-s", schema.toString(), "--partition-by", "dt", "-c",
+        "v,dt", csv.toString(), "-o", out.toString() });
+    rows = ParallelCsvToParquetTest.read(new File(out, "dt=2017-01-02/part-00000.parquet"));
+    assertEquals(50, rows.size());
+    assertEquals("v: 75.0\n", rows.get(0));
+    assertFalse(new File(out, "dt=2017-01-02/part-00001.parquet").exists());
+  }
+
+  @Test
+  public void testFailedPartitionedParquet() throws Exception {
+    File csv = TestUtils.outputFile("partitioned_failed.csv");
+    Files.write(csv.toPath(), (csv() + "x|eu|2017-01-02|1\n").getBytes(StandardCharsets.UTF_8));
+    File schema = TestUtils.outputFile("partitioned.schema");
+    Files.write(schema.toPath(), ("message m { required int32 id; optional binary region (UTF8);"
+        + " optional int32 dt (DATE); optional double v; }").getBytes(StandardCharsets.UTF_8));
+    File out = outputDirectory("partitioned_failed.parquet");
+    try {
+      Driver.main(new String[] { "-D", "partition.writers=1", "convert", "-S", "|", "-s", schema.toString(), "-p",
+          "region", csv.toString(), "-o", out.toString() });
+      fail();
+    } catch (IllegalArgumentException e) {
+      // a part per good row is kept, the one opened for the failed row is deleted
+      assertEquals(100, listFiles(new File(out, "region=eu"), ".parquet").length
+          + listFiles(new File(out, "region=us"), ".parquet").length);
+    }
+  }
+
+  @Test
+  public void testJsonToPartitionedOrcAndParquet() throws Exception {
+    File json = TestUtils.outputFile("partitioned.json");
+    StringBuilder sb = new StringBuilder();
+    int expected = 0;
+    for (int i = 0; i < 300; ++i) {
+      expected += (i % 7 != 0 && i % 3 == 1) ? 1 : 0;
+      sb.append("{\"k\":").append(i).append(i % 7 == 0 ? "" : ",\"p\":\"" + (i % 3) + "\"").append("}\n");
+    }
+    Files.write(json.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    File out = outputDirectory("partitioned.orc");
+    Driver.main(new String[] { "-D", "partition.writers=2", "convert", "-s", "struct<k:int,p:string>", "-p", "p",
+        json.toString(), "-o", out.toString() });
+    long rows = 0;
+    for (String p : new String[] { "0", "1", "2", Partitioning.DEFAULT_PARTITION }) {
+      File dir = new File(out, "p=" + p);
+      File[] parts = listFiles(dir, ".orc");
+      assertTrue(dir.toString(), parts.length > 1);
+      for (File part : parts) {
+        Reader reader = OrcFile.createReader(new Path(part.toURI()), OrcFile.readerOptions(new Configuration()));
+        assertEquals("struct<k:int>", reader.getSchema().toString());
+        rows += reader.getNumberOfRows();
+      }
+    }
+    assertEquals(300, rows);
+
+    out = outputDirectory("partitioned_json.parquet");
+    Driver.main(new String[] { "convert", "-s", "struct<k:int,p:string>", "-p", "p", json.toString(), "-o",
+        out.toString() });
+    List<String> values = ParallelCsvToParquetTest.read(new File(out, "p=1/part-00000.parquet"));
+    assertEquals(Arrays.asList("k: 1\n", "k: 4\n"), values.subList(0, 2));
+    assertEquals(expected, values.size());
+  }
+
+  static File[] listFiles(File dir, final String extension) {
+    return dir.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(extension);
+      }
+    });
+  }
+}
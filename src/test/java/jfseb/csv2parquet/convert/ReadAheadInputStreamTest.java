@@ -0,0 +1,122 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+  static byte[] data(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      data[i] = (byte) (i * 7 + i / 251);
+    }
+    return data;
+  }
+
+  @Test
+  public void testReadsAllBytes() throws IOException {
+    byte[] data = data(100000);
+    for (int bufferSize : new int[] { 1, 7, 4096, 200000 }) {
+      ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), bufferSize, 3);
+      byte[] res = new byte[data.length];
+      int pos = 0;
+      int n;
+      while ((n = in.read(res, pos, Math.min(333, res.length - pos))) > 0) {
+        pos += n;
+      }
+      assertEquals(data.length, pos);
+      assertEquals(-1, in.read());
+      assertArrayEquals("buffer " + bufferSize, data, res);
+      in.close();
+    }
+  }
+
+  @Test
+  public void testSingleBytes() throws IOException {
+    ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(new byte[] { 1, (byte) 200 }), 1, 2);
+    assertEquals(1, in.read());
+    assertEquals(200, in.read());
+    assertEquals(-1, in.read());
+    assertEquals(-1, in.read());
+    in.close();
+  }
+
+  @Test
+  public void testFailureAfterData() throws IOException {
+    InputStream failing = new InputStream() {
+      int count;
+
+      @Override
+      public int read() throws IOException {
+        if (count == 10) {
+          throw new IOException("broken");
+        }
+        return count++;
+      }
+    };
+    ReadAheadInputStream in = new ReadAheadInputStream(failing, 4, 2);
+    for (int i = 0; i < 8; ++i) {
+      assertEquals(i, in.read());
+    }
+    try {
+      while (in.read() >= 0) {
+        // consume the bytes before the failure
+      }
+      fail("failure not reported");
+    } catch (IOException e) {
+      assertEquals("broken", e.getMessage());
+    }
+    in.close();
+  }
+
+  @Test
+  public void testFailureInPartialBuffer() throws IOException {
+    // one byte per read, the failure comes with 2 bytes in the third buffer
+    InputStream failing = new InputStream() {
+      int count;
+
+      @Override
+      public int read() throws IOException {
+        if (count == 10) {
+          throw new IOException("broken");
+        }
+        return count++;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        b[off] = (byte) read();
+        return 1;
+      }
+    };
+    ReadAheadInputStream in = new ReadAheadInputStream(failing, 4, 2);
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(i, in.read());
+    }
+    try {
+      in.read();
+      fail("failure not reported");
+    } catch (IOException e) {
+      assertEquals("broken", e.getMessage());
+    }
+    in.close();
+  }
+
+  @Test
+  public void testCloseWhileReadingAhead() throws IOException {
+    ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data(1000)), 10, 2);
+    assertEquals(0, in.read());
+    in.close();
+    try {
+      in.read();
+      fail("read after close");
+    } catch (IOException e) {
+      assertEquals("Stream closed", e.getMessage());
+    }
+  }
+}
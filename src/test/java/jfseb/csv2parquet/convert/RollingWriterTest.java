@@ -0,0 +1,148 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+
+public class RollingWriterTest {
+
+  static final String SCHEMA = "message m { required int32 id; optional binary name (UTF8); optional double v; }";
+
+  static File csvFile(int rows) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; ++i) {
+      sb.append(i).append("|name of row ").append(i).append('|').append(i / 7.0).append('\n');
+    }
+    return TestUtils.writeFile("rolling.csv", sb);
+  }
+
+  static List<String> manifest(File directory) throws Exception {
+    return Files.readAllLines(new File(directory, RollingWriter.MANIFEST).toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testParseLimit() {
+    assertEquals(0, RollingWriter.parseLimit(null, "max-file-size"));
+    assertEquals(1000, RollingWriter.parseLimit("1000", "max-rows-per-file"));
+    assertEquals(512L << 20, RollingWriter.parseLimit("512m", "max-file-size"));
+    for (String invalid : new String[] { "0", "-1", "lots" }) {
+      try {
+        RollingWriter.parseLimit(invalid, "max-file-size");
+        fail(invalid);
+      } catch (IllegalArgumentException e) {
+        assertEquals("--max-file-size must be a positive number, not " + invalid, e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testFailedParquetPart() throws Exception {
+    File csv = csvFile(100);
+    Files.write(csv.toPath(), "x|y|1\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    File out = PartitioningTest.outputDirectory("rolling_failed.parquet");
+    try {
+      TestUtils.convertCsv(csv, SCHEMA, out, TestUtils.NO_SETTINGS, "--max-rows-per-file", "40");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // the full parts are kept, the partial one is deleted
+      assertTrue(new File(out, "part-00001.parquet").exists());
+      assertFalse(new File(out, "part-00002.parquet").exists());
+    }
+  }
+
+  @Test
+  public void testParquetByRows() throws Exception {
+    File csv = csvFile(100);
+    File out = PartitioningTest.outputDirectory("rolling_rows.parquet");
+    TestUtils.convertCsv(csv, SCHEMA, out, TestUtils.NO_SETTINGS, "--max-rows-per-file", "40");
+    List<String> manifest = manifest(out);
+    assertEquals(4, manifest.size());
+    assertEquals("file\trows\tbytes", manifest.get(0));
+    assertTrue(manifest.get(1), manifest.get(1).startsWith("part-00000.parquet\t40\t"));
+    assertTrue(manifest.get(3), manifest.get(3).startsWith("part-00002.parquet\t20\t"));
+    assertEquals(new File(out, "part-00001.parquet").length() + "", manifest.get(2).split("\t")[2]);
+
+    File single = TestUtils.convertCsv(csv, SCHEMA, TestUtils.outputFile("rolling_single.parquet"),
+        TestUtils.NO_SETTINGS);
+    List<String> rows = new ArrayList<String>();
+    for (int part = 0; part < 3; ++part) {
+      rows.addAll(ParallelCsvToParquetTest.read(new File(out, "part-0000" + part + ".parquet")));
+    }
+    assertEquals(ParallelCsvToParquetTest.read(single), rows);
+  }
+
+  @Test
+  public void testParquetBySize() throws Exception {
+    File csv = csvFile(20000);
+    File out = PartitioningTest.outputDirectory("rolling_size.parquet");
+    TestUtils.convertCsv(csv, SCHEMA, out, Arrays.asList("parquet.compress=NONE", "parquet.BLOCK_SIZE=65536"),
+        "--max-file-size", "128k");
+    List<String> manifest = manifest(out);
+    assertTrue(manifest.toString(), manifest.size() > 3);
+    long rows = 0;
+    for (String line : manifest.subList(1, manifest.size())) {
+      String[] fields = line.split("\t");
+      rows += Long.parseLong(fields[1]);
+      // closed at the first row group boundary after the size was reached
+      assertTrue(line, Long.parseLong(fields[2]) < 3 * 65536 + 128 * 1024);
+    }
+    assertEquals(20000, rows);
+  }
+
+  @Test
+  public void testOrcByRows() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2500; ++i) {
+      sb.append("{\"k\":").append(i).append("}\n");
+    }
+    File json = TestUtils.writeFile("rolling.json", sb);
+    File out = PartitioningTest.outputDirectory("rolling.orc");
+    Driver.main(new String[] { "convert", "-s", "struct<k:int>", "--max-rows-per-file", "1000", json.toString(),
+        "-o", out.toString() });
+    // whole batches
+    List<String> manifest = manifest(out);
+    assertEquals(4, manifest.size());
+    long rows = 0;
+    for (int part = 0; part < 3; ++part) {
+      Reader reader = OrcFile.createReader(new Path(new File(out, "part-0000" + part + ".orc").toURI()),
+          OrcFile.readerOptions(new Configuration()));
+      assertEquals(Arrays.asList("part-0000" + part + ".orc", "" + reader.getNumberOfRows()),
+          Arrays.asList(manifest.get(part + 1).split("\t")).subList(0, 2));
+      rows += reader.getNumberOfRows();
+    }
+    assertEquals(2500, rows);
+
+    out = PartitioningTest.outputDirectory("rolling_json.parquet");
+    Driver.main(new String[] { "convert", "-s", "struct<k:int>", "--max-rows-per-file", "2048", json.toString(),
+        "-o", out.toString() });
+    assertEquals(3, manifest(out).size());
+    assertEquals(2048, ParallelCsvToParquetTest.read(new File(out, "part-00000.parquet")).size());
+  }
+
+  @Test
+  public void testNotWithPartitions() throws Exception {
+    try {
+      TestUtils.convertCsv(csvFile(1), SCHEMA, TestUtils.outputFile("rolling_partitions.parquet"),
+          TestUtils.NO_SETTINGS, "-p", "name", "--max-rows-per-file", "5");
+      fail("partitioned and rolling");
+    } catch (IllegalArgumentException e) {
+      assertEquals("--max-file-size and --max-rows-per-file are not supported with --partition-by",
+          e.getMessage());
+    }
+  }
+}
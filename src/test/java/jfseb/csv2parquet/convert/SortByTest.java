@@ -0,0 +1,237 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+
+public class SortByTest {
+
+  static final String SCHEMA = "message m { optional int64 id; optional binary country (UTF8); optional double v;"
+      + " required int32 seq; }";
+  static final int ROWS = 5000;
+  static final String[] COUNTRIES = { "fr", "de", "", "ch" };
+
+  /**
+   * A row of the output: id (null as Long.MIN_VALUE), country, v and the input
+   * position seq.
+   */
+  static final class Row {
+    final long id;
+    final String country;
+    final double v;
+    final int seq;
+
+    Row(long id, String country, double v, int seq) {
+      this.id = id;
+      this.country = country;
+      this.v = v;
+      this.seq = seq;
+    }
+  }
+
+  static File csvFile() throws Exception {
+    StringBuilder sb = new StringBuilder("id|country|v|seq\n");
+    for (int i = 0; i < ROWS; ++i) {
+      sb.append(i % 500 == 0 ? "" : String.valueOf((i * 7919L) % ROWS - 100)).append('|')
+          .append(COUNTRIES[i % 4]).append('|').append((i % 7 - 3) * 1.5).append('|').append(i).append('\n');
+    }
+    return TestUtils.writeFile("sort.csv", sb);
+  }
+
+  static File tmpDir() throws Exception {
+    File dir = new File("target/test/sort");
+    FileUtils.deleteDirectory(dir);
+    dir.mkdirs();
+    return dir;
+  }
+
+  static void convert(File csv, File out, File tmpDir, String sortBy) throws Exception {
+    String schema = out.getName().endsWith(".orc") ? "struct<id:bigint,country:string,v:double,seq:int>" : SCHEMA;
+    // 1k of memory spills runs of a few records, more than are merged at once
+    TestUtils.convertCsv(csv, schema, out, Arrays.asList("sort.memory=1k", "sort.tmpdir=" + tmpDir), "-H", "1",
+        "--sort-by", sortBy);
+  }
+
+  static List<Row> readParquet(File file) throws Exception {
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI())).build();
+    List<Row> rows = new ArrayList<Row>();
+    try {
+      Group g;
+      while ((g = reader.read()) != null) {
+        rows.add(new Row(g.getFieldRepetitionCount("id") == 0 ? Long.MIN_VALUE : g.getLong("id", 0),
+            g.getFieldRepetitionCount("country") == 0 ? null : g.getString("country", 0), g.getDouble("v", 0),
+            g.getInteger("seq", 0)));
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  static List<Row> readOrc(File file) throws Exception {
+    Reader reader = OrcFile.createReader(new Path(file.toURI()), OrcFile.readerOptions(new Configuration()));
+    RecordReader rows = reader.rows();
+    VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+    List<Row> result = new ArrayList<Row>();
+    while (rows.nextBatch(batch)) {
+      LongColumnVector id = (LongColumnVector) batch.cols[0];
+      BytesColumnVector country = (BytesColumnVector) batch.cols[1];
+      DoubleColumnVector v = (DoubleColumnVector) batch.cols[2];
+      LongColumnVector seq = (LongColumnVector) batch.cols[3];
+      for (int r = 0; r < batch.size; ++r) {
+        result.add(new Row(id.isNull[r] ? Long.MIN_VALUE : id.vector[r],
+            country.isNull[r] ? null : country.toString(r), v.vector[r], (int) seq.vector[r]));
+      }
+    }
+    rows.close();
+    return result;
+  }
+
+  static void assertSortedById(List<Row> rows) {
+    assertEquals(ROWS, rows.size());
+    // the NULL ids first, in input order
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(Long.MIN_VALUE, rows.get(i).id);
+      assertEquals(i * 500, rows.get(i).seq);
+    }
+    for (int i = 11; i < ROWS; ++i) {
+      assertTrue(rows.get(i - 1).id < rows.get(i).id);
+    }
+    assertEquals(-99, rows.get(10).id);
+  }
+
+  @Test
+  public void testSortParquet() throws Exception {
+    File csv = csvFile();
+    File tmpDir = tmpDir();
+    File out = TestUtils.outputFile("sorted.parquet");
+    convert(csv, out, tmpDir, "id");
+    assertSortedById(readParquet(out));
+    assertEquals(0, tmpDir.list().length);
+
+    File byCountry = TestUtils.outputFile("sorted_country.parquet");
+    convert(csv, byCountry, tmpDir, "country,v");
+    List<Row> rows = readParquet(byCountry);
+    assertEquals(ROWS, rows.size());
+    assertNull(rows.get(0).country);
+    assertEquals("ch", rows.get(ROWS / 4).country);
+    assertEquals(-4.5, rows.get(ROWS / 4).v, 0);
+    for (int i = 1; i < ROWS; ++i) {
+      Row a = rows.get(i - 1);
+      Row b = rows.get(i);
+      int c = (a.country == null) ? (b.country == null ? 0 : -1) : a.country.compareTo(b.country);
+      assertTrue(c <= 0);
+      if (c == 0) {
+        assertTrue(a.v <= b.v);
+        // stable within equal keys
+        assertTrue(a.v < b.v || a.seq < b.seq);
+      }
+    }
+  }
+
+  @Test
+  public void testSortOrc() throws Exception {
+    File tmpDir = tmpDir();
+    File out = TestUtils.outputFile("sorted.orc");
+    convert(csvFile(), out, tmpDir, "id");
+    assertSortedById(readOrc(out));
+    assertEquals(0, tmpDir.list().length);
+  }
+
+  @Test
+  public void testSorter() throws Exception {
+    ConvertToolBase.CSVOptions options = new ConvertToolBase.CSVOptions();
+    options.csvSeparatorAsString = "|";
+    options.csvSeparatorAsChar = '|';
+    options.csvQuote = '"';
+    options.csvEscape = '\\';
+    String csv = "b|2.5|x\na|-1|y\n|3|z\nb|1e2|w\na|-1|v\n";
+    CsvTokenizer tokenizer = new CsvTokenizer(new java.io.ByteArrayInputStream(
+        csv.getBytes(StandardCharsets.UTF_8)), options);
+    ExternalSorter sorter = ExternalSorter.of(MessageTypeParser.parseMessageType(
+        "message m { optional binary k (UTF8); optional double d; optional binary s (UTF8); }"),
+        new String[] { "k", "d" }, options, new Configuration());
+    while (tokenizer.next()) {
+      sorter.add(tokenizer);
+    }
+    sorter.sort();
+    List<String> sorted = new ArrayList<String>();
+    List<Long> lines = new ArrayList<Long>();
+    while (sorter.next()) {
+      sorted.add(sorter.getRecord().toString());
+      lines.add(sorter.getRecordNumber());
+    }
+    sorter.close();
+    assertEquals(Arrays.asList("[, 3, z]", "[a, -1, y]", "[a, -1, v]", "[b, 2.5, x]", "[b, 1e2, w]"), sorted);
+    assertEquals(Arrays.asList(3L, 2L, 5L, 1L, 4L), lines);
+    assertEquals(0, sorter.getSpilledRuns());
+  }
+
+  static List<String> sort(String csv, String schema, String... columns) throws Exception {
+    ConvertToolBase.CSVOptions options = CsvTokenizerTest.options("|");
+    CsvTokenizer tokenizer = new CsvTokenizer(new java.io.ByteArrayInputStream(
+        csv.getBytes(StandardCharsets.UTF_8)), options);
+    ExternalSorter sorter = ExternalSorter.of(MessageTypeParser.parseMessageType(schema), columns, options,
+        new Configuration());
+    while (tokenizer.next()) {
+      sorter.add(tokenizer);
+    }
+    sorter.sort();
+    List<String> sorted = new ArrayList<String>();
+    while (sorter.next()) {
+      sorted.add(sorter.getRecord().getString(1));
+    }
+    sorter.close();
+    return sorted;
+  }
+
+  @Test
+  public void testSortDecimals() throws Exception {
+    // equal as doubles, 1.005 and 1.01 are equal at the scale of 2 and keep their order
+    String csv = "9007199254740993.02|a\n9007199254740993.01|b\n1.005|c\n-1e1|d\n1.01|e\n|f\n";
+    assertEquals(Arrays.asList("f", "d", "c", "e", "b", "a"),
+        sort(csv, "message m { optional int64 k (DECIMAL(18,2)); optional binary s (UTF8); }", "k"));
+    // more than 18 digits compared as text at the scale, mixed with the unscaled longs
+    csv = "12345678901234567890.02|a\n12345678901234567890.01|b\n1.5e1|c\n-3|d\n15.004|e\n";
+    assertEquals(Arrays.asList("d", "c", "e", "b", "a"),
+        sort(csv, "message m { optional binary k (DECIMAL(30,2)); optional binary s (UTF8); }", "k"));
+  }
+
+  @Test
+  public void testInvalidSortBy() {
+    String[][] invalid = new String[][] {
+        { "x", "Unknown column x in --sort-by, the schema has [id, country, v, seq]" },
+        { "id,id", "Column id is given twice in --sort-by" } };
+    for (String[] setting : invalid) {
+      try {
+        ExternalSorter.of(MessageTypeParser.parseMessageType(SCHEMA), ColumnProjection.parseColumns(setting[0]),
+            new ConvertToolBase.CSVOptions(), new Configuration());
+        fail(setting[0]);
+      } catch (IllegalArgumentException e) {
+        assertEquals(setting[1], e.getMessage());
+      }
+    }
+  }
+}
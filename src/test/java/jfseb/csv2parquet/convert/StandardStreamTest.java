@@ -0,0 +1,102 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+
+public class StandardStreamTest {
+
+  static final String NATION_SCHEMA = "parquet-testdata/tpch/nation.parquet.schema";
+
+  static void runWithStdin(byte[] input, String... args) throws Exception {
+    InputStream stdin = System.in;
+    System.setIn(new ByteArrayInputStream(input));
+    try {
+      Driver.main(args);
+    } finally {
+      System.setIn(stdin);
+    }
+  }
+
+  static String runWithStdout(String... args) throws Exception {
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(captured, true, "UTF-8"));
+    try {
+      Driver.main(args);
+    } finally {
+      System.setOut(stdout);
+    }
+    return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  static byte[] gzip(byte[] data) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bos);
+    out.write(data);
+    out.close();
+    return bos.toByteArray();
+  }
+
+  @Test
+  public void testCsvFromStdinToParquetToStdout() throws Exception {
+    File csvFile = new File(ColumnProjectionTest.NATION_CSV);
+    byte[] csv = Files.readAllBytes(csvFile.toPath());
+    File fromStdin = TestUtils.outputFile("nation_stdin.parquet");
+    runWithStdin(csv, "convert", "-S", "|", "-i", "csv", "-s", NATION_SCHEMA, "-", "-o", fromStdin.toString());
+    File fromFile = TestUtils.outputFile("nation_file.parquet");
+    Driver.main(new String[] { "convert", "-S", "|", "-s", NATION_SCHEMA, csvFile.toString(), "-o",
+        fromFile.toString() });
+    assertEquals(ParallelCsvToParquetTest.read(fromFile), ParallelCsvToParquetTest.read(fromStdin));
+
+    String stdout = runWithStdout("convert", fromStdin.toString(), "-o", "-");
+    File csvOut = TestUtils.outputFile("nation_stdin.csv");
+    ConvertUtils.convertParquetToCSV(fromFile, csvOut);
+    assertEquals(new String(Files.readAllBytes(csvOut.toPath()), StandardCharsets.UTF_8), stdout);
+    assertTrue(stdout.startsWith("0|ALGERIA|0|"));
+  }
+
+  @Test
+  public void testGzipCsvAndJsonFromStdinToOrc() throws Exception {
+    byte[] csv = gzip("1|a\n2|b\n3|\n".getBytes(StandardCharsets.UTF_8));
+    File out = TestUtils.outputFile("stdin_csv.orc");
+    runWithStdin(csv, "convert", "-S", "|", "-i", "csv.gz", "-s", "struct<k:int,v:string>", "-", "-o",
+        out.toString());
+    Reader reader = OrcFile.createReader(new Path(out.toURI()), OrcFile.readerOptions(new Configuration()));
+    assertEquals(3, reader.getNumberOfRows());
+
+    byte[] json = "{\"k\":1,\"v\":\"a\"}\n{\"k\":2}\n".getBytes(StandardCharsets.UTF_8);
+    out = TestUtils.outputFile("stdin_json.orc");
+    runWithStdin(json, "convert", "--input-format", "json", "-s", "struct<k:int,v:string>", "-", "-o",
+        out.toString());
+    reader = OrcFile.createReader(new Path(out.toURI()), OrcFile.readerOptions(new Configuration()));
+    assertEquals(2, reader.getNumberOfRows());
+  }
+
+  @Test
+  public void testStdinRequiresFormat() throws Exception {
+    File out = TestUtils.outputFile("stdin_noformat.orc");
+    try {
+      runWithStdin(new byte[0], "convert", "-s", "struct<k:int>", "-", "-o", out.toString());
+      fail("no input format");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("--input-format"));
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.convert.utils.CSV2ParquetTimestampUtils;
+import jfseb.csv2parquet.utils.SchemaCreator;
+import jfseb.csv2parquet.utils.TimestampType;
+
+public class TimestampTypeTest {
+
+  static final String[] VALUES = { "2017-01-02 10:11:12", "2017-01-02 10:11:12.123456", "1969-12-31 23:59:59",
+      "2017-01-02 10:11:12", "1234567" };
+  static final String SCHEMA = "message m { optional int96 ts; optional int32 id; }";
+
+  static File convert(String name, String timestamps) throws Exception {
+    File csv = TestUtils.outputFile("timestamps.csv");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < VALUES.length; ++i) {
+      sb.append(VALUES[i]).append('|').append(i).append('\n');
+    }
+    Files.write(csv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    Configuration conf = new Configuration();
+    if (timestamps != null) {
+      conf.set("parquet.timestamp", timestamps);
+    }
+    File out = TestUtils.outputFile(name);
+    ConvertUtils.convertCsvToParquet(csv, out, SCHEMA, false, CsvTokenizerTest.options("|"), conf);
+    return out;
+  }
+
+  static List<Group> read(File file) throws Exception {
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI())).build();
+    List<Group> rows = new ArrayList<Group>();
+    try {
+      Group group;
+      while ((group = reader.read()) != null) {
+        rows.add(group);
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  static MessageType schema(File file) throws Exception {
+    return ParquetFileReader.readFooter(new Configuration(), new Path(file.toURI())).getFileMetaData().getSchema();
+  }
+
+  @Test
+  public void testInt96() throws Exception {
+    File out = convert("timestamps_int96.parquet", null);
+    assertEquals(PrimitiveTypeName.INT96, schema(out).getType("ts").asPrimitiveType().getPrimitiveTypeName());
+    List<Group> rows = read(out);
+    for (int i = 0; i < 4; ++i) {
+      assertEquals(VALUES[i], CSV2ParquetTimestampUtils.fromDateTimeString(VALUES[i]).toBinary(),
+          rows.get(i).getInt96("ts", 0));
+    }
+    // an integer, as the 4 zero bytes followed by the big endian long
+    assertEquals(Binary.fromConstantByteArray(ByteBuffer.allocate(12).putInt(0).putLong(1234567).array()),
+        rows.get(4).getInt96("ts", 0));
+  }
+
+  @Test
+  public void testInt64() throws Exception {
+    File micros = convert("timestamps_micros.parquet", "int64_micros");
+    File millis = convert("timestamps_millis.parquet", "INT64_MILLIS");
+    assertEquals(OriginalType.TIMESTAMP_MICROS, schema(micros).getType("ts").getOriginalType());
+    assertEquals(PrimitiveTypeName.INT64, schema(millis).getType("ts").asPrimitiveType().getPrimitiveTypeName());
+    assertEquals(OriginalType.TIMESTAMP_MILLIS, schema(millis).getType("ts").getOriginalType());
+    List<Group> microsRows = read(micros);
+    List<Group> millisRows = read(millis);
+    assertEquals(1483351872000000L, microsRows.get(0).getLong("ts", 0));
+    assertEquals(1483351872123456L, microsRows.get(1).getLong("ts", 0));
+    assertEquals(-1000000L, microsRows.get(2).getLong("ts", 0));
+    assertEquals(1483351872000000L, microsRows.get(3).getLong("ts", 0));
+    assertEquals(1234567L, microsRows.get(4).getLong("ts", 0));
+    assertEquals(1483351872000L, millisRows.get(0).getLong("ts", 0));
+    assertEquals(-1000L, millisRows.get(2).getLong("ts", 0));
+  }
+
+  static List<Group> convertValues(String name, String type, String... values) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; ++i) {
+      sb.append(values[i]).append('|').append(i).append('\n');
+    }
+    Configuration conf = new Configuration();
+    conf.set("parquet.timestamp", type);
+    conf.setBoolean("csv.memo", false);
+    File out = TestUtils.outputFile(name);
+    ConvertUtils.convertCsvToParquet(TestUtils.writeFile("timestamps_mixed.csv", sb), out, SCHEMA, false,
+        CsvTokenizerTest.options("|"), conf);
+    return read(out);
+  }
+
+  @Test
+  public void testIntegersAndTimestamps() throws Exception {
+    // the first value decides the order of the checks only, not the values
+    String[] values = { "1234567", "2017-01-02 10:11:12", "-5", "2017-01-02 10:11:12.5", "2017-1-2 10:11:12" };
+    String[] reversed = values.clone();
+    Collections.reverse(Arrays.asList(reversed));
+    for (String type : new String[] { "int96", "int64_micros", "int64_millis" }) {
+      List<Group> rows = convertValues("timestamps_integers.parquet", type, values);
+      List<Group> reversedRows = convertValues("timestamps_dates.parquet", type, reversed);
+      for (int i = 0; i < values.length; ++i) {
+        assertEquals(type + " " + values[i], rows.get(i).getValueToString(0, 0),
+            reversedRows.get(values.length - 1 - i).getValueToString(0, 0));
+      }
+      if (!type.equals("int96")) {
+        assertEquals(1234567L, rows.get(0).getLong("ts", 0));
+        assertEquals(-5L, rows.get(2).getLong("ts", 0));
+        assertEquals(rows.get(1).getLong("ts", 0), rows.get(4).getLong("ts", 0));
+      }
+    }
+    assertEquals(1483351872000005L, convertValues("timestamps_micros.parquet", "int64_micros", values).get(3)
+        .getLong("ts", 0));
+  }
+
+  @Test
+  public void testSchemas() {
+    assertEquals(PrimitiveTypeName.INT96, SchemaCreator.makeSchema(null, "struct<ts:timestamp>").messageType
+        .getType("ts").asPrimitiveType().getPrimitiveTypeName());
+    MessageType schema = SchemaCreator.makeSchema(null, "struct<ts:timestamp,i:int>", TimestampType.INT64_MILLIS)
+        .messageType;
+    assertEquals(OriginalType.TIMESTAMP_MILLIS, schema.getType("ts").getOriginalType());
+    schema = SchemaCreator.makeSchema(null, "CREATE TABLE t (\nts TIMESTAMP NULL,\ni INT\n)",
+        TimestampType.INT64_MICROS).messageType;
+    assertEquals(PrimitiveTypeName.INT64, schema.getType("ts").asPrimitiveType().getPrimitiveTypeName());
+    assertEquals(OriginalType.TIMESTAMP_MICROS, schema.getType("ts").getOriginalType());
+    assertEquals(MessageTypeParser.parseMessageType(SCHEMA), TimestampType.INT96.apply(
+        MessageTypeParser.parseMessageType(SCHEMA)));
+    try {
+      TimestampType.of(new Configuration() {
+        {
+          set("parquet.timestamp", "int32");
+        }
+      });
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals(" parquet.timestamp must be [int64_micros, int64_millis, int96]", e.getMessage());
+    }
+  }
+}
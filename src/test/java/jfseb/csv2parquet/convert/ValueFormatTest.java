@@ -0,0 +1,89 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
+/**
+ * Columns changing between integers, dates and times from value to value
+ * convert like columns of a single format.
+ */
+public class ValueFormatTest {
+
+  static final String MIXED = "1\n1970-01-02\n1970-01-03\n00:00:01\n00:00:02.5\n2017-1-2\n7\n-9223372036854775808\n";
+
+  @Test
+  public void testOrcIntegerColumn() throws Exception {
+    TypeDescription schema = TypeDescription.fromString("struct<v:bigint>");
+    CSVOptions options = CsvTokenizerTest.options("|");
+    CsvReader reader = new CsvReader(
+        new CsvTokenizer(new ByteArrayInputStream(MIXED.getBytes(StandardCharsets.UTF_8)), options), null, 0, schema,
+        options);
+    VectorizedRowBatch batch = schema.createRowBatch();
+    assertTrue(reader.nextBatch(batch));
+    reader.close();
+    assertEquals(8, batch.size);
+    assertArrayEquals(new long[] { 1, 1, 2, 1000000, 2000005, 17168, 7, Long.MIN_VALUE },
+        Arrays.copyOf(((LongColumnVector) batch.cols[0]).vector, 8));
+  }
+
+  @Test
+  public void testOrcRejectsText() throws Exception {
+    TypeDescription schema = TypeDescription.fromString("struct<v:bigint>");
+    CSVOptions options = CsvTokenizerTest.options("|");
+    CsvReader reader = new CsvReader(
+        new CsvTokenizer(new ByteArrayInputStream("1970-01-02\nabc\n".getBytes(StandardCharsets.UTF_8)), options),
+        null, 0, schema, options);
+    try {
+      reader.nextBatch(schema.createRowBatch());
+      fail("text accepted");
+    } catch (NumberFormatException e) {
+      // expected
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testParquetTimestampColumns() throws Exception {
+    File csv = TestUtils.outputFile("mixed_timestamps.csv");
+    Files.write(csv.toPath(),
+        ("5|5|5\n6|6|6\n2017-01-02 00:00:01.5|1970-01-01 00:00:01.5|00:00:01\n-3|-3|-3\n2017-01-02 00:00:00|"
+            + "1970-01-01 00:00:02|00:00:02\n").getBytes(StandardCharsets.UTF_8));
+    File out = TestUtils.outputFile("mixed_timestamps.parquet");
+    String schema = "message m { optional int96 ts; optional int64 micros (TIMESTAMP_MICROS);"
+        + " optional int64 time (TIME_MICROS); }";
+    ConvertUtils.convertCsvToParquet(csv, out, schema, false, CsvTokenizerTest.options("|"), new Configuration());
+    List<String> rows = ParallelCsvToParquetTest.read(out);
+    assertEquals(5, rows.size());
+    assertTrue(rows.get(0), rows.get(0).endsWith("micros: 5\ntime: 5\n"));
+    assertTrue(rows.get(1), rows.get(1).endsWith("micros: 6\ntime: 6\n"));
+    assertTrue(rows.get(2), rows.get(2).endsWith("micros: 1000005\ntime: 1000000\n"));
+    assertTrue(rows.get(3), rows.get(3).endsWith("micros: -3\ntime: -3\n"));
+    assertTrue(rows.get(4), rows.get(4).endsWith("micros: 2000000\ntime: 2000000\n"));
+    List<String> csvRows = Arrays.asList(ConvertUtils.readFile(convertBack(out).getPath()).split("\n"));
+    assertEquals("2017-01-02 00:00:01", csvRows.get(2).split("\\|")[0]);
+    assertEquals("2017-01-02 00:00:00", csvRows.get(4).split("\\|")[0]);
+  }
+
+  static File convertBack(File parquet) throws Exception {
+    File csv = TestUtils.outputFile("mixed_timestamps.back.csv");
+    ConvertUtils.convertParquetToCSV(parquet, csv);
+    return csv;
+  }
+}
@@ -0,0 +1,147 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
+public class ValueMemoTest {
+
+  static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testLookupAndPut() {
+    ValueMemo memo = new ValueMemo("c");
+    byte[] record = bytes("x|2017-01-02|y");
+    assertEquals(-1, memo.lookup(record, 2, 10));
+    memo.put(17168, 5, "o");
+    int slot = memo.lookup(bytes("2017-01-02"), 0, 10);
+    assertTrue(slot >= 0);
+    assertEquals(17168, memo.getValue(slot));
+    assertEquals(5, memo.getExtra(slot));
+    assertEquals("o", memo.getObject(slot));
+    assertEquals(-1, memo.lookup(bytes("2017-01-03"), 0, 10));
+    assertEquals(-1, memo.lookup(record, 0, 1));
+    // the last lookup was a hit, nothing is put
+    slot = memo.lookup(bytes("2017-01-02"), 0, 10);
+    memo.put(1, 1, null);
+    assertEquals(17168, memo.getValue(slot));
+    assertEquals(5, memo.getLookups());
+    assertEquals(2, memo.getHits());
+  }
+
+  @Test
+  public void testCollisionsAndLongKeys() {
+    ValueMemo memo = new ValueMemo("c");
+    for (int i = 0; i < 3 * ValueMemo.CAPACITY; ++i) {
+      byte[] key = bytes(Integer.toString(i));
+      if (memo.lookup(key, 0, key.length) < 0) {
+        memo.put(i, 0, null);
+      }
+    }
+    for (int i = 0; i < 3 * ValueMemo.CAPACITY; ++i) {
+      byte[] key = bytes(Integer.toString(i));
+      int slot = memo.lookup(key, 0, key.length);
+      assertTrue(slot < 0 || memo.getValue(slot) == i);
+    }
+    byte[] key = new byte[ValueMemo.MAX_KEY_LENGTH + 1];
+    assertEquals(-1, memo.lookup(key, 0, key.length));
+    memo.put(1, 0, null);
+    assertEquals(-1, memo.lookup(key, 0, key.length));
+  }
+
+  @Test
+  public void testBypassedOnLowHitRate() {
+    ValueMemo memo = new ValueMemo("c");
+    for (int i = 0; i < ValueMemo.WINDOW; ++i) {
+      byte[] key = bytes(Integer.toString(i));
+      memo.lookup(key, 0, key.length);
+      memo.put(i, 0, null);
+    }
+    // the window of unique values pauses the memo
+    byte[] key = bytes("0");
+    assertEquals(-1, memo.lookup(key, 0, 1));
+    assertEquals(1, memo.getBypassed());
+    for (int i = 1; i < ValueMemo.PAUSE; ++i) {
+      assertEquals(-1, memo.lookup(key, 0, 1));
+    }
+    assertEquals(ValueMemo.PAUSE, memo.getBypassed());
+    // and then tried again
+    memo.lookup(key, 0, 1);
+    assertEquals(ValueMemo.PAUSE, memo.getBypassed());
+    assertEquals(ValueMemo.WINDOW + 1, memo.getLookups());
+  }
+
+  static String repeatedValues(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; ++i) {
+      sb.append("2017-01-0").append(1 + i % 3).append(" 10:00:0").append(i % 2).append(i % 4 == 0 ? ".5|" : "|");
+      sb.append(i % 5 == 0 ? "2017-02-01" : "2017-02-02").append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testParquetWithAndWithoutMemo() throws Exception {
+    File csv = TestUtils.outputFile("memo.csv");
+    Files.write(csv.toPath(), bytes(repeatedValues(1000)));
+    String schema = "message m { optional int64 ts (TIMESTAMP_MICROS); optional int32 d (DATE);"
+        + " optional int96 ts96; }";
+    File withMemo = TestUtils.outputFile("memo_on.parquet");
+    ConvertUtils.convertCsvToParquet(csv, withMemo, schema, false, CsvTokenizerTest.options("|"), new Configuration());
+    Configuration conf = new Configuration();
+    conf.setBoolean("csv.memo", false);
+    File withoutMemo = TestUtils.outputFile("memo_off.parquet");
+    ConvertUtils.convertCsvToParquet(csv, withoutMemo, schema, false, CsvTokenizerTest.options("|"), conf);
+    assertEquals(ParallelCsvToParquetTest.read(withoutMemo), ParallelCsvToParquetTest.read(withMemo));
+  }
+
+  static VectorizedRowBatch readOrc(String csv, TypeDescription schema, boolean memo) throws Exception {
+    CSVOptions options = CsvTokenizerTest.options("|");
+    options.csvMemo = memo;
+    CsvReader reader = new CsvReader(new CsvTokenizer(new ByteArrayInputStream(bytes(csv)), options), null, 0,
+        schema, options);
+    VectorizedRowBatch batch = schema.createRowBatch();
+    assertTrue(reader.nextBatch(batch));
+    if (memo) {
+      assertEquals("column 0: memo hits 991 of 1000 lookups (99.1%), 0 bypassed\n"
+          + "column 1: memo hits 998 of 1000 lookups (99.8%), 0 bypassed", reader.getMemoMetrics());
+    } else {
+      assertEquals("", reader.getMemoMetrics());
+    }
+    reader.close();
+    return batch;
+  }
+
+  @Test
+  public void testOrcWithAndWithoutMemo() throws Exception {
+    TypeDescription schema = TypeDescription.fromString("struct<ts:timestamp,d:date>");
+    String csv = repeatedValues(1000);
+    VectorizedRowBatch with = readOrc(csv, schema, true);
+    VectorizedRowBatch without = readOrc(csv, schema, false);
+    assertEquals(without.size, with.size);
+    TimestampColumnVector ts = (TimestampColumnVector) with.cols[0];
+    TimestampColumnVector tsWithout = (TimestampColumnVector) without.cols[0];
+    assertArrayEquals(Arrays.copyOf(tsWithout.time, 1000), Arrays.copyOf(ts.time, 1000));
+    assertArrayEquals(Arrays.copyOf(tsWithout.nanos, 1000), Arrays.copyOf(ts.nanos, 1000));
+    assertEquals(Arrays.toString(Arrays.copyOf(tsWithout.isNull, 1000)), Arrays.toString(Arrays.copyOf(ts.isNull, 1000)));
+    assertArrayEquals(Arrays.copyOf(((LongColumnVector) without.cols[1]).vector, 1000),
+        Arrays.copyOf(((LongColumnVector) with.cols[1]).vector, 1000));
+  }
+}
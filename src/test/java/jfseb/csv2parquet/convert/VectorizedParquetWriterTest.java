@@ -0,0 +1,248 @@
+package jfseb.csv2parquet.convert;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.Driver;
+import jfseb.csv2parquet.TestUtils;
+import jfseb.csv2parquet.convert.ConvertToolBase.CSVOptions;
+import jfseb.csv2parquet.parquet.VectorizedParquetWriter;
+import jfseb.csv2parquet.utils.SchemaCreator;
+import jfseb.csv2parquet.utils.TimestampType;
+import jfseb.csv2parquet.utils.USchema;
+import jfseb.prevorc15.org.apache.orc.tools.convert.CsvReader;
+
+public class VectorizedParquetWriterTest {
+
+  static final String SCHEMA = "struct<i:int,l:bigint,b:boolean,f:float,d:double,s:string,dc:decimal(12,3),"
+      + "ts:timestamp,dt:date>";
+
+  static final String CSV = "1|10000000000|true|1.5|2.25|abc|12.5|2017-01-02 10:00:00|2017-01-02\n"
+      + "|||||||||\n" + "-3|-4|false|-0.5|1e10|äöü|-0.001|1969-12-31 23:59:59|1969-12-31\n";
+
+  static void writeCsv(File csv, File out, USchema schema, int blockSize, CompressionCodecName codec)
+      throws Exception {
+    CSVOptions options = CsvTokenizerTest.options("|");
+    // as the CSV writer
+    options.csvTimezone = "UTC";
+    CsvReader reader = new CsvReader(new CsvTokenizer(new ByteArrayInputStream(Files.readAllBytes(csv.toPath())),
+        options), null, 0, schema.typeDescription, options);
+    VectorizedParquetWriter writer = new VectorizedParquetWriter(new Path(out.toURI()), schema.typeDescription,
+        schema.messageType, codec, blockSize, 1024, false, new Configuration());
+    VectorizedRowBatch batch = schema.typeDescription.createRowBatch(7);
+    try {
+      while (reader.nextBatch(batch)) {
+        writer.write(batch);
+      }
+    } finally {
+      reader.close();
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testSameAsCsvWriter() throws Exception {
+    File csv = TestUtils.outputFile("vectorized.csv");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10; ++i) {
+      sb.append(CSV);
+    }
+    Files.write(csv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    for (TimestampType timestamps : TimestampType.values()) {
+      Configuration conf = new Configuration();
+      conf.set("parquet.timestamp", timestamps.name());
+      File expected = TestUtils.outputFile("vectorized_csv.parquet");
+      USchema schema = SchemaCreator.makeSchema(null, SCHEMA, timestamps);
+      ConvertUtils.convertCsvToParquet(csv, expected, schema.messageType.toString(), false,
+          CsvTokenizerTest.options("|"), conf);
+      File out = TestUtils.outputFile("vectorized.parquet");
+      writeCsv(csv, out, schema, 256, CompressionCodecName.GZIP);
+      List<String> rows = ParallelCsvToParquetTest.read(out);
+      assertEquals(30, rows.size());
+      assertEquals(timestamps.name(), ParallelCsvToParquetTest.read(expected), rows);
+      assertTrue(ParquetFileReader.readFooter(new Configuration(), new Path(out.toURI())).getBlocks().size() > 1);
+    }
+  }
+
+  @Test
+  public void testRepeatingAndNulls() throws Exception {
+    TypeDescription orc = TypeDescription.fromString("struct<a:bigint,b:string,c:decimal(20,2)>");
+    MessageType schema = MessageTypeParser.parseMessageType("message m { required int64 a; optional binary b (UTF8);"
+        + " optional fixed_len_byte_array(9) c (DECIMAL(20,2)); }");
+    File out = TestUtils.outputFile("vectorized_repeating.parquet");
+    VectorizedParquetWriter writer = new VectorizedParquetWriter(new Path(out.toURI()), orc, schema,
+        CompressionCodecName.UNCOMPRESSED, 1024 * 1024, 1024, true, new Configuration());
+    VectorizedRowBatch batch = orc.createRowBatch();
+    batch.size = 3;
+    LongColumnVector a = (LongColumnVector) batch.cols[0];
+    a.isRepeating = true;
+    a.vector[0] = 7;
+    BytesColumnVector b = (BytesColumnVector) batch.cols[1];
+    b.noNulls = false;
+    b.isNull[1] = true;
+    b.setVal(0, "x".getBytes(StandardCharsets.UTF_8));
+    b.setVal(2, "yz".getBytes(StandardCharsets.UTF_8));
+    DecimalColumnVector c = (DecimalColumnVector) batch.cols[2];
+    c.isRepeating = true;
+    c.noNulls = false;
+    c.isNull[0] = true;
+    writer.write(batch);
+    c.isRepeating = false;
+    c.noNulls = true;
+    c.isNull[0] = false;
+    c.set(0, HiveDecimal.create("-1.5"));
+    c.set(1, HiveDecimal.create("123456789012345678.25"));
+    c.set(2, HiveDecimal.create("0.005"));
+    writer.write(batch);
+    a.isRepeating = false;
+    a.noNulls = false;
+    a.isNull[2] = true;
+    try {
+      writer.write(batch);
+      fail("null in required column");
+    } catch (ParquetEncodingException e) {
+      assertEquals("null value in required column a, row 2", e.getMessage());
+    }
+    assertEquals(6, writer.getRowCount());
+    writer.close();
+    List<Group> rows = readGroups(out);
+    assertEquals(6, rows.size());
+    assertEquals("a: 7\nb: x\n", rows.get(0).toString());
+    assertEquals("a: 7\n", rows.get(1).toString());
+    assertEquals("a: 7\nb: yz\n", rows.get(2).toString());
+    String[] decimals = { "-1.50", "123456789012345678.25", "0.01" };
+    for (int r = 0; r < 3; ++r) {
+      assertEquals(7, rows.get(3 + r).getLong("a", 0));
+      assertEquals(decimals[r], decimal(rows.get(3 + r), "c", 2));
+    }
+  }
+
+  static List<Group> readGroups(File parquetFile) throws Exception {
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI()))
+        .build();
+    List<Group> rows = new ArrayList<Group>();
+    try {
+      Group group;
+      while ((group = reader.read()) != null) {
+        rows.add(group);
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  static String decimal(Group group, String field, int scale) {
+    return new BigDecimal(new BigInteger(group.getBinary(field, 0).getBytes()), scale).toString();
+  }
+
+  @Test
+  public void testJsonToParquet() throws Exception {
+    File json = TestUtils.outputFile("vectorized.json");
+    Files.write(json.toPath(), ("{\"k\":1,\"v\":\"a\",\"d\":1.25}\n{\"k\":2}\n{\"k\":3,\"v\":\"c\",\"d\":-2}\n")
+        .getBytes(StandardCharsets.UTF_8));
+    File out = TestUtils.outputFile("vectorized_json.parquet");
+    Driver.main(new String[] { "convert", "-s", "struct<k:int,v:string,d:decimal(9,2)>", json.toString(), "-o",
+        out.toString() });
+    List<Group> rows = readGroups(out);
+    assertEquals(3, rows.size());
+    assertEquals(1, rows.get(0).getInteger("k", 0));
+    assertEquals("a", rows.get(0).getString("v", 0));
+    assertEquals("1.25", decimal(rows.get(0), "d", 2));
+    assertEquals("k: 2\n", rows.get(1).toString());
+    assertEquals("-2.00", decimal(rows.get(2), "d", 2));
+  }
+
+  @Test
+  public void testMixedInput() throws Exception {
+    File csv = TestUtils.outputFile("vectorized_mixed.csv");
+    Files.write(csv.toPath(), "1,a,1.25\n".getBytes(StandardCharsets.UTF_8));
+    File json = TestUtils.outputFile("vectorized_mixed.json");
+    Files.write(json.toPath(), "{\"k\":2,\"v\":\"b\",\"d\":-2}\n".getBytes(StandardCharsets.UTF_8));
+    File out = TestUtils.outputFile("vectorized_mixed.parquet");
+    // every file is read as its own format
+    Driver.main(new String[] { "convert", "-s", "struct<k:int,v:string,d:decimal(9,2)>", csv.toString(),
+        json.toString(), "-o", out.toString() });
+    List<Group> rows = readGroups(out);
+    assertEquals(2, rows.size());
+    assertEquals("a", rows.get(0).getString("v", 0));
+    assertEquals("1.25", decimal(rows.get(0), "d", 2));
+    assertEquals(2, rows.get(1).getInteger("k", 0));
+    assertEquals("b", rows.get(1).getString("v", 0));
+  }
+
+  static File convertJson(String name, String json, String schema, String... options) throws Exception {
+    File in = TestUtils.outputFile(name + ".json");
+    Files.write(in.toPath(), json.getBytes(StandardCharsets.UTF_8));
+    File out = TestUtils.outputFile(name + ".parquet");
+    List<String> args = new ArrayList<String>(Arrays.asList("convert", "-s", schema));
+    args.addAll(Arrays.asList(options));
+    args.addAll(Arrays.asList(in.toString(), "-o", out.toString()));
+    Driver.main(args.toArray(new String[args.size()]));
+    return out;
+  }
+
+  @Test
+  public void testJsonPrecisionAndScale() throws Exception {
+    File out = convertJson("vectorized_scale", "{\"d\":1.235}\n{\"d\":-999.994}\n", "struct<d:decimal(5,2)>");
+    List<Group> rows = readGroups(out);
+    assertEquals("1.24", decimal(rows.get(0), "d", 2));
+    assertEquals("-999.99", decimal(rows.get(1), "d", 2));
+    try {
+      convertJson("vectorized_precision", "{\"d\":1234.5}\n", "struct<d:decimal(5,2)>");
+      fail("decimal beyond the precision");
+    } catch (ParquetEncodingException e) {
+      assertEquals("decimal 1234.5 out of range of column d decimal(5,2)", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testJsonIntRange() throws Exception {
+    List<Group> rows = readGroups(convertJson("vectorized_int", "{\"i\":-2147483648}\n", "struct<i:int>"));
+    assertEquals(Integer.MIN_VALUE, rows.get(0).getInteger("i", 0));
+    try {
+      convertJson("vectorized_int_range", "{\"i\":2147483648}\n", "struct<i:int>");
+      fail("int beyond INT32");
+    } catch (ParquetEncodingException e) {
+      assertEquals("value 2147483648 out of range of INT32 column i", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testJsonColumns() throws Exception {
+    File out = convertJson("vectorized_columns", "{\"k\":1,\"v\":\"a\",\"w\":true}\n{\"k\":2,\"v\":\"b\"}\n",
+        "struct<k:int,v:string,w:boolean>", "--columns", "v,k");
+    assertEquals("message m {\n  optional binary v (UTF8);\n  optional int32 k;\n}\n", ParquetFileReader
+        .readFooter(new Configuration(), new Path(out.toURI())).getFileMetaData().getSchema().toString());
+    List<Group> rows = readGroups(out);
+    assertEquals("v: a\nk: 1\n", rows.get(0).toString());
+    assertEquals("v: b\nk: 2\n", rows.get(1).toString());
+  }
+}
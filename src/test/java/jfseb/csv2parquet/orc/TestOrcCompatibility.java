@@ -75,6 +75,23 @@ public class TestOrcCompatibility {
 
   }
 
+  @Test
+  public void testPipelinedReadWriteCompatibility() throws Exception {
+    File[] csvFiles = Utils.getAllOriginalCSVFiles();
+    for (File csvFile : csvFiles) {
+      String filename = Utils.getFileNamePrefix(csvFile);
+
+      File orcTestFile = Utils.getOrcOutputFile(filename, "pipelined", true);
+      String[] args = { "-D", "orc.pipeline=true", "-D", "orc.pipeline.batches=2", "convert", "-S", "|",
+          csvFile.toString(), "-o", orcTestFile.toString() };
+      Driver.main(args);
+
+      String prefix = Utils.getFileNamePrefix(csvFile);
+      File versionOrcFile = Utils.getRefOrcFile(prefix, "1.4.0", "plain", true);
+      Utils.verifyBinary(orcTestFile, versionOrcFile);
+    }
+  }
+
   @Test
   public void testReadWriteTypesCompatibility() throws Exception {
     File[] csvFiles = Utils.getAllManyTypesCSVFiles();
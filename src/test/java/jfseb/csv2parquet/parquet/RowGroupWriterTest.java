@@ -0,0 +1,80 @@
+package jfseb.csv2parquet.parquet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.column.impl.ColumnWriteStoreV2;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Test;
+
+import jfseb.csv2parquet.TestUtils;
+
+public class RowGroupWriterTest {
+
+  @Test
+  public void testPagesV2() throws Exception {
+    File out = TestUtils.outputFile("pages_v2.parquet");
+    MessageType schema = MessageTypeParser.parseMessageType(
+        "message m { required int64 id; optional binary s (UTF8); repeated int32 r; }");
+    ParquetProperties properties = ParquetProperties.builder().withWriterVersion(WriterVersion.PARQUET_2_0)
+        .withDictionaryEncoding(false).build();
+    RowGroupWriter writer = new RowGroupWriter(new Path(out.toURI()), schema, CompressionCodecName.GZIP, 1 << 20,
+        new ColumnEncodings(1 << 20, false, WriterVersion.PARQUET_1_0), new Configuration());
+    ColumnWriteStore store = new ColumnWriteStoreV2(schema, writer.getPageWriteStore(), properties);
+    List<ColumnDescriptor> columns = schema.getColumns();
+    ColumnWriter id = store.getColumnWriter(columns.get(0));
+    ColumnWriter s = store.getColumnWriter(columns.get(1));
+    ColumnWriter r = store.getColumnWriter(columns.get(2));
+    for (int i = 0; i < 1000; ++i) {
+      id.write((long) i, 0, 0);
+      if (i % 3 == 0) {
+        s.writeNull(0, 0);
+      } else {
+        s.write(Binary.fromString("s" + i), 0, 1);
+      }
+      if (i % 2 == 0) {
+        r.writeNull(0, 0);
+      } else {
+        r.write(i, 0, 1);
+        r.write(-i, 1, 1);
+      }
+      store.endRecord();
+    }
+    store.flush();
+    writer.endRows(1000);
+    writer.close(new HashMap<String, String>());
+
+    List<Group> rows = new ArrayList<Group>();
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(out.toURI())).build();
+    try {
+      Group group;
+      while ((group = reader.read()) != null) {
+        rows.add(group);
+      }
+    } finally {
+      reader.close();
+    }
+    assertEquals(1000, rows.size());
+    assertEquals("id: 0\n", rows.get(0).toString());
+    assertEquals("id: 1\ns: s1\nr: 1\nr: -1\n", rows.get(1).toString());
+    assertEquals("id: 998\ns: s998\n", rows.get(998).toString());
+    assertEquals("id: 999\nr: 999\nr: -999\n", rows.get(999).toString());
+  }
+}
@@ -2,6 +2,8 @@ package jfseb.csv2parquet.utils;
 
 import static org.junit.Assert.*;
 
+import java.nio.charset.StandardCharsets;
+
 import org.apache.orc.OrcProto.Type;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.schema.OriginalType;
@@ -69,4 +71,37 @@ public class ParseHexRecTest {
     assertTrue(Float.isNaN(res.asFloat));
     assertTrue(Double.isFinite(res.asDouble));
   }
+
+  static boolean decode(ParseHexRec.HexDecoder decoder, String field) {
+    byte[] b = ("||" + field + "|").getBytes(StandardCharsets.UTF_8);
+    return decoder.decode(b, 2, b.length - 3);
+  }
+
+  @Test
+  public void testDecoderRejects() {
+    ParseHexRec.HexDecoder decoder = new ParseHexRec.HexDecoder();
+    for (String field : new String[] { "0x02Zx0", "0xAF", "0xx0", "0xAx0", "0xUAx0", "0X02x0", "0x02X0", "0x0g0x0",
+        "abc", "0x\u00e402x0" }) {
+      assertFalse(field, decode(decoder, field));
+      assertNull(field, ParseHexRec.parse(field));
+    }
+  }
+
+  @Test
+  public void testDecoderLikeParsedRec() {
+    ParseHexRec.HexDecoder decoder = new ParseHexRec.HexDecoder();
+    for (String field : new String[] { "0x02x0", "0xFFF0FE01x0", "0x3FF0000000000000x0", "0xaBcDeF0123456789ABCDEFx0",
+        "0x000102030405060708090A0B0C0D0E0F101112131415161718x0" }) {
+      ParsedRec res = ParseHexRec.parse(field);
+      assertTrue(field, decode(decoder, field));
+      assertEquals(field, res.asLong, decoder.asLong());
+      assertEquals(field, res.asInt, decoder.asInt());
+      assertEquals(field, res.asDouble, decoder.asDouble(), 0);
+      assertEquals(field, Float.floatToRawIntBits(res.asFloat), Float.floatToRawIntBits(decoder.asFloat()));
+      assertEquals(field, res.binary, decoder.toBinary());
+      assertEquals(field, res.getBinary(12), decoder.toBinary(12));
+    }
+    assertTrue(decode(decoder, "0x3FF0000000000000x0"));
+    assertEquals(1.0, decoder.asDouble(), 0);
+  }
 }